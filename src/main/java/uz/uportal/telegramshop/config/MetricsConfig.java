@@ -0,0 +1,29 @@
+package uz.uportal.telegramshop.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+import uz.uportal.telegramshop.service.bot.metrics.SqlStatementCounter;
+
+/**
+ * Конфигурация метрик: подсчет SQL-запросов Hibernate и значения по умолчанию
+ * для actuator (эндпоинт /actuator/prometheus). Настройки из application.properties имеют приоритет
+ */
+@Configuration
+@PropertySource("classpath:metrics.properties")
+public class MetricsConfig {
+    
+    /**
+     * Подключает счетчик SQL-запросов ко всем сессиям Hibernate
+     * 
+     * @param statementCounter счетчик запросов
+     * @return настройка свойств Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer(SqlStatementCounter statementCounter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+    }
+}
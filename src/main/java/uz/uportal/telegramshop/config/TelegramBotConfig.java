@@ -1,5 +1,8 @@
 package uz.uportal.telegramshop.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -7,6 +10,10 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 import uz.uportal.telegramshop.service.TelegramBotService;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.dispatch.AsyncUpdateDispatcher;
+import uz.uportal.telegramshop.service.bot.dispatch.LongPollingUpdateReceiver;
+import uz.uportal.telegramshop.service.bot.dispatch.UpdateDeduplicator;
 
 import org.telegram.telegrambots.meta.generics.LongPollingBot;
 
@@ -15,4 +22,35 @@ public class TelegramBotConfig {
     
     // Для webhook бота не нужно регистрировать его в TelegramBotsApi
     // Webhook будет обрабатываться через WebhookController
+    
+    /**
+     * Long polling вместо webhook (telegram.bot.mode=polling).
+     * Пачки getUpdates уходят в ту же очередь, что и асинхронный webhook:
+     * обновления одного чата по порядку, разные чаты параллельно
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "polling")
+    public LongPollingUpdateReceiver longPollingUpdateReceiver(
+            @Qualifier("TelegramBotService") TelegramBotService telegramBotService,
+            AsyncUpdateDispatcher asyncUpdateDispatcher,
+            UpdateDeduplicator updateDeduplicator,
+            @Value("${telegram.bot.polling.limit:100}") int limit,
+            @Value("${telegram.bot.polling.timeout:50}") int timeoutSeconds) {
+        return new LongPollingUpdateReceiver(telegramBotService, update -> {
+            UpdateEnvelope envelope = UpdateEnvelope.of(update);
+            if (updateDeduplicator.isDuplicate(envelope)) {
+                return true;
+            }
+            switch (asyncUpdateDispatcher.submit(envelope)) {
+                case ACCEPTED:
+                    return true;
+                case SHED:
+                    asyncUpdateDispatcher.sendBusyReply(envelope);
+                    return true;
+                default:
+                    updateDeduplicator.forget(update.getUpdateId());
+                    return false;
+            }
+        }, limit, timeoutSeconds);
+    }
 } 
\ No newline at end of file
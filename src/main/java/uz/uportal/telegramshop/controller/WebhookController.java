@@ -1,14 +1,21 @@
 package uz.uportal.telegramshop.controller;
 
+import java.io.IOException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.objects.Update;
 
 import uz.uportal.telegramshop.service.TelegramBotService;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelopeParser;
+import uz.uportal.telegramshop.service.bot.dispatch.AsyncUpdateDispatcher;
+import uz.uportal.telegramshop.service.bot.dispatch.UpdateDeduplicator;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -16,17 +23,56 @@ import org.springframework.beans.factory.annotation.Qualifier;
 public class WebhookController {
     
     private final TelegramBotService telegramBotService;
+    private final AsyncUpdateDispatcher asyncUpdateDispatcher;
+    private final UpdateDeduplicator updateDeduplicator;
+    private final UpdateEnvelopeParser updateEnvelopeParser;
     private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
     
-    public WebhookController(@Qualifier("TelegramBotService") TelegramBotService telegramBotService) {
+    public WebhookController(
+            @Qualifier("TelegramBotService") TelegramBotService telegramBotService,
+            AsyncUpdateDispatcher asyncUpdateDispatcher,
+            UpdateDeduplicator updateDeduplicator,
+            UpdateEnvelopeParser updateEnvelopeParser) {
         this.telegramBotService = telegramBotService;
+        this.asyncUpdateDispatcher = asyncUpdateDispatcher;
+        this.updateDeduplicator = updateDeduplicator;
+        this.updateEnvelopeParser = updateEnvelopeParser;
     }
     
     @PostMapping("/webhook")
-    public BotApiMethod<?> onUpdateReceived(@RequestBody Update update) {
-        logger.info("Received update: {}", update);
-        BotApiMethod<?> response = telegramBotService.onWebhookUpdateReceived(update);
-        logger.info("Response: {}", response);
-        return response;
+    public ResponseEntity<?> onUpdateReceived(@RequestBody byte[] body) {
+        // Тело разбирается потоково в легкий конверт; полный Update строится, только когда дойдет до обработчика
+        UpdateEnvelope envelope;
+        try {
+            envelope = updateEnvelopeParser.parse(body);
+        } catch (IOException e) {
+            logger.warn("Invalid update payload: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        
+        if (updateDeduplicator.isDuplicate(envelope)) {
+            // Повторная доставка уже полученного обновления: подтверждаем, но не обрабатываем
+            logger.debug("Duplicate update {} dropped", envelope.getUpdateId());
+            return ResponseEntity.ok().build();
+        }
+        
+        if (asyncUpdateDispatcher.isEnabled()) {
+            switch (asyncUpdateDispatcher.submit(envelope)) {
+                case ACCEPTED:
+                    // Отвечаем сразу, обработка идет в пуле рабочих потоков
+                    return ResponseEntity.ok().build();
+                case SHED:
+                    // Очередь класса заполнена: отвечаем «попробуйте позже» прямо в ответе webhook
+                    return ResponseEntity.ok(AsyncUpdateDispatcher.busyReply(envelope));
+                default:
+                    // Очередь переполнена: Telegram повторит доставку позже, и повтор нельзя считать дубликатом
+                    updateDeduplicator.forget(envelope.getUpdateId());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+        }
+        
+        BotApiMethod<?> response = telegramBotService.handle(envelope);
+        logger.debug("Response: {}", response);
+        return ResponseEntity.ok(response);
     }
 } 
\ No newline at end of file
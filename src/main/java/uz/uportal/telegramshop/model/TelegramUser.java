@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "telegram_users")
+@Table(name = "telegram_users", indexes = @Index(name = "idx_telegram_users_last_activity", columnList = "lastActivityAt"))
 public class TelegramUser {
     
     @Id
@@ -18,6 +18,7 @@ public class TelegramUser {
     private String state;
     private String role;
     private String tempData; // Временные данные для многошаговых операций
+    private LocalDateTime lastActivityAt; // Последнее обновление от пользователя, по нему сбрасываются брошенные сценарии
     
     // Конструкторы, геттеры и сеттеры
     
@@ -33,6 +34,7 @@ public class TelegramUser {
         this.state = "NEW";
         this.role = "USER";
         this.tempData = null;
+        this.lastActivityAt = registeredAt;
     }
     
     // Геттеры и сеттеры
@@ -111,4 +113,12 @@ public class TelegramUser {
     public void setTempData(String tempData) {
         this.tempData = tempData;
     }
+    
+    public LocalDateTime getLastActivityAt() {
+        return lastActivityAt;
+    }
+    
+    public void setLastActivityAt(LocalDateTime lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
 } 
\ No newline at end of file
@@ -3,10 +3,12 @@ package uz.uportal.telegramshop.repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.Product;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 @Repository
@@ -24,4 +26,61 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByCategoryAndActiveTrue(Category category);
     
     Page<Product> findByCategoryAndActiveTrue(Category category, Pageable pageable);
-} 
\ No newline at end of file
+    
+    Page<Product> findByCategoryIdAndActiveTrue(Long categoryId, Pageable pageable);
+    
+    boolean existsByCategoryId(Long categoryId);
+    
+    /**
+     * Количество товаров по категориям одним запросом с группировкой
+     * @return по строке на каждую категорию, в которой есть товары
+     */
+    @Query("select p.category.id as categoryId, count(p) as total, "
+            + "sum(case when p.active = true then 1 else 0 end) as activeCount, "
+            + "sum(case when p.active = true and p.stock > 0 then 1 else 0 end) as inStockCount "
+            + "from Product p where p.category is not null group by p.category.id")
+    List<CategoryProductCount> countByCategory();
+    
+    /**
+     * Строка {@link #countByCategory()}
+     */
+    interface CategoryProductCount {
+        
+        Long getCategoryId();
+        
+        /**
+         * Все товары, включая помеченные неактивными
+         */
+        Long getTotal();
+        
+        Long getActiveCount();
+        
+        Long getInStockCount();
+    }
+    
+    /**
+     * Поля активных товаров, по которым строится поисковый индекс, без загрузки категорий
+     * @return по строке на каждый активный товар
+     */
+    @Query("select p.id as id, p.name as name, p.description as description, p.price as price, "
+            + "p.imageUrl as imageUrl, p.stock as stock from Product p where p.active = true")
+    List<SearchRow> findSearchRows();
+    
+    /**
+     * Строка {@link #findSearchRows()}
+     */
+    interface SearchRow {
+        
+        Long getId();
+        
+        String getName();
+        
+        String getDescription();
+        
+        BigDecimal getPrice();
+        
+        String getImageUrl();
+        
+        Integer getStock();
+    }
+}
@@ -1,10 +1,28 @@
 package uz.uportal.telegramshop.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import uz.uportal.telegramshop.model.TelegramUser;
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface TelegramUserRepository extends JpaRepository<TelegramUser, Long> {
     // Здесь можно добавить дополнительные методы запросов
     List<TelegramUser> findByRole(String role);
+
+    /**
+     * Записывает поля, которые меняются при обработке обновлений, одним UPDATE без предварительного SELECT
+     * (save для сущности с заданным ID выполняет merge, то есть SELECT и UPDATE)
+     * @return количество обновленных строк
+     */
+    @Transactional
+    @Modifying
+    @Query("update TelegramUser u set u.state = :state, u.tempData = :tempData, u.role = :role, "
+            + "u.phoneNumber = :phoneNumber, u.lastActivityAt = :lastActivityAt where u.chatId = :chatId")
+    int updateSession(@Param("chatId") Long chatId, @Param("state") String state,
+            @Param("tempData") String tempData, @Param("role") String role,
+            @Param("phoneNumber") String phoneNumber, @Param("lastActivityAt") LocalDateTime lastActivityAt);
 } 
\ No newline at end of file
@@ -225,7 +225,15 @@ public class CartService {
             return "";
         }
         
-        TelegramUser user = userOpt.get();
+        return getCartInfo(userOpt.get());
+    }
+    
+    /**
+     * Получить информацию о корзине уже загруженного пользователя в виде текста
+     * @param user пользователь
+     * @return текстовая информация о корзине
+     */
+    public String getCartInfo(TelegramUser user) {
         List<CartItem> cartItems = getCartItems(user);
         
         if (cartItems.isEmpty()) {
@@ -0,0 +1,284 @@
+package uz.uportal.telegramshop.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.repository.ProductRepository;
+import uz.uportal.telegramshop.repository.ProductRepository.CategoryProductCount;
+
+/**
+ * Счетчики товаров по категориям в памяти: всего (включая помеченные неактивными), активных
+ * и активных в наличии — для самой категории и для всего ее поддерева.
+ * <p>
+ * При запуске счетчики строятся одним запросом с группировкой, дальше {@link ProductService} сообщает
+ * о каждом изменении товара состоянием до и после, и счетчики меняются на разницу. Поддерево берется
+ * из снимка {@link CategoryTree}: при переносе категорий {@link CategoryService} передает новый снимок,
+ * и суммы по поддеревьям пересчитываются по счетчикам категорий без запросов к базе.
+ * <p>
+ * Раз в {@code telegram.bot.catalog.counters.check-interval} секунд счетчики сверяются с базой. Расхождение
+ * может быть вызвано изменением, которое уже зафиксировано, но еще не учтено, поэтому категория с расхождением
+ * только запоминается; если на следующей сверке расхождение в ней остается, счетчики строятся заново.
+ */
+@Component
+public class CategoryProductCounters implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryProductCounters.class);
+
+    private final ProductRepository productRepository;
+    private final Map<Long, Counts> direct = new HashMap<>();
+    private final Map<Long, Counts> subtree = new HashMap<>();
+    /**
+     * Категории, разошедшиеся с базой на предыдущей сверке
+     */
+    private final Set<Long> suspected = new HashSet<>();
+    private CategoryTree tree;
+    private final ScheduledExecutorService scheduler;
+    private final Timer rebuildTimer;
+    private final Counter mismatchCounter;
+
+    public CategoryProductCounters(
+            ProductRepository productRepository,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.catalog.counters.check-enabled:true}") boolean checkEnabled,
+            @Value("${telegram.bot.catalog.counters.check-interval:3600}") long checkInterval) {
+        this.productRepository = productRepository;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("category-counters").daemon().factory());
+        this.rebuildTimer = Timer.builder("telegram.catalog.counters.rebuild")
+                .description("Время построения счетчиков товаров по категориям")
+                .register(meterRegistry);
+        this.mismatchCounter = Counter.builder("telegram.catalog.counters.mismatches")
+                .description("Категории, счетчики которых разошлись с базой")
+                .register(meterRegistry);
+        if (checkEnabled) {
+            scheduler.scheduleWithFixedDelay(this::verifyQuietly, checkInterval, checkInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Счетчики товаров самой категории
+     * @param categoryId ID категории
+     * @return счетчики; для неизвестной категории нули
+     */
+    public synchronized Counts get(Long categoryId) {
+        return direct.getOrDefault(categoryId, Counts.ZERO);
+    }
+
+    /**
+     * Счетчики товаров категории вместе со всеми ее подкатегориями
+     * @param categoryId ID категории
+     * @return счетчики; пока снимок категорий не передан, только товары самой категории
+     */
+    public synchronized Counts getSubtree(Long categoryId) {
+        if (tree == null) {
+            return get(categoryId);
+        }
+        return subtree.getOrDefault(categoryId, Counts.ZERO);
+    }
+
+    /**
+     * Учитывает изменение товара
+     * @param before состояние до изменения или null для нового товара
+     * @param after состояние после изменения
+     */
+    public synchronized void productChanged(ProductState before, ProductState after) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        if (before != null) {
+            add(before.categoryId(), before.counts(), -1);
+        }
+        if (after != null) {
+            add(after.categoryId(), after.counts(), 1);
+        }
+    }
+
+    /**
+     * Принимает новый снимок иерархии и пересчитывает суммы по поддеревьям
+     * @param tree снимок категорий
+     */
+    public synchronized void treeChanged(CategoryTree tree) {
+        this.tree = tree;
+        rebuildSubtree();
+    }
+
+    /**
+     * Строит счетчики заново одним запросом к базе.
+     * Изменения товаров ждут окончания построения, поэтому ни одно из них не теряется
+     */
+    public synchronized void rebuild() {
+        long startedAt = System.nanoTime();
+        List<CategoryProductCount> rows = productRepository.countByCategory();
+        direct.clear();
+        for (CategoryProductCount row : rows) {
+            direct.put(row.getCategoryId(), Counts.of(row));
+        }
+        rebuildSubtree();
+        suspected.clear();
+        long elapsed = System.nanoTime() - startedAt;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Счетчики товаров построены за {} мс: {} категорий с товарами",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), direct.size());
+    }
+
+    /**
+     * Сверяет счетчики с базой. Категории с расхождением запоминаются до следующей сверки;
+     * если расхождение в них повторилось, счетчики строятся заново
+     * @return количество категорий с подтвержденным расхождением
+     */
+    public int verify() {
+        List<Long> mismatched = mismatches();
+        List<Long> confirmed = new ArrayList<>();
+        synchronized (this) {
+            for (Long categoryId : mismatched) {
+                if (suspected.contains(categoryId)) {
+                    confirmed.add(categoryId);
+                }
+            }
+            suspected.clear();
+            suspected.addAll(mismatched);
+        }
+        if (confirmed.isEmpty()) {
+            if (!mismatched.isEmpty()) {
+                logger.debug("Счетчики товаров расходятся с базой в {} категориях; проверим на следующей сверке",
+                        mismatched.size());
+            }
+            return 0;
+        }
+        logger.warn("Счетчики товаров разошлись с базой в {} категориях, например {}; строим заново",
+                confirmed.size(), confirmed.subList(0, Math.min(5, confirmed.size())));
+        mismatchCounter.increment(confirmed.size());
+        rebuild();
+        return confirmed.size();
+    }
+
+    private List<Long> mismatches() {
+        Map<Long, Counts> actual = new HashMap<>();
+        for (CategoryProductCount row : productRepository.countByCategory()) {
+            actual.put(row.getCategoryId(), Counts.of(row));
+        }
+        List<Long> mismatched = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Long, Counts> entry : actual.entrySet()) {
+                if (!entry.getValue().equals(direct.getOrDefault(entry.getKey(), Counts.ZERO))) {
+                    mismatched.add(entry.getKey());
+                }
+            }
+            for (Map.Entry<Long, Counts> entry : direct.entrySet()) {
+                if (!actual.containsKey(entry.getKey()) && !entry.getValue().equals(Counts.ZERO)) {
+                    mismatched.add(entry.getKey());
+                }
+            }
+        }
+        return mismatched;
+    }
+
+    private void verifyQuietly() {
+        try {
+            verify();
+        } catch (Exception e) {
+            logger.error("Ошибка при сверке счетчиков товаров: {}", e.getMessage(), e);
+        }
+    }
+
+    private void add(Long categoryId, Counts counts, int sign) {
+        if (categoryId == null) {
+            return;
+        }
+        direct.merge(categoryId, counts.times(sign), Counts::plus);
+        CategoryTree.Node node = tree != null ? tree.get(categoryId) : null;
+        if (node != null) {
+            for (CategoryTree.Node ancestor : node.getPath()) {
+                subtree.merge(ancestor.getId(), counts.times(sign), Counts::plus);
+            }
+        }
+    }
+
+    private void rebuildSubtree() {
+        subtree.clear();
+        if (tree == null) {
+            return;
+        }
+        for (Map.Entry<Long, Counts> entry : direct.entrySet()) {
+            CategoryTree.Node node = tree.get(entry.getKey());
+            if (node == null) {
+                continue;
+            }
+            for (CategoryTree.Node ancestor : node.getPath()) {
+                subtree.merge(ancestor.getId(), entry.getValue(), Counts::plus);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Счетчики товаров
+     * @param total все товары, включая помеченные неактивными (на них ссылаются заказы и корзины)
+     * @param active активные товары, которые видны в каталоге
+     * @param inStock активные товары с положительным остатком
+     */
+    public record Counts(long total, long active, long inStock) {
+
+        public static final Counts ZERO = new Counts(0, 0, 0);
+
+        static Counts of(CategoryProductCount row) {
+            return new Counts(row.getTotal(), row.getActiveCount(), row.getInStockCount());
+        }
+
+        Counts plus(Counts other) {
+            return new Counts(total + other.total, active + other.active, inStock + other.inStock);
+        }
+
+        Counts times(int sign) {
+            return new Counts(total * sign, active * sign, inStock * sign);
+        }
+    }
+
+    /**
+     * Поля товара, от которых зависят счетчики
+     * @param categoryId ID категории или null
+     * @param active товар активен
+     * @param inStock остаток положительный
+     */
+    public record ProductState(Long categoryId, boolean active, boolean inStock) {
+
+        public static ProductState of(Product product) {
+            return new ProductState(
+                    product.getCategory() != null ? product.getCategory().getId() : null,
+                    Boolean.TRUE.equals(product.getActive()),
+                    product.getStock() != null && product.getStock() > 0);
+        }
+
+        Counts counts() {
+            return new Counts(1, active ? 1 : 0, active && inStock ? 1 : 0);
+        }
+    }
+}
@@ -6,23 +6,35 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import uz.uportal.telegramshop.model.Category;
-import uz.uportal.telegramshop.model.Product;
 import uz.uportal.telegramshop.repository.CategoryRepository;
 import uz.uportal.telegramshop.repository.ProductRepository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Сервис для работы с категориями
+ * Сервис для работы с категориями.
+ * Каталог читает категории из снимка иерархии в памяти ({@link #getCategoryTree()}); после каждого
+ * изменения категорий снимок строится заново и подменяется, когда транзакция зафиксирована
  */
 @Service
 public class CategoryService {
     
     private final CategoryRepository categoryRepository;
     private final ProductRepository productRepository;
+    private final CategoryProductCounters productCounters;
     private static final Logger logger = LoggerFactory.getLogger(CategoryService.class);
+    private final Timer treeRebuildTimer;
+    private final Object treeLock = new Object();
+    private volatile CategoryTree categoryTree;
+    private long treeVersion;
     
     /**
      * Результат операции удаления
@@ -45,9 +57,66 @@ public class CategoryService {
         }
     }
     
-    public CategoryService(CategoryRepository categoryRepository, ProductRepository productRepository) {
+    public CategoryService(CategoryRepository categoryRepository, ProductRepository productRepository,
+            CategoryProductCounters productCounters, MeterRegistry meterRegistry) {
         this.categoryRepository = categoryRepository;
         this.productRepository = productRepository;
+        this.productCounters = productCounters;
+        this.treeRebuildTimer = Timer.builder("telegram.category.tree.rebuild")
+                .description("Время построения снимка иерархии категорий")
+                .register(meterRegistry);
+        Gauge.builder("telegram.category.tree.size", this, service -> {
+                    CategoryTree tree = service.categoryTree;
+                    return tree != null ? tree.size() : 0;
+                })
+                .description("Количество категорий в снимке")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Снимок иерархии категорий; при первом обращении строится по базе
+     * @return текущий снимок
+     */
+    public CategoryTree getCategoryTree() {
+        CategoryTree tree = categoryTree;
+        return tree != null ? tree : refreshCategoryTree();
+    }
+    
+    /**
+     * Строит снимок иерархии категорий заново и подменяет им текущий.
+     * Нужно вызывать после изменения категорий в обход сервиса
+     * @return новый снимок
+     */
+    public CategoryTree refreshCategoryTree() {
+        // Построения идут по очереди: снимок, построенный последним, отражает самое новое состояние базы
+        synchronized (treeLock) {
+            long startedAt = System.nanoTime();
+            CategoryTree tree = CategoryTree.build(categoryRepository.findAll(), ++treeVersion);
+            long elapsed = System.nanoTime() - startedAt;
+            treeRebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            categoryTree = tree;
+            productCounters.treeChanged(tree);
+            logger.debug("Снимок категорий #{} построен за {} мкс: {} категорий",
+                    tree.getVersion(), TimeUnit.NANOSECONDS.toMicros(elapsed), tree.size());
+            return tree;
+        }
+    }
+    
+    /**
+     * Перестраивает снимок после фиксации текущей транзакции, а вне транзакции — сразу.
+     * До фиксации снимок не меняется: при откате в нем не окажется несохраненных изменений
+     */
+    private void categoriesChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refreshCategoryTree();
+                }
+            });
+        } else {
+            refreshCategoryTree();
+        }
     }
     
     /**
@@ -63,7 +132,7 @@ public class CategoryService {
      * @return список основных категорий
      */
     public List<Category> getMainCategories() {
-        return categoryRepository.findByParentIsNull();
+        return getCategoryTree().getMainCategories();
     }
     
     /**
@@ -108,7 +177,9 @@ public class CategoryService {
         Category category = new Category();
         category.setName(name);
         category.setDescription(description);
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        categoriesChanged();
+        return saved;
     }
     
     /**
@@ -127,7 +198,9 @@ public class CategoryService {
         
         Category parent = parentOpt.get();
         Category subcategory = new Category(name, description, parent);
-        return categoryRepository.save(subcategory);
+        Category saved = categoryRepository.save(subcategory);
+        categoriesChanged();
+        return saved;
     }
     
     /**
@@ -148,7 +221,9 @@ public class CategoryService {
         category.setName(name);
         category.setDescription(description);
         
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        categoriesChanged();
+        return saved;
     }
     
     /**
@@ -176,7 +251,9 @@ public class CategoryService {
             category.setParent(parentOpt.get());
         }
         
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        categoriesChanged();
+        return saved;
     }
     
     /**
@@ -205,17 +282,11 @@ public class CategoryService {
             logger.info("Родительская категория: нет (основная категория)");
         }
         
-        // Проверяем, есть ли в категории товары
-        List<Product> products = productRepository.findByCategory(category);
-        if (!products.isEmpty()) {
-            logger.warn("Невозможно удалить категорию ID={}, т.к. в ней есть {} товаров:", id, products.size());
-            for (int i = 0; i < Math.min(5, products.size()); i++) {
-                Product product = products.get(i);
-                logger.warn("  - Товар {}: ID={}, Имя='{}'", i+1, product.getId(), product.getName());
-            }
-            if (products.size() > 5) {
-                logger.warn("  ... и ещё {} товаров", products.size() - 5);
-            }
+        // Проверяем, есть ли в категории товары (включая неактивные: на них ссылаются заказы).
+        // Счетчики в памяти; разрешение на удаление дополнительно подтверждается запросом EXISTS
+        long productCount = productCounters.get(id).total();
+        if (productCount > 0 || productRepository.existsByCategoryId(id)) {
+            logger.warn("Невозможно удалить категорию ID={}, т.к. в ней есть товары: {}", id, productCount);
             return new DeleteResult(false, "Категорию нельзя удалить, так как в ней есть товары. Сначала удалите или переместите все товары из этой категории.");
         }
         
@@ -237,6 +308,7 @@ public class CategoryService {
         
         try {
             categoryRepository.deleteById(id);
+            categoriesChanged();
             logger.info("Категория с ID={} успешно удалена", id);
             return new DeleteResult(true, "Категория успешно удалена.");
         } catch (Exception e) {
@@ -266,18 +338,16 @@ public class CategoryService {
      * @return true, если в категории есть товары, иначе false
      */
     public boolean categoryHasProducts(Long categoryId) {
-        logger.info("Проверяем наличие товаров в категории ID={}", categoryId);
-        
-        Optional<Category> categoryOpt = getCategoryById(categoryId);
-        if (categoryOpt.isEmpty()) {
-            logger.info("Категория с ID={} не найдена при проверке товаров", categoryId);
-            return false;
-        }
-        
-        Category category = categoryOpt.get();
-        List<Product> products = productRepository.findByCategory(category);
-        logger.info("Категория ID={} содержит {} товаров", categoryId, products.size());
-        return !products.isEmpty();
+        return productCounters.get(categoryId).total() > 0;
+    }
+    
+    /**
+     * Количество товаров, видимых в каталоге, в категории и всех ее подкатегориях
+     * @param categoryId ID категории
+     * @return количество активных товаров
+     */
+    public long countActiveProductsInSubtree(Long categoryId) {
+        return productCounters.getSubtree(categoryId).active();
     }
     
     /**
@@ -286,10 +356,7 @@ public class CategoryService {
      * @return true, если у категории есть подкатегории, иначе false
      */
     public boolean categoryHasSubcategories(Long categoryId) {
-        logger.info("Проверяем наличие подкатегорий у категории ID={}", categoryId);
-        
-        List<Category> subcategories = getSubcategories(categoryId);
-        logger.info("Категория ID={} имеет {} подкатегорий", categoryId, subcategories.size());
-        return !subcategories.isEmpty();
+        CategoryTree.Node node = getCategoryTree().get(categoryId);
+        return node != null && node.hasChildren();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,247 @@
+package uz.uportal.telegramshop.service;
+
+import uz.uportal.telegramshop.model.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок иерархии категорий: узлы по ID, дочерние узлы, ссылки на родителя,
+ * путь от корня и глубина. Каталог читает категории из снимка, не обращаясь к базе;
+ * {@link CategoryService} строит новый снимок после каждого изменения категорий и подменяет им старый,
+ * поэтому читатели всегда видят целый снимок, старый или новый.
+ */
+public final class CategoryTree {
+
+    private static final Comparator<Node> BY_ID = Comparator.comparing(Node::getId);
+
+    private final long version;
+    private final Map<Long, Node> nodes;
+    private final List<Node> roots;
+
+    private CategoryTree(long version, Map<Long, Node> nodes, List<Node> roots) {
+        this.version = version;
+        this.nodes = nodes;
+        this.roots = roots;
+    }
+
+    /**
+     * Строит снимок по всем категориям
+     * @param categories все категории; у родителя используется только ID
+     * @param version номер снимка
+     * @return снимок
+     */
+    static CategoryTree build(List<Category> categories, long version) {
+        Map<Long, Node> nodes = new HashMap<>(categories.size() * 2);
+        Map<Long, Long> parentIds = new HashMap<>(categories.size() * 2);
+        for (Category category : categories) {
+            nodes.put(category.getId(), new Node(category));
+            if (category.getParent() != null) {
+                parentIds.put(category.getId(), category.getParent().getId());
+            }
+        }
+
+        Map<Long, List<Node>> children = new HashMap<>();
+        List<Node> roots = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            Node parent = nodes.get(parentIds.get(node.id));
+            if (parent == null) {
+                roots.add(node);
+            } else {
+                node.parent = parent;
+                children.computeIfAbsent(parent.id, id -> new ArrayList<>()).add(node);
+            }
+        }
+        for (Node node : nodes.values()) {
+            List<Node> list = children.get(node.id);
+            if (list != null) {
+                list.sort(BY_ID);
+                node.children = Collections.unmodifiableList(list);
+            }
+        }
+        roots.sort(BY_ID);
+
+        // Путь и глубина считаются обходом от корней: цикл в данных до корня не доходит и в снимок не попадает
+        List<Node> ordered = new ArrayList<>(nodes.size());
+        List<Node> level = roots;
+        int depth = 0;
+        while (!level.isEmpty()) {
+            List<Node> next = new ArrayList<>();
+            for (Node node : level) {
+                node.depth = depth;
+                List<Node> path = new ArrayList<>(depth + 1);
+                if (node.parent != null) {
+                    path.addAll(node.parent.path);
+                }
+                path.add(node);
+                node.path = Collections.unmodifiableList(path);
+                ordered.add(node);
+                next.addAll(node.children);
+            }
+            level = next;
+            depth++;
+        }
+
+        Map<Long, Node> reachable = new HashMap<>(ordered.size() * 2);
+        for (Node node : ordered) {
+            reachable.put(node.id, node);
+        }
+        return new CategoryTree(version, Collections.unmodifiableMap(reachable), Collections.unmodifiableList(roots));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Узел категории
+     * @param id ID категории
+     * @return узел или null, если категории нет
+     */
+    public Node get(Long id) {
+        return id != null ? nodes.get(id) : null;
+    }
+
+    /**
+     * Основные категории (без родительской категории)
+     * @return узлы по возрастанию ID
+     */
+    public List<Node> getRoots() {
+        return roots;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Основные категории в виде сущностей для клавиатур
+     * @return отсоединенные копии категорий
+     */
+    public List<Category> getMainCategories() {
+        return toCategories(roots);
+    }
+
+    /**
+     * Подкатегории в виде сущностей для клавиатур
+     * @param parentId ID родительской категории
+     * @return отсоединенные копии подкатегорий или пустой список
+     */
+    public List<Category> getSubcategories(Long parentId) {
+        Node parent = get(parentId);
+        return parent != null ? toCategories(parent.children) : List.of();
+    }
+
+    private static List<Category> toCategories(List<Node> nodes) {
+        List<Category> categories = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            categories.add(node.toCategory());
+        }
+        return categories;
+    }
+
+    /**
+     * Категория в снимке. Поля заполняются при построении снимка и дальше не меняются
+     */
+    public static final class Node {
+
+        private final Long id;
+        private final String name;
+        private final String description;
+        private final String slug;
+        private Node parent;
+        private List<Node> children = List.of();
+        private List<Node> path = List.of();
+        private int depth;
+
+        private Node(Category category) {
+            this.id = category.getId();
+            this.name = category.getName();
+            this.description = category.getDescription();
+            this.slug = category.getSlug();
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getSlug() {
+            return slug;
+        }
+
+        /**
+         * @return родительский узел или null для основной категории
+         */
+        public Node getParent() {
+            return parent;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public boolean hasChildren() {
+            return !children.isEmpty();
+        }
+
+        /**
+         * Путь от основной категории до этой (хлебные крошки)
+         * @return узлы, начиная с основной категории и заканчивая этой
+         */
+        public List<Node> getPath() {
+            return path;
+        }
+
+        /**
+         * @return 0 для основной категории, 1 для ее подкатегорий и т.д.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Путь в виде текста, например "Электроника / Телефоны"
+         * @param separator разделитель
+         * @return названия категорий пути через разделитель
+         */
+        public String getPathText(String separator) {
+            StringBuilder text = new StringBuilder();
+            for (Node node : path) {
+                if (text.length() > 0) {
+                    text.append(separator);
+                }
+                text.append(node.name);
+            }
+            return text.toString();
+        }
+
+        /**
+         * Отсоединенная копия категории с цепочкой родителей, для клавиатур и запросов товаров по категории.
+         * Товары и подкатегории у копии не заполнены
+         * @return новая копия
+         */
+        public Category toCategory() {
+            Category category = new Category();
+            category.setId(id);
+            category.setName(name);
+            category.setDescription(description);
+            category.setSlug(slug);
+            if (parent != null) {
+                category.setParent(parent.toCategory());
+            }
+            return category;
+        }
+    }
+}
@@ -30,6 +30,7 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
     private final ProductRepository productRepository;
+    private final ProductService productService;
     private final CartService cartService;
     private final TelegramUserRepository telegramUserRepository;
     private final MessageSender messageSender;
@@ -38,12 +39,14 @@ public class OrderService {
             OrderRepository orderRepository,
             OrderItemRepository orderItemRepository,
             ProductRepository productRepository,
+            ProductService productService,
             CartService cartService,
             TelegramUserRepository telegramUserRepository,
             MessageSender messageSender) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.productRepository = productRepository;
+        this.productService = productService;
         this.cartService = cartService;
         this.telegramUserRepository = telegramUserRepository;
         this.messageSender = messageSender;
@@ -155,8 +158,10 @@ public class OrderService {
                 orderItems.add(orderItem);
                 
                 // Уменьшаем количество товара в наличии
-                product.setStock(product.getStock() - cartItem.getQuantity());
+                Integer previousStock = product.getStock();
+                product.setStock(previousStock - cartItem.getQuantity());
                 productRepository.save(product);
+                productService.stockChanged(product, previousStock);
             }
             
             // Убедимся, что все элементы заказа добавлены в объект заказа
@@ -312,8 +317,10 @@ public class OrderService {
             for (OrderItem item : order.getItems()) {
                 Product product = item.getProduct();
                 if (product != null) {
-                    product.setStock(product.getStock() + item.getQuantity());
+                    Integer previousStock = product.getStock();
+                    product.setStock(previousStock + item.getQuantity());
                     productRepository.save(product);
+                    productService.stockChanged(product, previousStock);
                 }
             }
             
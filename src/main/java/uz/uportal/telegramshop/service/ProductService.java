@@ -6,18 +6,31 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.Product;
 import uz.uportal.telegramshop.repository.ProductRepository;
+import uz.uportal.telegramshop.service.CategoryProductCounters.ProductState;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex;
+import uz.uportal.telegramshop.service.search.ProductTrigramIndex;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Сервис для работы с товарами
+ * Сервис для работы с товарами.
+ * У товаров каждой категории есть версия, которая увеличивается при любом изменении товаров категории;
+ * по ней кэши каталога понимают, что сохраненные страницы устарели.
+ * Изменения, от которых зависит количество товаров в категории, передаются в {@link CategoryProductCounters},
+ * а снимок каждого сохраненного товара — в поисковые индексы {@link ProductSearchIndex}
+ * и {@link ProductTrigramIndex}
  */
 @Service
 public class ProductService {
@@ -26,11 +39,98 @@ public class ProductService {
     
     private final ProductRepository productRepository;
     private final FileStorageService fileStorageService;
+    private final CategoryProductCounters productCounters;
+    private final ProductSearchIndex searchIndex;
+    private final ProductTrigramIndex trigramIndex;
+    private final Map<Long, Long> categoryVersions = new ConcurrentHashMap<>();
     
     @Autowired
-    public ProductService(ProductRepository productRepository, FileStorageService fileStorageService) {
+    public ProductService(ProductRepository productRepository, FileStorageService fileStorageService,
+            CategoryProductCounters productCounters, ProductSearchIndex searchIndex,
+            ProductTrigramIndex trigramIndex) {
         this.productRepository = productRepository;
         this.fileStorageService = fileStorageService;
+        this.productCounters = productCounters;
+        this.searchIndex = searchIndex;
+        this.trigramIndex = trigramIndex;
+    }
+    
+    /**
+     * Версия товаров категории
+     * @param categoryId ID категории
+     * @return версия; меняется при создании, изменении, удалении товара категории и изменении его остатка
+     */
+    public long getCategoryVersion(Long categoryId) {
+        return categoryVersions.getOrDefault(categoryId, 0L);
+    }
+    
+    /**
+     * Отмечает изменение товара, сохраненного в обход сервиса (например, остатка при оформлении заказа).
+     * Внутри транзакции версия категории увеличивается после ее фиксации
+     * @param product измененный товар
+     */
+    public void productChanged(Product product) {
+        if (product != null) {
+            categoryChanged(categoryIdOf(product));
+            indexChanged(product);
+        }
+    }
+    
+    /**
+     * Отмечает изменение остатка товара, сохраненного в обход сервиса (при оформлении и отмене заказа)
+     * @param product товар с новым остатком
+     * @param previousStock остаток до изменения
+     */
+    public void stockChanged(Product product, Integer previousStock) {
+        if (product == null) {
+            return;
+        }
+        ProductState after = ProductState.of(product);
+        ProductState before = new ProductState(after.categoryId(), after.active(),
+                previousStock != null && previousStock > 0);
+        countersChanged(before, after);
+        productChanged(product);
+    }
+    
+    private void categoryChanged(Long categoryId) {
+        if (categoryId == null) {
+            return;
+        }
+        afterCommit(() -> categoryVersions.merge(categoryId, 1L, Long::sum));
+    }
+    
+    private void countersChanged(ProductState before, ProductState after) {
+        afterCommit(() -> productCounters.productChanged(before, after));
+    }
+    
+    private void indexChanged(Product product) {
+        // Снимок берется сразу: сущность может измениться до фиксации транзакции
+        ProductSearchIndex.Entry entry = ProductSearchIndex.Entry.of(product);
+        afterCommit(() -> {
+            searchIndex.productChanged(entry);
+            trigramIndex.productChanged(entry);
+        });
+    }
+    
+    /**
+     * Выполняет действие после фиксации текущей транзакции, а вне транзакции — сразу.
+     * При откате кэши и счетчики не видят несохраненных изменений
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static Long categoryIdOf(Product product) {
+        return product.getCategory() != null ? product.getCategory().getId() : null;
     }
     
     /**
@@ -78,6 +178,16 @@ public class ProductService {
         return productRepository.findByCategoryAndActiveTrue(category, pageable);
     }
     
+    /**
+     * Получить товары по ID категории с пагинацией, без загрузки самой категории
+     * @param categoryId ID категории
+     * @param pageable параметры пагинации
+     * @return страница активных товаров в категории
+     */
+    public Page<Product> getProductsByCategoryId(Long categoryId, Pageable pageable) {
+        return productRepository.findByCategoryIdAndActiveTrue(categoryId, pageable);
+    }
+    
     /**
      * Создать новый товар
      * @param name название товара
@@ -89,7 +199,10 @@ public class ProductService {
      */
     public Product createProduct(String name, String description, BigDecimal price, Integer stock, Category category) {
         Product product = new Product(name, description, price, stock, category);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        countersChanged(null, ProductState.of(saved));
+        productChanged(saved);
+        return saved;
     }
     
     /**
@@ -104,7 +217,10 @@ public class ProductService {
      */
     public Product createProduct(String name, String description, BigDecimal price, String imageUrl, Integer stock, Category category) {
         Product product = new Product(name, description, price, imageUrl, stock, category);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        countersChanged(null, ProductState.of(saved));
+        productChanged(saved);
+        return saved;
     }
     
     /**
@@ -124,13 +240,24 @@ public class ProductService {
         }
         
         Product product = productOpt.get();
+        Long previousCategoryId = categoryIdOf(product);
+        ProductState before = ProductState.of(product);
         product.setName(name);
         product.setDescription(description);
         product.setPrice(price);
         product.setStock(stock);
         product.setCategory(category);
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        countersChanged(before, ProductState.of(saved));
+        // Товар мог перейти в другую категорию: меняются страницы обеих
+        categoryChanged(previousCategoryId);
+        if (!Objects.equals(previousCategoryId, categoryIdOf(saved))) {
+            productChanged(saved);
+        } else {
+            indexChanged(saved);
+        }
+        return saved;
     }
     
     /**
@@ -148,7 +275,9 @@ public class ProductService {
         Product product = productOpt.get();
         product.setImageUrl(imageUrl);
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        productChanged(saved);
+        return saved;
     }
     
     /**
@@ -164,10 +293,13 @@ public class ProductService {
         
         // Получаем продукт
         Product product = productOptional.get();
+        ProductState before = ProductState.of(product);
         
         // Вместо физического удаления, устанавливаем active = false
         product.setActive(false);
         productRepository.save(product);
+        countersChanged(before, ProductState.of(product));
+        productChanged(product);
         
         logger.info("Товар с ID {} помечен как неактивный", id);
         return true;
@@ -215,7 +347,9 @@ public class ProductService {
         product.setImageUrl(imageUrl);
         
         logger.info("Обновлено изображение для продукта с ID {}", productId);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        productChanged(saved);
+        return saved;
     }
     
     /**
@@ -236,7 +370,9 @@ public class ProductService {
         product.setImageUrl(newImageUrl);
         
         logger.info("Обновлено изображение из URL для продукта с ID {}", productId);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        productChanged(saved);
+        return saved;
     }
     
     /**
@@ -255,7 +391,9 @@ public class ProductService {
             logger.info("Удалено изображение для продукта с ID {}", productId);
         }
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        productChanged(saved);
+        return saved;
     }
     
     // Вспомогательные методы
@@ -1,12 +1,18 @@
 package uz.uportal.telegramshop.service;
 
+import java.io.Serializable;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
@@ -15,6 +21,7 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import uz.uportal.telegramshop.service.bot.AbstractTelegramBot;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandlerChain;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
@@ -33,24 +40,33 @@ public class TelegramBotService extends AbstractTelegramBot implements MessageSe
             @Value("${telegram.bot.token}") String botToken,
             @Value("${telegram.bot.username}") String botUsername,
             @Value("${telegram.bot.webhook-path}") String botPath,
+            @Value("${telegram.bot.api-url:https://api.telegram.org/bot}") String apiUrl,
             KeyboardFactory keyboardFactory) {
-        super(botToken, botUsername, botPath);
+        super(botToken, botUsername, botPath, apiUrl);
         this.updateHandlerChain = updateHandlerChain;
         this.keyboardFactory = keyboardFactory;
     }
 
     @Override
     public BotApiMethod<?> onWebhookUpdateReceived(Update update) {
-        logger.info("Received update: {}", update);
-        
+        return handle(UpdateEnvelope.of(update));
+    }
+    
+    /**
+     * Обрабатывает обновление через цепочку обработчиков
+     * @param envelope конверт обновления
+     * @return ответ бота
+     */
+    public BotApiMethod<?> handle(UpdateEnvelope envelope) {
+        // Обновление целиком не логируется: оно записывается в журнал (UpdateJournal) после обработки
         try {
             // Обрабатываем обновление через цепочку обработчиков
-            BotApiMethod<?> response = updateHandlerChain.handle(update);
+            BotApiMethod<?> response = updateHandlerChain.handle(envelope);
             
             // Если ни один обработчик не смог обработать обновление, отправляем сообщение по умолчанию
-            if (response == null && update.hasMessage()) {
+            if (response == null && envelope.hasMessage()) {
                 logger.info("No handler processed the update, sending default message");
-                return defaultResponse(update);
+                return defaultResponse(envelope);
             }
             
             return response;
@@ -60,14 +76,34 @@ public class TelegramBotService extends AbstractTelegramBot implements MessageSe
         }
     }
     
+    /**
+     * Обрабатывает обновление вне HTTP-запроса webhook: ответ, который в синхронном режиме
+     * вернулся бы в теле ответа webhook, отправляется отдельным вызовом Bot API
+     * @param envelope конверт обновления
+     */
+    public void processUpdate(UpdateEnvelope envelope) {
+        BotApiMethod<?> response = handle(envelope);
+        if (response != null) {
+            sendResponse(response);
+        }
+    }
+    
+    /**
+     * Отправляет ответ отдельным вызовом Bot API, ошибки только логируются
+     * @param response метод Bot API
+     */
+    public void sendResponse(BotApiMethod<?> response) {
+        executeWithExceptionHandling(response);
+    }
+    
     /**
      * Создает ответ по умолчанию, если ни один обработчик не смог обработать обновление
-     * @param update обновление от Telegram
+     * @param envelope конверт обновления
      * @return ответ бота
      */
-    private BotApiMethod<?> defaultResponse(Update update) {
-        if (update.hasMessage() && update.getMessage().hasText()) {
-            Long chatId = update.getMessage().getChatId();
+    private BotApiMethod<?> defaultResponse(UpdateEnvelope envelope) {
+        if (envelope.hasMessage() && envelope.getText() != null) {
+            Long chatId = envelope.getChatId();
             
             // Отправляем сообщение о том, что команда не распознана
             return createTextMessage(chatId, "Извините, я не понимаю эту команду. Используйте меню для навигации.");
@@ -119,6 +155,22 @@ public class TelegramBotService extends AbstractTelegramBot implements MessageSe
         }
     }
     
+    /**
+     * Отправляет альбом
+     * @param sendMediaGroup объект альбома
+     * @return отправленные сообщения альбома
+     * @throws TelegramApiException если произошла ошибка при отправке
+     */
+    @Override
+    public List<Message> executeMediaGroup(SendMediaGroup sendMediaGroup) throws TelegramApiException {
+        try {
+            return execute(sendMediaGroup);
+        } catch (TelegramApiException e) {
+            logger.error("Ошибка при отправке альбома: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
     /**
      * Отправляет сообщение с обновлением текста
      * @param editMessageText объект сообщения с обновлением текста
@@ -135,6 +187,38 @@ public class TelegramBotService extends AbstractTelegramBot implements MessageSe
         }
     }
     
+    /**
+     * Редактирует подпись сообщения с фото
+     * @param editMessageCaption объект с новой подписью и клавиатурой
+     * @return измененное сообщение или true
+     * @throws TelegramApiException если произошла ошибка при отправке
+     */
+    @Override
+    public Serializable executeEditMessageCaption(EditMessageCaption editMessageCaption) throws TelegramApiException {
+        try {
+            return execute(editMessageCaption);
+        } catch (TelegramApiException e) {
+            logger.error("Ошибка при редактировании подписи: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
+    /**
+     * Заменяет фото в сообщении
+     * @param editMessageMedia объект с новым фото, подписью и клавиатурой
+     * @return измененное сообщение или true
+     * @throws TelegramApiException если произошла ошибка при отправке
+     */
+    @Override
+    public Serializable executeEditMessageMedia(EditMessageMedia editMessageMedia) throws TelegramApiException {
+        try {
+            return execute(editMessageMedia);
+        } catch (TelegramApiException e) {
+            logger.error("Ошибка при замене фото в сообщении: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
     /**
      * Удаляет сообщение
      * 
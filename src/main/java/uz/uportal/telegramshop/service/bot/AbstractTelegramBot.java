@@ -2,6 +2,7 @@ package uz.uportal.telegramshop.service.bot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramWebhookBot;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
@@ -23,6 +24,21 @@ public abstract class AbstractTelegramBot extends TelegramWebhookBot {
         this.botPath = botPath;
     }
     
+    /**
+     * @param apiUrl базовый адрес Bot API (например, локальный сервер Bot API или заглушка для нагрузочных тестов)
+     */
+    public AbstractTelegramBot(String botToken, String botUsername, String botPath, String apiUrl) {
+        super(botOptions(apiUrl), botToken);
+        this.botUsername = botUsername;
+        this.botPath = botPath;
+    }
+    
+    private static DefaultBotOptions botOptions(String apiUrl) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl(apiUrl);
+        return options;
+    }
+    
     @Override
     public String getBotUsername() {
         return botUsername;
@@ -0,0 +1,160 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+
+import uz.uportal.telegramshop.model.Product;
+
+/**
+ * Страница товаров категории, готовая к отправке: карточки уже отрисованы.
+ * Не ссылается на сущности, поэтому ее можно хранить в {@link ProductPageCache} и отдавать нескольким потокам
+ * @param cards карточки товаров страницы
+ * @param page номер страницы, с 1
+ * @param totalPages количество страниц
+ * @param totalElements количество товаров в категории
+ */
+public record CatalogPage(List<Card> cards, int page, int totalPages, long totalElements) {
+
+    /**
+     * Накладные расходы на объект страницы и на каждую карточку при оценке занимаемой памяти, байт
+     */
+    private static final int PAGE_OVERHEAD = 64;
+    private static final int CARD_OVERHEAD = 96;
+    /**
+     * Ограничение Bot API на длину подписи к фото
+     */
+    private static final int MAX_CAPTION_LENGTH = 1024;
+
+    public CatalogPage {
+        cards = List.copyOf(cards);
+    }
+
+    /**
+     * Отрисовывает страницу, полученную из базы
+     * @param products страница товаров
+     * @return страница с карточками
+     */
+    public static CatalogPage of(Page<Product> products) {
+        List<Card> cards = new ArrayList<>(products.getNumberOfElements());
+        for (Product product : products.getContent()) {
+            cards.add(new Card(product.getId(), product.getName(), cardText(product), product.getImageUrl()));
+        }
+        return new CatalogPage(cards, products.getNumber() + 1, products.getTotalPages(), products.getTotalElements());
+    }
+
+    public boolean isEmpty() {
+        return cards.isEmpty();
+    }
+
+    /**
+     * Приблизительный объем памяти страницы: строки в UTF-16 и накладные расходы на объекты
+     * @return байт
+     */
+    public long estimatedBytes() {
+        long bytes = PAGE_OVERHEAD;
+        for (Card card : cards) {
+            bytes += CARD_OVERHEAD + 2L * card.name().length() + 2L * card.text().length()
+                    + (card.imageUrl() != null ? 2L * card.imageUrl().length() : 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Формирует текст карточки товара в каталоге (Markdown)
+     * @param product товар
+     * @return текст карточки
+     */
+    public static String cardText(Product product) {
+        return cardText(product.getName(), product.getPrice(), product.getStock(), product.getDescription());
+    }
+
+    /**
+     * Формирует текст карточки товара по отдельным полям (Markdown)
+     * @param name название
+     * @param price цена
+     * @param stock остаток
+     * @param description описание или null
+     * @return текст карточки
+     */
+    public static String cardText(String name, BigDecimal price, Integer stock, String description) {
+        StringBuilder productText = new StringBuilder();
+        productText.append("*").append(name).append("*\n");
+        productText.append("💰 Цена: ").append(price).append(" руб.\n");
+        productText.append("📦 В наличии: ").append(stock).append(" шт.\n");
+        if (description != null && !description.isEmpty()) {
+            productText.append("📝 Описание: ").append(description).append("\n");
+        }
+        return productText.toString();
+    }
+
+    /**
+     * Обрезает текст до длины, допустимой для подписи к фото. Разметка Markdown не разрезается:
+     * текст обрезается перед сущностью (*, _, `, ```, [..](..)), которая не помещается целиком,
+     * иначе Telegram отклонит подпись
+     * @param text текст подписи
+     * @return текст не длиннее 1024 символов
+     */
+    static String caption(String text) {
+        if (text.length() <= MAX_CAPTION_LENGTH) {
+            return text;
+        }
+        int limit = MAX_CAPTION_LENGTH - 1;
+        int safe = 0;
+        // Закрывающий маркер открытой сущности или null, если сущность не открыта
+        String closing = null;
+        int i = 0;
+        while (i <= limit) {
+            if (closing == null) {
+                safe = i;
+            }
+            if (i == limit) {
+                break;
+            }
+            char c = text.charAt(i);
+            int step = Character.isHighSurrogate(c) ? 2 : 1;
+            if (closing == null) {
+                if (c == '\\' && "*_`[".indexOf(charAt(text, i + 1)) >= 0) {
+                    step = 2;
+                } else if (text.startsWith("```", i)) {
+                    closing = "```";
+                    step = 3;
+                } else if (c == '*' || c == '_' || c == '`') {
+                    closing = String.valueOf(c);
+                } else if (c == '[') {
+                    closing = "]";
+                }
+            } else if (text.startsWith(closing, i)) {
+                step = closing.length();
+                closing = null;
+                // За текстом ссылки следует адрес в скобках
+                if (c == ']' && charAt(text, i + 1) == '(') {
+                    closing = ")";
+                    step = 2;
+                }
+            }
+            i += step;
+        }
+        return text.substring(0, safe) + "…";
+    }
+
+    private static char charAt(String text, int index) {
+        return index < text.length() ? text.charAt(index) : 0;
+    }
+
+    /**
+     * Карточка товара
+     * @param productId ID товара
+     * @param name название товара, для кнопок
+     * @param text текст карточки (Markdown)
+     * @param imageUrl изображение товара или null
+     */
+    public record Card(Long productId, String name, String text, String imageUrl) {
+
+        public boolean hasImage() {
+            return imageUrl != null && !imageUrl.isEmpty();
+        }
+    }
+}
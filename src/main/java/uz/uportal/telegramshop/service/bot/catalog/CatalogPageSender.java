@@ -0,0 +1,241 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.MessageSender;
+
+/**
+ * Отправка страницы товаров каталога в режиме альбома и учет стоимости отправки страницы.
+ * <p>
+ * Режим задается {@code telegram.bot.catalog.render-mode}: {@code messages} (по умолчанию) — заголовок,
+ * по сообщению на каждый товар и сообщение с пагинацией; {@code album} — фотографии страницы одним
+ * {@code sendMediaGroup} и одно сообщение с заголовком, кнопками "в корзину" и пагинацией.
+ * Товары без изображения в альбом не попадают, их карточки выводятся текстом в сообщении с кнопками;
+ * если альбом отправить не удалось, туда же попадают и карточки его фотографий.
+ * <p>
+ * Режим {@code carousel} отправляет {@link ProductCarousel}.
+ * <p>
+ * Для режимов messages и album пишутся количество вызовов Bot API на страницу ({@code telegram.catalog.page.calls})
+ * и время от запроса страницы до отправки последнего сообщения ({@code telegram.catalog.page.latency}).
+ */
+@Component
+public class CatalogPageSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogPageSender.class);
+
+    public static final String MODE_MESSAGES = "messages";
+    public static final String MODE_ALBUM = "album";
+
+    /**
+     * Ограничение Bot API на количество фотографий в альбоме
+     */
+    private static final int MAX_ALBUM_SIZE = 10;
+    private static final int MAX_BUTTON_NAME_LENGTH = 40;
+
+    private final MessageSender messageSender;
+    private final boolean albumMode;
+    private final DistributionSummary messagesCalls;
+    private final DistributionSummary albumCalls;
+    private final Timer messagesLatency;
+    private final Timer albumLatency;
+    private final Counter albumFallbacks;
+
+    public CatalogPageSender(
+            MessageSender messageSender,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.catalog.render-mode:messages}") String renderMode) {
+        this.messageSender = messageSender;
+        this.albumMode = MODE_ALBUM.equalsIgnoreCase(renderMode.trim());
+        this.messagesCalls = callsSummary(meterRegistry, MODE_MESSAGES);
+        this.albumCalls = callsSummary(meterRegistry, MODE_ALBUM);
+        this.messagesLatency = latencyTimer(meterRegistry, MODE_MESSAGES);
+        this.albumLatency = latencyTimer(meterRegistry, MODE_ALBUM);
+        this.albumFallbacks = Counter.builder("telegram.catalog.page.album.fallbacks")
+                .description("Страницы, альбом которых не удалось отправить и карточки ушли текстом")
+                .register(meterRegistry);
+    }
+
+    public boolean isAlbumMode() {
+        return albumMode;
+    }
+
+    /**
+     * Отправляет непустую страницу товаров альбомом и сообщением с кнопками
+     * @param chatId ID чата
+     * @param categoryId ID категории
+     * @param categoryName название категории для заголовка
+     * @param page страница товаров
+     * @param startedAt момент начала обработки страницы, {@link System#nanoTime()}
+     */
+    public void sendAlbum(Long chatId, Long categoryId, String categoryName, CatalogPage page, long startedAt) {
+        List<CatalogPage.Card> photos = new ArrayList<>();
+        List<CatalogPage.Card> texts = new ArrayList<>();
+        for (CatalogPage.Card card : page.cards()) {
+            if (card.hasImage()) {
+                photos.add(card);
+            } else {
+                texts.add(card);
+            }
+        }
+
+        int calls = 0;
+        for (int from = 0; from < photos.size(); from += MAX_ALBUM_SIZE) {
+            List<CatalogPage.Card> chunk = photos.subList(from, Math.min(from + MAX_ALBUM_SIZE, photos.size()));
+            calls++;
+            try {
+                sendPhotos(chatId, chunk);
+            } catch (Exception e) {
+                logger.error("Ошибка при отправке альбома товаров категории {}: {}", categoryId, e.getMessage());
+                albumFallbacks.increment();
+                texts.addAll(chunk);
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append("🛍 *Товары в категории \"").append(categoryName).append("\"*\n\n");
+        text.append("Страница ").append(page.page()).append(" из ").append(page.totalPages()).append("\n\n");
+        for (CatalogPage.Card card : texts) {
+            text.append(card.text()).append("\n");
+        }
+
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(chatId);
+        sendMessage.setText(text.toString());
+        sendMessage.setParseMode("Markdown");
+        sendMessage.setReplyMarkup(pageKeyboard(categoryId, page));
+        calls++;
+        try {
+            messageSender.executeMessage(sendMessage);
+        } catch (Exception e) {
+            logger.error("Ошибка при отправке кнопок страницы каталога: {}", e.getMessage());
+        }
+
+        record(albumCalls, albumLatency, calls, startedAt);
+    }
+
+    /**
+     * Учитывает страницу, отправленную по сообщению на товар
+     * @param page отправленная страница
+     * @param startedAt момент начала обработки страницы, {@link System#nanoTime()}
+     */
+    public void recordMessages(CatalogPage page, long startedAt) {
+        // Заголовок, по сообщению на товар и сообщение с пагинацией, если страниц больше одной
+        int calls = 1 + page.cards().size() + (page.totalPages() > 1 ? 1 : 0);
+        record(messagesCalls, messagesLatency, calls, startedAt);
+    }
+
+    private void sendPhotos(Long chatId, List<CatalogPage.Card> cards) throws Exception {
+        // Альбом из одной фотографии Bot API не принимает
+        if (cards.size() == 1) {
+            CatalogPage.Card card = cards.get(0);
+            SendPhoto sendPhoto = new SendPhoto();
+            sendPhoto.setChatId(chatId);
+            sendPhoto.setPhoto(new InputFile(card.imageUrl()));
+            sendPhoto.setCaption(CatalogPage.caption(card.text()));
+            sendPhoto.setParseMode("Markdown");
+            messageSender.executePhoto(sendPhoto);
+            return;
+        }
+
+        List<InputMedia> medias = new ArrayList<>(cards.size());
+        for (CatalogPage.Card card : cards) {
+            InputMediaPhoto photo = new InputMediaPhoto();
+            photo.setMedia(card.imageUrl());
+            photo.setCaption(CatalogPage.caption(card.text()));
+            photo.setParseMode("Markdown");
+            medias.add(photo);
+        }
+        SendMediaGroup sendMediaGroup = new SendMediaGroup();
+        sendMediaGroup.setChatId(chatId.toString());
+        sendMediaGroup.setMedias(medias);
+        messageSender.executeMediaGroup(sendMediaGroup);
+    }
+
+    /**
+     * Клавиатура страницы: кнопка "в корзину" на каждый товар, пагинация и возврат к категориям
+     */
+    private static InlineKeyboardMarkup pageKeyboard(Long categoryId, CatalogPage page) {
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        for (CatalogPage.Card card : page.cards()) {
+            InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
+            addToCartButton.setText("🛒 " + buttonName(card.name()));
+            addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, card.productId()));
+            keyboard.add(List.of(addToCartButton));
+        }
+
+        List<InlineKeyboardButton> paginationRow = new ArrayList<>();
+        if (page.page() > 1) {
+            InlineKeyboardButton prevButton = new InlineKeyboardButton();
+            prevButton.setText("⬅️ Предыдущая");
+            prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page.page() - 1));
+            paginationRow.add(prevButton);
+        }
+        if (page.page() < page.totalPages()) {
+            InlineKeyboardButton nextButton = new InlineKeyboardButton();
+            nextButton.setText("Следующая ➡️");
+            nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page.page() + 1));
+            paginationRow.add(nextButton);
+        }
+        if (!paginationRow.isEmpty()) {
+            keyboard.add(paginationRow);
+        }
+
+        InlineKeyboardButton backButton = new InlineKeyboardButton();
+        backButton.setText("⬅️ Назад к категориям");
+        backButton.setCallbackData("catalog_categories");
+        keyboard.add(List.of(backButton));
+
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(keyboard);
+        return keyboardMarkup;
+    }
+
+    /**
+     * Название товара для кнопки, укороченное до {@value #MAX_BUTTON_NAME_LENGTH} символов
+     * @param name название товара
+     * @return текст для кнопки
+     */
+    public static String buttonName(String name) {
+        return name.length() <= MAX_BUTTON_NAME_LENGTH ? name : name.substring(0, MAX_BUTTON_NAME_LENGTH - 1) + "…";
+    }
+
+    private static void record(DistributionSummary calls, Timer latency, int count, long startedAt) {
+        calls.record(count);
+        latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private static DistributionSummary callsSummary(MeterRegistry meterRegistry, String mode) {
+        return DistributionSummary.builder("telegram.catalog.page.calls")
+                .description("Вызовы Bot API на одну страницу каталога")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    private static Timer latencyTimer(MeterRegistry meterRegistry, String mode) {
+        return Timer.builder("telegram.catalog.page.latency")
+                .description("Время от запроса страницы каталога до отправки последнего сообщения")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+}
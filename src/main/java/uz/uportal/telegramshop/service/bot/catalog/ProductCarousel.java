@@ -0,0 +1,368 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.service.CategoryService;
+import uz.uportal.telegramshop.service.CategoryTree;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.MessageSender;
+
+/**
+ * Карусель товаров категории ({@code telegram.bot.catalog.render-mode=carousel}): одно сообщение
+ * показывает один товар с кнопками "назад/вперед", "в корзину" и возврата к категориям,
+ * а переход к соседнему товару редактирует это сообщение на месте — один вызов Bot API на нажатие.
+ * <p>
+ * Сообщение с фото можно отредактировать только в сообщение с фото, а текстовое — только в текстовое,
+ * поэтому в кнопки записывается вид сообщения, на котором они находятся:
+ * <ul>
+ * <li>фото → фото: {@code editMessageMedia} (фото, подпись и клавиатура одним вызовом);</li>
+ * <li>заглушка → заглушка (оба товара без фото): {@code editMessageCaption}, фото не перезагружается;</li>
+ * <li>текст → текст: {@code editMessageText};</li>
+ * <li>фото ↔ текст: сообщение удаляется и отправляется заново (два вызова).</li>
+ * </ul>
+ * Если задано изображение-заглушка {@code telegram.bot.catalog.carousel.placeholder-image}, товары без фото
+ * показываются с ним, и последний случай не возникает.
+ * <p>
+ * Товары берутся из {@link ProductPageCache} страницами по {@code telegram.bot.catalog.carousel.page-size};
+ * если соседний товар лежит на другой странице, она загружается в кэш заранее в отдельном потоке.
+ */
+@Component
+public class ProductCarousel {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCarousel.class);
+
+    public static final String MODE_CAROUSEL = "carousel";
+
+    /**
+     * Вид сообщения карусели, записывается в младшие два бита второго параметра кнопки
+     */
+    private static final int VIEW_TEXT = 0;
+    private static final int VIEW_PHOTO = 1;
+    private static final int VIEW_PLACEHOLDER = 2;
+
+    private static final Sort SORT = Sort.by("id");
+    private static final int PREFETCH_QUEUE_SIZE = 64;
+
+    private final ProductPageCache productPageCache;
+    private final CategoryService categoryService;
+    private final MessageSender messageSender;
+    private final boolean enabled;
+    private final int pageSize;
+    private final String placeholderImage;
+    private final ThreadPoolExecutor prefetcher;
+    private final DistributionSummary callsSummary;
+    private final Timer latencyTimer;
+    private final Counter prefetchScheduled;
+    private final Counter prefetchDropped;
+
+    public ProductCarousel(
+            ProductPageCache productPageCache,
+            CategoryService categoryService,
+            MessageSender messageSender,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.catalog.render-mode:messages}") String renderMode,
+            @Value("${telegram.bot.catalog.carousel.page-size:10}") int pageSize,
+            @Value("${telegram.bot.catalog.carousel.placeholder-image:}") String placeholderImage) {
+        this.productPageCache = productPageCache;
+        this.categoryService = categoryService;
+        this.messageSender = messageSender;
+        this.enabled = MODE_CAROUSEL.equalsIgnoreCase(renderMode.trim());
+        this.pageSize = Math.max(1, pageSize);
+        this.placeholderImage = placeholderImage.isBlank() ? null : placeholderImage.trim();
+        this.prefetcher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE),
+                Thread.ofPlatform().name("catalog-prefetch").daemon().factory());
+
+        this.callsSummary = DistributionSummary.builder("telegram.catalog.page.calls")
+                .description("Вызовы Bot API на одну страницу каталога")
+                .tag("mode", MODE_CAROUSEL)
+                .register(meterRegistry);
+        this.latencyTimer = Timer.builder("telegram.catalog.page.latency")
+                .description("Время от запроса страницы каталога до отправки последнего сообщения")
+                .tag("mode", MODE_CAROUSEL)
+                .register(meterRegistry);
+        this.prefetchScheduled = prefetchCounter(meterRegistry, "scheduled");
+        this.prefetchDropped = prefetchCounter(meterRegistry, "dropped");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Открывает карусель из списка категорий или со страницы товаров
+     * @param chatId ID чата
+     * @param messageId текстовое сообщение с нажатой кнопкой или null
+     * @param categoryId ID категории
+     * @param position позиция товара в категории, с 0
+     */
+    public void open(Long chatId, Integer messageId, Long categoryId, int position) {
+        show(chatId, messageId, VIEW_TEXT, categoryId, position, true);
+    }
+
+    /**
+     * Переходит к другому товару по кнопке карусели
+     * @param chatId ID чата
+     * @param messageId сообщение карусели
+     * @param categoryId ID категории
+     * @param packed второй параметр кнопки: позиция и вид сообщения
+     */
+    public void navigate(Long chatId, Integer messageId, Long categoryId, long packed) {
+        show(chatId, messageId, (int) (packed & 3), categoryId, (int) (packed >>> 2), false);
+    }
+
+    private void show(Long chatId, Integer messageId, int currentView, Long categoryId, int position, boolean opening) {
+        long startedAt = System.nanoTime();
+        int calls = 1;
+        try {
+            CategoryTree.Node category = categoryService.getCategoryTree().get(categoryId);
+            Slide slide = category != null ? slide(categoryId, Math.max(0, position)) : null;
+            if (slide == null) {
+                SendMessage sendMessage = new SendMessage();
+                sendMessage.setChatId(chatId);
+                sendMessage.setText(category == null ? "Категория не найдена." : "В данной категории пока нет товаров.");
+                sendMessage.setReplyMarkup(backKeyboard());
+                messageSender.executeMessage(sendMessage);
+                return;
+            }
+            prefetchNeighbours(categoryId, slide);
+
+            int view = slide.card().hasImage() ? VIEW_PHOTO : placeholderImage != null ? VIEW_PLACEHOLDER : VIEW_TEXT;
+            String text = slideText(category, slide);
+            InlineKeyboardMarkup keyboard = slideKeyboard(categoryId, slide, view);
+
+            boolean inPlace = messageId != null && (currentView == VIEW_TEXT ? view == VIEW_TEXT : view != VIEW_TEXT);
+            if (inPlace) {
+                edit(chatId, messageId, currentView, view, slide, text, keyboard);
+                return;
+            }
+            // Меняется вид сообщения: прежнее сообщение карусели удаляется, список категорий остается
+            if (messageId != null && !opening) {
+                DeleteMessage deleteMessage = new DeleteMessage();
+                deleteMessage.setChatId(chatId);
+                deleteMessage.setMessageId(messageId);
+                messageSender.executeDeleteMessage(deleteMessage);
+                calls++;
+            }
+            send(chatId, view, slide, text, keyboard);
+        } catch (Exception e) {
+            logger.error("Ошибка при показе карусели товаров категории {}: {}", categoryId, e.getMessage());
+        } finally {
+            callsSummary.record(calls);
+            latencyTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void edit(Long chatId, Integer messageId, int currentView, int view, Slide slide, String text,
+            InlineKeyboardMarkup keyboard) throws Exception {
+        if (view == VIEW_TEXT) {
+            EditMessageText editMessageText = new EditMessageText();
+            editMessageText.setChatId(chatId);
+            editMessageText.setMessageId(messageId);
+            editMessageText.setText(text);
+            editMessageText.setParseMode("Markdown");
+            editMessageText.setReplyMarkup(keyboard);
+            messageSender.executeEditMessage(editMessageText);
+        } else if (currentView == VIEW_PLACEHOLDER && view == VIEW_PLACEHOLDER) {
+            EditMessageCaption editMessageCaption = new EditMessageCaption();
+            editMessageCaption.setChatId(chatId.toString());
+            editMessageCaption.setMessageId(messageId);
+            editMessageCaption.setCaption(CatalogPage.caption(text));
+            editMessageCaption.setParseMode("Markdown");
+            editMessageCaption.setReplyMarkup(keyboard);
+            messageSender.executeEditMessageCaption(editMessageCaption);
+        } else {
+            InputMediaPhoto photo = new InputMediaPhoto();
+            photo.setMedia(imageOf(slide, view));
+            photo.setCaption(CatalogPage.caption(text));
+            photo.setParseMode("Markdown");
+            EditMessageMedia editMessageMedia = new EditMessageMedia();
+            editMessageMedia.setChatId(chatId.toString());
+            editMessageMedia.setMessageId(messageId);
+            editMessageMedia.setMedia(photo);
+            editMessageMedia.setReplyMarkup(keyboard);
+            messageSender.executeEditMessageMedia(editMessageMedia);
+        }
+    }
+
+    private void send(Long chatId, int view, Slide slide, String text, InlineKeyboardMarkup keyboard) throws Exception {
+        if (view == VIEW_TEXT) {
+            SendMessage sendMessage = new SendMessage();
+            sendMessage.setChatId(chatId);
+            sendMessage.setText(text);
+            sendMessage.setParseMode("Markdown");
+            sendMessage.setReplyMarkup(keyboard);
+            messageSender.executeMessage(sendMessage);
+        } else {
+            SendPhoto sendPhoto = new SendPhoto();
+            sendPhoto.setChatId(chatId);
+            sendPhoto.setPhoto(new InputFile(imageOf(slide, view)));
+            sendPhoto.setCaption(CatalogPage.caption(text));
+            sendPhoto.setParseMode("Markdown");
+            sendPhoto.setReplyMarkup(keyboard);
+            messageSender.executePhoto(sendPhoto);
+        }
+    }
+
+    /**
+     * Товар на позиции; позиция за концом категории (товары удалили) сдвигается на последний товар
+     * @return товар с позицией или null, если в категории нет товаров
+     */
+    private Slide slide(Long categoryId, int position) {
+        CatalogPage page = productPageCache.get(categoryId, position / pageSize + 1, pageSize, SORT);
+        if (page.totalElements() == 0) {
+            return null;
+        }
+        if (position >= page.totalElements()) {
+            position = (int) page.totalElements() - 1;
+            page = productPageCache.get(categoryId, position / pageSize + 1, pageSize, SORT);
+        }
+        int index = position % pageSize;
+        if (index >= page.cards().size()) {
+            if (page.isEmpty()) {
+                return null;
+            }
+            index = page.cards().size() - 1;
+            position = (page.page() - 1) * pageSize + index;
+        }
+        return new Slide(page.cards().get(index), position, page.totalElements());
+    }
+
+    private void prefetchNeighbours(Long categoryId, Slide slide) {
+        if (!productPageCache.isEnabled()) {
+            return;
+        }
+        int page = slide.position() / pageSize + 1;
+        if (slide.position() > 0) {
+            prefetch(categoryId, (slide.position() - 1) / pageSize + 1, page);
+        }
+        if (slide.position() + 1 < slide.total()) {
+            prefetch(categoryId, (slide.position() + 1) / pageSize + 1, page);
+        }
+    }
+
+    private void prefetch(Long categoryId, int neighbourPage, int currentPage) {
+        if (neighbourPage == currentPage || productPageCache.contains(categoryId, neighbourPage, pageSize, SORT)) {
+            return;
+        }
+        try {
+            prefetcher.execute(() -> {
+                try {
+                    productPageCache.get(categoryId, neighbourPage, pageSize, SORT);
+                } catch (Exception e) {
+                    logger.warn("Не удалось заранее загрузить страницу {} категории {}: {}",
+                            neighbourPage, categoryId, e.getMessage());
+                }
+            });
+            prefetchScheduled.increment();
+        } catch (RejectedExecutionException e) {
+            prefetchDropped.increment();
+        }
+    }
+
+    private String imageOf(Slide slide, int view) {
+        return view == VIEW_PHOTO ? slide.card().imageUrl() : placeholderImage;
+    }
+
+    private static String slideText(CategoryTree.Node category, Slide slide) {
+        return "🛍 *" + category.getName() + "* · " + (slide.position() + 1) + " из " + slide.total() + "\n\n"
+                + slide.card().text();
+    }
+
+    private static InlineKeyboardMarkup slideKeyboard(Long categoryId, Slide slide, int view) {
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+
+        List<InlineKeyboardButton> navigationRow = new ArrayList<>();
+        if (slide.position() > 0) {
+            InlineKeyboardButton prevButton = new InlineKeyboardButton();
+            prevButton.setText("⬅️ Предыдущий");
+            prevButton.setCallbackData(callbackData(categoryId, slide.position() - 1, view));
+            navigationRow.add(prevButton);
+        }
+        if (slide.position() + 1 < slide.total()) {
+            InlineKeyboardButton nextButton = new InlineKeyboardButton();
+            nextButton.setText("Следующий ➡️");
+            nextButton.setCallbackData(callbackData(categoryId, slide.position() + 1, view));
+            navigationRow.add(nextButton);
+        }
+        if (!navigationRow.isEmpty()) {
+            keyboard.add(navigationRow);
+        }
+
+        InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
+        addToCartButton.setText("🛒 Добавить в корзину");
+        addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, slide.card().productId()));
+        keyboard.add(List.of(addToCartButton));
+
+        // Список категорий — текстовое сообщение, в него можно превратить только текстовую карусель
+        InlineKeyboardButton backButton = new InlineKeyboardButton();
+        backButton.setText("⬅️ Назад к категориям");
+        backButton.setCallbackData(view == VIEW_TEXT ? "catalog_categories" : "catalog_carousel_back");
+        keyboard.add(List.of(backButton));
+
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(keyboard);
+        return keyboardMarkup;
+    }
+
+    private static InlineKeyboardMarkup backKeyboard() {
+        InlineKeyboardButton backButton = new InlineKeyboardButton();
+        backButton.setText("⬅️ Назад к категориям");
+        backButton.setCallbackData("catalog_categories");
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(List.of(List.of(backButton)));
+        return keyboardMarkup;
+    }
+
+    private static String callbackData(Long categoryId, int position, int view) {
+        return CallbackCodec.encode(CallbackAction.CATALOG_CAROUSEL, categoryId, ((long) position << 2) | view);
+    }
+
+    private static Counter prefetchCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("telegram.catalog.carousel.prefetch")
+                .description("Заблаговременная загрузка соседних страниц карусели")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetcher.shutdownNow();
+    }
+
+    /**
+     * Товар карусели
+     * @param card карточка товара
+     * @param position позиция в категории, с 0
+     * @param total количество товаров в категории
+     */
+    private record Slide(CatalogPage.Card card, int position, long total) {
+    }
+}
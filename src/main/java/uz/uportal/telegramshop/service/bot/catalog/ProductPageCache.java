@@ -0,0 +1,181 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import uz.uportal.telegramshop.service.ProductService;
+
+/**
+ * Кэш отрисованных страниц товаров каталога по (категория, страница, размер страницы, сортировка).
+ * Большинство пользователей листают первые страницы нескольких популярных категорий, поэтому
+ * страница обычно отдается без запроса товаров и запроса их количества.
+ * <p>
+ * Страница запоминается вместе с версией товаров категории ({@link ProductService#getCategoryVersion(Long)});
+ * любое изменение товаров категории увеличивает версию, и страницы со старой версией больше не отдаются.
+ * Количество страниц ограничено {@code telegram.bot.catalog.page-cache.max-size}, при переполнении
+ * вытесняются давно не запрошенные.
+ */
+@Component
+public class ProductPageCache {
+
+    private final ProductService productService;
+    private final boolean enabled;
+    private final int maxSize;
+    /**
+     * Страницы в порядке последнего обращения, для вытеснения самых старых
+     */
+    private final LinkedHashMap<Key, Entry> pages = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public ProductPageCache(
+            ProductService productService,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.catalog.page-cache.enabled:true}") boolean enabled,
+            @Value("${telegram.bot.catalog.page-cache.max-size:1000}") int maxSize) {
+        this.productService = productService;
+        this.enabled = enabled;
+        this.maxSize = Math.max(1, maxSize);
+
+        this.hitCounter = Counter.builder("telegram.catalog.pages.lookups")
+                .description("Обращения к кэшу страниц каталога")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("telegram.catalog.pages.lookups")
+                .description("Обращения к кэшу страниц каталога")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("telegram.catalog.pages.evictions")
+                .description("Страницы, вытесненные из кэша")
+                .register(meterRegistry);
+        Gauge.builder("telegram.catalog.pages.size", this, ProductPageCache::size)
+                .description("Количество страниц в кэше")
+                .register(meterRegistry);
+        Gauge.builder("telegram.catalog.pages.memory", this, ProductPageCache::estimatedBytes)
+                .description("Приблизительный объем памяти страниц в кэше")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("telegram.catalog.pages.hit.ratio", this, ProductPageCache::hitRatio)
+                .description("Доля обращений к кэшу страниц каталога, обслуженных без базы")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Страница товаров категории, из кэша или из базы
+     * @param categoryId ID категории
+     * @param page номер страницы, с 1
+     * @param pageSize количество товаров на странице
+     * @param sort сортировка товаров
+     * @return страница с отрисованными карточками
+     */
+    public CatalogPage get(Long categoryId, int page, int pageSize, Sort sort) {
+        Key key = new Key(categoryId, page, pageSize, sort.toString());
+        // Версия читается до запроса: если товары изменятся во время запроса, страница сразу окажется устаревшей
+        long version = productService.getCategoryVersion(categoryId);
+        if (enabled) {
+            synchronized (this) {
+                Entry entry = pages.get(key);
+                if (entry != null) {
+                    if (entry.version() == version) {
+                        hitCounter.increment();
+                        return entry.page();
+                    }
+                    remove(key);
+                }
+            }
+        }
+        missCounter.increment();
+
+        CatalogPage loaded = CatalogPage.of(
+                productService.getProductsByCategoryId(categoryId, PageRequest.of(page - 1, pageSize, sort)));
+        if (enabled) {
+            synchronized (this) {
+                remove(key);
+                Entry entry = new Entry(loaded, version, loaded.estimatedBytes());
+                pages.put(key, entry);
+                bytes += entry.bytes();
+                evictOverflow();
+            }
+        }
+        return loaded;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Проверяет, есть ли в кэше актуальная страница, не считая обращение попаданием или промахом
+     * @param categoryId ID категории
+     * @param page номер страницы, с 1
+     * @param pageSize количество товаров на странице
+     * @param sort сортировка товаров
+     * @return true, если страница будет отдана без запроса к базе
+     */
+    public boolean contains(Long categoryId, int page, int pageSize, Sort sort) {
+        if (!enabled) {
+            return false;
+        }
+        long version = productService.getCategoryVersion(categoryId);
+        synchronized (this) {
+            Entry entry = pages.get(new Key(categoryId, page, pageSize, sort.toString()));
+            return entry != null && entry.version() == version;
+        }
+    }
+
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Доля попаданий с момента запуска
+     * @return от 0 до 1
+     */
+    public double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total > 0 ? hits / total : 0;
+    }
+
+    public synchronized void clear() {
+        pages.clear();
+        bytes = 0;
+    }
+
+    private void remove(Key key) {
+        Entry removed = pages.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes();
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, Entry>> eldest = pages.entrySet().iterator();
+        while (pages.size() > maxSize && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    private record Key(Long categoryId, int page, int pageSize, String sort) {
+    }
+
+    private record Entry(CatalogPage page, long version, long bytes) {
+    }
+}
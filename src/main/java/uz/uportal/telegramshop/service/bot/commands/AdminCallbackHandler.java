@@ -11,11 +11,7 @@ import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
-import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.MaybeInaccessibleMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -27,8 +23,12 @@ import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CategoryService;
 import uz.uportal.telegramshop.service.ProductService;
 import uz.uportal.telegramshop.service.ShopSettingsService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
@@ -43,6 +43,7 @@ public class AdminCallbackHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(AdminCallbackHandler.class);
     private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final KeyboardFactory keyboardFactory;
     private final ProductService productService;
     private final CategoryService categoryService;
@@ -56,12 +57,14 @@ public class AdminCallbackHandler implements UpdateHandler {
     
     public AdminCallbackHandler(
             TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             KeyboardFactory keyboardFactory,
             ProductService productService,
             CategoryService categoryService,
             MessageSender messageSender,
             ShopSettingsService shopSettingsService) {
         this.telegramUserRepository = telegramUserRepository;
+        this.userUnitOfWork = userUnitOfWork;
         this.keyboardFactory = keyboardFactory;
         this.productService = productService;
         this.categoryService = categoryService;
@@ -70,52 +73,23 @@ public class AdminCallbackHandler implements UpdateHandler {
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasCallbackQuery()) {
-            return false;
-        }
-        
-        String callbackData = update.getCallbackQuery().getData();
-        
-        return callbackData.startsWith("admin_") ||
-               callbackData.startsWith("shop_") ||
-               callbackData.startsWith("products_") ||
-               callbackData.startsWith("categories_") ||
-               callbackData.startsWith("user_") ||
-               callbackData.startsWith("edit_product_") ||
-               callbackData.startsWith("delete_product_") ||
-               callbackData.startsWith("edit_category_") ||
-               callbackData.startsWith("delete_category_") ||
-               callbackData.startsWith("confirm_delete_category_") ||
-               callbackData.startsWith("edit_shop_") ||
-               callbackData.startsWith("change_user_role") ||
-               callbackData.equals("add_manager") ||
-               callbackData.equals("back_to_admin");
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .callbackPrefix("admin_", "shop_", "products_", "categories_", "user_",
+                        "delete_product_", "edit_category_", "delete_category_",
+                        "confirm_delete_category_", "edit_shop_", "change_user_role")
+                .callback("add_manager", "back_to_admin");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        CallbackQuery callbackQuery = update.getCallbackQuery();
-        String callbackData = callbackQuery.getData();
-        
-        Long chatId = callbackQuery.getMessage().getChatId();
-        Integer messageId = null;
-        
-        try {
-            MaybeInaccessibleMessage maybeMessage = callbackQuery.getMessage();
-            
-            // Проверяем, доступно ли сообщение
-            if (maybeMessage instanceof Message) {
-                Message message = (Message) maybeMessage;
-                messageId = message.getMessageId();
-            }
-        } catch (Exception e) {
-            logger.error("Error getting messageId from callback query", e);
-        }
+    public BotApiMethod<?> handle(UpdateContext context) {
+        String callbackData = context.getCallbackData();
+        Long chatId = context.getChatId();
+        // null, если сообщение с кнопкой недоступно: тогда ответ отправляется новым сообщением
+        Integer messageId = context.getMessageId();
         
         // Проверяем права доступа
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-        if (user == null || (!"ADMIN".equals(user.getRole()) && !"MANAGER".equals(user.getRole()))) {
+        if (!context.isAdminOrManager()) {
             return createTextMessage(chatId, "У вас нет доступа к административным функциям.");
         }
         
@@ -134,9 +108,6 @@ public class AdminCallbackHandler implements UpdateHandler {
                 return handleProductsPage(chatId, messageId, callbackData);
             } else if (callbackData.equals("add_product")) {
                 return createTextMessage(chatId, "Добавление товаров временно недоступно.");
-            } else if (callbackData.startsWith("edit_product_")) {
-                Long productId = Long.parseLong(callbackData.replace("edit_product_", ""));
-                return handleEditProduct(chatId, messageId, productId);
             } else if (callbackData.startsWith("delete_product_")) {
                 Long productId = Long.parseLong(callbackData.replace("delete_product_", ""));
                 return handleDeleteProduct(chatId, messageId, productId);
@@ -193,15 +164,15 @@ public class AdminCallbackHandler implements UpdateHandler {
      * @return ответ бота
      */
     private BotApiMethod<?> handleEditShopSettings(Long chatId, Integer messageId, String callbackData) {
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user == null) {
             return createTextMessage(chatId, "Пользователь не найден");
         }
         
         switch (callbackData) {
             case "edit_shop_contacts":
-                user.setState("EDITING_SHOP_CONTACTS");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_SHOP_CONTACTS.encode());
+                userUnitOfWork.save(user);
                 
                 ShopSettings settings = shopSettingsService.getShopSettings();
                 
@@ -225,8 +196,8 @@ public class AdminCallbackHandler implements UpdateHandler {
                 return editMessage;
                 
             case "edit_shop_support":
-                user.setState("EDITING_SHOP_SUPPORT");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_SHOP_SUPPORT.encode());
+                userUnitOfWork.save(user);
                 
                 ShopSettings supportSettings = shopSettingsService.getShopSettings();
                 
@@ -246,8 +217,8 @@ public class AdminCallbackHandler implements UpdateHandler {
                 return supportMessage;
                 
             case "edit_shop_about":
-                user.setState("EDITING_SHOP_ABOUT");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_SHOP_ABOUT.encode());
+                userUnitOfWork.save(user);
                 
                 ShopSettings aboutSettings = shopSettingsService.getShopSettings();
                 
@@ -267,8 +238,8 @@ public class AdminCallbackHandler implements UpdateHandler {
                 return aboutMessage;
                 
             case "edit_shop_hours":
-                user.setState("EDITING_SHOP_HOURS");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_SHOP_HOURS.encode());
+                userUnitOfWork.save(user);
                 
                 ShopSettings hoursSettings = shopSettingsService.getShopSettings();
                 
@@ -340,54 +311,6 @@ public class AdminCallbackHandler implements UpdateHandler {
         }
     }
     
-    /**
-     * Обрабатывает нажатие кнопки "Редактировать товар"
-     * @param chatId ID чата
-     * @param messageId ID сообщения
-     * @param productId ID товара
-     * @return ответ бота
-     */
-    private BotApiMethod<?> handleEditProduct(Long chatId, Integer messageId, Long productId) {
-        Optional<Product> productOpt = productService.getProductById(productId);
-        
-        if (productOpt.isEmpty()) {
-            return createTextMessage(chatId, "Товар не найден.");
-        }
-        
-        Product product = productOpt.get();
-        
-        // Устанавливаем состояние пользователя для редактирования товара
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-        if (user == null) {
-            user = new TelegramUser(chatId, null, "Unknown", "Unknown");
-            logger.warn("Пользователь с ID {} не найден, создан новый пользователь", chatId);
-        }
-        user.setState("EDITING_PRODUCT_" + productId);
-        telegramUserRepository.save(user);
-        
-        logger.info("Установлено состояние EDITING_PRODUCT_{} для пользователя {}", productId, chatId);
-        
-        StringBuilder messageText = new StringBuilder();
-        messageText.append("✏️ *Редактирование товара*\n\n");
-        messageText.append("Выберите, что вы хотите изменить:\n\n");
-        messageText.append("1. Название: ").append(product.getName()).append("\n");
-        messageText.append("2. Цена: ").append(product.getPrice()).append(" руб.\n");
-        messageText.append("3. Количество: ").append(product.getStock()).append(" шт.\n");
-        messageText.append("4. Категория: ").append(product.getCategory() != null ? product.getCategory().getName() : "Не указана").append("\n");
-        messageText.append("5. Описание: ").append(product.getDescription()).append("\n");
-        messageText.append("6. Изображение\n");
-        messageText.append("7. Удалить товар\n");
-        messageText.append("8. Сохранить и выйти\n\n");
-        messageText.append("Введите номер поля, которое хотите изменить, или 8 для сохранения и выхода:");
-        
-        SendMessage sendMessage = new SendMessage();
-        sendMessage.setChatId(chatId);
-        sendMessage.setText(messageText.toString());
-        sendMessage.setParseMode("Markdown");
-        
-        return sendMessage;
-    }
-    
     /**
      * Обрабатывает нажатие кнопки "Удалить товар" с использованием EditMessageText
      * @param chatId ID чата
@@ -465,11 +388,10 @@ public class AdminCallbackHandler implements UpdateHandler {
         Category category = categoryOpt.get();
         
         // Сохраняем ID категории в состоянии пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("EDITING_CATEGORY_NAME");
-            user.setTempData(categoryId.toString()); // Сохраняем ID редактируемой категории
-            telegramUserRepository.save(user);
+            user.setState(ChatState.EDITING_CATEGORY_NAME.encode(categoryId));
+            userUnitOfWork.save(user);
         }
         
         StringBuilder messageText = new StringBuilder();
@@ -1120,7 +1042,7 @@ public class AdminCallbackHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleChangeUserRole(Long chatId, Integer messageId) {
         // Получаем пользователя и меняем его состояние
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user == null) {
             return createTextMessage(chatId, "Пользователь не найден");
         }
@@ -1131,8 +1053,8 @@ public class AdminCallbackHandler implements UpdateHandler {
         }
         
         // Устанавливаем состояние пользователя
-        user.setState("CHANGING_USER_ROLE");
-        telegramUserRepository.save(user);
+        user.setState(ChatState.CHANGING_USER_ROLE.encode());
+        userUnitOfWork.save(user);
         
         // Создаем сообщение с инструкциями
         EditMessageText editMessage = new EditMessageText();
@@ -1156,7 +1078,7 @@ public class AdminCallbackHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleAddManager(Long chatId, Integer messageId) {
         // Получаем пользователя и меняем его состояние
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user == null) {
             return createTextMessage(chatId, "Пользователь не найден");
         }
@@ -1167,8 +1089,8 @@ public class AdminCallbackHandler implements UpdateHandler {
         }
         
         // Устанавливаем состояние пользователя
-        user.setState("ADDING_MANAGER");
-        telegramUserRepository.save(user);
+        user.setState(ChatState.ADDING_MANAGER.encode());
+        userUnitOfWork.save(user);
         
         // Создаем сообщение с инструкциями
         EditMessageText editMessage = new EditMessageText();
@@ -1252,11 +1174,11 @@ public class AdminCallbackHandler implements UpdateHandler {
         
         // Сбрасываем состояние пользователя при возврате к настройкам магазина
         // Это нужно для корректной работы кнопки "Отмена редактирования"
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
             user.setState(null);
             user.setTempData(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
         }
         
         // Формируем сообщение
@@ -10,8 +10,6 @@ import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import uz.uportal.telegramshop.model.Category;
@@ -22,9 +20,13 @@ import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CategoryService;
 import uz.uportal.telegramshop.service.ProductService;
 import uz.uportal.telegramshop.service.ShopSettingsService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +39,7 @@ public class AdminPanelHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(AdminPanelHandler.class);
     private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final KeyboardFactory keyboardFactory;
     private final ProductService productService;
     private final CategoryService categoryService;
@@ -50,12 +53,14 @@ public class AdminPanelHandler implements UpdateHandler {
     
     public AdminPanelHandler(
             TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             KeyboardFactory keyboardFactory,
             ProductService productService,
             CategoryService categoryService,
             MessageSender messageSender,
             ShopSettingsService shopSettingsService) {
         this.telegramUserRepository = telegramUserRepository;
+        this.userUnitOfWork = userUnitOfWork;
         this.keyboardFactory = keyboardFactory;
         this.productService = productService;
         this.categoryService = categoryService;
@@ -64,48 +69,27 @@ public class AdminPanelHandler implements UpdateHandler {
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
-            return false;
-        }
-        
-        String text = update.getMessage().getText();
-        boolean canHandle = text.equals("⚙️ Админ панель") || 
-               text.equals("📋 Список товаров") || 
-               text.equals("➕ Добавить товар") || 
-               text.equals("🗂 Список категорий") || 
-               text.equals("➕ Добавить категорию") || 
-               text.equals("📦 Управление заказами") || 
-               text.equals("👥 Список пользователей") || 
-               text.equals("⚙️ Настройки магазина") ||
-               text.contains("Список пользователей") ||
-               text.equals("⬅️ Вернуться в главное меню");
-        
-        if (text.contains("пользователей")) {
-            logger.info("Button text contains 'пользователей': '{}', canHandle: {}", text, canHandle);
-        }
-        
-        return canHandle;
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .text("⚙️ Админ панель", "📋 Список товаров", "➕ Добавить товар", "🗂 Список категорий",
+                        "➕ Добавить категорию", "📦 Управление заказами", "👥 Список пользователей",
+                        "⚙️ Настройки магазина", "⬅️ Вернуться в главное меню")
+                .textContaining("Список пользователей");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        String text = message.getText();
+    public BotApiMethod<?> handle(UpdateContext context) {
+        Long chatId = context.getChatId();
+        String text = context.getText();
         
         logger.info("Handling admin panel button: {} for chatId: {}", text, chatId);
         
-        // Получаем пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId)
-                .orElse(null);
-        
-        if (user == null) {
+        if (context.getUser() == null) {
             return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
         }
         
         // Проверяем права доступа
-        if (!"ADMIN".equals(user.getRole()) && !"MANAGER".equals(user.getRole())) {
+        if (!context.isAdminOrManager()) {
             return createTextMessage(chatId, "У вас нет доступа к панели администратора.");
         }
         
@@ -247,10 +231,10 @@ public class AdminPanelHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleAddingProduct(Long chatId) {
         // Устанавливаем состояние пользователя для добавления товара
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_PRODUCT_NAME");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_PRODUCT_NAME.encode());
+            userUnitOfWork.save(user);
         }
         
         SendMessage sendMessage = new SendMessage();
@@ -303,10 +287,10 @@ public class AdminPanelHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleAddingCategory(Long chatId) {
         // Устанавливаем состояние пользователя "добавление категории"
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_CATEGORY");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_CATEGORY_NAME.encode());
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение с инструкцией
@@ -472,7 +456,7 @@ public class AdminPanelHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleReturnToMainMenu(Long chatId) {
         // Получаем пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         boolean isAdminOrManager = user != null && (user.getRole().equals("ADMIN") || user.getRole().equals("MANAGER"));
         
         SendMessage sendMessage = new SendMessage();
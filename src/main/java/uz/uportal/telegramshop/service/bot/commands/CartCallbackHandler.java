@@ -6,10 +6,6 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
-import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.MaybeInaccessibleMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -17,11 +13,16 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import uz.uportal.telegramshop.model.CartItem;
 import uz.uportal.telegramshop.model.Product;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CartService;
 import uz.uportal.telegramshop.service.ProductService;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackPayload;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
@@ -36,19 +37,19 @@ public class CartCallbackHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(CartCallbackHandler.class);
     
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final CartService cartService;
     private final ProductService productService;
     private final KeyboardFactory keyboardFactory;
     private final MessageSender messageSender;
     
     public CartCallbackHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             CartService cartService,
             ProductService productService,
             KeyboardFactory keyboardFactory,
             MessageSender messageSender) {
-        this.telegramUserRepository = telegramUserRepository;
+        this.userUnitOfWork = userUnitOfWork;
         this.cartService = cartService;
         this.productService = productService;
         this.keyboardFactory = keyboardFactory;
@@ -56,53 +57,45 @@ public class CartCallbackHandler implements UpdateHandler {
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasCallbackQuery()) {
-            return false;
-        }
-        
-        String callbackData = update.getCallbackQuery().getData();
-        return callbackData.startsWith("add_to_cart_") || 
-               callbackData.equals("clear_cart") ||
-               callbackData.equals("checkout") ||
-               callbackData.startsWith("remove_from_cart_") ||
-               callbackData.startsWith("update_quantity_") ||
-               callbackData.equals("main_menu_cart");
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .action(CallbackAction.ADD_TO_CART, CallbackAction.REMOVE_FROM_CART, CallbackAction.UPDATE_QUANTITY)
+                .callbackPrefix("add_to_cart_", "remove_from_cart_", "update_quantity_")
+                .callback("clear_cart", "checkout", "main_menu_cart");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        CallbackQuery callbackQuery = update.getCallbackQuery();
-        String callbackData = callbackQuery.getData();
-        
-        Long chatId = callbackQuery.getMessage().getChatId();
-        Integer messageId = null;
-        
-        try {
-            MaybeInaccessibleMessage maybeMessage = callbackQuery.getMessage();
-            
-            // Проверяем, доступно ли сообщение
-            if (maybeMessage instanceof Message) {
-                Message message = (Message) maybeMessage;
-                messageId = message.getMessageId();
-            }
-        } catch (Exception e) {
-            logger.error("Error getting messageId from callback query", e);
-        }
+    public BotApiMethod<?> handle(UpdateContext context) {
+        String callbackData = context.getCallbackData();
+        Long chatId = context.getChatId();
+        // null, если сообщение с кнопкой недоступно: тогда ответ отправляется новым сообщением
+        Integer messageId = context.getMessageId();
         
         logger.info("Handling cart callback: {} for chatId: {}", callbackData, chatId);
         
         try {
-            if (callbackData.startsWith("add_to_cart_")) {
-                return handleAddToCart(chatId, callbackData);
-            } else if (callbackData.equals("clear_cart")) {
+            // Действия с параметрами: компактный формат или прежние строки вида add_to_cart_ID
+            CallbackPayload payload = context.getCallbackPayload();
+            if (payload != null) {
+                switch (payload.action()) {
+                    case ADD_TO_CART:
+                        return handleAddToCart(chatId, payload.first());
+                    case REMOVE_FROM_CART:
+                        return handleRemoveFromCart(chatId, messageId, payload.first());
+                    case UPDATE_QUANTITY:
+                        return handleUpdateQuantity(chatId, messageId, payload.first(), payload.secondInt());
+                    default:
+                        break;
+                }
+            }
+            
+            if (callbackData.equals("clear_cart")) {
                 return handleClearCart(chatId, messageId);
             } else if (callbackData.equals("checkout")) {
                 return handleCheckout(chatId, messageId);
-            } else if (callbackData.startsWith("remove_from_cart_")) {
-                return handleRemoveFromCart(chatId, messageId, callbackData);
             } else if (callbackData.startsWith("update_quantity_")) {
-                return handleUpdateQuantity(chatId, messageId, callbackData);
+                logger.warn("Invalid callback data format: {}", callbackData);
+                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
             } else if (callbackData.equals("main_menu_cart")) {
                 return handleShowCart(chatId);
             }
@@ -117,17 +110,13 @@ public class CartCallbackHandler implements UpdateHandler {
      * Обрабатывает добавление товара в корзину
      * 
      * @param chatId ID чата
-     * @param callbackData данные callback-запроса
+     * @param productId ID товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleAddToCart(Long chatId, String callbackData) {
+    private BotApiMethod<?> handleAddToCart(Long chatId, Long productId) {
         try {
-            // Извлекаем ID товара из callback-данных
-            String productIdStr = callbackData.replace("add_to_cart_", "");
-            Long productId = Long.parseLong(productIdStr);
-            
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -193,7 +182,7 @@ public class CartCallbackHandler implements UpdateHandler {
     private BotApiMethod<?> handleClearCart(Long chatId, Integer messageId) {
         try {
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -272,7 +261,7 @@ public class CartCallbackHandler implements UpdateHandler {
     private BotApiMethod<?> handleCheckout(Long chatId, Integer messageId) {
         try {
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -286,8 +275,8 @@ public class CartCallbackHandler implements UpdateHandler {
             }
             
             // Устанавливаем состояние пользователя для сбора адреса доставки
-            user.setState("WAITING_FOR_ADDRESS");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.WAITING_FOR_ADDRESS.encode());
+            userUnitOfWork.save(user);
             
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
@@ -305,17 +294,13 @@ public class CartCallbackHandler implements UpdateHandler {
      * 
      * @param chatId ID чата
      * @param messageId ID сообщения
-     * @param callbackData данные callback-запроса
+     * @param productId ID товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleRemoveFromCart(Long chatId, Integer messageId, String callbackData) {
+    private BotApiMethod<?> handleRemoveFromCart(Long chatId, Integer messageId, Long productId) {
         try {
-            // Извлекаем ID товара из callback-данных
-            String productIdStr = callbackData.replace("remove_from_cart_", "");
-            Long productId = Long.parseLong(productIdStr);
-            
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -327,7 +312,7 @@ public class CartCallbackHandler implements UpdateHandler {
             boolean success = cartService.removeFromCart(user, productId);
             
             // Получаем обновленную информацию о корзине
-            String cartInfo = cartService.getCartInfo(chatId);
+            String cartInfo = cartService.getCartInfo(user);
             
             if (messageId != null) {
                 EditMessageText editMessage = new EditMessageText();
@@ -402,23 +387,14 @@ public class CartCallbackHandler implements UpdateHandler {
      * 
      * @param chatId ID чата
      * @param messageId ID сообщения
-     * @param callbackData данные callback-запроса
+     * @param productId ID товара
+     * @param quantity новое количество
      * @return ответ бота
      */
-    private BotApiMethod<?> handleUpdateQuantity(Long chatId, Integer messageId, String callbackData) {
+    private BotApiMethod<?> handleUpdateQuantity(Long chatId, Integer messageId, Long productId, Integer quantity) {
         try {
-            // Извлекаем данные из callback (формат: update_quantity_productId_quantity)
-            String[] parts = callbackData.split("_");
-            if (parts.length != 4) {
-                logger.warn("Invalid callback data format: {}", callbackData);
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
-            }
-            
-            Long productId = Long.parseLong(parts[2]);
-            Integer quantity = Integer.parseInt(parts[3]);
-            
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -430,7 +406,7 @@ public class CartCallbackHandler implements UpdateHandler {
             boolean success = cartService.updateQuantity(user, productId, quantity);
             
             // Получаем обновленную информацию о корзине
-            String cartInfo = cartService.getCartInfo(chatId);
+            String cartInfo = cartService.getCartInfo(user);
             
             if (messageId != null) {
                 EditMessageText editMessage = new EditMessageText();
@@ -473,7 +449,7 @@ public class CartCallbackHandler implements UpdateHandler {
     private BotApiMethod<?> handleShowCart(Long chatId) {
         try {
             // Получаем пользователя
-            Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
+            Optional<TelegramUser> userOpt = userUnitOfWork.findById(chatId);
             if (userOpt.isEmpty()) {
                 logger.warn("User with chatId {} not found", chatId);
                 return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
@@ -482,7 +458,7 @@ public class CartCallbackHandler implements UpdateHandler {
             TelegramUser user = userOpt.get();
             
             // Получаем информацию о корзине
-            String cartInfo = cartService.getCartInfo(chatId);
+            String cartInfo = cartService.getCartInfo(user);
             
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
@@ -2,28 +2,31 @@ package uz.uportal.telegramshop.service.bot.commands;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
-import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.MaybeInaccessibleMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.Product;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CategoryService;
-import uz.uportal.telegramshop.service.ProductService;
+import uz.uportal.telegramshop.service.CategoryTree;
+import uz.uportal.telegramshop.service.bot.catalog.CatalogPage;
+import uz.uportal.telegramshop.service.bot.catalog.CatalogPageSender;
+import uz.uportal.telegramshop.service.bot.catalog.ProductCarousel;
+import uz.uportal.telegramshop.service.bot.catalog.ProductPageCache;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.CallbackPayload;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
@@ -38,93 +41,105 @@ public class CatalogCallbackHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(CatalogCallbackHandler.class);
     
-    private final TelegramUserRepository telegramUserRepository;
     private final CategoryService categoryService;
-    private final ProductService productService;
+    private final ProductPageCache productPageCache;
+    private final CatalogPageSender catalogPageSender;
+    private final ProductCarousel productCarousel;
     private final KeyboardFactory keyboardFactory;
     private final MessageSender messageSender;
     
     // Константы для размера страницы при пагинации
     private static final int PRODUCTS_PAGE_SIZE = 3;
+    // Постоянный порядок товаров: без него соседние страницы могут пересекаться, а кэшировать их нельзя
+    private static final Sort PRODUCTS_SORT = Sort.by("id");
     
     public CatalogCallbackHandler(
-            TelegramUserRepository telegramUserRepository,
             CategoryService categoryService,
-            ProductService productService,
+            ProductPageCache productPageCache,
+            CatalogPageSender catalogPageSender,
+            ProductCarousel productCarousel,
             KeyboardFactory keyboardFactory,
             MessageSender messageSender) {
-        this.telegramUserRepository = telegramUserRepository;
         this.categoryService = categoryService;
-        this.productService = productService;
+        this.productPageCache = productPageCache;
+        this.catalogPageSender = catalogPageSender;
+        this.productCarousel = productCarousel;
         this.keyboardFactory = keyboardFactory;
         this.messageSender = messageSender;
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasCallbackQuery()) {
-            return false;
-        }
-        
-        String callbackData = update.getCallbackQuery().getData();
-        return callbackData.startsWith("catalog_category_") || 
-               callbackData.startsWith("catalog_subcategory_") ||
-               callbackData.startsWith("catalog_products_page_") ||
-               callbackData.equals("catalog_categories") ||
-               callbackData.equals("back_to_catalog");
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .action(CallbackAction.CATALOG_CATEGORY, CallbackAction.CATALOG_SUBCATEGORY,
+                        CallbackAction.CATALOG_PRODUCTS_PAGE, CallbackAction.CATALOG_CAROUSEL)
+                .callbackPrefix("catalog_category_", "catalog_subcategory_", "catalog_products_page_")
+                .callback("catalog_categories", "back_to_catalog", "catalog_carousel_back");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        CallbackQuery callbackQuery = update.getCallbackQuery();
-        String callbackData = callbackQuery.getData();
-        
-        Long chatId = callbackQuery.getMessage().getChatId();
-        Integer messageId = null;
-        
-        try {
-            MaybeInaccessibleMessage maybeMessage = callbackQuery.getMessage();
-            
-            // Проверяем, доступно ли сообщение
-            if (maybeMessage instanceof Message) {
-                Message message = (Message) maybeMessage;
-                messageId = message.getMessageId();
-            }
-        } catch (Exception e) {
-            logger.error("Error getting messageId from callback query", e);
-        }
+    public BotApiMethod<?> handle(UpdateContext context) {
+        String callbackData = context.getCallbackData();
+        Long chatId = context.getChatId();
+        // null, если сообщение с кнопкой недоступно: тогда ответ отправляется новым сообщением
+        Integer messageId = context.getMessageId();
         
         logger.info("Handling catalog callback: {} for chatId: {}", callbackData, chatId);
         
         try {
+            // Действия с параметрами: компактный формат или прежние строки вида catalog_category_ID
+            CallbackPayload payload = context.getCallbackPayload();
+            if (payload != null) {
+                switch (payload.action()) {
+                    case CATALOG_CATEGORY:
+                        Long categoryId = payload.first();
+                        
+                        // Сначала проверяем, есть ли у категории подкатегории
+                        if (categoryService.categoryHasSubcategories(categoryId)) {
+                            return messageId != null 
+                                ? handleCategorySubcategories(chatId, messageId, categoryId)
+                                : handleCategorySubcategories(chatId, categoryId);
+                        }
+                        // Если подкатегорий нет, показываем товары категории
+                        return messageId != null 
+                            ? handleCategoryProducts(chatId, messageId, categoryId)
+                            : handleCategoryProducts(chatId, categoryId);
+                    case CATALOG_SUBCATEGORY:
+                        // Параметры: ID подкатегории и ID родителя; показываем товары подкатегории
+                        logger.info("Processing subcategory with ID: {}", payload.first());
+                        return messageId != null 
+                            ? handleCategoryProducts(chatId, messageId, payload.first())
+                            : handleCategoryProducts(chatId, payload.first());
+                    case CATALOG_PRODUCTS_PAGE:
+                        return messageId != null 
+                            ? handleProductsInCategoryPage(chatId, messageId, payload.first(), payload.secondInt())
+                            : handleProductsInCategoryPage(chatId, payload.first(), payload.secondInt());
+                    case CATALOG_CAROUSEL:
+                        productCarousel.navigate(chatId, messageId, payload.first(), payload.second());
+                        return null;
+                    default:
+                        break;
+                }
+            }
+            
             if (callbackData.equals("catalog_categories")) {
                 return messageId != null 
                     ? handleCatalogCategories(chatId, messageId)
                     : handleCatalogCategories(chatId);
-            } else if (callbackData.startsWith("catalog_category_")) {
-                Long categoryId = Long.parseLong(callbackData.replace("catalog_category_", ""));
-                
-                // Сначала проверяем, есть ли у категории подкатегории
-                if (categoryService.categoryHasSubcategories(categoryId)) {
-                    return messageId != null 
-                        ? handleCategorySubcategories(chatId, messageId, categoryId)
-                        : handleCategorySubcategories(chatId, categoryId);
-                } else {
-                    // Если подкатегорий нет, показываем товары категории
-                    return messageId != null 
-                        ? handleCategoryProducts(chatId, messageId, callbackData)
-                        : handleCategoryProducts(chatId, callbackData);
+            } else if (callbackData.equals("catalog_carousel_back")) {
+                // Сообщение карусели с фото нельзя превратить в текстовый список категорий: удаляем его
+                if (messageId != null) {
+                    try {
+                        DeleteMessage deleteMessage = new DeleteMessage();
+                        deleteMessage.setChatId(chatId);
+                        deleteMessage.setMessageId(messageId);
+                        messageSender.executeDeleteMessage(deleteMessage);
+                    } catch (Exception e) {
+                        logger.error("Ошибка при удалении карусели товаров: {}", e.getMessage());
+                    }
                 }
+                return handleCatalogCategories(chatId);
             } else if (callbackData.startsWith("catalog_subcategory_")) {
-                // Формат: catalog_subcategory_SUBCATEGORY_ID_PARENT_ID
-                String[] parts = callbackData.replace("catalog_subcategory_", "").split("_");
-                if (parts.length >= 2) {
-                    // Передаем ID подкатегории для отображения товаров
-                    logger.info("Processing subcategory with ID: {}", parts[0]);
-                    return messageId != null 
-                        ? handleCategoryProducts(chatId, messageId, "catalog_category_" + parts[0])
-                        : handleCategoryProducts(chatId, "catalog_category_" + parts[0]);
-                }
                 return createTextMessage(chatId, "Ошибка обработки подкатегории");
             } else if (callbackData.startsWith("catalog_back_to_parent_")) {
                 // Возврат к родительской категории
@@ -140,11 +155,6 @@ public class CatalogCallbackHandler implements UpdateHandler {
                         ? handleCategorySubcategories(chatId, messageId, parentId)
                         : handleCategorySubcategories(chatId, parentId);
                 }
-            } else if (callbackData.startsWith("catalog_products_page_")) {
-                // Формат: catalog_products_page_{categoryId}_{page}
-                return messageId != null 
-                    ? handleProductsInCategoryPage(chatId, messageId, callbackData)
-                    : handleProductsInCategoryPage(chatId, callbackData);
             } else {
                 logger.warn("Unhandled catalog callback: {}", callbackData);
                 return null;
@@ -159,14 +169,12 @@ public class CatalogCallbackHandler implements UpdateHandler {
      * Обрабатывает нажатие на категорию в каталоге с использованием EditMessageText
      * @param chatId ID чата
      * @param messageId ID сообщения
-     * @param callbackData данные callback
+     * @param categoryId ID категории
      * @return ответ бота
      */
-    private BotApiMethod<?> handleCategoryProducts(Long chatId, Integer messageId, String callbackData) {
-        Long categoryId = Long.parseLong(callbackData.replace("catalog_category_", ""));
-        
+    private BotApiMethod<?> handleCategoryProducts(Long chatId, Integer messageId, Long categoryId) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             EditMessageText editMessageText = new EditMessageText();
             editMessageText.setChatId(chatId);
@@ -179,9 +187,9 @@ public class CatalogCallbackHandler implements UpdateHandler {
         
         // Получаем товары категории (первая страница)
         int page = 1;
-        Pageable pageable = PageRequest.of(page - 1, PRODUCTS_PAGE_SIZE);
-        Page<Product> productsPage = productService.getProductsByCategory(category, pageable);
-        List<Product> products = productsPage.getContent();
+        long startedAt = System.nanoTime();
+        CatalogPage productsPage = productPageCache.get(categoryId, page, PRODUCTS_PAGE_SIZE, PRODUCTS_SORT);
+        List<CatalogPage.Card> products = productsPage.cards();
         
         // Обновляем заголовок категории с информацией о пагинации
         StringBuilder headerText = new StringBuilder();
@@ -210,9 +218,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
             editMessageText.setReplyMarkup(keyboardMarkup);
             
             return editMessageText;
+        } else if (productCarousel.isEnabled()) {
+            // Карусель: один товар в одном сообщении, дальше переходы редактируют его на месте
+            productCarousel.open(chatId, messageId, categoryId, (page - 1) * PRODUCTS_PAGE_SIZE);
+            return null;
+        } else if (catalogPageSender.isAlbumMode()) {
+            // Альбом и одно сообщение с кнопками вместо сообщения на каждый товар
+            catalogPageSender.sendAlbum(chatId, categoryId, category.getName(), productsPage, startedAt);
+            return null;
         } else {
             // Если есть товары, обновляем заголовок с информацией о пагинации
-            headerText.append("Страница ").append(page).append(" из ").append(productsPage.getTotalPages()).append("\n\n");
+            headerText.append("Страница ").append(page).append(" из ").append(productsPage.totalPages()).append("\n\n");
             
             // Обновляем заголовок
             EditMessageText editMessageText = new EditMessageText();
@@ -242,16 +258,10 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // Теперь отправляем каждый товар отдельным сообщением
-            for (Product product : products) {
+            for (CatalogPage.Card product : products) {
                 try {
                     // Формируем сообщение для товара
-                    StringBuilder productText = new StringBuilder();
-                    productText.append("*").append(product.getName()).append("*\n");
-                    productText.append("💰 Цена: ").append(product.getPrice()).append(" руб.\n");
-                    productText.append("📦 В наличии: ").append(product.getStock()).append(" шт.\n");
-                    if (product.getDescription() != null && !product.getDescription().isEmpty()) {
-                        productText.append("📝 Описание: ").append(product.getDescription()).append("\n");
-                    }
+                    String productText = product.text();
                     
                     // Создаем клавиатуру с кнопкой "Добавить в корзину"
                     InlineKeyboardMarkup productKeyboard = new InlineKeyboardMarkup();
@@ -259,17 +269,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     List<InlineKeyboardButton> addToCartRow = new ArrayList<>();
                     InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
                     addToCartButton.setText("🛒 Добавить в корзину");
-                    addToCartButton.setCallbackData("add_to_cart_" + product.getId());
+                    addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, product.productId()));
                     addToCartRow.add(addToCartButton);
                     productKeyboardRows.add(addToCartRow);
                     productKeyboard.setKeyboard(productKeyboardRows);
                     
                     // Если у товара есть изображение, отправляем фото с подписью
-                    if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
+                    if (product.hasImage()) {
                         SendPhoto sendPhoto = new SendPhoto();
                         sendPhoto.setChatId(chatId);
-                        sendPhoto.setPhoto(new InputFile(product.getImageUrl()));
-                        sendPhoto.setCaption(productText.toString());
+                        sendPhoto.setPhoto(new InputFile(product.imageUrl()));
+                        sendPhoto.setCaption(productText);
                         sendPhoto.setParseMode("Markdown");
                         sendPhoto.setReplyMarkup(productKeyboard);
                         
@@ -278,7 +288,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
                         // Иначе отправляем текстовое сообщение
                         SendMessage sendMessage = new SendMessage();
                         sendMessage.setChatId(chatId);
-                        sendMessage.setText(productText.toString());
+                        sendMessage.setText(productText);
                         sendMessage.setParseMode("Markdown");
                         sendMessage.setReplyMarkup(productKeyboard);
                         
@@ -290,7 +300,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // После всех товаров отправляем сообщение с кнопками пагинации
-            if (productsPage.getTotalPages() > 1) {
+            if (productsPage.totalPages() > 1) {
                 try {
                     SendMessage paginationMessage = new SendMessage();
                     paginationMessage.setChatId(chatId);
@@ -305,14 +315,14 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     if (page > 1) {
                         InlineKeyboardButton prevButton = new InlineKeyboardButton();
                         prevButton.setText("⬅️ Предыдущая");
-                        prevButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page - 1));
+                        prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page - 1));
                         paginationRow.add(prevButton);
                     }
                     
-                    if (page < productsPage.getTotalPages()) {
+                    if (page < productsPage.totalPages()) {
                         InlineKeyboardButton nextButton = new InlineKeyboardButton();
                         nextButton.setText("Следующая ➡️");
-                        nextButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page + 1));
+                        nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page + 1));
                         paginationRow.add(nextButton);
                     }
                     
@@ -326,6 +336,8 @@ public class CatalogCallbackHandler implements UpdateHandler {
                 }
             }
             
+            catalogPageSender.recordMessages(productsPage, startedAt);
+            
             // Возвращаем null, так как мы уже отправили все сообщения
             return null;
         }
@@ -334,14 +346,12 @@ public class CatalogCallbackHandler implements UpdateHandler {
     /**
      * Обрабатывает нажатие на категорию в каталоге с использованием SendMessage
      * @param chatId ID чата
-     * @param callbackData данные callback
+     * @param categoryId ID категории
      * @return ответ бота
      */
-    private BotApiMethod<?> handleCategoryProducts(Long chatId, String callbackData) {
-        Long categoryId = Long.parseLong(callbackData.replace("catalog_category_", ""));
-        
+    private BotApiMethod<?> handleCategoryProducts(Long chatId, Long categoryId) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             SendMessage sendMessage = new SendMessage();
             sendMessage.setChatId(chatId);
@@ -353,9 +363,9 @@ public class CatalogCallbackHandler implements UpdateHandler {
         
         // Получаем товары категории (первая страница)
         int page = 1;
-        Pageable pageable = PageRequest.of(page - 1, PRODUCTS_PAGE_SIZE);
-        Page<Product> productsPage = productService.getProductsByCategory(category, pageable);
-        List<Product> products = productsPage.getContent();
+        long startedAt = System.nanoTime();
+        CatalogPage productsPage = productPageCache.get(categoryId, page, PRODUCTS_PAGE_SIZE, PRODUCTS_SORT);
+        List<CatalogPage.Card> products = productsPage.cards();
         
         // Сначала отправляем заголовок категории
         StringBuilder headerText = new StringBuilder();
@@ -383,9 +393,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
             sendMessage.setReplyMarkup(keyboardMarkup);
             
             return sendMessage;
+        } else if (productCarousel.isEnabled()) {
+            // Карусель: один товар в одном сообщении, дальше переходы редактируют его на месте
+            productCarousel.open(chatId, null, categoryId, (page - 1) * PRODUCTS_PAGE_SIZE);
+            return null;
+        } else if (catalogPageSender.isAlbumMode()) {
+            // Альбом и одно сообщение с кнопками вместо сообщения на каждый товар
+            catalogPageSender.sendAlbum(chatId, categoryId, category.getName(), productsPage, startedAt);
+            return null;
         } else {
             // Если есть товары, отправляем заголовок с информацией о пагинации
-            headerText.append("Страница ").append(page).append(" из ").append(productsPage.getTotalPages()).append("\n\n");
+            headerText.append("Страница ").append(page).append(" из ").append(productsPage.totalPages()).append("\n\n");
             
             SendMessage headerMessage = new SendMessage();
             headerMessage.setChatId(chatId);
@@ -413,16 +431,10 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // Теперь отправляем каждый товар отдельным сообщением
-            for (Product product : products) {
+            for (CatalogPage.Card product : products) {
                 try {
                     // Формируем сообщение для товара
-                    StringBuilder productText = new StringBuilder();
-                    productText.append("*").append(product.getName()).append("*\n");
-                    productText.append("💰 Цена: ").append(product.getPrice()).append(" руб.\n");
-                    productText.append("📦 В наличии: ").append(product.getStock()).append(" шт.\n");
-                    if (product.getDescription() != null && !product.getDescription().isEmpty()) {
-                        productText.append("📝 Описание: ").append(product.getDescription()).append("\n");
-                    }
+                    String productText = product.text();
                     
                     // Создаем клавиатуру с кнопкой "Добавить в корзину"
                     InlineKeyboardMarkup productKeyboard = new InlineKeyboardMarkup();
@@ -430,17 +442,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     List<InlineKeyboardButton> addToCartRow = new ArrayList<>();
                     InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
                     addToCartButton.setText("🛒 Добавить в корзину");
-                    addToCartButton.setCallbackData("add_to_cart_" + product.getId());
+                    addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, product.productId()));
                     addToCartRow.add(addToCartButton);
                     productKeyboardRows.add(addToCartRow);
                     productKeyboard.setKeyboard(productKeyboardRows);
                     
                     // Если у товара есть изображение, отправляем фото с подписью
-                    if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
+                    if (product.hasImage()) {
                         SendPhoto sendPhoto = new SendPhoto();
                         sendPhoto.setChatId(chatId);
-                        sendPhoto.setPhoto(new InputFile(product.getImageUrl()));
-                        sendPhoto.setCaption(productText.toString());
+                        sendPhoto.setPhoto(new InputFile(product.imageUrl()));
+                        sendPhoto.setCaption(productText);
                         sendPhoto.setParseMode("Markdown");
                         sendPhoto.setReplyMarkup(productKeyboard);
                         
@@ -449,7 +461,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
                         // Иначе отправляем текстовое сообщение
                         SendMessage sendMessage = new SendMessage();
                         sendMessage.setChatId(chatId);
-                        sendMessage.setText(productText.toString());
+                        sendMessage.setText(productText);
                         sendMessage.setParseMode("Markdown");
                         sendMessage.setReplyMarkup(productKeyboard);
                         
@@ -461,7 +473,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // После всех товаров отправляем сообщение с кнопками пагинации
-            if (productsPage.getTotalPages() > 1) {
+            if (productsPage.totalPages() > 1) {
                 try {
                     SendMessage paginationMessage = new SendMessage();
                     paginationMessage.setChatId(chatId);
@@ -476,14 +488,14 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     if (page > 1) {
                         InlineKeyboardButton prevButton = new InlineKeyboardButton();
                         prevButton.setText("⬅️ Предыдущая");
-                        prevButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page - 1));
+                        prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page - 1));
                         paginationRow.add(prevButton);
                     }
                     
-                    if (page < productsPage.getTotalPages()) {
+                    if (page < productsPage.totalPages()) {
                         InlineKeyboardButton nextButton = new InlineKeyboardButton();
                         nextButton.setText("Следующая ➡️");
-                        nextButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page + 1));
+                        nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page + 1));
                         paginationRow.add(nextButton);
                     }
                     
@@ -497,6 +509,8 @@ public class CatalogCallbackHandler implements UpdateHandler {
                 }
             }
             
+            catalogPageSender.recordMessages(productsPage, startedAt);
+            
             // Возвращаем null, так как мы уже отправили все сообщения
             return null;
         }
@@ -506,17 +520,13 @@ public class CatalogCallbackHandler implements UpdateHandler {
      * Обрабатывает пагинацию товаров в категории с использованием EditMessageText
      * @param chatId ID чата
      * @param messageId ID сообщения
-     * @param callbackData данные callback
+     * @param categoryId ID категории
+     * @param page номер страницы
      * @return ответ бота
      */
-    private BotApiMethod<?> handleProductsInCategoryPage(Long chatId, Integer messageId, String callbackData) {
-        // Формат: catalog_products_page_{categoryId}_{page}
-        String[] parts = callbackData.replace("catalog_products_page_", "").split("_");
-        Long categoryId = Long.parseLong(parts[0]);
-        int page = Integer.parseInt(parts[1]);
-        
+    private BotApiMethod<?> handleProductsInCategoryPage(Long chatId, Integer messageId, Long categoryId, int page) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             EditMessageText editMessageText = new EditMessageText();
             editMessageText.setChatId(chatId);
@@ -528,9 +538,9 @@ public class CatalogCallbackHandler implements UpdateHandler {
         Category category = categoryOpt.get();
         
         // Получаем товары категории для указанной страницы
-        Pageable pageable = PageRequest.of(page - 1, PRODUCTS_PAGE_SIZE);
-        Page<Product> productsPage = productService.getProductsByCategory(category, pageable);
-        List<Product> products = productsPage.getContent();
+        long startedAt = System.nanoTime();
+        CatalogPage productsPage = productPageCache.get(categoryId, page, PRODUCTS_PAGE_SIZE, PRODUCTS_SORT);
+        List<CatalogPage.Card> products = productsPage.cards();
         
         // Обновляем заголовок категории с информацией о пагинации
         StringBuilder headerText = new StringBuilder();
@@ -559,9 +569,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
             editMessageText.setReplyMarkup(keyboardMarkup);
             
             return editMessageText;
+        } else if (productCarousel.isEnabled()) {
+            // Карусель: один товар в одном сообщении, дальше переходы редактируют его на месте
+            productCarousel.open(chatId, messageId, categoryId, (page - 1) * PRODUCTS_PAGE_SIZE);
+            return null;
+        } else if (catalogPageSender.isAlbumMode()) {
+            // Альбом и одно сообщение с кнопками вместо сообщения на каждый товар
+            catalogPageSender.sendAlbum(chatId, categoryId, category.getName(), productsPage, startedAt);
+            return null;
         } else {
             // Если есть товары, обновляем заголовок с информацией о пагинации
-            headerText.append("Страница ").append(page).append(" из ").append(productsPage.getTotalPages()).append("\n\n");
+            headerText.append("Страница ").append(page).append(" из ").append(productsPage.totalPages()).append("\n\n");
             
             // Обновляем заголовок
             EditMessageText editMessageText = new EditMessageText();
@@ -591,16 +609,10 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // Теперь отправляем каждый товар отдельным сообщением
-            for (Product product : products) {
+            for (CatalogPage.Card product : products) {
                 try {
                     // Формируем сообщение для товара
-                    StringBuilder productText = new StringBuilder();
-                    productText.append("*").append(product.getName()).append("*\n");
-                    productText.append("💰 Цена: ").append(product.getPrice()).append(" руб.\n");
-                    productText.append("📦 В наличии: ").append(product.getStock()).append(" шт.\n");
-                    if (product.getDescription() != null && !product.getDescription().isEmpty()) {
-                        productText.append("📝 Описание: ").append(product.getDescription()).append("\n");
-                    }
+                    String productText = product.text();
                     
                     // Создаем клавиатуру с кнопкой "Добавить в корзину"
                     InlineKeyboardMarkup productKeyboard = new InlineKeyboardMarkup();
@@ -608,17 +620,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     List<InlineKeyboardButton> addToCartRow = new ArrayList<>();
                     InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
                     addToCartButton.setText("🛒 Добавить в корзину");
-                    addToCartButton.setCallbackData("add_to_cart_" + product.getId());
+                    addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, product.productId()));
                     addToCartRow.add(addToCartButton);
                     productKeyboardRows.add(addToCartRow);
                     productKeyboard.setKeyboard(productKeyboardRows);
                     
                     // Если у товара есть изображение, отправляем фото с подписью
-                    if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
+                    if (product.hasImage()) {
                         SendPhoto sendPhoto = new SendPhoto();
                         sendPhoto.setChatId(chatId);
-                        sendPhoto.setPhoto(new InputFile(product.getImageUrl()));
-                        sendPhoto.setCaption(productText.toString());
+                        sendPhoto.setPhoto(new InputFile(product.imageUrl()));
+                        sendPhoto.setCaption(productText);
                         sendPhoto.setParseMode("Markdown");
                         sendPhoto.setReplyMarkup(productKeyboard);
                         
@@ -627,7 +639,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
                         // Иначе отправляем текстовое сообщение
                         SendMessage sendMessage = new SendMessage();
                         sendMessage.setChatId(chatId);
-                        sendMessage.setText(productText.toString());
+                        sendMessage.setText(productText);
                         sendMessage.setParseMode("Markdown");
                         sendMessage.setReplyMarkup(productKeyboard);
                         
@@ -639,7 +651,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // После всех товаров отправляем сообщение с кнопками пагинации
-            if (productsPage.getTotalPages() > 1) {
+            if (productsPage.totalPages() > 1) {
                 try {
                     SendMessage paginationMessage = new SendMessage();
                     paginationMessage.setChatId(chatId);
@@ -654,14 +666,14 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     if (page > 1) {
                         InlineKeyboardButton prevButton = new InlineKeyboardButton();
                         prevButton.setText("⬅️ Предыдущая");
-                        prevButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page - 1));
+                        prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page - 1));
                         paginationRow.add(prevButton);
                     }
                     
-                    if (page < productsPage.getTotalPages()) {
+                    if (page < productsPage.totalPages()) {
                         InlineKeyboardButton nextButton = new InlineKeyboardButton();
                         nextButton.setText("Следующая ➡️");
-                        nextButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page + 1));
+                        nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page + 1));
                         paginationRow.add(nextButton);
                     }
                     
@@ -675,6 +687,8 @@ public class CatalogCallbackHandler implements UpdateHandler {
                 }
             }
             
+            catalogPageSender.recordMessages(productsPage, startedAt);
+            
             // Возвращаем null, так как мы уже отправили все сообщения
             return null;
         }
@@ -683,17 +697,13 @@ public class CatalogCallbackHandler implements UpdateHandler {
     /**
      * Обрабатывает пагинацию товаров в категории с использованием SendMessage
      * @param chatId ID чата
-     * @param callbackData данные callback
+     * @param categoryId ID категории
+     * @param page номер страницы
      * @return ответ бота
      */
-    private BotApiMethod<?> handleProductsInCategoryPage(Long chatId, String callbackData) {
-        // Формат: catalog_products_page_{categoryId}_{page}
-        String[] parts = callbackData.replace("catalog_products_page_", "").split("_");
-        Long categoryId = Long.parseLong(parts[0]);
-        int page = Integer.parseInt(parts[1]);
-        
+    private BotApiMethod<?> handleProductsInCategoryPage(Long chatId, Long categoryId, int page) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             SendMessage sendMessage = new SendMessage();
             sendMessage.setChatId(chatId);
@@ -704,9 +714,9 @@ public class CatalogCallbackHandler implements UpdateHandler {
         Category category = categoryOpt.get();
         
         // Получаем товары категории для указанной страницы
-        Pageable pageable = PageRequest.of(page - 1, PRODUCTS_PAGE_SIZE);
-        Page<Product> productsPage = productService.getProductsByCategory(category, pageable);
-        List<Product> products = productsPage.getContent();
+        long startedAt = System.nanoTime();
+        CatalogPage productsPage = productPageCache.get(categoryId, page, PRODUCTS_PAGE_SIZE, PRODUCTS_SORT);
+        List<CatalogPage.Card> products = productsPage.cards();
         
         // Формируем заголовок категории с информацией о пагинации
         StringBuilder headerText = new StringBuilder();
@@ -734,9 +744,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
             sendMessage.setReplyMarkup(keyboardMarkup);
             
             return sendMessage;
+        } else if (productCarousel.isEnabled()) {
+            // Карусель: один товар в одном сообщении, дальше переходы редактируют его на месте
+            productCarousel.open(chatId, null, categoryId, (page - 1) * PRODUCTS_PAGE_SIZE);
+            return null;
+        } else if (catalogPageSender.isAlbumMode()) {
+            // Альбом и одно сообщение с кнопками вместо сообщения на каждый товар
+            catalogPageSender.sendAlbum(chatId, categoryId, category.getName(), productsPage, startedAt);
+            return null;
         } else {
             // Если есть товары, отправляем заголовок с информацией о пагинации
-            headerText.append("Страница ").append(page).append(" из ").append(productsPage.getTotalPages()).append("\n\n");
+            headerText.append("Страница ").append(page).append(" из ").append(productsPage.totalPages()).append("\n\n");
             
             SendMessage headerMessage = new SendMessage();
             headerMessage.setChatId(chatId);
@@ -764,16 +782,10 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // Теперь отправляем каждый товар отдельным сообщением
-            for (Product product : products) {
+            for (CatalogPage.Card product : products) {
                 try {
                     // Формируем сообщение для товара
-                    StringBuilder productText = new StringBuilder();
-                    productText.append("*").append(product.getName()).append("*\n");
-                    productText.append("💰 Цена: ").append(product.getPrice()).append(" руб.\n");
-                    productText.append("📦 В наличии: ").append(product.getStock()).append(" шт.\n");
-                    if (product.getDescription() != null && !product.getDescription().isEmpty()) {
-                        productText.append("📝 Описание: ").append(product.getDescription()).append("\n");
-                    }
+                    String productText = product.text();
                     
                     // Создаем клавиатуру с кнопкой "Добавить в корзину"
                     InlineKeyboardMarkup productKeyboard = new InlineKeyboardMarkup();
@@ -781,17 +793,17 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     List<InlineKeyboardButton> addToCartRow = new ArrayList<>();
                     InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
                     addToCartButton.setText("🛒 Добавить в корзину");
-                    addToCartButton.setCallbackData("add_to_cart_" + product.getId());
+                    addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, product.productId()));
                     addToCartRow.add(addToCartButton);
                     productKeyboardRows.add(addToCartRow);
                     productKeyboard.setKeyboard(productKeyboardRows);
                     
                     // Если у товара есть изображение, отправляем фото с подписью
-                    if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
+                    if (product.hasImage()) {
                         SendPhoto sendPhoto = new SendPhoto();
                         sendPhoto.setChatId(chatId);
-                        sendPhoto.setPhoto(new InputFile(product.getImageUrl()));
-                        sendPhoto.setCaption(productText.toString());
+                        sendPhoto.setPhoto(new InputFile(product.imageUrl()));
+                        sendPhoto.setCaption(productText);
                         sendPhoto.setParseMode("Markdown");
                         sendPhoto.setReplyMarkup(productKeyboard);
                         
@@ -800,7 +812,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
                         // Иначе отправляем текстовое сообщение
                         SendMessage sendMessage = new SendMessage();
                         sendMessage.setChatId(chatId);
-                        sendMessage.setText(productText.toString());
+                        sendMessage.setText(productText);
                         sendMessage.setParseMode("Markdown");
                         sendMessage.setReplyMarkup(productKeyboard);
                         
@@ -812,7 +824,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
             }
             
             // После всех товаров отправляем сообщение с кнопками пагинации
-            if (productsPage.getTotalPages() > 1) {
+            if (productsPage.totalPages() > 1) {
                 try {
                     SendMessage paginationMessage = new SendMessage();
                     paginationMessage.setChatId(chatId);
@@ -827,14 +839,14 @@ public class CatalogCallbackHandler implements UpdateHandler {
                     if (page > 1) {
                         InlineKeyboardButton prevButton = new InlineKeyboardButton();
                         prevButton.setText("⬅️ Предыдущая");
-                        prevButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page - 1));
+                        prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page - 1));
                         paginationRow.add(prevButton);
                     }
                     
-                    if (page < productsPage.getTotalPages()) {
+                    if (page < productsPage.totalPages()) {
                         InlineKeyboardButton nextButton = new InlineKeyboardButton();
                         nextButton.setText("Следующая ➡️");
-                        nextButton.setCallbackData("catalog_products_page_" + categoryId + "_" + (page + 1));
+                        nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page + 1));
                         paginationRow.add(nextButton);
                     }
                     
@@ -848,6 +860,8 @@ public class CatalogCallbackHandler implements UpdateHandler {
                 }
             }
             
+            catalogPageSender.recordMessages(productsPage, startedAt);
+            
             // Возвращаем null, так как мы уже отправили все сообщения
             return null;
         }
@@ -862,7 +876,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleCategorySubcategories(Long chatId, Integer messageId, Long categoryId) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             EditMessageText editMessageText = new EditMessageText();
             editMessageText.setChatId(chatId);
@@ -874,7 +888,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
         Category category = categoryOpt.get();
         
         // Получаем подкатегории
-        List<Category> subcategories = categoryService.getSubcategories(categoryId);
+        List<Category> subcategories = categoryService.getCategoryTree().getSubcategories(categoryId);
         
         // Формируем сообщение
         StringBuilder messageText = new StringBuilder();
@@ -902,7 +916,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
      */
     private BotApiMethod<?> handleCategorySubcategories(Long chatId, Long categoryId) {
         // Получаем категорию
-        Optional<Category> categoryOpt = categoryService.getCategoryById(categoryId);
+        Optional<Category> categoryOpt = catalogCategory(categoryId);
         if (categoryOpt.isEmpty()) {
             SendMessage sendMessage = new SendMessage();
             sendMessage.setChatId(chatId);
@@ -913,7 +927,7 @@ public class CatalogCallbackHandler implements UpdateHandler {
         Category category = categoryOpt.get();
         
         // Получаем подкатегории
-        List<Category> subcategories = categoryService.getSubcategories(categoryId);
+        List<Category> subcategories = categoryService.getCategoryTree().getSubcategories(categoryId);
         
         // Формируем сообщение
         StringBuilder messageText = new StringBuilder();
@@ -988,6 +1002,16 @@ public class CatalogCallbackHandler implements UpdateHandler {
         return sendMessage;
     }
     
+    /**
+     * Категория из снимка иерархии, без обращения к базе
+     * @param categoryId ID категории
+     * @return копия категории с цепочкой родителей или пустой Optional, если категории нет
+     */
+    private Optional<Category> catalogCategory(Long categoryId) {
+        CategoryTree.Node node = categoryService.getCategoryTree().get(categoryId);
+        return node != null ? Optional.of(node.toCategory()) : Optional.empty();
+    }
+    
     /**
      * Создает текстовое сообщение
      * @param chatId ID чата
@@ -1000,4 +1024,13 @@ public class CatalogCallbackHandler implements UpdateHandler {
         sendMessage.setText(text);
         return sendMessage;
     }
+    
+    /**
+     * Формирует текст карточки товара в каталоге (Markdown)
+     * @param product товар
+     * @return текст карточки
+     */
+    public static String productCardText(Product product) {
+        return CatalogPage.cardText(product);
+    }
 } 
\ No newline at end of file
@@ -5,24 +5,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CategoryService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+import uz.uportal.telegramshop.service.bot.core.StateCodec;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
+import uz.uportal.telegramshop.service.bot.draft.DraftStore;
+import uz.uportal.telegramshop.service.bot.draft.DraftStores;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Обработчик состояний, связанных с категориями
@@ -31,97 +34,72 @@ import java.util.regex.Pattern;
 public class CategoryStateHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(CategoryStateHandler.class);
-    private static final Pattern EDITING_CATEGORY_PATTERN = Pattern.compile("EDITING_CATEGORY_(\\d+)");
-    private static final Pattern EDITING_CATEGORY_DESCRIPTION_PATTERN = Pattern.compile("EDITING_CATEGORY_DESCRIPTION_(\\d+)");
+    private static final Set<ChatState> STATES = EnumSet.of(
+            ChatState.ADDING_CATEGORY_NAME, ChatState.ADDING_CATEGORY_DESCRIPTION,
+            ChatState.ADDING_CATEGORY_PARENT_SELECTION, ChatState.EDITING_CATEGORY_NAME,
+            ChatState.EDITING_CATEGORY_DESCRIPTION);
     
     // Временное хранилище данных для создания/редактирования категорий
-    private final Map<Long, CategoryDraft> categoryDrafts = new HashMap<>();
+    private final DraftStore<CategoryDraft> categoryDrafts;
     
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final CategoryService categoryService;
     private final KeyboardFactory keyboardFactory;
     
     public CategoryStateHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             CategoryService categoryService,
-            KeyboardFactory keyboardFactory) {
-        this.telegramUserRepository = telegramUserRepository;
+            KeyboardFactory keyboardFactory,
+            DraftStores draftStores) {
+        this.userUnitOfWork = userUnitOfWork;
         this.categoryService = categoryService;
         this.keyboardFactory = keyboardFactory;
+        this.categoryDrafts = draftStores.create("category", CategoryDraft.class);
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
-            return false;
-        }
-        
-        Long chatId = update.getMessage().getChatId();
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-        if (user == null || user.getState() == null) {
-            return false;
-        }
-        
-        String state = user.getState();
-        
-        return state.equals("ADDING_CATEGORY") ||
-                state.equals("ADDING_CATEGORY_NAME") ||
-                state.equals("ADDING_CATEGORY_DESCRIPTION") ||
-                state.equals("ADDING_CATEGORY_PARENT_SELECTION") ||
-                state.equals("EDITING_CATEGORY_NAME") ||
-                state.startsWith("EDITING_CATEGORY_") ||
-                state.startsWith("EDITING_CATEGORY_DESCRIPTION_");
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .state(STATES.toArray(new ChatState[0]));
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
+    public BotApiMethod<?> handle(UpdateContext context) {
+        String text = context.getText();
+        if (text == null) {
             return null;
         }
         
-        Message message = update.getMessage();
-        String text = message.getText();
-        Long chatId = message.getChatId();
+        Long chatId = context.getChatId();
         
         // Получаем пользователя и его состояние
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-        if (user == null || user.getState() == null) {
+        TelegramUser user = context.getUser();
+        StatePayload state = user != null ? StateCodec.decode(user.getState()) : null;
+        if (state == null) {
             return null;
         }
         
-        String state = user.getState();
-        
-        if (state.equals("ADDING_CATEGORY") || state.equals("ADDING_CATEGORY_NAME")) {
-            return handleAddingCategoryName(chatId, text);
-        } else if (state.equals("ADDING_CATEGORY_DESCRIPTION")) {
-            return handleAddingCategoryDescription(chatId, text);
-        } else if (state.equals("ADDING_CATEGORY_PARENT_SELECTION")) {
-            return handleAddingCategoryParentSelection(chatId, text);
-        } else if (state.equals("EDITING_CATEGORY_NAME")) {
-            // Получаем ID категории из временных данных
-            String categoryIdStr = user.getTempData();
-            if (categoryIdStr == null || categoryIdStr.isEmpty()) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование категории заново.");
-            }
-            
-            Long categoryId = Long.parseLong(categoryIdStr);
-            return handleEditingCategoryName(chatId, text, categoryId);
-        } else {
-            // Проверяем, является ли состояние редактированием категории
-            Matcher matcher = EDITING_CATEGORY_PATTERN.matcher(state);
-            if (matcher.matches()) {
-                Long categoryId = Long.parseLong(matcher.group(1));
-                return handleEditingCategoryName(chatId, text, categoryId);
-            }
-            
-            // Проверяем, является ли состояние редактированием описания категории
-            matcher = EDITING_CATEGORY_DESCRIPTION_PATTERN.matcher(state);
-            if (matcher.matches()) {
-                Long categoryId = Long.parseLong(matcher.group(1));
-                return handleEditingCategoryDescription(chatId, text, categoryId);
-            }
-            
-            return null;
+        switch (state.state()) {
+            case ADDING_CATEGORY_NAME:
+                return handleAddingCategoryName(chatId, text);
+            case ADDING_CATEGORY_DESCRIPTION:
+                return handleAddingCategoryDescription(chatId, text);
+            case ADDING_CATEGORY_PARENT_SELECTION:
+                return handleAddingCategoryParentSelection(chatId, text);
+            case EDITING_CATEGORY_NAME:
+                if (state.hasParam()) {
+                    return handleEditingCategoryName(chatId, text, state.param());
+                }
+                // Состояние сохранено в прежнем формате: ID категории во временных данных
+                String categoryIdStr = user.getTempData();
+                if (categoryIdStr == null || categoryIdStr.isEmpty()) {
+                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование категории заново.");
+                }
+                return handleEditingCategoryName(chatId, text, Long.parseLong(categoryIdStr));
+            case EDITING_CATEGORY_DESCRIPTION:
+                return handleEditingCategoryDescription(chatId, text, state.param());
+            default:
+                return null;
         }
     }
     
@@ -142,10 +120,10 @@ public class CategoryStateHandler implements UpdateHandler {
         categoryDrafts.put(chatId, new CategoryDraft(categoryName));
         
         // Обновляем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_CATEGORY_DESCRIPTION");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_CATEGORY_DESCRIPTION.encode());
+            userUnitOfWork.save(user);
         }
         
         return createTextMessage(chatId, "Введите описание категории (или отправьте 'нет' для пропуска):");
@@ -167,16 +145,17 @@ public class CategoryStateHandler implements UpdateHandler {
         // Если описание не "нет", сохраняем его
         if (!description.equalsIgnoreCase("нет")) {
             draft.setDescription(description);
+            categoryDrafts.put(chatId, draft);
         }
         
         // Получаем список категорий для выбора родительской
         List<Category> categories = categoryService.getAllCategories();
         
         // Обновляем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_CATEGORY_PARENT_SELECTION");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_CATEGORY_PARENT_SELECTION.encode());
+            userUnitOfWork.save(user);
         }
         
         // Формируем сообщение с выбором родительской категории
@@ -233,10 +212,10 @@ public class CategoryStateHandler implements UpdateHandler {
             categoryDrafts.remove(chatId);
             
             // Обновляем состояние пользователя на обычное
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
                 user.setState(null);
-                telegramUserRepository.save(user);
+                userUnitOfWork.save(user);
             }
             
             // Формируем сообщение об успешном создании
@@ -288,10 +267,10 @@ public class CategoryStateHandler implements UpdateHandler {
         category = categoryService.updateCategory(categoryId, newName, category.getDescription());
         
         // Обновляем состояние пользователя на обычное
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение об успешном редактировании
@@ -323,10 +302,10 @@ public class CategoryStateHandler implements UpdateHandler {
         category = categoryService.updateCategory(categoryId, category.getName(), newDescription);
         
         // Обновляем состояние пользователя на обычное
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение об успешном редактировании
@@ -359,6 +338,10 @@ public class CategoryStateHandler implements UpdateHandler {
         private String description;
         private Long parentId; // ID родительской категории (для подкатегорий)
         
+        // Для чтения черновика из внешнего хранилища
+        private CategoryDraft() {
+        }
+        
         public CategoryDraft(String name) {
             this.name = name;
         }
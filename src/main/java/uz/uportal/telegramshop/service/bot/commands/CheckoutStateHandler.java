@@ -5,22 +5,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import uz.uportal.telegramshop.model.Order;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CartService;
 import uz.uportal.telegramshop.service.OrderService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.StateHandler;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Обработчик состояний для процесса оформления заказа
@@ -30,68 +31,51 @@ public class CheckoutStateHandler implements StateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(CheckoutStateHandler.class);
     
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final CartService cartService;
     private final OrderService orderService;
     private final KeyboardFactory keyboardFactory;
     
     public CheckoutStateHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             CartService cartService,
             OrderService orderService,
             KeyboardFactory keyboardFactory) {
-        this.telegramUserRepository = telegramUserRepository;
+        this.userUnitOfWork = userUnitOfWork;
         this.cartService = cartService;
         this.orderService = orderService;
         this.keyboardFactory = keyboardFactory;
     }
     
     @Override
-    public boolean canHandleState(Update update, String state) {
-        return state != null && (
-                state.equals("WAITING_FOR_ADDRESS") ||
-                state.equals("WAITING_FOR_PHONE") ||
-                state.equals("WAITING_FOR_COMMENT"));
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .state(ChatState.WAITING_FOR_ADDRESS, ChatState.WAITING_FOR_PHONE, ChatState.WAITING_FOR_COMMENT);
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        // This handler only handles state-based updates
-        return false;
-    }
-    
-    @Override
-    public BotApiMethod<?> handle(Update update) {
-        // This handler only handles state-based updates
-        return null;
-    }
-    
-    @Override
-    public BotApiMethod<?> handleState(Update update, String state) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
+    public BotApiMethod<?> handleState(UpdateContext context, StatePayload state) {
+        String text = context.getText();
+        if (text == null) {
             return null;
         }
         
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        String text = message.getText();
+        Long chatId = context.getChatId();
         
-        // Получаем пользователя
-        Optional<TelegramUser> userOpt = telegramUserRepository.findById(chatId);
-        if (userOpt.isEmpty()) {
+        // Пользователь уже загружен цепочкой при выборе обработчика по состоянию
+        TelegramUser user = context.getUser();
+        if (user == null) {
             logger.warn("User with chatId {} not found", chatId);
             return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, попробуйте позже.");
         }
         
-        TelegramUser user = userOpt.get();
-        
         try {
-            switch (state) {
-                case "WAITING_FOR_ADDRESS":
+            switch (state.state()) {
+                case WAITING_FOR_ADDRESS:
                     return handleAddressInput(user, chatId, text);
-                case "WAITING_FOR_PHONE":
+                case WAITING_FOR_PHONE:
                     return handlePhoneInput(user, chatId, text);
-                case "WAITING_FOR_COMMENT":
+                case WAITING_FOR_COMMENT:
                     return handleCommentInput(user, chatId, text);
                 default:
                     logger.warn("Unknown state: {}", state);
@@ -116,8 +100,8 @@ public class CheckoutStateHandler implements StateHandler {
         user.setTempData(address);
         
         // Переходим к следующему шагу - ввод номера телефона
-        user.setState("WAITING_FOR_PHONE");
-        telegramUserRepository.save(user);
+        user.setState(ChatState.WAITING_FOR_PHONE.encode());
+        userUnitOfWork.save(user);
         
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
@@ -139,8 +123,8 @@ public class CheckoutStateHandler implements StateHandler {
         user.setPhoneNumber(phone);
         
         // Переходим к следующему шагу - ввод комментария
-        user.setState("WAITING_FOR_COMMENT");
-        telegramUserRepository.save(user);
+        user.setState(ChatState.WAITING_FOR_COMMENT.encode());
+        userUnitOfWork.save(user);
         
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
@@ -173,7 +157,7 @@ public class CheckoutStateHandler implements StateHandler {
         
         // Очищаем временные данные
         user.setTempData(null);
-        telegramUserRepository.save(user);
+        userUnitOfWork.save(user);
         
         if (order != null) {
             SendMessage message = new SendMessage();
@@ -0,0 +1,129 @@
+package uz.uportal.telegramshop.service.bot.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uz.uportal.telegramshop.service.bot.catalog.CatalogPage;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex;
+
+/**
+ * Обработчик inline-запросов ({@code @bot iphone}): поиск товаров по {@link ProductSearchIndex}.
+ * Ответ приходит страницами по {@code telegram.bot.inline.page-size} результатов, номер следующей
+ * передается в next_offset. Результаты не зависят от пользователя, поэтому Telegram кэширует ответ
+ * на {@code telegram.bot.inline.cache-time} секунд для всех, и повторный запрос до бота не доходит.
+ */
+@Component
+public class InlineSearchHandler implements UpdateHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(InlineSearchHandler.class);
+    /**
+     * Ограничение Bot API на количество результатов в одном ответе
+     */
+    private static final int MAX_RESULTS = 50;
+
+    private final ProductSearchIndex searchIndex;
+    private final int pageSize;
+    private final int cacheTime;
+    private final Timer foundTimer;
+    private final Timer emptyTimer;
+
+    public InlineSearchHandler(
+            ProductSearchIndex searchIndex,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.inline.page-size:20}") int pageSize,
+            @Value("${telegram.bot.inline.cache-time:300}") int cacheTime) {
+        this.searchIndex = searchIndex;
+        this.pageSize = Math.max(1, Math.min(pageSize, MAX_RESULTS));
+        this.cacheTime = cacheTime;
+        this.foundTimer = latencyTimer(meterRegistry, "found");
+        this.emptyTimer = latencyTimer(meterRegistry, "empty");
+    }
+
+    private static Timer latencyTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("telegram.search.inline.latency")
+                .description("Время ответа на inline-запрос")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create().inlineQuery();
+    }
+
+    @Override
+    public BotApiMethod<?> handle(UpdateContext context) {
+        long startedAt = System.nanoTime();
+        UpdateEnvelope envelope = context.getEnvelope();
+        int offset = parseOffset(envelope.getInlineOffset());
+        ProductSearchIndex.Result found = searchIndex.search(envelope.getText(), offset, pageSize);
+
+        List<InlineQueryResult> results = new ArrayList<>(found.hits().size());
+        for (ProductSearchIndex.Hit hit : found.hits()) {
+            results.add(article(hit.entry()));
+        }
+        int next = offset + results.size();
+
+        (found.total() > 0 ? foundTimer : emptyTimer).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        logger.debug("Inline-запрос '{}' с {}: найдено {}", envelope.getText(), offset, found.total());
+        return AnswerInlineQuery.builder()
+                .inlineQueryId(envelope.getInlineQueryId())
+                .results(results)
+                .cacheTime(cacheTime)
+                .isPersonal(false)
+                .nextOffset(next < found.total() ? String.valueOf(next) : "")
+                .build();
+    }
+
+    /**
+     * Результат с карточкой товара: по выбору в чат отправляется тот же текст, что и в каталоге
+     * @param entry снимок товара
+     * @return результат inline-запроса
+     */
+    private static InlineQueryResult article(ProductSearchIndex.Entry entry) {
+        InlineQueryResultArticle article = InlineQueryResultArticle.builder()
+                .id(String.valueOf(entry.id()))
+                .title(entry.name())
+                .description("💰 " + entry.price() + " руб. · "
+                        + (entry.inStock() ? "📦 " + entry.stock() + " шт." : "нет в наличии"))
+                .inputMessageContent(InputTextMessageContent.builder()
+                        .messageText(CatalogPage.cardText(entry.name(), entry.price(), entry.stock(),
+                                entry.description()))
+                        .parseMode("Markdown")
+                        .build())
+                .build();
+        // Telegram загружает миниатюру сам, поэтому подходят только внешние адреса
+        if (entry.imageUrl() != null && entry.imageUrl().startsWith("http")) {
+            article.setThumbnailUrl(entry.imageUrl());
+        }
+        return article;
+    }
+
+    private static int parseOffset(String offset) {
+        if (offset == null || offset.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(offset));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -2,85 +2,91 @@ package uz.uportal.telegramshop.service.bot.commands;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.ShopSettings;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CartService;
 import uz.uportal.telegramshop.service.CategoryService;
 import uz.uportal.telegramshop.service.ShopSettingsService;
+import uz.uportal.telegramshop.service.bot.catalog.CatalogPageSender;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex;
+import uz.uportal.telegramshop.service.search.ProductTrigramIndex;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Обработчик кнопок главного меню
+ * Обработчик кнопок главного меню и поиска товаров по свободному тексту
  */
 @Component
 public class MainMenuHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(MainMenuHandler.class);
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final KeyboardFactory keyboardFactory;
     private final CategoryService categoryService;
     private final CartService cartService;
     private final ShopSettingsService shopSettingsService;
+    private final ProductTrigramIndex trigramIndex;
+    private final int searchResults;
     
     public MainMenuHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             KeyboardFactory keyboardFactory,
             CategoryService categoryService,
             CartService cartService,
-            ShopSettingsService shopSettingsService) {
-        this.telegramUserRepository = telegramUserRepository;
+            ShopSettingsService shopSettingsService,
+            ProductTrigramIndex trigramIndex,
+            @Value("${telegram.bot.search.results:8}") int searchResults) {
+        this.userUnitOfWork = userUnitOfWork;
         this.keyboardFactory = keyboardFactory;
         this.categoryService = categoryService;
         this.cartService = cartService;
         this.shopSettingsService = shopSettingsService;
+        this.trigramIndex = trigramIndex;
+        this.searchResults = searchResults;
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
-            return false;
-        }
-        
-        String text = update.getMessage().getText();
-        return text.equals("🛍 Каталог") || 
-               text.equals("🛒 Корзина") || 
-               text.equals("ℹ️ Информация") || 
-               text.equals("📞 Поддержка") || 
-               text.equals("⚙️ Админ панель");
+    public UpdateRoutes routes() {
+        // "⚙️ Админ панель" обслуживает AdminPanelHandler; остальной текст без состояния — поиск товаров
+        return UpdateRoutes.create()
+                .text("🛍 Каталог", "🛒 Корзина", "ℹ️ Информация", "📞 Поддержка")
+                .textFallback();
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        String text = message.getText();
+    public BotApiMethod<?> handle(UpdateContext context) {
+        Long chatId = context.getChatId();
+        String text = context.getText();
         
         logger.info("Handling main menu button: {} for chatId: {}", text, chatId);
         
-        // Получаем пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId)
-                .orElseGet(() -> {
-                    TelegramUser newUser = new TelegramUser(
-                            chatId,
-                            message.getFrom().getUserName(),
-                            message.getFrom().getFirstName(),
-                            message.getFrom().getLastName()
-                    );
-                    return telegramUserRepository.save(newUser);
-                });
+        // Получаем пользователя; полный Update нужен только для регистрации нового
+        TelegramUser user = context.getUser();
+        if (user == null) {
+            Message message = context.getUpdate().getMessage();
+            user = userUnitOfWork.save(new TelegramUser(
+                    chatId,
+                    message.getFrom().getUserName(),
+                    message.getFrom().getFirstName(),
+                    message.getFrom().getLastName()
+            ));
+        }
         
         // Обрабатываем нажатие кнопки
         switch (text) {
@@ -92,11 +98,63 @@ public class MainMenuHandler implements UpdateHandler {
                 return handleInfo(chatId);
             case "📞 Поддержка":
                 return handleHelp(chatId);
-            case "⚙️ Админ панель":
-                return handleAdminPanel(chatId, user);
             default:
-                return null;
+                return handleSearch(chatId, text);
+        }
+    }
+    
+    /**
+     * Ищет товары по тексту сообщения в триграммном индексе, с учетом опечаток
+     * и написания кириллицей или латиницей
+     * @param chatId ID чата
+     * @param text текст сообщения
+     * @return ответ бота или null для неизвестной команды
+     */
+    private BotApiMethod<?> handleSearch(Long chatId, String text) {
+        if (text.startsWith("/")) {
+            // Неизвестная команда: бот ответит сообщением по умолчанию
+            return null;
+        }
+        
+        List<ProductTrigramIndex.Match> matches = trigramIndex.search(text, searchResults);
+        logger.debug("Поиск '{}' для chatId {}: найдено {}", text, chatId, matches.size());
+        
+        SendMessage sendMessage = new SendMessage();
+        sendMessage.setChatId(chatId);
+        
+        if (matches.isEmpty()) {
+            sendMessage.setText("🔍 По вашему запросу ничего не найдено. "
+                    + "Попробуйте написать название иначе или откройте каталог.");
+            return sendMessage;
+        }
+        
+        StringBuilder resultText = new StringBuilder();
+        resultText.append("🔍 *Найденные товары:*\n\n");
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        int number = 1;
+        for (ProductTrigramIndex.Match match : matches) {
+            ProductSearchIndex.Entry product = match.entry();
+            resultText.append(number++).append(". *").append(product.name()).append("* — ")
+                    .append(product.price()).append(" руб.");
+            if (product.inStock()) {
+                InlineKeyboardButton addToCartButton = new InlineKeyboardButton();
+                addToCartButton.setText("🛒 " + CatalogPageSender.buttonName(product.name()));
+                addToCartButton.setCallbackData(CallbackCodec.encode(CallbackAction.ADD_TO_CART, product.id()));
+                keyboard.add(List.of(addToCartButton));
+            } else {
+                resultText.append(" (нет в наличии)");
+            }
+            resultText.append("\n");
+        }
+        
+        sendMessage.setText(resultText.toString());
+        sendMessage.setParseMode("Markdown");
+        if (!keyboard.isEmpty()) {
+            InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+            keyboardMarkup.setKeyboard(keyboard);
+            sendMessage.setReplyMarkup(keyboardMarkup);
         }
+        return sendMessage;
     }
     
     /**
@@ -135,7 +193,7 @@ public class MainMenuHandler implements UpdateHandler {
         SendMessage sendMessage = new SendMessage();
         sendMessage.setChatId(chatId);
         
-        String cartInfo = cartService.getCartInfo(chatId);
+        String cartInfo = cartService.getCartInfo(user);
         
         if (cartInfo.isEmpty()) {
             sendMessage.setText("Ваша корзина пуста. Добавьте товары из каталога.");
@@ -207,7 +265,8 @@ public class MainMenuHandler implements UpdateHandler {
         helpText.append("🛍 *Каталог* - просмотр категорий товаров\n");
         helpText.append("🛒 *Корзина* - просмотр и управление корзиной\n");
         helpText.append("ℹ️ *Информация* - информация о магазине\n");
-        helpText.append("📞 *Поддержка* - контакты для связи\n\n");
+        helpText.append("📞 *Поддержка* - контакты для связи\n");
+        helpText.append("🔍 Чтобы найти товар, просто напишите его название\n\n");
         helpText.append(settings.getSupportInfo()).append(" ").append(settings.getPhone());
         
         sendMessage.setText(helpText.toString());
@@ -215,28 +274,4 @@ public class MainMenuHandler implements UpdateHandler {
         
         return sendMessage;
     }
-    
-    /**
-     * Обрабатывает нажатие кнопки "Админ панель"
-     * @param chatId ID чата
-     * @param user пользователь
-     * @return ответ бота
-     */
-    private BotApiMethod<?> handleAdminPanel(Long chatId, TelegramUser user) {
-        SendMessage sendMessage = new SendMessage();
-        sendMessage.setChatId(chatId);
-        
-        // Проверяем, имеет ли пользователь права администратора или менеджера
-        if ("ADMIN".equals(user.getRole()) || "MANAGER".equals(user.getRole())) {
-            sendMessage.setText("⚙️ *Панель администратора*\n\n" +
-                    "Здесь вы можете управлять товарами, категориями и заказами.");
-            sendMessage.setParseMode("Markdown");
-            
-            // Здесь можно добавить клавиатуру для админ-панели
-        } else {
-            sendMessage.setText("У вас нет доступа к панели администратора.");
-        }
-        
-        return sendMessage;
-    }
 } 
\ No newline at end of file
@@ -9,21 +9,20 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
-import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.MaybeInaccessibleMessage;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import uz.uportal.telegramshop.model.Order;
 import uz.uportal.telegramshop.model.OrderItem;
 import uz.uportal.telegramshop.model.OrderStatus;
-import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.OrderService;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.CallbackPayload;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.util.ArrayList;
@@ -38,7 +37,6 @@ public class OrderManagementHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(OrderManagementHandler.class);
     
-    private final TelegramUserRepository telegramUserRepository;
     private final OrderService orderService;
     private final KeyboardFactory keyboardFactory;
     private final MessageSender messageSender;
@@ -46,61 +44,55 @@ public class OrderManagementHandler implements UpdateHandler {
     private static final int ORDERS_PAGE_SIZE = 5;
     
     public OrderManagementHandler(
-            TelegramUserRepository telegramUserRepository,
             OrderService orderService,
             KeyboardFactory keyboardFactory,
             MessageSender messageSender) {
-        this.telegramUserRepository = telegramUserRepository;
         this.orderService = orderService;
         this.keyboardFactory = keyboardFactory;
         this.messageSender = messageSender;
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (update.hasCallbackQuery()) {
-            String callbackData = update.getCallbackQuery().getData();
-            return callbackData.startsWith("orders_") || 
-                   callbackData.startsWith("order_status_") ||
-                   callbackData.startsWith("order_details_") ||
-                   callbackData.equals("orders_all") ||
-                   callbackData.equals("orders_new") ||
-                   callbackData.equals("orders_processing") ||
-                   callbackData.equals("orders_completed") ||
-                   callbackData.equals("orders_cancelled");
-        }
-        return false;
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .action(CallbackAction.ORDERS_PAGE, CallbackAction.ORDER_DETAILS, CallbackAction.ORDER_STATUS)
+                .callbackPrefix("orders_", "order_status_", "order_details_");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        CallbackQuery callbackQuery = update.getCallbackQuery();
-        String callbackData = callbackQuery.getData();
-        
-        Long chatId = callbackQuery.getMessage().getChatId();
-        Integer messageId = null;
-        
-        try {
-            MaybeInaccessibleMessage maybeMessage = callbackQuery.getMessage();
-            
-            // Проверяем, доступно ли сообщение
-            if (maybeMessage instanceof Message) {
-                Message message = (Message) maybeMessage;
-                messageId = message.getMessageId();
-            }
-        } catch (Exception e) {
-            logger.error("Error getting messageId from callback query", e);
-        }
+    public BotApiMethod<?> handle(UpdateContext context) {
+        String callbackData = context.getCallbackData();
+        Long chatId = context.getChatId();
+        // null, если сообщение с кнопкой недоступно: тогда ответ отправляется новым сообщением
+        Integer messageId = context.getMessageId();
         
         logger.info("Handling order management callback: {} for chatId: {}", callbackData, chatId);
         
         try {
             // Проверяем доступ пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            if (user == null || (!user.getRole().equals("ADMIN") && !user.getRole().equals("MANAGER"))) {
+            if (!context.isAdminOrManager()) {
                 return createTextMessage(chatId, "У вас нет доступа к управлению заказами.");
             }
             
+            // Действия с параметрами: компактный формат или прежние строки вида order_details_ID
+            CallbackPayload payload = context.getCallbackPayload();
+            if (payload != null) {
+                switch (payload.action()) {
+                    case ORDERS_PAGE:
+                        // Код статуса: 0 — все заказы, иначе ordinal статуса + 1
+                        int statusCode = payload.firstInt();
+                        return statusCode == 0
+                                ? handleAllOrders(chatId, messageId, payload.secondInt())
+                                : handleOrdersByStatus(chatId, messageId, OrderStatus.values()[statusCode - 1], payload.secondInt());
+                    case ORDER_DETAILS:
+                        return handleOrderDetails(chatId, messageId, payload.first());
+                    case ORDER_STATUS:
+                        return handleChangeOrderStatus(chatId, messageId, payload.first(), OrderStatus.values()[payload.secondInt()]);
+                    default:
+                        break;
+                }
+            }
+            
             if (callbackData.equals("orders_all")) {
                 return handleAllOrders(chatId, messageId, 1);
             } else if (callbackData.equals("orders_new")) {
@@ -113,8 +105,6 @@ public class OrderManagementHandler implements UpdateHandler {
                 return handleOrdersByStatus(chatId, messageId, OrderStatus.CANCELLED, 1);
             } else if (callbackData.startsWith("orders_page_")) {
                 return handleOrdersPage(chatId, messageId, callbackData);
-            } else if (callbackData.startsWith("order_details_")) {
-                return handleOrderDetails(chatId, messageId, callbackData);
             } else if (callbackData.startsWith("order_status_")) {
                 return handleChangeOrderStatus(chatId, messageId, callbackData);
             }
@@ -203,14 +193,11 @@ public class OrderManagementHandler implements UpdateHandler {
      * 
      * @param chatId ID чата
      * @param messageId ID сообщения
-     * @param callbackData данные колбэка
+     * @param orderId ID заказа
      * @return ответ бота
      */
-    private BotApiMethod<?> handleOrderDetails(Long chatId, Integer messageId, String callbackData) {
+    private BotApiMethod<?> handleOrderDetails(Long chatId, Integer messageId, Long orderId) {
         try {
-            // Ожидаемый формат: order_details_[orderId]
-            Long orderId = Long.parseLong(callbackData.replace("order_details_", ""));
-            
             Optional<Order> orderOpt = orderService.getOrderById(orderId);
             if (orderOpt.isEmpty()) {
                 return createEditMessage(chatId, messageId, "Заказ не найден.", createBackToOrdersKeyboard());
@@ -248,7 +235,7 @@ public class OrderManagementHandler implements UpdateHandler {
     }
     
     /**
-     * Обрабатывает изменение статуса заказа
+     * Обрабатывает изменение статуса заказа по кнопке в прежнем строковом формате
      * 
      * @param chatId ID чата
      * @param messageId ID сообщения
@@ -265,14 +252,30 @@ public class OrderManagementHandler implements UpdateHandler {
             
             Long orderId = Long.parseLong(parts[2]);
             String statusStr = parts[3].toUpperCase();
-            OrderStatus newStatus = OrderStatus.valueOf(statusStr);
-            
+            return handleChangeOrderStatus(chatId, messageId, orderId, OrderStatus.valueOf(statusStr));
+        } catch (Exception e) {
+            logger.error("Error changing order status: {}", e.getMessage(), e);
+            return createTextMessage(chatId, "Произошла ошибка при изменении статуса заказа.");
+        }
+    }
+    
+    /**
+     * Обрабатывает изменение статуса заказа
+     * 
+     * @param chatId ID чата
+     * @param messageId ID сообщения
+     * @param orderId ID заказа
+     * @param newStatus новый статус
+     * @return ответ бота
+     */
+    private BotApiMethod<?> handleChangeOrderStatus(Long chatId, Integer messageId, Long orderId, OrderStatus newStatus) {
+        try {
             Order updatedOrder = orderService.updateOrderStatus(orderId, newStatus);
             if (updatedOrder == null) {
                 return createEditMessage(chatId, messageId, "Заказ не найден или не может быть обновлен.", createBackToOrdersKeyboard());
             }
             
-            return handleOrderDetails(chatId, messageId, "order_details_" + orderId);
+            return handleOrderDetails(chatId, messageId, orderId);
         } catch (Exception e) {
             logger.error("Error changing order status: {}", e.getMessage(), e);
             return createTextMessage(chatId, "Произошла ошибка при изменении статуса заказа.");
@@ -329,7 +332,7 @@ public class OrderManagementHandler implements UpdateHandler {
             List<InlineKeyboardButton> row = new ArrayList<>();
             InlineKeyboardButton detailsButton = new InlineKeyboardButton();
             detailsButton.setText("Заказ #" + order.getId() + " - " + getStatusText(order.getStatus()));
-            detailsButton.setCallbackData("order_details_" + order.getId());
+            detailsButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDER_DETAILS, order.getId()));
             row.add(detailsButton);
             keyboard.add(row);
         }
@@ -341,14 +344,14 @@ public class OrderManagementHandler implements UpdateHandler {
             if (currentPage > 1) {
                 InlineKeyboardButton prevButton = new InlineKeyboardButton();
                 prevButton.setText("◀️ Назад");
-                prevButton.setCallbackData("orders_page_" + (status == null ? "all" : status.name().toLowerCase()) + "_" + (currentPage - 1));
+                prevButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDERS_PAGE, statusCode(status), currentPage - 1));
                 paginationRow.add(prevButton);
             }
             
             if (currentPage < totalPages) {
                 InlineKeyboardButton nextButton = new InlineKeyboardButton();
                 nextButton.setText("Вперед ▶️");
-                nextButton.setCallbackData("orders_page_" + (status == null ? "all" : status.name().toLowerCase()) + "_" + (currentPage + 1));
+                nextButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDERS_PAGE, statusCode(status), currentPage + 1));
                 paginationRow.add(nextButton);
             }
             
@@ -370,6 +373,16 @@ public class OrderManagementHandler implements UpdateHandler {
         return keyboardMarkup;
     }
     
+    /**
+     * Код статуса для кнопок пагинации: 0 — все заказы, иначе ordinal статуса + 1
+     * 
+     * @param status статус заказов (null для всех заказов)
+     * @return код статуса
+     */
+    private static int statusCode(OrderStatus status) {
+        return status == null ? 0 : status.ordinal() + 1;
+    }
+    
     /**
      * Создает клавиатуру для деталей заказа
      * 
@@ -388,24 +401,24 @@ public class OrderManagementHandler implements UpdateHandler {
             case NEW:
                 InlineKeyboardButton processingButton = new InlineKeyboardButton();
                 processingButton.setText("🔄 В обработку");
-                processingButton.setCallbackData("order_status_" + order.getId() + "_processing");
+                processingButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDER_STATUS, order.getId(), OrderStatus.PROCESSING.ordinal()));
                 statusRow.add(processingButton);
                 
                 InlineKeyboardButton cancelButton = new InlineKeyboardButton();
                 cancelButton.setText("❌ Отменить");
-                cancelButton.setCallbackData("order_status_" + order.getId() + "_cancelled");
+                cancelButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDER_STATUS, order.getId(), OrderStatus.CANCELLED.ordinal()));
                 statusRow.add(cancelButton);
                 break;
                 
             case PROCESSING:
                 InlineKeyboardButton completeButton = new InlineKeyboardButton();
                 completeButton.setText("✅ Выполнен");
-                completeButton.setCallbackData("order_status_" + order.getId() + "_completed");
+                completeButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDER_STATUS, order.getId(), OrderStatus.COMPLETED.ordinal()));
                 statusRow.add(completeButton);
                 
                 InlineKeyboardButton cancelProcessingButton = new InlineKeyboardButton();
                 cancelProcessingButton.setText("❌ Отменить");
-                cancelProcessingButton.setCallbackData("order_status_" + order.getId() + "_cancelled");
+                cancelProcessingButton.setCallbackData(CallbackCodec.encode(CallbackAction.ORDER_STATUS, order.getId(), OrderStatus.CANCELLED.ordinal()));
                 statusRow.add(cancelProcessingButton);
                 break;
                 
@@ -7,25 +7,30 @@ import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import uz.uportal.telegramshop.model.Category;
 import uz.uportal.telegramshop.model.Product;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.CategoryService;
 import uz.uportal.telegramshop.service.ProductService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.StateCodec;
 import uz.uportal.telegramshop.service.bot.core.StateHandler;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
+import uz.uportal.telegramshop.service.bot.draft.DraftStore;
+import uz.uportal.telegramshop.service.bot.draft.DraftStores;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Обработчик состояний пользователя при добавлении и редактировании товара
@@ -34,152 +39,114 @@ import java.util.Optional;
 public class ProductStateHandler implements StateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(ProductStateHandler.class);
-    private final TelegramUserRepository telegramUserRepository;
+    private static final Set<ChatState> STATES = EnumSet.of(
+            ChatState.ADDING_PRODUCT_NAME, ChatState.ADDING_PRODUCT_PRICE, ChatState.ADDING_PRODUCT_STOCK,
+            ChatState.ADDING_PRODUCT_CATEGORY, ChatState.ADDING_PRODUCT_DESCRIPTION, ChatState.ADDING_PRODUCT_IMAGE,
+            ChatState.EDITING_PRODUCT, ChatState.EDITING_PRODUCT_NAME, ChatState.EDITING_PRODUCT_PRICE,
+            ChatState.EDITING_PRODUCT_STOCK, ChatState.EDITING_PRODUCT_CATEGORY, ChatState.EDITING_PRODUCT_DESCRIPTION,
+            ChatState.EDITING_PRODUCT_IMAGE);
+    private final UserUnitOfWork userUnitOfWork;
     private final KeyboardFactory keyboardFactory;
     private final ProductService productService;
     private final CategoryService categoryService;
     private final MessageSender messageSender;
     
     // Временное хранилище данных о товарах в процессе добавления/редактирования
-    private final Map<Long, Product> productDrafts = new HashMap<>();
+    private final DraftStore<Product> productDrafts;
     
     public ProductStateHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             KeyboardFactory keyboardFactory,
             ProductService productService,
             CategoryService categoryService,
-            MessageSender messageSender) {
-        this.telegramUserRepository = telegramUserRepository;
+            MessageSender messageSender,
+            DraftStores draftStores) {
+        this.userUnitOfWork = userUnitOfWork;
         this.keyboardFactory = keyboardFactory;
         this.productService = productService;
         this.categoryService = categoryService;
         this.messageSender = messageSender;
+        this.productDrafts = draftStores.create("product", ProductDraft.class, ProductDraft::of, ProductDraft::toProduct);
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasMessage()) {
-            return false;
-        }
-        
-        Long chatId = update.getMessage().getChatId();
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-        
-        if (user == null) {
-            return false;
-        }
-        
-        String state = user.getState();
-        return state != null && (
-                state.equals("ADDING_PRODUCT_NAME") ||
-                state.equals("ADDING_PRODUCT_PRICE") ||
-                state.equals("ADDING_PRODUCT_STOCK") ||
-                state.equals("ADDING_PRODUCT_CATEGORY") ||
-                state.equals("ADDING_PRODUCT_DESCRIPTION") ||
-                state.equals("ADDING_PRODUCT_IMAGE") ||
-                state.startsWith("EDITING_PRODUCT_") ||
-                state.equals("EDITING_PRODUCT_NAME") ||
-                state.equals("EDITING_PRODUCT_PRICE") ||
-                state.equals("EDITING_PRODUCT_STOCK") ||
-                state.equals("EDITING_PRODUCT_CATEGORY") ||
-                state.equals("EDITING_PRODUCT_DESCRIPTION") ||
-                state.equals("EDITING_PRODUCT_IMAGE")
-        );
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .callbackPrefix("edit_product_")
+                .state(STATES.toArray(new ChatState[0]));
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        Long chatId = update.getMessage().getChatId();
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+    public BotApiMethod<?> handle(UpdateContext context) {
+        Long chatId = context.getChatId();
+        String callbackData = context.getCallbackData();
+        if (callbackData != null && callbackData.startsWith("edit_product_")) {
+            return handleEditProduct(context, callbackData);
+        }
+        TelegramUser user = context.getUser();
         
         if (user == null) {
             return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
         }
         
-        String state = user.getState();
-        return handleState(update, state);
-    }
-    
-    @Override
-    public boolean canHandleState(Update update, String state) {
-        return state != null && (
-                state.equals("ADDING_PRODUCT_NAME") ||
-                state.equals("ADDING_PRODUCT_PRICE") ||
-                state.equals("ADDING_PRODUCT_STOCK") ||
-                state.equals("ADDING_PRODUCT_CATEGORY") ||
-                state.equals("ADDING_PRODUCT_DESCRIPTION") ||
-                state.equals("ADDING_PRODUCT_IMAGE") ||
-                state.startsWith("EDITING_PRODUCT_") ||
-                state.equals("EDITING_PRODUCT_NAME") ||
-                state.equals("EDITING_PRODUCT_PRICE") ||
-                state.equals("EDITING_PRODUCT_STOCK") ||
-                state.equals("EDITING_PRODUCT_CATEGORY") ||
-                state.equals("EDITING_PRODUCT_DESCRIPTION") ||
-                state.equals("EDITING_PRODUCT_IMAGE")
-        );
+        StatePayload state = StateCodec.decode(user.getState());
+        if (state == null) {
+            return createTextMessage(chatId, "Неизвестное состояние. Пожалуйста, начните заново.");
+        }
+        return handleState(context, state);
     }
     
     @Override
-    public BotApiMethod<?> handleState(Update update, String state) {
-        Long chatId = update.getMessage().getChatId();
-        Message message = update.getMessage();
-        String text = message.getText();
+    public BotApiMethod<?> handleState(UpdateContext context, StatePayload state) {
+        Long chatId = context.getChatId();
+        String text = context.getText();
+        String photoFileId = context.getPhotoFileId();
+        long productId = state.param();
         
         logger.info("Handling state: {} for chatId: {}", state, chatId);
         
-        // Обработка состояний добавления товара
-        if (state.equals("ADDING_PRODUCT_NAME")) {
-            return handleAddingProductName(chatId, text);
-        } else if (state.equals("ADDING_PRODUCT_PRICE")) {
-            return handleAddingProductPrice(chatId, text);
-        } else if (state.equals("ADDING_PRODUCT_STOCK")) {
-            return handleAddingProductStock(chatId, text);
-        } else if (state.equals("ADDING_PRODUCT_CATEGORY")) {
-            return handleAddingProductCategory(chatId, text);
-        } else if (state.equals("ADDING_PRODUCT_DESCRIPTION")) {
-            return handleAddingProductDescription(chatId, text);
-        } else if (state.equals("ADDING_PRODUCT_IMAGE")) {
-            if (message.hasPhoto()) {
-                return handleAddingProductImage(chatId, message);
-            } else {
+        switch (state.state()) {
+            // Обработка состояний добавления товара
+            case ADDING_PRODUCT_NAME:
+                return handleAddingProductName(chatId, text);
+            case ADDING_PRODUCT_PRICE:
+                return handleAddingProductPrice(chatId, text);
+            case ADDING_PRODUCT_STOCK:
+                return handleAddingProductStock(chatId, text);
+            case ADDING_PRODUCT_CATEGORY:
+                return handleAddingProductCategory(chatId, text);
+            case ADDING_PRODUCT_DESCRIPTION:
+                return handleAddingProductDescription(chatId, text);
+            case ADDING_PRODUCT_IMAGE:
+                if (photoFileId != null) {
+                    return handleAddingProductImage(chatId, photoFileId);
+                }
                 return handleSkipProductImage(chatId);
-            }
-        }
-        
-        // Обработка начального состояния редактирования товара
-        else if (state.startsWith("EDITING_PRODUCT_") && 
-                 !state.equals("EDITING_PRODUCT_NAME") && 
-                 !state.equals("EDITING_PRODUCT_PRICE") && 
-                 !state.equals("EDITING_PRODUCT_STOCK") && 
-                 !state.equals("EDITING_PRODUCT_CATEGORY") && 
-                 !state.equals("EDITING_PRODUCT_DESCRIPTION") && 
-                 !state.equals("EDITING_PRODUCT_IMAGE")) {
             
-            logger.info("Обработка состояния редактирования товара: {}", state);
-            return handleEditingProductField(chatId, text);
-        }
-        
-        // Обработка состояний редактирования товара
-        else if (state.equals("EDITING_PRODUCT_NAME")) {
-            return handleEditingProductName(chatId, text);
-        } else if (state.equals("EDITING_PRODUCT_PRICE")) {
-            return handleEditingProductPrice(chatId, text);
-        } else if (state.equals("EDITING_PRODUCT_STOCK")) {
-            return handleEditingProductStock(chatId, text);
-        } else if (state.equals("EDITING_PRODUCT_CATEGORY")) {
-            return handleEditingProductCategory(chatId, text);
-        } else if (state.equals("EDITING_PRODUCT_DESCRIPTION")) {
-            return handleEditingProductDescription(chatId, text);
-        } else if (state.equals("EDITING_PRODUCT_IMAGE")) {
-            if (message.hasPhoto()) {
-                return handleEditingProductImage(chatId, message);
-            } else {
-                return handleSkipEditingProductImage(chatId);
-            }
+            // Выбор поля для редактирования товара
+            case EDITING_PRODUCT:
+                return handleEditingProductField(chatId, productId, text);
+            
+            // Обработка состояний редактирования товара
+            case EDITING_PRODUCT_NAME:
+                return handleEditingProductName(chatId, productId, text);
+            case EDITING_PRODUCT_PRICE:
+                return handleEditingProductPrice(chatId, productId, text);
+            case EDITING_PRODUCT_STOCK:
+                return handleEditingProductStock(chatId, productId, text);
+            case EDITING_PRODUCT_CATEGORY:
+                return handleEditingProductCategory(chatId, productId, text);
+            case EDITING_PRODUCT_DESCRIPTION:
+                return handleEditingProductDescription(chatId, productId, text);
+            case EDITING_PRODUCT_IMAGE:
+                if (photoFileId != null) {
+                    return handleEditingProductImage(chatId, productId, photoFileId);
+                }
+                return handleSkipEditingProductImage(chatId, productId);
+            default:
+                logger.warn("Неизвестное состояние: {}", state);
+                return createTextMessage(chatId, "Неизвестное состояние. Пожалуйста, начните заново.");
         }
-        
-        logger.warn("Неизвестное состояние: {}", state);
-        return createTextMessage(chatId, "Неизвестное состояние. Пожалуйста, начните заново.");
     }
     
     /**
@@ -195,10 +162,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.put(chatId, product);
         
         // Обновляем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_PRODUCT_PRICE");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_PRODUCT_PRICE.encode());
+            userUnitOfWork.save(user);
         }
         
         return createTextMessage(chatId, "Введите цену товара (в рублях):");
@@ -224,10 +191,10 @@ public class ProductStateHandler implements StateHandler {
             productDrafts.put(chatId, product);
             
             // Обновляем состояние пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("ADDING_PRODUCT_STOCK");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.ADDING_PRODUCT_STOCK.encode());
+                userUnitOfWork.save(user);
             }
             
             return createTextMessage(chatId, "Введите количество товара в наличии:");
@@ -265,10 +232,10 @@ public class ProductStateHandler implements StateHandler {
             }
             
             // Обновляем состояние пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("ADDING_PRODUCT_CATEGORY");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.ADDING_PRODUCT_CATEGORY.encode());
+                userUnitOfWork.save(user);
             }
             
             return createTextMessage(chatId, messageText.toString());
@@ -304,10 +271,10 @@ public class ProductStateHandler implements StateHandler {
             productDrafts.put(chatId, product);
             
             // Обновляем состояние пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("ADDING_PRODUCT_DESCRIPTION");
-                telegramUserRepository.save(user);
+                user.setState(ChatState.ADDING_PRODUCT_DESCRIPTION.encode());
+                userUnitOfWork.save(user);
             }
             
             return createTextMessage(chatId, "Введите описание товара:");
@@ -333,10 +300,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.put(chatId, product);
         
         // Обновляем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("ADDING_PRODUCT_IMAGE");
-            telegramUserRepository.save(user);
+            user.setState(ChatState.ADDING_PRODUCT_IMAGE.encode());
+            userUnitOfWork.save(user);
         }
         
         return createTextMessage(chatId, "Отправьте изображение товара или введите любой текст, чтобы пропустить этот шаг:");
@@ -345,19 +312,16 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает добавление изображения товара
      * @param chatId ID чата
-     * @param message сообщение с изображением
+     * @param fileId file_id изображения наибольшего размера
      * @return ответ бота
      */
-    private BotApiMethod<?> handleAddingProductImage(Long chatId, Message message) {
+    private BotApiMethod<?> handleAddingProductImage(Long chatId, String fileId) {
         // Получаем черновик товара
         Product product = productDrafts.get(chatId);
         if (product == null) {
             return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните добавление товара заново.");
         }
         
-        // Получаем fileId изображения
-        String fileId = message.getPhoto().get(message.getPhoto().size() - 1).getFileId();
-        
         // Сохраняем товар с изображением
         Product savedProduct = productService.createProduct(
             product.getName(),
@@ -372,10 +336,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.remove(chatId);
         
         // Сбрасываем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение об успешном добавлении товара
@@ -439,10 +403,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.remove(chatId);
         
         // Сбрасываем состояние пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение об успешном добавлении товара
@@ -466,96 +430,41 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает выбор поля для редактирования товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param text текст сообщения
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductField(Long chatId, String text) {
+    private BotApiMethod<?> handleEditingProductField(Long chatId, long productId, String text) {
         logger.info("Обработка выбора поля для редактирования. chatId: {}, text: {}", chatId, text);
         
         try {
-            // Получаем черновик товара
-            Product product = productDrafts.get(chatId);
-            
-            // Если черновик не найден, пытаемся получить товар из состояния пользователя
+            // Получаем черновик товара, созданный при входе в режим редактирования
+            Product product = editedProduct(chatId, productId);
             if (product == null) {
-                logger.info("Черновик товара не найден для chatId: {}, пытаемся получить из состояния", chatId);
-                
-                TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                if (user == null) {
-                    logger.error("Пользователь не найден для chatId: {}", chatId);
-                    return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-                }
-                
-                String state = user.getState();
-                if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                    logger.error("Некорректное состояние пользователя: {}", state);
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                String productIdStr = state.replace("EDITING_PRODUCT_", "");
-                try {
-                    Long productId = Long.parseLong(productIdStr);
-                    Optional<Product> productOpt = productService.getProductById(productId);
-                    
-                    if (productOpt.isEmpty()) {
-                        logger.error("Товар с ID {} не найден", productId);
-                        
-                        // Сбрасываем состояние пользователя
-                        user.setState(null);
-                        telegramUserRepository.save(user);
-                        
-                        return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                    }
-                    
-                    product = productOpt.get();
-                    productDrafts.put(chatId, product);
-                    logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-                    
-                    // Если пользователь еще не выбрал поле для редактирования (первый вход в режим редактирования)
-                    if (text == null || text.isEmpty() || text.equals("")) {
-                        logger.info("Первый вход в режим редактирования, отправляем меню выбора поля");
-                        
-                        StringBuilder messageText = new StringBuilder();
-                        messageText.append("✏️ *Редактирование товара*\n\n");
-                        messageText.append("Выберите, что вы хотите изменить:\n\n");
-                        messageText.append("1. Название: ").append(product.getName()).append("\n");
-                        messageText.append("2. Цена: ").append(product.getPrice()).append(" руб.\n");
-                        messageText.append("3. Количество: ").append(product.getStock()).append(" шт.\n");
-                        messageText.append("4. Категория: ").append(product.getCategory() != null ? product.getCategory().getName() : "Не указана").append("\n");
-                        messageText.append("5. Описание: ").append(product.getDescription()).append("\n");
-                        messageText.append("6. Изображение\n");
-                        messageText.append("7. Удалить товар\n");
-                        messageText.append("8. Сохранить и выйти\n\n");
-                        messageText.append("Введите номер поля, которое хотите изменить, или 8 для сохранения и выхода:");
-                        
-                        return createTextMessage(chatId, messageText.toString());
-                    }
-                } catch (NumberFormatException e) {
-                    logger.error("Ошибка при парсинге ID товара: {}", e.getMessage());
-                    
-                    // Сбрасываем состояние пользователя
-                    user.setState(null);
-                    telegramUserRepository.save(user);
-                    
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
+                return editingExpired(chatId, productId);
             }
             
-            // Если черновик все еще не найден после всех попыток восстановления
-            if (product == null) {
-                logger.error("Не удалось восстановить черновик товара для chatId: {}", chatId);
+            // Если пользователь еще не выбрал поле для редактирования (первый вход в режим редактирования)
+            if (text == null || text.isEmpty() || text.equals("")) {
+                logger.info("Первый вход в режим редактирования, отправляем меню выбора поля");
                 
-                // Сбрасываем состояние пользователя
-                TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                if (user != null) {
-                    user.setState(null);
-                    telegramUserRepository.save(user);
-                }
+                StringBuilder messageText = new StringBuilder();
+                messageText.append("✏️ *Редактирование товара*\n\n");
+                messageText.append("Выберите, что вы хотите изменить:\n\n");
+                messageText.append("1. Название: ").append(product.getName()).append("\n");
+                messageText.append("2. Цена: ").append(product.getPrice()).append(" руб.\n");
+                messageText.append("3. Количество: ").append(product.getStock()).append(" шт.\n");
+                messageText.append("4. Категория: ").append(product.getCategory() != null ? product.getCategory().getName() : "Не указана").append("\n");
+                messageText.append("5. Описание: ").append(product.getDescription()).append("\n");
+                messageText.append("6. Изображение\n");
+                messageText.append("7. Удалить товар\n");
+                messageText.append("8. Сохранить и выйти\n\n");
+                messageText.append("Введите номер поля, которое хотите изменить, или 8 для сохранения и выхода:");
                 
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
+                return createTextMessage(chatId, messageText.toString());
             }
             
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user == null) {
                 logger.error("Пользователь не найден для chatId: {}", chatId);
                 return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
@@ -567,20 +476,20 @@ public class ProductStateHandler implements StateHandler {
                 
                 switch (field) {
                     case 1: // Название
-                        user.setState("EDITING_PRODUCT_NAME");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_NAME.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         return createTextMessage(chatId, "Введите новое название товара:");
                     case 2: // Цена
-                        user.setState("EDITING_PRODUCT_PRICE");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_PRICE.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         return createTextMessage(chatId, "Введите новую цену товара (в рублях):");
                     case 3: // Количество
-                        user.setState("EDITING_PRODUCT_STOCK");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_STOCK.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         return createTextMessage(chatId, "Введите новое количество товара в наличии:");
                     case 4: // Категория
-                        user.setState("EDITING_PRODUCT_CATEGORY");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_CATEGORY.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         
                         // Получаем список категорий для выбора
                         List<Category> categories = categoryService.getAllCategories();
@@ -593,12 +502,12 @@ public class ProductStateHandler implements StateHandler {
                         
                         return createTextMessage(chatId, categoryText.toString());
                     case 5: // Описание
-                        user.setState("EDITING_PRODUCT_DESCRIPTION");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_DESCRIPTION.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         return createTextMessage(chatId, "Введите новое описание товара:");
                     case 6: // Изображение
-                        user.setState("EDITING_PRODUCT_IMAGE");
-                        telegramUserRepository.save(user);
+                        user.setState(ChatState.EDITING_PRODUCT_IMAGE.encode(product.getId()));
+                        userUnitOfWork.save(user);
                         return createTextMessage(chatId, "Отправьте новое изображение товара или введите любой текст, чтобы пропустить этот шаг:");
                     case 7: // Удалить товар
                         // Удаляем товар
@@ -609,7 +518,7 @@ public class ProductStateHandler implements StateHandler {
                         
                         // Сбрасываем состояние пользователя
                         user.setState(null);
-                        telegramUserRepository.save(user);
+                        userUnitOfWork.save(user);
                         
                         // Отправляем сообщение об успешном удалении товара
                         SendMessage deleteMessage = new SendMessage();
@@ -640,7 +549,7 @@ public class ProductStateHandler implements StateHandler {
                         
                         // Сбрасываем состояние пользователя
                         user.setState(null);
-                        telegramUserRepository.save(user);
+                        userUnitOfWork.save(user);
                         
                         // Отправляем сообщение об успешном сохранении товара
                         SendMessage saveMessage = new SendMessage();
@@ -660,10 +569,10 @@ public class ProductStateHandler implements StateHandler {
             logger.error("Непредвиденная ошибка при обработке выбора поля для редактирования: {}", e.getMessage(), e);
             
             // Сбрасываем состояние пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
                 user.setState(null);
-                telegramUserRepository.save(user);
+                userUnitOfWork.save(user);
             }
             
             return createTextMessage(chatId, "Произошла непредвиденная ошибка. Пожалуйста, начните редактирование товара заново.");
@@ -673,39 +582,15 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование названия товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param name новое название товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductName(Long chatId, String name) {
+    private BotApiMethod<?> handleEditingProductName(Long chatId, long productId, String name) {
         // Получаем черновик товара
-        Product product = productDrafts.get(chatId);
+        Product product = editedProduct(chatId, productId);
         if (product == null) {
-            // Если черновик не найден, пытаемся получить товар из состояния пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            if (user == null) {
-                return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-            }
-            
-            String state = user.getState();
-            if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
-            
-            String productIdStr = state.replace("EDITING_PRODUCT_", "");
-            try {
-                Long productId = Long.parseLong(productIdStr);
-                Optional<Product> productOpt = productService.getProductById(productId);
-                
-                if (productOpt.isEmpty()) {
-                    return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                product = productOpt.get();
-                productDrafts.put(chatId, product);
-                logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-            } catch (NumberFormatException e) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
+            return editingExpired(chatId, productId);
         }
         
         // Сохраняем старые значения
@@ -716,10 +601,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.put(chatId, product);
         
         // Возвращаемся к выбору поля для редактирования
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("EDITING_PRODUCT_" + product.getId());
-            telegramUserRepository.save(user);
+            user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -743,42 +628,18 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование цены товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param priceText новая цена товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductPrice(Long chatId, String priceText) {
+    private BotApiMethod<?> handleEditingProductPrice(Long chatId, long productId, String priceText) {
         try {
             BigDecimal price = new BigDecimal(priceText);
             
             // Получаем черновик товара
-            Product product = productDrafts.get(chatId);
+            Product product = editedProduct(chatId, productId);
             if (product == null) {
-                // Если черновик не найден, пытаемся получить товар из состояния пользователя
-                TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                if (user == null) {
-                    return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-                }
-                
-                String state = user.getState();
-                if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                String productIdStr = state.replace("EDITING_PRODUCT_", "");
-                try {
-                    Long productId = Long.parseLong(productIdStr);
-                    Optional<Product> productOpt = productService.getProductById(productId);
-                    
-                    if (productOpt.isEmpty()) {
-                        return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                    }
-                    
-                    product = productOpt.get();
-                    productDrafts.put(chatId, product);
-                    logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-                } catch (NumberFormatException e) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
+                return editingExpired(chatId, productId);
             }
             
             // Обновляем цену товара
@@ -786,10 +647,10 @@ public class ProductStateHandler implements StateHandler {
             productDrafts.put(chatId, product);
             
             // Возвращаемся к выбору поля для редактирования
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("EDITING_PRODUCT_" + product.getId());
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+                userUnitOfWork.save(user);
             }
             
             // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -816,42 +677,18 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование количества товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param stockText новое количество товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductStock(Long chatId, String stockText) {
+    private BotApiMethod<?> handleEditingProductStock(Long chatId, long productId, String stockText) {
         try {
             int stock = Integer.parseInt(stockText);
             
             // Получаем черновик товара
-            Product product = productDrafts.get(chatId);
+            Product product = editedProduct(chatId, productId);
             if (product == null) {
-                // Если черновик не найден, пытаемся получить товар из состояния пользователя
-                TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                if (user == null) {
-                    return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-                }
-                
-                String state = user.getState();
-                if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                String productIdStr = state.replace("EDITING_PRODUCT_", "");
-                try {
-                    Long productId = Long.parseLong(productIdStr);
-                    Optional<Product> productOpt = productService.getProductById(productId);
-                    
-                    if (productOpt.isEmpty()) {
-                        return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                    }
-                    
-                    product = productOpt.get();
-                    productDrafts.put(chatId, product);
-                    logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-                } catch (NumberFormatException e) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
+                return editingExpired(chatId, productId);
             }
             
             // Обновляем количество товара
@@ -859,10 +696,10 @@ public class ProductStateHandler implements StateHandler {
             productDrafts.put(chatId, product);
             
             // Возвращаемся к выбору поля для редактирования
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("EDITING_PRODUCT_" + product.getId());
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+                userUnitOfWork.save(user);
             }
             
             // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -889,10 +726,11 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование категории товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param categoryText номер категории
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductCategory(Long chatId, String categoryText) {
+    private BotApiMethod<?> handleEditingProductCategory(Long chatId, long productId, String categoryText) {
         try {
             int categoryIndex = Integer.parseInt(categoryText) - 1;
             List<Category> categories = categoryService.getAllCategories();
@@ -904,34 +742,9 @@ public class ProductStateHandler implements StateHandler {
             Category category = categories.get(categoryIndex);
             
             // Получаем черновик товара
-            Product product = productDrafts.get(chatId);
+            Product product = editedProduct(chatId, productId);
             if (product == null) {
-                // Если черновик не найден, пытаемся получить товар из состояния пользователя
-                TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                if (user == null) {
-                    return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-                }
-                
-                String state = user.getState();
-                if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                String productIdStr = state.replace("EDITING_PRODUCT_", "");
-                try {
-                    Long productId = Long.parseLong(productIdStr);
-                    Optional<Product> productOpt = productService.getProductById(productId);
-                    
-                    if (productOpt.isEmpty()) {
-                        return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                    }
-                    
-                    product = productOpt.get();
-                    productDrafts.put(chatId, product);
-                    logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-                } catch (NumberFormatException e) {
-                    return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-                }
+                return editingExpired(chatId, productId);
             }
             
             // Обновляем категорию товара
@@ -939,10 +752,10 @@ public class ProductStateHandler implements StateHandler {
             productDrafts.put(chatId, product);
             
             // Возвращаемся к выбору поля для редактирования
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("EDITING_PRODUCT_" + product.getId());
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+                userUnitOfWork.save(user);
             }
             
             // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -969,39 +782,15 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование описания товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @param description новое описание товара
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductDescription(Long chatId, String description) {
+    private BotApiMethod<?> handleEditingProductDescription(Long chatId, long productId, String description) {
         // Получаем черновик товара
-        Product product = productDrafts.get(chatId);
+        Product product = editedProduct(chatId, productId);
         if (product == null) {
-            // Если черновик не найден, пытаемся получить товар из состояния пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            if (user == null) {
-                return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-            }
-            
-            String state = user.getState();
-            if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
-            
-            String productIdStr = state.replace("EDITING_PRODUCT_", "");
-            try {
-                Long productId = Long.parseLong(productIdStr);
-                Optional<Product> productOpt = productService.getProductById(productId);
-                
-                if (productOpt.isEmpty()) {
-                    return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                product = productOpt.get();
-                productDrafts.put(chatId, product);
-                logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-            } catch (NumberFormatException e) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
+            return editingExpired(chatId, productId);
         }
         
         // Обновляем описание товара
@@ -1009,10 +798,10 @@ public class ProductStateHandler implements StateHandler {
         productDrafts.put(chatId, product);
         
         // Возвращаемся к выбору поля для редактирования
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("EDITING_PRODUCT_" + product.getId());
-            telegramUserRepository.save(user);
+            user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -1036,44 +825,18 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает редактирование изображения товара
      * @param chatId ID чата
-     * @param message сообщение с изображением
+     * @param productId ID редактируемого товара из состояния пользователя
+     * @param fileId file_id изображения наибольшего размера
      * @return ответ бота
      */
-    private BotApiMethod<?> handleEditingProductImage(Long chatId, Message message) {
+    private BotApiMethod<?> handleEditingProductImage(Long chatId, long productId, String fileId) {
         // Получаем черновик товара
-        Product product = productDrafts.get(chatId);
+        Product product = editedProduct(chatId, productId);
         if (product == null) {
-            // Если черновик не найден, пытаемся получить товар из состояния пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            if (user == null) {
-                return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-            }
-            
-            String state = user.getState();
-            if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
-            
-            String productIdStr = state.replace("EDITING_PRODUCT_", "");
-            try {
-                Long productId = Long.parseLong(productIdStr);
-                Optional<Product> productOpt = productService.getProductById(productId);
-                
-                if (productOpt.isEmpty()) {
-                    return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                product = productOpt.get();
-                productDrafts.put(chatId, product);
-                logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-            } catch (NumberFormatException e) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
+            return editingExpired(chatId, productId);
         }
         
         try {
-            // Получаем fileId изображения
-            String fileId = message.getPhoto().get(message.getPhoto().size() - 1).getFileId();
             logger.info("Получен fileId изображения: {}", fileId);
             
             // Обновляем изображение товара в базе данных напрямую
@@ -1091,10 +854,10 @@ public class ProductStateHandler implements StateHandler {
             logger.info("Изображение товара '{}' успешно обновлено", product.getName());
             
             // Возвращаемся к выбору поля для редактирования
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+            TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
             if (user != null) {
-                user.setState("EDITING_PRODUCT_" + product.getId());
-                telegramUserRepository.save(user);
+                user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+                userUnitOfWork.save(user);
             }
             
             // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -1122,45 +885,21 @@ public class ProductStateHandler implements StateHandler {
     /**
      * Обрабатывает пропуск редактирования изображения товара
      * @param chatId ID чата
+     * @param productId ID редактируемого товара из состояния пользователя
      * @return ответ бота
      */
-    private BotApiMethod<?> handleSkipEditingProductImage(Long chatId) {
+    private BotApiMethod<?> handleSkipEditingProductImage(Long chatId, long productId) {
         // Получаем черновик товара
-        Product product = productDrafts.get(chatId);
+        Product product = editedProduct(chatId, productId);
         if (product == null) {
-            // Если черновик не найден, пытаемся получить товар из состояния пользователя
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            if (user == null) {
-                return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
-            }
-            
-            String state = user.getState();
-            if (state == null || !state.startsWith("EDITING_PRODUCT_")) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
-            
-            String productIdStr = state.replace("EDITING_PRODUCT_", "");
-            try {
-                Long productId = Long.parseLong(productIdStr);
-                Optional<Product> productOpt = productService.getProductById(productId);
-                
-                if (productOpt.isEmpty()) {
-                    return createTextMessage(chatId, "Товар не найден. Пожалуйста, начните редактирование товара заново.");
-                }
-                
-                product = productOpt.get();
-                productDrafts.put(chatId, product);
-                logger.info("Товар получен из базы данных и сохранен в черновики: {}", product.getName());
-            } catch (NumberFormatException e) {
-                return createTextMessage(chatId, "Произошла ошибка. Пожалуйста, начните редактирование товара заново.");
-            }
+            return editingExpired(chatId, productId);
         }
         
         // Возвращаемся к выбору поля для редактирования
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
         if (user != null) {
-            user.setState("EDITING_PRODUCT_" + product.getId());
-            telegramUserRepository.save(user);
+            user.setState(ChatState.EDITING_PRODUCT.encode(product.getId()));
+            userUnitOfWork.save(user);
         }
         
         // Отправляем сообщение с текущими данными товара и предлагаем выбрать, что редактировать
@@ -1181,6 +920,101 @@ public class ProductStateHandler implements StateHandler {
         return createTextMessage(chatId, messageText.toString());
     }
     
+    /**
+     * Обрабатывает нажатие кнопки "Редактировать товар": создает черновик товара
+     * и переводит пользователя в режим выбора поля для редактирования
+     * @param context контекст обновления
+     * @param callbackData данные колбэка
+     * @return ответ бота
+     */
+    private BotApiMethod<?> handleEditProduct(UpdateContext context, String callbackData) {
+        Long chatId = context.getChatId();
+        
+        // Проверяем права доступа
+        if (!context.isAdminOrManager()) {
+            return createTextMessage(chatId, "У вас нет доступа к административным функциям.");
+        }
+        
+        long productId;
+        try {
+            productId = Long.parseLong(callbackData.substring("edit_product_".length()));
+        } catch (NumberFormatException e) {
+            logger.warn("Некорректный ID товара в колбэке {}", callbackData);
+            return createTextMessage(chatId, "Товар не найден.");
+        }
+        
+        Optional<Product> productOpt = productService.getProductById(productId);
+        if (productOpt.isEmpty()) {
+            return createTextMessage(chatId, "Товар не найден.");
+        }
+        
+        Product product = productOpt.get();
+        productDrafts.put(chatId, product);
+        
+        // Устанавливаем состояние пользователя для редактирования товара
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
+        if (user == null) {
+            user = new TelegramUser(chatId, null, "Unknown", "Unknown");
+            logger.warn("Пользователь с ID {} не найден, создан новый пользователь", chatId);
+        }
+        user.setState(ChatState.EDITING_PRODUCT.encode(productId));
+        userUnitOfWork.save(user);
+        
+        logger.info("Установлено состояние EDITING_PRODUCT_{} для пользователя {}", productId, chatId);
+        
+        StringBuilder messageText = new StringBuilder();
+        messageText.append("✏️ *Редактирование товара*\n\n");
+        messageText.append("Выберите, что вы хотите изменить:\n\n");
+        messageText.append("1. Название: ").append(product.getName()).append("\n");
+        messageText.append("2. Цена: ").append(product.getPrice()).append(" руб.\n");
+        messageText.append("3. Количество: ").append(product.getStock()).append(" шт.\n");
+        messageText.append("4. Категория: ").append(product.getCategory() != null ? product.getCategory().getName() : "Не указана").append("\n");
+        messageText.append("5. Описание: ").append(product.getDescription()).append("\n");
+        messageText.append("6. Изображение\n");
+        messageText.append("7. Удалить товар\n");
+        messageText.append("8. Сохранить и выйти\n\n");
+        messageText.append("Введите номер поля, которое хотите изменить, или 8 для сохранения и выхода:");
+        
+        SendMessage sendMessage = createTextMessage(chatId, messageText.toString());
+        sendMessage.setParseMode("Markdown");
+        return sendMessage;
+    }
+    
+    /**
+     * Черновик редактируемого товара. Черновик создается при входе в режим редактирования,
+     * поэтому его отсутствие означает, что сеанс редактирования истек
+     * @param chatId ID чата
+     * @param productId ID товара из состояния пользователя
+     * @return черновик товара или null, если сеанс редактирования истек
+     */
+    private Product editedProduct(Long chatId, long productId) {
+        Product product = productDrafts.get(chatId);
+        if (product == null || product.getId() == null || product.getId() != productId) {
+            return null;
+        }
+        return product;
+    }
+    
+    /**
+     * Завершает истекший сеанс редактирования: сбрасывает состояние и черновик пользователя
+     * @param chatId ID чата
+     * @param productId ID товара из состояния пользователя
+     * @return сообщение о том, что изменения не сохранены
+     */
+    private BotApiMethod<?> editingExpired(Long chatId, long productId) {
+        logger.warn("Сеанс редактирования товара {} истек для пользователя {}", productId, chatId);
+        productDrafts.remove(chatId);
+        TelegramUser user = userUnitOfWork.findById(chatId).orElse(null);
+        if (user != null) {
+            user.setState(null);
+            userUnitOfWork.save(user);
+        }
+        SendMessage sendMessage = createTextMessage(chatId,
+                "⌛ Сеанс редактирования товара истек, изменения не сохранены. Откройте товар и начните редактирование заново.");
+        sendMessage.setReplyMarkup(keyboardFactory.createAdminPanelKeyboard());
+        return sendMessage;
+    }
+    
     /**
      * Создает текстовое сообщение
      * @param chatId ID чата
@@ -1193,4 +1027,37 @@ public class ProductStateHandler implements StateHandler {
         sendMessage.setText(text);
         return sendMessage;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Черновик товара во внешнем хранилище: вместо сущности категории только ее ID и название
+     */
+    record ProductDraft(Long id, String name, String description, BigDecimal price, String imageUrl,
+                        Integer stock, Boolean active, Long categoryId, String categoryName) {
+        
+        static ProductDraft of(Product product) {
+            Category category = product.getCategory();
+            return new ProductDraft(product.getId(), product.getName(), product.getDescription(),
+                    product.getPrice(), product.getImageUrl(), product.getStock(), product.getActive(),
+                    category != null ? category.getId() : null, category != null ? category.getName() : null);
+        }
+        
+        Product toProduct() {
+            Product product = new Product();
+            product.setId(id);
+            product.setName(name);
+            product.setDescription(description);
+            product.setPrice(price);
+            product.setImageUrl(imageUrl);
+            product.setStock(stock);
+            product.setActive(active);
+            if (categoryId != null) {
+                // Ссылки по ID достаточно для сохранения товара, название нужно для сообщений
+                Category category = new Category();
+                category.setId(categoryId);
+                category.setName(categoryName);
+                product.setCategory(category);
+            }
+            return product;
+        }
+    }
+}
@@ -6,10 +6,11 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
 import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 
 /**
@@ -19,42 +20,37 @@ import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactory;
 public class StartCommandHandler implements UpdateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(StartCommandHandler.class);
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final KeyboardFactory keyboardFactory;
     
-    public StartCommandHandler(TelegramUserRepository telegramUserRepository, KeyboardFactory keyboardFactory) {
-        this.telegramUserRepository = telegramUserRepository;
+    public StartCommandHandler(UserUnitOfWork userUnitOfWork, KeyboardFactory keyboardFactory) {
+        this.userUnitOfWork = userUnitOfWork;
         this.keyboardFactory = keyboardFactory;
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
-            return false;
-        }
-        
-        String text = update.getMessage().getText();
-        return text.equals("/start") || text.equals("start");
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .command("/start", "start");
     }
     
     @Override
-    public BotApiMethod<?> handle(Update update) {
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
+    public BotApiMethod<?> handle(UpdateContext context) {
+        Long chatId = context.getChatId();
         
         logger.info("Handling /start command for chatId: {}", chatId);
         
-        // Получаем или создаем пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId)
-                .orElseGet(() -> {
-                    TelegramUser newUser = new TelegramUser(
-                            chatId,
-                            message.getFrom().getUserName(),
-                            message.getFrom().getFirstName(),
-                            message.getFrom().getLastName()
-                    );
-                    return telegramUserRepository.save(newUser);
-                });
+        // Получаем или создаем пользователя; полный Update нужен только для регистрации нового
+        TelegramUser user = context.getUser();
+        if (user == null) {
+            Message message = context.getUpdate().getMessage();
+            user = userUnitOfWork.save(new TelegramUser(
+                    chatId,
+                    message.getFrom().getUserName(),
+                    message.getFrom().getFirstName(),
+                    message.getFrom().getLastName()
+            ));
+        }
         
         // Проверяем, является ли пользователь админом или менеджером
         boolean isAdminOrManager = "ADMIN".equals(user.getRole()) || "MANAGER".equals(user.getRole());
@@ -5,12 +5,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.StateHandler;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 
 /**
  * Обработчик для управления пользователями
@@ -20,53 +22,39 @@ public class UserManagementHandler implements StateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(UserManagementHandler.class);
     
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     
-    public UserManagementHandler(TelegramUserRepository telegramUserRepository) {
-        this.telegramUserRepository = telegramUserRepository;
+    public UserManagementHandler(UserUnitOfWork userUnitOfWork) {
+        this.userUnitOfWork = userUnitOfWork;
     }
     
     @Override
-    public boolean canHandleState(Update update, String state) {
-        return state != null && (
-                state.equals("CHANGING_USER_ROLE") ||
-                state.equals("ADDING_MANAGER"));
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .state(ChatState.CHANGING_USER_ROLE, ChatState.ADDING_MANAGER);
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        // This handler only handles state-based updates
-        return false;
-    }
-    
-    @Override
-    public BotApiMethod<?> handle(Update update) {
-        // This handler only handles state-based updates
-        return null;
-    }
-    
-    @Override
-    public BotApiMethod<?> handleState(Update update, String state) {
-        if (!update.hasMessage() || !update.getMessage().hasText()) {
+    public BotApiMethod<?> handleState(UpdateContext context, StatePayload state) {
+        String text = context.getText();
+        if (text == null) {
             return null;
         }
         
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        String text = message.getText();
+        Long chatId = context.getChatId();
         
         // Получаем текущего пользователя
-        TelegramUser currentUser = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser currentUser = context.getUser();
         if (currentUser == null) {
             return createTextMessage(chatId, "Пользователь не найден. Пожалуйста, перезапустите бота командой /start");
         }
         
         logger.info("Handling user management for chatId: {} in state: {}", chatId, state);
         
-        switch (state) {
-            case "CHANGING_USER_ROLE":
+        switch (state.state()) {
+            case CHANGING_USER_ROLE:
                 return handleChangingUserRole(chatId, text, currentUser);
-            case "ADDING_MANAGER":
+            case ADDING_MANAGER:
                 return handleAddingManager(chatId, text, currentUser);
             default:
                 return null;
@@ -77,7 +65,7 @@ public class UserManagementHandler implements StateHandler {
         // Проверяем права доступа
         if (!"ADMIN".equals(currentUser.getRole())) {
             currentUser.setState(null);
-            telegramUserRepository.save(currentUser);
+            userUnitOfWork.save(currentUser);
             return createTextMessage(chatId, "У вас нет прав на изменение ролей пользователей.");
         }
         
@@ -96,7 +84,7 @@ public class UserManagementHandler implements StateHandler {
             }
             
             // Получаем пользователя
-            TelegramUser targetUser = telegramUserRepository.findById(targetChatId).orElse(null);
+            TelegramUser targetUser = userUnitOfWork.findById(targetChatId).orElse(null);
             if (targetUser == null) {
                 return createTextMessage(chatId, "Пользователь с ID " + targetChatId + " не найден.");
             }
@@ -104,11 +92,11 @@ public class UserManagementHandler implements StateHandler {
             // Изменяем роль
             String oldRole = targetUser.getRole();
             targetUser.setRole(newRole);
-            telegramUserRepository.save(targetUser);
+            userUnitOfWork.save(targetUser);
             
             // Сбрасываем состояние текущего пользователя
             currentUser.setState(null);
-            telegramUserRepository.save(currentUser);
+            userUnitOfWork.save(currentUser);
             
             return createTextMessage(chatId, "Роль пользователя " + targetUser.getFirstName() + " " + 
                 (targetUser.getLastName() != null ? targetUser.getLastName() : "") + 
@@ -125,7 +113,7 @@ public class UserManagementHandler implements StateHandler {
         // Проверяем права доступа
         if (!"ADMIN".equals(currentUser.getRole())) {
             currentUser.setState(null);
-            telegramUserRepository.save(currentUser);
+            userUnitOfWork.save(currentUser);
             return createTextMessage(chatId, "У вас нет прав на добавление менеджеров.");
         }
         
@@ -139,16 +127,16 @@ public class UserManagementHandler implements StateHandler {
             Long targetChatId = Long.parseLong(parts[0]);
             
             // Проверяем, существует ли уже пользователь с таким chatId
-            TelegramUser existingUser = telegramUserRepository.findById(targetChatId).orElse(null);
+            TelegramUser existingUser = userUnitOfWork.findById(targetChatId).orElse(null);
             
             if (existingUser != null) {
                 // Если пользователь существует, меняем ему роль на MANAGER
                 existingUser.setRole("MANAGER");
-                telegramUserRepository.save(existingUser);
+                userUnitOfWork.save(existingUser);
                 
                 // Сбрасываем состояние текущего пользователя
                 currentUser.setState(null);
-                telegramUserRepository.save(currentUser);
+                userUnitOfWork.save(currentUser);
                 
                 return createTextMessage(chatId, "Пользователь " + existingUser.getFirstName() + " " + 
                     (existingUser.getLastName() != null ? existingUser.getLastName() : "") + 
@@ -166,11 +154,11 @@ public class UserManagementHandler implements StateHandler {
                 newManager.setState("NEW");
                 newManager.setRegisteredAt(java.time.LocalDateTime.now());
                 
-                telegramUserRepository.save(newManager);
+                userUnitOfWork.save(newManager);
                 
                 // Сбрасываем состояние текущего пользователя
                 currentUser.setState(null);
-                telegramUserRepository.save(currentUser);
+                userUnitOfWork.save(currentUser);
                 
                 return createTextMessage(chatId, "Создан новый менеджер с ID " + targetChatId + 
                     ", имя: " + firstName + (lastName != null ? " " + lastName : ""));
@@ -0,0 +1,130 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+/**
+ * Реестр типов callback-запросов с параметрами.
+ * Идентификатор записывается первым байтом в {@link CallbackCodec} и не должен меняться,
+ * пока в чатах остаются кнопки со старыми данными: новые действия добавляются только в конец.
+ */
+public enum CallbackAction {
+    
+    /**
+     * Категория каталога: categoryId
+     */
+    CATALOG_CATEGORY(1, 1, 0b00, "catalog_category_"),
+    
+    /**
+     * Подкатегория каталога: subcategoryId, parentId
+     */
+    CATALOG_SUBCATEGORY(2, 2, 0b00, "catalog_subcategory_"),
+    
+    /**
+     * Страница товаров категории: categoryId, page
+     */
+    CATALOG_PRODUCTS_PAGE(3, 2, 0b10, "catalog_products_page_"),
+    
+    /**
+     * Добавление товара в корзину: productId
+     */
+    ADD_TO_CART(4, 1, 0b00, "add_to_cart_"),
+    
+    /**
+     * Удаление товара из корзины: productId
+     */
+    REMOVE_FROM_CART(5, 1, 0b00, "remove_from_cart_"),
+    
+    /**
+     * Изменение количества товара в корзине: productId, quantity
+     */
+    UPDATE_QUANTITY(6, 2, 0b10, "update_quantity_"),
+    
+    /**
+     * Страница списка заказов: статус (0 — все, иначе ordinal + 1), page
+     */
+    ORDERS_PAGE(7, 2, 0b11, null),
+    
+    /**
+     * Детали заказа: orderId
+     */
+    ORDER_DETAILS(8, 1, 0b00, "order_details_"),
+    
+    /**
+     * Смена статуса заказа: orderId, ordinal нового статуса
+     */
+    ORDER_STATUS(9, 2, 0b10, null),
+    
+    /**
+     * Позиция карусели товаров категории: categoryId, (позиция &lt;&lt; 2) | вид сообщения с кнопкой
+     * (см. {@link uz.uportal.telegramshop.service.bot.catalog.ProductCarousel})
+     */
+    CATALOG_CAROUSEL(10, 2, 0b00, null);
+    
+    private static final CallbackAction[] BY_ID = new CallbackAction[64];
+    
+    static {
+        for (CallbackAction action : values()) {
+            if (BY_ID[action.id] != null) {
+                throw new IllegalStateException("Повторный идентификатор действия " + action.id);
+            }
+            BY_ID[action.id] = action;
+        }
+    }
+    
+    private final int id;
+    private final int arity;
+    private final int intParams;
+    private final String legacyPrefix;
+    
+    /**
+     * @param id идентификатор
+     * @param arity количество параметров
+     * @param intParams параметры, которые обработчик читает как int (страница, количество, код статуса):
+     *                  бит 0 — первый параметр, бит 1 — второй
+     * @param legacyPrefix префикс прежнего формата или null
+     */
+    CallbackAction(int id, int arity, int intParams, String legacyPrefix) {
+        this.id = id;
+        this.arity = arity;
+        this.intParams = intParams;
+        this.legacyPrefix = legacyPrefix;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Количество числовых параметров
+     * @return количество параметров
+     */
+    public int getArity() {
+        return arity;
+    }
+    
+    /**
+     * Читается ли параметр как int. Такой параметр должен быть от 0 до {@link Integer#MAX_VALUE},
+     * иначе {@link CallbackCodec#decode(String)} отклоняет данные
+     * @param index номер параметра с нуля
+     * @return true, если параметр — int
+     */
+    public boolean isIntParam(int index) {
+        return (intParams & (1 << index)) != 0;
+    }
+    
+    /**
+     * Префикс прежнего строкового формата с числовыми параметрами через "_",
+     * чтобы кнопки в уже отправленных сообщениях продолжали работать
+     * @return префикс или null, если прежний формат разбирает сам обработчик
+     */
+    public String getLegacyPrefix() {
+        return legacyPrefix;
+    }
+    
+    /**
+     * Находит действие по идентификатору
+     * @param id идентификатор
+     * @return действие или null
+     */
+    public static CallbackAction byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
@@ -0,0 +1,243 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.Arrays;
+
+/**
+ * Компактный формат данных callback-запросов.
+ * Данные — это "~" и base64url (без дополнения) от байтов: идентификатор действия
+ * ({@link CallbackAction}) и параметры в виде varint. Например, страница 12 категории 1500
+ * занимает 7 символов вместо 29 у "catalog_products_page_1500_12", так что до лимита Telegram
+ * в 64 байта далеко. Разбор идет по символам, без регулярных выражений, split и промежуточных строк.
+ * <p>
+ * Для кнопок, отправленных до перехода на этот формат, разбирается и прежний формат "префикс_число_число".
+ */
+public final class CallbackCodec {
+    
+    /**
+     * Первый символ данных в компактном формате. Не встречается ни в base64url, ни в начале прежних данных
+     */
+    public static final char MARKER = '~';
+    
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] SEXTETS = new byte[128];
+    private static final CallbackAction[] ACTIONS = CallbackAction.values();
+    
+    static {
+        Arrays.fill(SEXTETS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            SEXTETS[ALPHABET[i]] = (byte) i;
+        }
+    }
+    
+    private CallbackCodec() {
+    }
+    
+    /**
+     * Кодирует действие с одним параметром
+     * @param action действие
+     * @param first параметр
+     * @return данные для callback-кнопки
+     */
+    public static String encode(CallbackAction action, long first) {
+        return encode(action, 1, first, 0);
+    }
+    
+    /**
+     * Кодирует действие с двумя параметрами
+     * @param action действие
+     * @param first первый параметр
+     * @param second второй параметр
+     * @return данные для callback-кнопки
+     */
+    public static String encode(CallbackAction action, long first, long second) {
+        return encode(action, 2, first, second);
+    }
+    
+    private static String encode(CallbackAction action, int count, long first, long second) {
+        if (action.getArity() != count) {
+            throw new IllegalArgumentException("Действие " + action + " принимает параметров: " + action.getArity());
+        }
+        // Идентификатор и до двух varint по 10 байт
+        byte[] bytes = new byte[21];
+        int length = 0;
+        bytes[length++] = (byte) action.getId();
+        length = writeVarint(bytes, length, first);
+        if (count > 1) {
+            length = writeVarint(bytes, length, second);
+        }
+        
+        char[] chars = new char[1 + (length * 4 + 2) / 3];
+        chars[0] = MARKER;
+        int out = 1;
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            buffer = (buffer << 8) | (bytes[i] & 0xFF);
+            bits += 8;
+            while (bits >= 6) {
+                bits -= 6;
+                chars[out++] = ALPHABET[(buffer >>> bits) & 0x3F];
+            }
+        }
+        if (bits > 0) {
+            chars[out] = ALPHABET[(buffer << (6 - bits)) & 0x3F];
+        }
+        return new String(chars);
+    }
+    
+    private static int writeVarint(byte[] bytes, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+    
+    /**
+     * Проверяет, записаны ли данные в компактном формате
+     * @param data данные callback-запроса
+     * @return true, если данные в компактном формате
+     */
+    public static boolean isEncoded(String data) {
+        return data != null && data.length() >= 3 && data.charAt(0) == MARKER;
+    }
+    
+    /**
+     * Определяет действие по первому байту, не разбирая параметры
+     * @param data данные callback-запроса
+     * @return действие или null, если данные не в компактном формате
+     */
+    public static CallbackAction actionOf(String data) {
+        if (!isEncoded(data)) {
+            return null;
+        }
+        int high = sextet(data.charAt(1));
+        int low = sextet(data.charAt(2));
+        if (high < 0 || low < 0) {
+            return null;
+        }
+        return CallbackAction.byId((high << 2) | (low >>> 4));
+    }
+    
+    /**
+     * Разбирает данные callback-запроса в компактном или прежнем формате.
+     * Данные приходят от клиента и могут быть подделаны, поэтому параметры, которые читаются как int,
+     * проверяются здесь же
+     * @param data данные callback-запроса
+     * @return разобранные данные или null, если это не действие с параметрами или параметр вне допустимых значений
+     */
+    public static CallbackPayload decode(String data) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        CallbackPayload payload;
+        if (data.charAt(0) == MARKER) {
+            payload = isEncoded(data) ? decodeCompact(data) : null;
+        } else {
+            payload = decodeLegacy(data);
+        }
+        return payload != null && fitsInt(payload) ? payload : null;
+    }
+    
+    private static boolean fitsInt(CallbackPayload payload) {
+        CallbackAction action = payload.action();
+        return (!action.isIntParam(0) || isInt(payload.first()))
+                && (!action.isIntParam(1) || isInt(payload.second()));
+    }
+    
+    private static boolean isInt(long value) {
+        return value >= 0 && value <= Integer.MAX_VALUE;
+    }
+    
+    private static CallbackPayload decodeCompact(String data) {
+        CallbackAction action = null;
+        long first = 0;
+        long second = 0;
+        int parsed = 0;
+        long value = 0;
+        int shift = 0;
+        int buffer = 0;
+        int bits = 0;
+        
+        for (int i = 1; i < data.length(); i++) {
+            int sextet = sextet(data.charAt(i));
+            if (sextet < 0) {
+                return null;
+            }
+            buffer = ((buffer << 6) | sextet) & 0x3FFF;
+            bits += 6;
+            if (bits < 8) {
+                continue;
+            }
+            bits -= 8;
+            int b = (buffer >>> bits) & 0xFF;
+            
+            if (action == null) {
+                action = CallbackAction.byId(b);
+                if (action == null) {
+                    return null;
+                }
+                continue;
+            }
+            if (shift > 63) {
+                return null;
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) != 0) {
+                shift += 7;
+                continue;
+            }
+            if (parsed == 0) {
+                first = value;
+            } else if (parsed == 1) {
+                second = value;
+            } else {
+                return null;
+            }
+            parsed++;
+            value = 0;
+            shift = 0;
+        }
+        
+        if (action == null || parsed != action.getArity() || shift != 0) {
+            return null;
+        }
+        return new CallbackPayload(action, first, second);
+    }
+    
+    private static CallbackPayload decodeLegacy(String data) {
+        for (CallbackAction action : ACTIONS) {
+            String prefix = action.getLegacyPrefix();
+            if (prefix == null || !data.startsWith(prefix)) {
+                continue;
+            }
+            int start = prefix.length();
+            int separator = data.indexOf('_', start);
+            try {
+                if (action.getArity() == 1) {
+                    if (separator >= 0) {
+                        return null;
+                    }
+                    return new CallbackPayload(action, Long.parseLong(data, start, data.length(), 10), 0);
+                }
+                if (separator < 0) {
+                    return null;
+                }
+                // Лишние части после второго числа игнорируются, как раньше при split("_")
+                int end = data.indexOf('_', separator + 1);
+                long first = Long.parseLong(data, start, separator, 10);
+                long second = Long.parseLong(data, separator + 1, end < 0 ? data.length() : end, 10);
+                return new CallbackPayload(action, first, second);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    private static int sextet(char c) {
+        return c < SEXTETS.length ? SEXTETS[c] : -1;
+    }
+}
@@ -0,0 +1,28 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+/**
+ * Разобранные данные callback-запроса: действие и его числовые параметры
+ * @param action действие
+ * @param first первый параметр
+ * @param second второй параметр
+ */
+public record CallbackPayload(CallbackAction action, long first, long second) {
+    
+    /**
+     * Первый параметр как int (номер страницы, количество, код статуса).
+     * Для параметров, объявленных int в {@link CallbackAction}, диапазон проверен при разборе
+     * @return значение параметра
+     */
+    public int firstInt() {
+        return Math.toIntExact(first);
+    }
+    
+    /**
+     * Второй параметр как int (номер страницы, количество, код статуса).
+     * Для параметров, объявленных int в {@link CallbackAction}, диапазон проверен при разборе
+     * @return значение параметра
+     */
+    public int secondInt() {
+        return Math.toIntExact(second);
+    }
+}
@@ -0,0 +1,224 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Состояния многошаговых сценариев. Состояние хранится у пользователя в компактном виде {@link StateCodec}
+ * вместе с параметром (например, ID редактируемого товара), обработчик выбирается по нему из таблицы
+ * {@link UpdateRouter} без сравнения строк.
+ * <p>
+ * Идентификатор записывается в базу и не должен меняться: новые состояния получают новые идентификаторы.
+ * Допустимые переходы объявлены ниже; при запуске {@link UpdateRouter} проверяет, что у каждого состояния
+ * есть обработчик и что в каждое состояние можно попасть из начального.
+ */
+public enum ChatState {
+
+    /**
+     * Добавление товара: название. Начальное состояние (админ-панель)
+     */
+    ADDING_PRODUCT_NAME(1, true, false, null),
+
+    ADDING_PRODUCT_PRICE(2, false, false, null),
+
+    ADDING_PRODUCT_STOCK(3, false, false, null),
+
+    ADDING_PRODUCT_CATEGORY(4, false, false, null),
+
+    ADDING_PRODUCT_DESCRIPTION(5, false, false, null),
+
+    ADDING_PRODUCT_IMAGE(6, false, false, null),
+
+    /**
+     * Редактирование товара, выбор поля: productId. Прежний формат — "EDITING_PRODUCT_{id}"
+     */
+    EDITING_PRODUCT(7, true, true, "EDITING_PRODUCT_"),
+
+    /**
+     * Ввод нового значения поля товара: productId
+     */
+    EDITING_PRODUCT_NAME(8, false, true, null),
+
+    EDITING_PRODUCT_PRICE(9, false, true, null),
+
+    EDITING_PRODUCT_STOCK(10, false, true, null),
+
+    EDITING_PRODUCT_CATEGORY(11, false, true, null),
+
+    EDITING_PRODUCT_DESCRIPTION(12, false, true, null),
+
+    EDITING_PRODUCT_IMAGE(13, false, true, null),
+
+    /**
+     * Добавление категории: название. Прежнее значение — "ADDING_CATEGORY"
+     */
+    ADDING_CATEGORY_NAME(14, true, false, null),
+
+    ADDING_CATEGORY_DESCRIPTION(15, false, false, null),
+
+    ADDING_CATEGORY_PARENT_SELECTION(16, false, false, null),
+
+    /**
+     * Новое название категории: categoryId. Прежний формат — "EDITING_CATEGORY_{id}"
+     * или "EDITING_CATEGORY_NAME" с ID категории во временных данных
+     */
+    EDITING_CATEGORY_NAME(17, true, true, "EDITING_CATEGORY_"),
+
+    /**
+     * Новое описание категории: categoryId
+     */
+    EDITING_CATEGORY_DESCRIPTION(18, true, true, "EDITING_CATEGORY_DESCRIPTION_"),
+
+    /**
+     * Оформление заказа: адрес доставки. Начальное состояние (корзина)
+     */
+    WAITING_FOR_ADDRESS(19, true, false, null),
+
+    WAITING_FOR_PHONE(20, false, false, null),
+
+    WAITING_FOR_COMMENT(21, false, false, null),
+
+    /**
+     * Настройки магазина
+     */
+    EDITING_SHOP_CONTACTS(22, true, false, null),
+
+    EDITING_SHOP_SUPPORT(23, true, false, null),
+
+    EDITING_SHOP_ABOUT(24, true, false, null),
+
+    EDITING_SHOP_HOURS(25, true, false, null),
+
+    /**
+     * Управление пользователями
+     */
+    CHANGING_USER_ROLE(26, true, false, null),
+
+    ADDING_MANAGER(27, true, false, null);
+
+    /**
+     * Идентификатор записывается одним символом в системе счисления по основанию 36
+     */
+    static final int MAX_ID = Character.MAX_RADIX - 1;
+
+    private static final ChatState[] BY_ID = new ChatState[MAX_ID + 1];
+
+    static {
+        for (ChatState state : values()) {
+            if (state.id <= 0 || state.id > MAX_ID || BY_ID[state.id] != null) {
+                throw new IllegalStateException("Некорректный или повторный идентификатор состояния " + state.id);
+            }
+            BY_ID[state.id] = state;
+        }
+
+        transitions(ADDING_PRODUCT_NAME, ADDING_PRODUCT_PRICE);
+        transitions(ADDING_PRODUCT_PRICE, ADDING_PRODUCT_STOCK);
+        transitions(ADDING_PRODUCT_STOCK, ADDING_PRODUCT_CATEGORY);
+        transitions(ADDING_PRODUCT_CATEGORY, ADDING_PRODUCT_DESCRIPTION);
+        transitions(ADDING_PRODUCT_DESCRIPTION, ADDING_PRODUCT_IMAGE);
+
+        transitions(EDITING_PRODUCT, EDITING_PRODUCT_NAME, EDITING_PRODUCT_PRICE, EDITING_PRODUCT_STOCK,
+                EDITING_PRODUCT_CATEGORY, EDITING_PRODUCT_DESCRIPTION, EDITING_PRODUCT_IMAGE);
+        for (ChatState field : EDITING_PRODUCT.next) {
+            transitions(field, EDITING_PRODUCT);
+        }
+
+        transitions(ADDING_CATEGORY_NAME, ADDING_CATEGORY_DESCRIPTION);
+        transitions(ADDING_CATEGORY_DESCRIPTION, ADDING_CATEGORY_PARENT_SELECTION);
+
+        transitions(WAITING_FOR_ADDRESS, WAITING_FOR_PHONE);
+        transitions(WAITING_FOR_PHONE, WAITING_FOR_COMMENT);
+    }
+
+    private final int id;
+    private final boolean entry;
+    private final boolean parameterized;
+    private final String legacyPrefix;
+    private final String encoded;
+    private Set<ChatState> next = Collections.emptySet();
+
+    ChatState(int id, boolean entry, boolean parameterized, String legacyPrefix) {
+        this.id = id;
+        this.entry = entry;
+        this.parameterized = parameterized;
+        this.legacyPrefix = legacyPrefix;
+        // Без параметра состояние кодируется всегда одинаково, строка создается один раз
+        this.encoded = parameterized ? null : StateCodec.MARKER + String.valueOf(Character.forDigit(id, Character.MAX_RADIX));
+    }
+
+    private static void transitions(ChatState from, ChatState first, ChatState... rest) {
+        from.next = Collections.unmodifiableSet(EnumSet.of(first, rest));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return true, если в состояние переходят извне сценария (кнопкой меню или callback-запросом)
+     */
+    public boolean isEntry() {
+        return entry;
+    }
+
+    /**
+     * @return true, если у состояния есть числовой параметр
+     */
+    public boolean isParameterized() {
+        return parameterized;
+    }
+
+    /**
+     * Префикс прежнего строкового формата "ПРЕФИКС{параметр}", чтобы сохраненные ранее состояния
+     * продолжали работать
+     * @return префикс или null
+     */
+    public String getLegacyPrefix() {
+        return legacyPrefix;
+    }
+
+    /**
+     * Состояния, в которые можно перейти из этого. Сброс состояния и повтор шага допустимы всегда
+     * @return множество состояний
+     */
+    public Set<ChatState> getNext() {
+        return next;
+    }
+
+    public boolean canMoveTo(ChatState target) {
+        return target == this || next.contains(target);
+    }
+
+    /**
+     * Значение для {@link uz.uportal.telegramshop.model.TelegramUser#setState(String)}
+     * @return состояние в компактном виде
+     */
+    public String encode() {
+        if (parameterized) {
+            throw new IllegalArgumentException("Состояние " + this + " требует параметр");
+        }
+        return encoded;
+    }
+
+    /**
+     * Значение для {@link uz.uportal.telegramshop.model.TelegramUser#setState(String)}
+     * @param param параметр состояния
+     * @return состояние с параметром в компактном виде
+     */
+    public String encode(long param) {
+        if (!parameterized) {
+            throw new IllegalArgumentException("Состояние " + this + " не принимает параметр");
+        }
+        return StateCodec.encode(this, param);
+    }
+
+    /**
+     * Находит состояние по идентификатору
+     * @param id идентификатор
+     * @return состояние или null
+     */
+    public static ChatState byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
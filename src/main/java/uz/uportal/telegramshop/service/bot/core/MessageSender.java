@@ -1,8 +1,14 @@
 package uz.uportal.telegramshop.service.bot.core;
 
+import java.io.Serializable;
+import java.util.List;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -30,6 +36,15 @@ public interface MessageSender {
      */
     Message executeMessage(SendMessage sendMessage) throws TelegramApiException;
     
+    /**
+     * Отправляет альбом (от 2 до 10 фотографий одним вызовом)
+     * 
+     * @param sendMediaGroup объект с данными для отправки альбома
+     * @return отправленные сообщения альбома
+     * @throws TelegramApiException если произошла ошибка при отправке
+     */
+    List<Message> executeMediaGroup(SendMediaGroup sendMediaGroup) throws TelegramApiException;
+    
     /**
      * Редактирует существующее сообщение
      * 
@@ -39,6 +54,24 @@ public interface MessageSender {
      */
     Object executeEditMessage(EditMessageText editMessageText) throws TelegramApiException;
     
+    /**
+     * Редактирует подпись и клавиатуру сообщения с фото
+     * 
+     * @param editMessageCaption объект с данными для редактирования подписи
+     * @return измененное сообщение или true
+     * @throws TelegramApiException если произошла ошибка при редактировании
+     */
+    Serializable executeEditMessageCaption(EditMessageCaption editMessageCaption) throws TelegramApiException;
+    
+    /**
+     * Заменяет фото (вместе с подписью и клавиатурой) в существующем сообщении
+     * 
+     * @param editMessageMedia объект с данными для замены
+     * @return измененное сообщение или true
+     * @throws TelegramApiException если произошла ошибка при редактировании
+     */
+    Serializable executeEditMessageMedia(EditMessageMedia editMessageMedia) throws TelegramApiException;
+    
     /**
      * Удаляет сообщение
      * 
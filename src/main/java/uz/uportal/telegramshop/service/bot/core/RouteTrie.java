@@ -0,0 +1,109 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.Arrays;
+
+/**
+ * Префиксное дерево для поиска обработчика по ключу (callback-данные).
+ * Поиск идет за O(длина ключа): точное совпадение важнее префиксного,
+ * среди префиксов побеждает самый длинный.
+ *
+ * @param <T> тип значения
+ */
+final class RouteTrie<T> {
+    
+    private final Node<T> root = new Node<>();
+    
+    /**
+     * Регистрирует значение для ключа, совпадающего целиком
+     * @param key ключ
+     * @param value значение
+     */
+    void putExact(String key, T value) {
+        Node<T> node = nodeFor(key);
+        if (node.exact != null && node.exact != value) {
+            throw new IllegalStateException("Маршрут '" + key + "' уже занят: " + node.exact);
+        }
+        node.exact = value;
+    }
+    
+    /**
+     * Регистрирует значение для всех ключей с указанным префиксом
+     * @param prefix префикс
+     * @param value значение
+     */
+    void putPrefix(String prefix, T value) {
+        Node<T> node = nodeFor(prefix);
+        if (node.prefix != null && node.prefix != value) {
+            throw new IllegalStateException("Префикс '" + prefix + "' уже занят: " + node.prefix);
+        }
+        node.prefix = value;
+    }
+    
+    /**
+     * Находит значение для ключа
+     * @param key ключ
+     * @return значение или null, если маршрут не найден
+     */
+    T find(String key) {
+        if (key == null) {
+            return null;
+        }
+        Node<T> node = root;
+        T best = root.prefix;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                return best;
+            }
+            if (node.prefix != null) {
+                best = node.prefix;
+            }
+        }
+        return node.exact != null ? node.exact : best;
+    }
+    
+    private Node<T> nodeFor(String key) {
+        Node<T> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.getOrCreateChild(key.charAt(i));
+        }
+        return node;
+    }
+    
+    private static final class Node<T> {
+        private char[] labels = new char[0];
+        private Node<T>[] children = newArray(0);
+        private T exact;
+        private T prefix;
+        
+        Node<T> child(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index >= 0 ? children[index] : null;
+        }
+        
+        Node<T> getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node<T>[] newChildren = newArray(children.length + 1);
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node<T> created = new Node<>();
+            newLabels[insertAt] = c;
+            newChildren[insertAt] = created;
+            labels = newLabels;
+            children = newChildren;
+            return created;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node[size];
+        }
+    }
+}
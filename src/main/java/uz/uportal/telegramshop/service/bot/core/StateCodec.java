@@ -0,0 +1,102 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Компактный формат состояния пользователя: "~", идентификатор {@link ChatState} одним символом
+ * по основанию 36 и параметр по основанию 36. Например, редактирование товара 1500 записывается
+ * как "~715o" вместо "EDITING_PRODUCT_1500". Разбор идет по символам, без регулярных выражений.
+ * <p>
+ * Состояния, сохраненные до перехода на этот формат ("WAITING_FOR_ADDRESS", "EDITING_PRODUCT_15"),
+ * тоже разбираются: по имени состояния или по префиксу с числовым параметром.
+ */
+public final class StateCodec {
+    
+    /**
+     * Первый символ состояния в компактном формате. Прежние состояния с него не начинаются
+     */
+    public static final char MARKER = '~';
+    
+    private static final int RADIX = Character.MAX_RADIX;
+    private static final Map<String, ChatState> LEGACY_NAMES = new HashMap<>();
+    private static final Map<String, ChatState> LEGACY_PREFIXES = new HashMap<>();
+    
+    static {
+        for (ChatState state : ChatState.values()) {
+            LEGACY_NAMES.put(state.name(), state);
+            if (state.getLegacyPrefix() != null) {
+                LEGACY_PREFIXES.put(state.getLegacyPrefix(), state);
+            }
+        }
+        LEGACY_NAMES.put("ADDING_CATEGORY", ChatState.ADDING_CATEGORY_NAME);
+    }
+    
+    private StateCodec() {
+    }
+    
+    static String encode(ChatState state, long param) {
+        if (param < 0) {
+            throw new IllegalArgumentException("Параметр состояния не может быть отрицательным: " + param);
+        }
+        return MARKER + String.valueOf(Character.forDigit(state.getId(), RADIX)) + Long.toString(param, RADIX);
+    }
+    
+    /**
+     * Разбирает состояние пользователя в компактном или прежнем формате
+     * @param value значение поля state
+     * @return состояние или null, если состояния нет или оно не относится к сценариям
+     */
+    public static StatePayload decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.charAt(0) == MARKER) {
+            return decodeCompact(value);
+        }
+        return decodeLegacy(value);
+    }
+    
+    private static StatePayload decodeCompact(String value) {
+        if (value.length() < 2) {
+            return null;
+        }
+        ChatState state = ChatState.byId(Character.digit(value.charAt(1), RADIX));
+        if (state == null) {
+            return null;
+        }
+        if (!state.isParameterized()) {
+            return value.length() == 2 ? new StatePayload(state, 0) : null;
+        }
+        long param = 0;
+        for (int i = 2; i < value.length(); i++) {
+            int digit = Character.digit(value.charAt(i), RADIX);
+            if (digit < 0 || param > (Long.MAX_VALUE - digit) / RADIX) {
+                return null;
+            }
+            param = param * RADIX + digit;
+        }
+        return new StatePayload(state, param);
+    }
+    
+    private static StatePayload decodeLegacy(String value) {
+        ChatState state = LEGACY_NAMES.get(value);
+        if (state != null) {
+            // У прежних состояний без числа в имени параметра нет
+            return new StatePayload(state, 0);
+        }
+        int separator = value.lastIndexOf('_');
+        if (separator < 0 || separator == value.length() - 1) {
+            return null;
+        }
+        state = LEGACY_PREFIXES.get(value.substring(0, separator + 1));
+        if (state == null) {
+            return null;
+        }
+        try {
+            return new StatePayload(state, Long.parseLong(value, separator + 1, value.length(), 10));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,28 +1,35 @@
 package uz.uportal.telegramshop.service.bot.core;
 
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
-import org.telegram.telegrambots.meta.api.objects.Update;
+
+import uz.uportal.telegramshop.model.TelegramUser;
 
 /**
- * Интерфейс для обработки состояний пользователя
+ * Интерфейс для обработки состояний пользователя.
+ * Состояния, которые ведет обработчик, объявляются в {@link UpdateRoutes#state(ChatState...)},
+ * цепочка вызывает обработчик, только если пользователь находится в одном из них
  */
 public interface StateHandler extends UpdateHandler {
-    
-    /**
-     * Проверяет, может ли обработчик обработать обновление на основе состояния пользователя
-     * 
-     * @param update обновление от Telegram
-     * @param state текущее состояние пользователя
-     * @return true, если обработчик может обработать обновление
-     */
-    boolean canHandleState(Update update, String state);
-    
+
     /**
      * Обрабатывает обновление на основе состояния пользователя
-     * 
-     * @param update обновление от Telegram
-     * @param state текущее состояние пользователя
+     *
+     * @param context контекст обновления
+     * @param state текущее состояние пользователя с параметром
      * @return ответ бота
      */
-    BotApiMethod<?> handleState(Update update, String state);
-} 
\ No newline at end of file
+    BotApiMethod<?> handleState(UpdateContext context, StatePayload state);
+
+    /**
+     * Цепочка вызывает {@link #handleState(UpdateContext, StatePayload)} сама; этот метод нужен,
+     * только если обработчик вызывают в обход нее
+     * @param context контекст обновления
+     * @return ответ бота или null, если у пользователя нет состояния
+     */
+    @Override
+    default BotApiMethod<?> handle(UpdateContext context) {
+        TelegramUser user = context.getUser();
+        StatePayload state = user != null ? StateCodec.decode(user.getState()) : null;
+        return state != null ? handleState(context, state) : null;
+    }
+}
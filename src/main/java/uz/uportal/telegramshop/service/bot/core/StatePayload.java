@@ -0,0 +1,16 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+/**
+ * Разобранное состояние пользователя: состояние сценария и его параметр
+ * @param state состояние
+ * @param param параметр (ID товара или категории) или 0, если его нет
+ */
+public record StatePayload(ChatState state, long param) {
+    
+    /**
+     * @return true, если параметр задан
+     */
+    public boolean hasParam() {
+        return param != 0;
+    }
+}
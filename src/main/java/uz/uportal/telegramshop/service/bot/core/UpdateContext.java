@@ -0,0 +1,173 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import uz.uportal.telegramshop.model.TelegramUser;
+
+/**
+ * Контекст обработки одного обновления. Создается цепочкой один раз и передается выбранному обработчику:
+ * чат, сообщение, вид обновления, текст, callback-данные, маршрут, по которому выбран обработчик,
+ * и пользователь с его ролью. Найденный пользователь загружается при первом обращении и дальше
+ * не перечитывается, callback-данные декодируются тоже один раз.
+ */
+public final class UpdateContext {
+
+    private final UpdateEnvelope envelope;
+    private final String routeKey;
+    private final Lazy<TelegramUser> user;
+    private final Lazy<CallbackPayload> callbackPayload;
+
+    private UpdateContext(UpdateEnvelope envelope, String routeKey, Lazy<TelegramUser> user,
+            Lazy<CallbackPayload> callbackPayload) {
+        this.envelope = envelope;
+        this.routeKey = routeKey;
+        this.user = user;
+        this.callbackPayload = callbackPayload;
+    }
+
+    /**
+     * Создает контекст обновления
+     * @param envelope конверт обновления
+     * @param userLoader загрузка пользователя; после того как пользователь найден, больше не вызывается
+     * @return контекст без маршрута
+     */
+    public static UpdateContext of(UpdateEnvelope envelope, Supplier<TelegramUser> userLoader) {
+        // Пользователь может зарегистрироваться во время обработки, поэтому отсутствие не запоминается
+        return new UpdateContext(envelope, null, new Lazy<>(userLoader, false),
+                new Lazy<>(() -> envelope.hasCallbackQuery() ? CallbackCodec.decode(envelope.getCallbackData()) : null,
+                        true));
+    }
+
+    /**
+     * Тот же контекст с маршрутом, по которому выбран обработчик. Загруженный пользователь сохраняется
+     * @param routeKey маршрут
+     * @return контекст с маршрутом
+     */
+    public UpdateContext withRouteKey(String routeKey) {
+        return new UpdateContext(envelope, routeKey, user, callbackPayload);
+    }
+
+    public UpdateEnvelope getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * Полный объект обновления; строится из JSON при первом обращении
+     * @return обновление от Telegram
+     */
+    public Update getUpdate() {
+        return envelope.getUpdate();
+    }
+
+    public UpdateEnvelope.Kind getKind() {
+        return envelope.getKind();
+    }
+
+    public Long getChatId() {
+        return envelope.getChatId();
+    }
+
+    /**
+     * ID сообщения; для callback-запроса — сообщения с кнопкой
+     * @return ID сообщения или null, если сообщение недоступно
+     */
+    public Integer getMessageId() {
+        return envelope.getMessageId();
+    }
+
+    public String getText() {
+        return envelope.getText();
+    }
+
+    public String getCallbackData() {
+        return envelope.getCallbackData();
+    }
+
+    /**
+     * Декодированные callback-данные (см. {@link CallbackCodec#decode(String)})
+     * @return действие с параметрами или null
+     */
+    public CallbackPayload getCallbackPayload() {
+        return callbackPayload.get();
+    }
+
+    /**
+     * file_id фото наибольшего размера
+     * @return file_id или null, если в сообщении нет фото
+     */
+    public String getPhotoFileId() {
+        List<String> fileIds = envelope.getPhotoFileIds();
+        return fileIds.isEmpty() ? null : fileIds.get(fileIds.size() - 1);
+    }
+
+    /**
+     * Маршрут, по которому выбран обработчик (действие, ключ callback, команда, состояние или "text")
+     * @return маршрут или null
+     */
+    public String getRouteKey() {
+        return routeKey;
+    }
+
+    /**
+     * Пользователь чата, загружается один раз на обновление. Пока пользователь не найден,
+     * каждое обращение загружает его заново, чтобы увидеть регистрацию в этом же обновлении
+     * @return пользователь или null, если он еще не зарегистрирован
+     */
+    public TelegramUser getUser() {
+        return user.get();
+    }
+
+    /**
+     * @return роль пользователя или null
+     */
+    public String getRole() {
+        TelegramUser current = getUser();
+        return current != null ? current.getRole() : null;
+    }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(getRole());
+    }
+
+    public boolean isAdminOrManager() {
+        String role = getRole();
+        return "ADMIN".equals(role) || "MANAGER".equals(role);
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateContext{" + envelope + ", routeKey=" + routeKey + "}";
+    }
+
+    /**
+     * Значение, вычисляемое при первом обращении. Обновление обрабатывается в одном потоке,
+     * поэтому синхронизация не нужна
+     */
+    private static final class Lazy<T> {
+        private final boolean cacheNull;
+        private Supplier<T> supplier;
+        private T value;
+
+        /**
+         * @param supplier вычисление значения
+         * @param cacheNull запоминать null; иначе null вычисляется заново при следующем обращении
+         */
+        Lazy(Supplier<T> supplier, boolean cacheNull) {
+            this.supplier = supplier;
+            this.cacheNull = cacheNull;
+        }
+
+        T get() {
+            if (supplier != null) {
+                value = supplier.get();
+                if (value != null || cacheNull) {
+                    supplier = null;
+                }
+            }
+            return value;
+        }
+    }
+}
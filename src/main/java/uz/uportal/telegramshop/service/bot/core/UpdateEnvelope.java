@@ -0,0 +1,230 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Легкое представление обновления: поля, по которым обновление проверяется, ставится в очередь
+ * и маршрутизируется (update_id, чат, сообщение, текст, callback-данные, фото, inline-запрос).
+ * Создается потоковым разбором JSON ({@link UpdateEnvelopeParser}), а полный {@link Update}
+ * строится из исходных байтов только при первом обращении к {@link #getUpdate()}.
+ * Дубликаты, отброшенные и не нашедшие обработчика обновления полный объект не создают.
+ */
+public final class UpdateEnvelope {
+
+    /**
+     * Вид обновления
+     */
+    public enum Kind {
+        MESSAGE,
+        EDITED_MESSAGE,
+        CALLBACK_QUERY,
+        INLINE_QUERY,
+        OTHER
+    }
+
+    private final Integer updateId;
+    private final Kind kind;
+    private final Long chatId;
+    private final Long userId;
+    private final Integer messageId;
+    private final String text;
+    private final String callbackQueryId;
+    private final String callbackData;
+    private final List<String> photoFileIds;
+    private final String inlineQueryId;
+    private final String inlineOffset;
+    private final byte[] payload;
+    private final ObjectReader reader;
+    private Update update;
+
+    UpdateEnvelope(Integer updateId, Kind kind, Long chatId, Long userId, Integer messageId, String text,
+            String callbackQueryId, String callbackData, List<String> photoFileIds,
+            String inlineQueryId, String inlineOffset, byte[] payload, ObjectReader reader, Update update) {
+        this.updateId = updateId;
+        this.kind = kind;
+        this.chatId = chatId;
+        this.userId = userId;
+        this.messageId = messageId;
+        this.text = text;
+        this.callbackQueryId = callbackQueryId;
+        this.callbackData = callbackData;
+        this.photoFileIds = photoFileIds != null ? photoFileIds : Collections.emptyList();
+        this.inlineQueryId = inlineQueryId;
+        this.inlineOffset = inlineOffset;
+        this.payload = payload;
+        this.reader = reader;
+        this.update = update;
+    }
+
+    /**
+     * Создает конверт для уже разобранного обновления (long polling, воспроизведение, тесты)
+     * @param update обновление от Telegram
+     * @return конверт обновления
+     */
+    public static UpdateEnvelope of(Update update) {
+        if (update.hasCallbackQuery()) {
+            CallbackQuery callbackQuery = update.getCallbackQuery();
+            Long chatId = callbackQuery.getMessage() != null ? callbackQuery.getMessage().getChatId() : null;
+            // ID сохраняется только для доступного сообщения: недоступное редактировать нельзя
+            Integer messageId = callbackQuery.getMessage() instanceof Message message ? message.getMessageId() : null;
+            return new UpdateEnvelope(update.getUpdateId(), Kind.CALLBACK_QUERY, chatId,
+                    callbackQuery.getFrom() != null ? callbackQuery.getFrom().getId() : null, messageId, null,
+                    callbackQuery.getId(), callbackQuery.getData(), null, null, null, null, null, update);
+        }
+        if (update.hasMessage()) {
+            return ofMessage(update, Kind.MESSAGE, update.getMessage());
+        }
+        if (update.hasEditedMessage()) {
+            return ofMessage(update, Kind.EDITED_MESSAGE, update.getEditedMessage());
+        }
+        if (update.hasInlineQuery()) {
+            InlineQuery inlineQuery = update.getInlineQuery();
+            return new UpdateEnvelope(update.getUpdateId(), Kind.INLINE_QUERY, null,
+                    inlineQuery.getFrom().getId(), null, inlineQuery.getQuery(), null, null, null,
+                    inlineQuery.getId(), inlineQuery.getOffset(), null, null, update);
+        }
+        return new UpdateEnvelope(update.getUpdateId(), Kind.OTHER, null, null, null, null, null, null,
+                null, null, null, null, null, update);
+    }
+
+    private static UpdateEnvelope ofMessage(Update update, Kind kind, Message message) {
+        List<String> photoFileIds = null;
+        if (message.hasPhoto()) {
+            photoFileIds = message.getPhoto().stream().map(PhotoSize::getFileId).toList();
+        }
+        return new UpdateEnvelope(update.getUpdateId(), kind, message.getChatId(),
+                message.getFrom() != null ? message.getFrom().getId() : null, message.getMessageId(),
+                message.hasText() ? message.getText() : null, null, null, photoFileIds, null, null, null, null, update);
+    }
+
+    public Integer getUpdateId() {
+        return updateId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * ID чата сообщения или сообщения, к кнопке которого относится callback-запрос
+     * @return ID чата или null
+     */
+    public Long getChatId() {
+        return chatId;
+    }
+
+    /**
+     * ID пользователя, отправившего сообщение, нажавшего кнопку или набравшего inline-запрос
+     * @return ID пользователя или null
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * ID сообщения; для callback-запроса — сообщения с кнопкой
+     * @return ID сообщения или null, если сообщение с кнопкой недоступно боту
+     */
+    public Integer getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Текст сообщения или inline-запроса
+     * @return текст или null, если сообщение без текста
+     */
+    public String getText() {
+        return text;
+    }
+
+    public String getCallbackQueryId() {
+        return callbackQueryId;
+    }
+
+    public String getCallbackData() {
+        return callbackData;
+    }
+
+    /**
+     * file_id всех размеров фото из сообщения, от меньшего к большему
+     * @return список file_id, пустой, если фото нет
+     */
+    public List<String> getPhotoFileIds() {
+        return photoFileIds;
+    }
+
+    public String getInlineQueryId() {
+        return inlineQueryId;
+    }
+
+    /**
+     * Смещение, которое бот вернул в next_offset предыдущей страницы ответа на inline-запрос
+     * @return смещение; пустая строка для первой страницы
+     */
+    public String getInlineOffset() {
+        return inlineOffset;
+    }
+
+    public boolean hasMessage() {
+        return kind == Kind.MESSAGE;
+    }
+
+    public boolean hasCallbackQuery() {
+        return kind == Kind.CALLBACK_QUERY;
+    }
+
+    public boolean hasInlineQuery() {
+        return kind == Kind.INLINE_QUERY;
+    }
+
+    /**
+     * Ключ упорядочивания — ID чата, а для обновлений без чата ID пользователя
+     * @return ключ упорядочивания или 0
+     */
+    public long getChatKey() {
+        if (chatId != null) {
+            return chatId;
+        }
+        return userId != null ? userId : 0L;
+    }
+
+    /**
+     * Исходный JSON обновления, если конверт получен разбором тела запроса
+     * @return байты JSON или null
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Полный объект обновления. При первом вызове строится из исходного JSON.
+     * Конверт передается между потоками через очередь, которая и обеспечивает видимость поля
+     * @return обновление от Telegram
+     */
+    public Update getUpdate() {
+        if (update == null) {
+            try {
+                update = reader.readValue(payload);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось разобрать обновление " + updateId, e);
+            }
+        }
+        return update;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateEnvelope{updateId=" + updateId + ", kind=" + kind + ", chatId=" + chatId
+                + ", messageId=" + messageId + ", text=" + text + ", callbackData=" + callbackData + "}";
+    }
+}
@@ -0,0 +1,256 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Потоковый разбор тела webhook в {@link UpdateEnvelope}.
+ * Читает JSON одним проходом через {@link JsonParser} и берет только нужные поля,
+ * остальные поддеревья (reply_to_message, entities, клавиатуры и т.п.) пропускаются без создания объектов.
+ * Полный {@link Update} строится через databind только по требованию.
+ */
+@Component
+public class UpdateEnvelopeParser {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader updateReader;
+
+    public UpdateEnvelopeParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.updateReader = objectMapper.readerFor(Update.class);
+    }
+
+    /**
+     * Разбирает JSON обновления
+     * @param body тело запроса
+     * @return конверт обновления
+     * @throws IOException если тело не является JSON-объектом
+     */
+    public UpdateEnvelope parse(byte[] body) throws IOException {
+        Fields fields = new Fields();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Обновление должно быть JSON-объектом");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "update_id":
+                        fields.updateId = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                        break;
+                    case "message":
+                        readMessage(parser, token, fields, UpdateEnvelope.Kind.MESSAGE);
+                        break;
+                    case "edited_message":
+                        readMessage(parser, token, fields, UpdateEnvelope.Kind.EDITED_MESSAGE);
+                        break;
+                    case "callback_query":
+                        readCallbackQuery(parser, token, fields);
+                        break;
+                    case "inline_query":
+                        readInlineQuery(parser, token, fields);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        }
+        return new UpdateEnvelope(fields.updateId, fields.kind, fields.chatId, fields.userId, fields.messageId,
+                fields.text, fields.callbackQueryId, fields.callbackData, fields.photoFileIds,
+                fields.inlineQueryId, fields.inlineOffset, body, updateReader, null);
+    }
+
+    private static void readMessage(JsonParser parser, JsonToken token, Fields fields, UpdateEnvelope.Kind kind)
+            throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        fields.kind = kind;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "message_id":
+                    fields.messageId = parser.getIntValue();
+                    break;
+                case "chat":
+                    fields.chatId = readId(parser, value);
+                    break;
+                case "from":
+                    fields.userId = readId(parser, value);
+                    break;
+                case "text":
+                    fields.text = parser.getValueAsString();
+                    break;
+                case "photo":
+                    fields.photoFileIds = readPhotoFileIds(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    private static void readCallbackQuery(JsonParser parser, JsonToken token, Fields fields) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        fields.kind = UpdateEnvelope.Kind.CALLBACK_QUERY;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "id":
+                    fields.callbackQueryId = parser.getValueAsString();
+                    break;
+                case "from":
+                    fields.userId = readId(parser, value);
+                    break;
+                case "data":
+                    fields.callbackData = parser.getValueAsString();
+                    break;
+                case "message":
+                    readCallbackMessage(parser, value, fields);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Из сообщения с кнопкой нужны только чат и ID сообщения: отправитель в нем — сам бот.
+     * Недоступное сообщение (date = 0) редактировать нельзя, поэтому его ID не сохраняется
+     */
+    private static void readCallbackMessage(JsonParser parser, JsonToken token, Fields fields) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        Integer messageId = null;
+        boolean accessible = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("message_id".equals(name)) {
+                messageId = parser.getIntValue();
+            } else if ("chat".equals(name)) {
+                fields.chatId = readId(parser, value);
+            } else if ("date".equals(name)) {
+                accessible = parser.getLongValue() != 0;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        fields.messageId = accessible ? messageId : null;
+    }
+
+    private static void readInlineQuery(JsonParser parser, JsonToken token, Fields fields) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        fields.kind = UpdateEnvelope.Kind.INLINE_QUERY;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "id":
+                    fields.inlineQueryId = parser.getValueAsString();
+                    break;
+                case "from":
+                    fields.userId = readId(parser, value);
+                    break;
+                case "query":
+                    fields.text = parser.getValueAsString();
+                    break;
+                case "offset":
+                    fields.inlineOffset = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Читает поле id объекта (chat, from), пропуская остальные поля
+     */
+    private static Long readId(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Long id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if ("id".equals(name)) {
+                id = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    private static List<String> readPhotoFileIds(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> fileIds = new ArrayList<>(4);
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY && element != null) {
+            if (element != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("file_id".equals(name)) {
+                    fileIds.add(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return fileIds;
+    }
+
+    /**
+     * Поля, собранные за один проход
+     */
+    private static final class Fields {
+        Integer updateId;
+        UpdateEnvelope.Kind kind = UpdateEnvelope.Kind.OTHER;
+        Long chatId;
+        Long userId;
+        Integer messageId;
+        String text;
+        String callbackQueryId;
+        String callbackData;
+        List<String> photoFileIds;
+        String inlineQueryId;
+        String inlineOffset;
+    }
+}
@@ -4,21 +4,36 @@ import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 /**
- * Интерфейс для обработчиков обновлений от Telegram
+ * Интерфейс для обработчиков обновлений от Telegram.
+ * Цепочка передает обработчику {@link UpdateContext}; полный {@link Update} из него
+ * строится, только если обработчику нужны поля, которых нет в конверте
  */
 public interface UpdateHandler {
     
     /**
-     * Проверяет, может ли данный обработчик обработать обновление
-     * @param update обновление от Telegram
+     * Проверяет, может ли обработчик без маршрутов обработать обновление. Цепочка вызывает его,
+     * только если обновление не подошло ни к одному маршруту; обработчикам, которые объявляют
+     * {@link #routes()}, переопределять его не нужно
+     * @param context контекст обновления
      * @return true, если обработчик может обработать обновление, иначе false
      */
-    boolean canHandle(Update update);
+    default boolean canHandle(UpdateContext context) {
+        return false;
+    }
     
     /**
      * Обрабатывает обновление от Telegram
-     * @param update обновление от Telegram
+     * @param context контекст обновления
      * @return ответ бота
      */
-    BotApiMethod<?> handle(Update update);
+    BotApiMethod<?> handle(UpdateContext context);
+
+    /**
+     * Маршруты, которые обслуживает обработчик. Читаются один раз при старте.
+     * Если обработчик не объявляет маршрутов, цепочка проверяет его через canHandle
+     * @return описание маршрутов или null
+     */
+    default UpdateRoutes routes() {
+        return null;
+    }
 } 
\ No newline at end of file
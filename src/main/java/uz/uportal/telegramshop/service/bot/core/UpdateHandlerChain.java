@@ -1,17 +1,18 @@
 package uz.uportal.telegramshop.service.bot.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.bot.journal.UpdateJournal;
+import uz.uportal.telegramshop.service.bot.journal.UpdateOutcome;
+import uz.uportal.telegramshop.service.bot.metrics.HandlerMetrics;
 
 /**
  * Цепочка обработчиков обновлений от Telegram
@@ -20,100 +21,223 @@ import uz.uportal.telegramshop.repository.TelegramUserRepository;
 public class UpdateHandlerChain {
     
     private static final Logger logger = LoggerFactory.getLogger(UpdateHandlerChain.class);
-    private final ApplicationContext applicationContext;
-    private final TelegramUserRepository telegramUserRepository;
+    private static final String ROUTE_TEXT = "text";
+    private static final String ROUTE_UNROUTED = "unrouted";
+    private static final String ROUTE_CALLBACK = "callback";
+    private static final String ROUTE_MESSAGE = "message";
+    private static final String ROUTE_INLINE_QUERY = "inline_query";
+    private static final String ROUTE_TEXT_FALLBACK = "text_fallback";
+    private final UpdateRouter updateRouter;
+    private final UserUnitOfWork userUnitOfWork;
+    private final HandlerMetrics handlerMetrics;
+    private final UpdateJournal updateJournal;
     
-    public UpdateHandlerChain(ApplicationContext applicationContext, TelegramUserRepository telegramUserRepository) {
-        this.applicationContext = applicationContext;
-        this.telegramUserRepository = telegramUserRepository;
+    public UpdateHandlerChain(UpdateRouter updateRouter, UserUnitOfWork userUnitOfWork,
+            HandlerMetrics handlerMetrics, UpdateJournal updateJournal) {
+        this.updateRouter = updateRouter;
+        this.userUnitOfWork = userUnitOfWork;
+        this.handlerMetrics = handlerMetrics;
+        this.updateJournal = updateJournal;
     }
     
     /**
-     * Обрабатывает обновление, передавая его по цепочке обработчиков
-     * 
+     * Обрабатывает уже разобранное обновление
+     *
      * @param update обновление от Telegram
      * @return ответ на обновление
      */
     public BotApiMethod<?> handle(Update update) {
-        logger.debug("Обработка обновления: {}", update);
-        
-        // Если это callback-запрос, добавляем специальное логирование
-        if (update.hasCallbackQuery()) {
-            String callbackData = update.getCallbackQuery().getData();
-            Long chatId = update.getCallbackQuery().getMessage().getChatId();
-            logger.info("Получен callback-запрос: data='{}' от пользователя chatId={}", callbackData, chatId);
+        return handle(UpdateEnvelope.of(update));
+    }
+    
+    /**
+     * Обрабатывает обновление, выбирая обработчик по таблице маршрутов.
+     * Порядок: callback-данные, inline-запросы, команды (/start), состояние пользователя для StateHandler,
+     * текст сообщения, состояние для обычных обработчиков, обработчик свободного текста
+     * и, наконец, обработчики без маршрутов.
+     * Маршрут выбирается по полям конверта. Обработчик получает {@link UpdateContext} с уже загруженным
+     * пользователем, а полный {@link Update} строится, только если он нужен обработчику.
+     * Пользователь чата загружается и сохраняется через {@link UserUnitOfWork}: изменения записываются
+     * одним UPDATE после работы обработчика.
+     * Вызов обработчика попадает в метрики {@link HandlerMetrics} с маршрутом, по которому он выбран,
+     * а обновление с результатом обработки — в журнал {@link UpdateJournal}.
+     *
+     * @param envelope конверт обновления
+     * @return ответ на обновление
+     */
+    public BotApiMethod<?> handle(UpdateEnvelope envelope) {
+        logger.debug("Обработка обновления: {}", envelope);
+        long statementsAtStart = handlerMetrics.start();
+        userUnitOfWork.begin(envelope.getChatId());
+        try {
+            // Пользователь загружается не больше одного раза и передается обработчику вместе с контекстом
+            return route(UpdateContext.of(envelope, userUnitOfWork::getUser), statementsAtStart);
+        } finally {
+            userUnitOfWork.flush();
         }
+    }
+    
+    /**
+     * Выбирает обработчик по таблице маршрутов и вызывает его
+     *
+     * @param context контекст обновления
+     * @param statementsAtStart показания счетчика SQL-запросов в начале обработки
+     * @return ответ на обновление
+     */
+    private BotApiMethod<?> route(UpdateContext context, long statementsAtStart) {
+        UpdateEnvelope envelope = context.getEnvelope();
+        Long chatId = envelope.getChatId();
         
-        // Специальная проверка для команды /start
-        if (update.hasMessage() && update.getMessage().hasText() && 
-            (update.getMessage().getText().equals("/start") || update.getMessage().getText().equals("start"))) {
-            
-            logger.info("Обнаружена команда /start, обрабатываем ее в приоритетном порядке");
+        if (envelope.hasCallbackQuery()) {
+            String callbackData = envelope.getCallbackData();
+            logger.debug("Получен callback-запрос: data='{}' от пользователя chatId={}", callbackData, chatId);
             
-            // Получаем все обработчики
-            List<UpdateHandler> handlers = new ArrayList<>(applicationContext.getBeansOfType(UpdateHandler.class).values());
-            
-            // Ищем StartCommandHandler
-            for (UpdateHandler handler : handlers) {
-                if (handler.getClass().getSimpleName().equals("StartCommandHandler") && handler.canHandle(update)) {
-                    logger.info("Найден StartCommandHandler, передаем ему обработку");
-                    
-                    // Сбрасываем состояние пользователя, если оно есть
-                    Long chatId = update.getMessage().getChatId();
-                    TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-                    if (user != null && user.getState() != null) {
-                        logger.info("Сбрасываем состояние пользователя: {}", user.getState());
-                        user.setState(null);
-                        telegramUserRepository.save(user);
-                    }
-                    
-                    return handler.handle(update);
-                }
+            UpdateHandler handler = updateRouter.routeCallback(callbackData);
+            if (handler != null) {
+                logger.debug("Обработчик {} выбран по маршруту callback '{}'", handler.getClass().getSimpleName(), callbackData);
+                UpdateContext routed = context.withRouteKey(updateRouter.callbackRouteKey(callbackData));
+                return invoke(routed, handler, statementsAtStart, () -> handler.handle(routed));
             }
+            return handleUnrouted(context, statementsAtStart);
         }
         
-        // Проверяем, есть ли у пользователя состояние
-        if (update.hasMessage()) {
-            Long chatId = update.getMessage().getChatId();
-            TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
-            
+        if (envelope.hasInlineQuery()) {
+            UpdateHandler handler = updateRouter.routeInlineQuery();
+            if (handler != null) {
+                UpdateContext routed = context.withRouteKey(ROUTE_INLINE_QUERY);
+                return invoke(routed, handler, statementsAtStart, () -> handler.handle(routed));
+            }
+            return handleUnrouted(context, statementsAtStart);
+        }
+        
+        if (!envelope.hasMessage()) {
+            return handleUnrouted(context, statementsAtStart);
+        }
+        
+        String text = envelope.getText();
+        
+        // Команды (например, /start) обрабатываются в приоритетном порядке и сбрасывают состояние
+        UpdateHandler commandHandler = updateRouter.routeCommand(text);
+        if (commandHandler != null) {
+            logger.info("Обнаружена команда {}, передаем ее {}", text, commandHandler.getClass().getSimpleName());
+            TelegramUser user = context.getUser();
             if (user != null && user.getState() != null) {
-                logger.debug("Пользователь {} находится в состоянии {}", chatId, user.getState());
-                
-                // Получаем все обработчики состояний из контекста приложения
-                List<StateHandler> stateHandlers = new ArrayList<>(applicationContext.getBeansOfType(StateHandler.class).values());
-                
-                // Проходим по всем обработчикам состояний и находим тот, который может обработать обновление
-                for (StateHandler handler : stateHandlers) {
-                    if (handler.canHandleState(update, user.getState())) {
-                        logger.debug("Обработчик состояний {} может обработать обновление", handler.getClass().getSimpleName());
-                        return handler.handleState(update, user.getState());
-                    }
-                }
+                logger.info("Сбрасываем состояние пользователя: {}", user.getState());
+                user.setState(null);
             }
+            UpdateContext routed = context.withRouteKey(text);
+            return invoke(routed, commandHandler, statementsAtStart, () -> commandHandler.handle(routed));
+        }
+        
+        // Проверяем, есть ли у пользователя состояние
+        TelegramUser user = context.getUser();
+        StatePayload state = user != null ? StateCodec.decode(user.getState()) : null;
+        UpdateHandler stateHandler = updateRouter.routeState(state);
+        
+        if (stateHandler instanceof StateHandler handler) {
+            logger.debug("Пользователь {} находится в состоянии {}, обработчик {}",
+                    chatId, state, stateHandler.getClass().getSimpleName());
+            UpdateContext routed = context.withRouteKey(state.state().name());
+            return invoke(routed, stateHandler, statementsAtStart, () -> {
+                BotApiMethod<?> response = handler.handleState(routed, state);
+                checkTransition(user, state);
+                return response;
+            });
+        }
+        
+        UpdateHandler textHandler = updateRouter.routeText(text);
+        if (textHandler != null) {
+            logger.debug("Обработчик {} выбран по тексту сообщения", textHandler.getClass().getSimpleName());
+            UpdateContext routed = context.withRouteKey(ROUTE_TEXT);
+            return invoke(routed, textHandler, statementsAtStart, () -> textHandler.handle(routed));
+        }
+        
+        if (stateHandler != null) {
+            logger.debug("Обработчик {} выбран по состоянию {}", stateHandler.getClass().getSimpleName(), state);
+            UpdateContext routed = context.withRouteKey(state.state().name());
+            return invoke(routed, stateHandler, statementsAtStart, () -> {
+                BotApiMethod<?> response = stateHandler.handle(routed);
+                checkTransition(user, state);
+                return response;
+            });
         }
         
-        // Если у пользователя нет состояния или ни один обработчик состояний не смог обработать обновление,
-        // используем обычные обработчики
-        List<UpdateHandler> handlers = new ArrayList<>(applicationContext.getBeansOfType(UpdateHandler.class).values());
+        UpdateHandler fallbackHandler = updateRouter.routeTextFallback(text);
+        if (fallbackHandler != null) {
+            logger.debug("Свободный текст передается {}", fallbackHandler.getClass().getSimpleName());
+            UpdateContext routed = context.withRouteKey(ROUTE_TEXT_FALLBACK);
+            return invoke(routed, fallbackHandler, statementsAtStart, () -> fallbackHandler.handle(routed));
+        }
         
-        // Проходим по всем обработчикам и находим тот, который может обработать обновление
-        for (UpdateHandler handler : handlers) {
-            if (handler.canHandle(update)) {
+        return handleUnrouted(context, statementsAtStart);
+    }
+    
+    /**
+     * Сообщает о переходе, не объявленном в {@link ChatState}: такой переход означает ошибку в обработчике
+     *
+     * @param user пользователь после работы обработчика
+     * @param previous состояние до работы обработчика
+     */
+    private void checkTransition(TelegramUser user, StatePayload previous) {
+        StatePayload next = StateCodec.decode(user.getState());
+        if (next != null && !previous.state().canMoveTo(next.state())) {
+            logger.warn("Необъявленный переход {} -> {} у пользователя {}",
+                    previous.state(), next.state(), user.getChatId());
+        }
+    }
+    
+    /**
+     * Передает обновление обработчикам, которые не объявили маршрутов
+     *
+     * @param context контекст обновления
+     * @param statementsAtStart показания счетчика SQL-запросов в начале обработки
+     * @return ответ на обновление
+     */
+    private BotApiMethod<?> handleUnrouted(UpdateContext context, long statementsAtStart) {
+        for (UpdateHandler handler : updateRouter.getUnroutedHandlers()) {
+            if (handler.canHandle(context)) {
                 logger.debug("Обработчик {} может обработать обновление", handler.getClass().getSimpleName());
-                return handler.handle(update);
-            } else if (update.hasCallbackQuery()) {
-                logger.debug("Обработчик {} НЕ может обработать callback запрос '{}'", 
-                        handler.getClass().getSimpleName(), update.getCallbackQuery().getData());
+                UpdateContext routed = context.withRouteKey(ROUTE_UNROUTED);
+                return invoke(routed, handler, statementsAtStart, () -> handler.handle(routed));
             }
         }
+        UpdateEnvelope envelope = context.getEnvelope();
+        handlerMetrics.recordUnhandled(envelope.hasCallbackQuery() ? ROUTE_CALLBACK : ROUTE_MESSAGE, statementsAtStart);
+        updateJournal.append(envelope, UpdateOutcome.UNHANDLED, null);
         
-        if (update.hasCallbackQuery()) {
-            logger.warn("Ни один обработчик не смог обработать callback запрос: '{}'", 
-                    update.getCallbackQuery().getData());
+        if (envelope.hasCallbackQuery()) {
+            logger.warn("Ни один обработчик не смог обработать callback запрос: '{}'", envelope.getCallbackData());
         } else {
             logger.debug("Ни один обработчик не смог обработать обновление");
         }
         return null;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Вызывает выбранный обработчик с записью метрик и журнала
+     *
+     * @param context контекст обновления с маршрутом, по которому выбран обработчик
+     * @param handler обработчик
+     * @param statementsAtStart показания счетчика SQL-запросов в начале обработки
+     * @param call вызов обработчика
+     * @return ответ обработчика
+     */
+    private BotApiMethod<?> invoke(UpdateContext context, UpdateHandler handler, long statementsAtStart,
+            Supplier<BotApiMethod<?>> call) {
+        UpdateOutcome outcome = UpdateOutcome.FAILED;
+        try {
+            // Изменения пользователя записываются внутри замера, чтобы UPDATE попал в метрики обработчика
+            BotApiMethod<?> response = handlerMetrics.record(handler, context.getRouteKey(), statementsAtStart, () -> {
+                try {
+                    return call.get();
+                } finally {
+                    userUnitOfWork.flush();
+                }
+            });
+            outcome = UpdateOutcome.HANDLED;
+            return response;
+        } finally {
+            updateJournal.append(context.getEnvelope(), outcome, ClassUtils.getUserClass(handler).getSimpleName());
+        }
+    }
+}
\ No newline at end of file
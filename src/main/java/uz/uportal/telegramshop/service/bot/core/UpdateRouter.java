@@ -0,0 +1,256 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Таблица маршрутизации обновлений.
+ * Собирается один раз после создания всех бинов из маршрутов, объявленных обработчиками
+ * через {@link UpdateHandler#routes()}, и дальше выбирает обработчик без перебора бинов
+ * и без обращений к базе данных.
+ */
+@Component
+public class UpdateRouter implements SmartInitializingSingleton {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UpdateRouter.class);
+    private final ApplicationContext applicationContext;
+    
+    private final RouteTrie<UpdateHandler> callbackRoutes = new RouteTrie<>();
+    private final RouteTrie<String> callbackKeys = new RouteTrie<>();
+    private final UpdateHandler[] stateRoutes = new UpdateHandler[ChatState.MAX_ID + 1];
+    private final UpdateHandler[] actionRoutes = new UpdateHandler[64];
+    private final Map<String, UpdateHandler> commandRoutes = new HashMap<>();
+    private final Map<String, UpdateHandler> textRoutes = new HashMap<>();
+    private final List<Map.Entry<String, UpdateHandler>> textFragmentRoutes = new ArrayList<>();
+    private UpdateHandler inlineQueryRoute;
+    private UpdateHandler textFallbackRoute;
+    private List<UpdateHandler> unroutedHandlers = Collections.emptyList();
+    
+    public UpdateRouter(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+    
+    /**
+     * Собирает таблицу маршрутов. Обработчики получаются из контекста только здесь,
+     * поэтому циклических зависимостей между ботом и обработчиками не возникает.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<UpdateHandler> unrouted = new ArrayList<>();
+        for (UpdateHandler handler : applicationContext.getBeansOfType(UpdateHandler.class).values()) {
+            UpdateRoutes routes = handler.routes();
+            if (routes == null) {
+                unrouted.add(handler);
+                continue;
+            }
+            register(handler, routes);
+        }
+        unroutedHandlers = List.copyOf(unrouted);
+        EnumSet<ChatState> entries = EnumSet.noneOf(ChatState.class);
+        for (ChatState state : ChatState.values()) {
+            if (state.isEntry()) {
+                entries.add(state);
+            }
+        }
+        validateStates(entries);
+        logger.info("Таблица маршрутов собрана: {} команд, {} текстов, {} обработчиков без маршрутов",
+                commandRoutes.size(), textRoutes.size(), unroutedHandlers.size());
+    }
+    
+    private void register(UpdateHandler handler, UpdateRoutes routes) {
+        for (String data : routes.getCallbacks()) {
+            callbackRoutes.putExact(data, handler);
+            callbackKeys.putExact(data, data);
+        }
+        for (String prefix : routes.getCallbackPrefixes()) {
+            callbackRoutes.putPrefix(prefix, handler);
+            callbackKeys.putPrefix(prefix, prefix);
+        }
+        for (CallbackAction action : routes.getActions()) {
+            UpdateHandler existing = actionRoutes[action.getId()];
+            if (existing != null && existing != handler) {
+                throw new IllegalStateException("Действие " + action + " объявлено обработчиками "
+                        + existing.getClass().getSimpleName() + " и " + handler.getClass().getSimpleName());
+            }
+            actionRoutes[action.getId()] = handler;
+        }
+        for (String command : routes.getCommands()) {
+            putUnique(commandRoutes, command, handler);
+        }
+        for (String text : routes.getTexts()) {
+            putUnique(textRoutes, text, handler);
+        }
+        for (String fragment : routes.getTextFragments()) {
+            textFragmentRoutes.add(Map.entry(fragment, handler));
+        }
+        if (routes.isInlineQueries()) {
+            if (inlineQueryRoute != null && inlineQueryRoute != handler) {
+                throw new IllegalStateException("Inline-запросы объявлены обработчиками "
+                        + inlineQueryRoute.getClass().getSimpleName() + " и " + handler.getClass().getSimpleName());
+            }
+            inlineQueryRoute = handler;
+        }
+        if (routes.isTextFallback()) {
+            if (textFallbackRoute != null && textFallbackRoute != handler) {
+                throw new IllegalStateException("Обработку свободного текста объявили обработчики "
+                        + textFallbackRoute.getClass().getSimpleName() + " и " + handler.getClass().getSimpleName());
+            }
+            textFallbackRoute = handler;
+        }
+        for (ChatState state : routes.getStates()) {
+            UpdateHandler existing = stateRoutes[state.getId()];
+            if (existing != null && existing != handler) {
+                throw new IllegalStateException("Состояние " + state + " объявлено обработчиками "
+                        + existing.getClass().getSimpleName() + " и " + handler.getClass().getSimpleName());
+            }
+            stateRoutes[state.getId()] = handler;
+        }
+    }
+    
+    /**
+     * Проверяет граф состояний: у каждого состояния есть обработчик
+     * и в каждое можно попасть из начального состояния по объявленным переходам
+     * @param entries начальные состояния
+     */
+    void validateStates(Set<ChatState> entries) {
+        List<ChatState> unhandled = new ArrayList<>();
+        for (ChatState state : ChatState.values()) {
+            if (stateRoutes[state.getId()] == null) {
+                unhandled.add(state);
+            }
+        }
+        EnumSet<ChatState> reachable = EnumSet.noneOf(ChatState.class);
+        Deque<ChatState> queue = new ArrayDeque<>();
+        for (ChatState state : entries) {
+            if (reachable.add(state)) {
+                queue.add(state);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (ChatState next : queue.poll().getNext()) {
+                if (reachable.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        if (!unhandled.isEmpty()) {
+            throw new IllegalStateException("Нет обработчиков для состояний " + unhandled);
+        }
+        Set<ChatState> unreachable = EnumSet.complementOf(reachable);
+        if (!unreachable.isEmpty()) {
+            throw new IllegalStateException("В состояния " + unreachable + " нельзя попасть ни из одного начального");
+        }
+    }
+    
+    private static void putUnique(Map<String, UpdateHandler> table, String key, UpdateHandler handler) {
+        UpdateHandler existing = table.putIfAbsent(key, handler);
+        if (existing != null && existing != handler) {
+            throw new IllegalStateException("Маршрут '" + key + "' объявлен обработчиками "
+                    + existing.getClass().getSimpleName() + " и " + handler.getClass().getSimpleName());
+        }
+    }
+    
+    /**
+     * Находит обработчик callback-запроса
+     * @param callbackData данные callback-запроса
+     * @return обработчик или null
+     */
+    public UpdateHandler routeCallback(String callbackData) {
+        if (CallbackCodec.isEncoded(callbackData)) {
+            CallbackAction action = CallbackCodec.actionOf(callbackData);
+            return action != null ? actionRoutes[action.getId()] : null;
+        }
+        return callbackRoutes.find(callbackData);
+    }
+    
+    /**
+     * Имя маршрута callback-запроса для метрик: действие для компактных данных,
+     * иначе объявленный ключ или префикс, без идентификаторов из самих данных
+     * @param callbackData данные callback-запроса
+     * @return имя маршрута или null, если маршрут не найден
+     */
+    public String callbackRouteKey(String callbackData) {
+        if (CallbackCodec.isEncoded(callbackData)) {
+            CallbackAction action = CallbackCodec.actionOf(callbackData);
+            return action != null ? action.name() : null;
+        }
+        return callbackKeys.find(callbackData);
+    }
+    
+    /**
+     * Находит обработчик команды, которая обрабатывается раньше состояния пользователя
+     * @param text текст сообщения
+     * @return обработчик или null
+     */
+    public UpdateHandler routeCommand(String text) {
+        return text != null ? commandRoutes.get(text) : null;
+    }
+    
+    /**
+     * Находит обработчик текстового сообщения
+     * @param text текст сообщения
+     * @return обработчик или null
+     */
+    public UpdateHandler routeText(String text) {
+        if (text == null) {
+            return null;
+        }
+        UpdateHandler handler = textRoutes.get(text);
+        if (handler != null) {
+            return handler;
+        }
+        for (Map.Entry<String, UpdateHandler> route : textFragmentRoutes) {
+            if (text.contains(route.getKey())) {
+                return route.getValue();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Находит обработчик состояния пользователя
+     * @param state разобранное состояние пользователя
+     * @return обработчик или null
+     */
+    public UpdateHandler routeState(StatePayload state) {
+        return state != null ? stateRoutes[state.state().getId()] : null;
+    }
+    
+    /**
+     * Обработчик inline-запросов
+     * @return обработчик или null
+     */
+    public UpdateHandler routeInlineQuery() {
+        return inlineQueryRoute;
+    }
+    
+    /**
+     * Обработчик текста, не совпавшего ни с одним маршрутом
+     * @param text текст сообщения
+     * @return обработчик или null, если текста нет или такой обработчик не объявлен
+     */
+    public UpdateHandler routeTextFallback(String text) {
+        return text != null ? textFallbackRoute : null;
+    }
+    
+    /**
+     * Обработчики, не объявившие маршрутов; для них остается проверка через canHandle
+     * @return список обработчиков
+     */
+    public List<UpdateHandler> getUnroutedHandlers() {
+        return unroutedHandlers;
+    }
+}
@@ -0,0 +1,159 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Описание маршрутов, которые обслуживает обработчик.
+ * Обработчик объявляет префиксы callback-данных, текстовые команды и состояния,
+ * а {@link UpdateRouter} один раз при старте собирает из них таблицу маршрутизации.
+ */
+public final class UpdateRoutes {
+    
+    private final List<String> callbacks = new ArrayList<>();
+    private final List<String> callbackPrefixes = new ArrayList<>();
+    private final List<CallbackAction> actions = new ArrayList<>();
+    private final List<String> commands = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final List<String> textFragments = new ArrayList<>();
+    private final List<ChatState> states = new ArrayList<>();
+    private boolean inlineQueries;
+    private boolean textFallback;
+    
+    private UpdateRoutes() {
+    }
+    
+    /**
+     * Создает пустое описание маршрутов
+     * @return описание маршрутов
+     */
+    public static UpdateRoutes create() {
+        return new UpdateRoutes();
+    }
+    
+    /**
+     * Callback-данные, совпадающие целиком
+     * @param data callback-данные
+     * @return это же описание
+     */
+    public UpdateRoutes callback(String... data) {
+        Collections.addAll(callbacks, data);
+        return this;
+    }
+    
+    /**
+     * Префиксы callback-данных
+     * @param prefixes префиксы
+     * @return это же описание
+     */
+    public UpdateRoutes callbackPrefix(String... prefixes) {
+        Collections.addAll(callbackPrefixes, prefixes);
+        return this;
+    }
+    
+    /**
+     * Действия с параметрами в компактном формате {@link CallbackCodec}
+     * @param values действия
+     * @return это же описание
+     */
+    public UpdateRoutes action(CallbackAction... values) {
+        Collections.addAll(actions, values);
+        return this;
+    }
+    
+    /**
+     * Команды, которые обрабатываются раньше состояния пользователя и сбрасывают его
+     * @param commandTexts тексты команд
+     * @return это же описание
+     */
+    public UpdateRoutes command(String... commandTexts) {
+        Collections.addAll(commands, commandTexts);
+        return this;
+    }
+    
+    /**
+     * Тексты сообщений (кнопки меню), совпадающие целиком
+     * @param values тексты
+     * @return это же описание
+     */
+    public UpdateRoutes text(String... values) {
+        Collections.addAll(texts, values);
+        return this;
+    }
+    
+    /**
+     * Фрагменты текста, которые проверяются только если точного совпадения не нашлось
+     * @param fragments фрагменты текста
+     * @return это же описание
+     */
+    public UpdateRoutes textContaining(String... fragments) {
+        Collections.addAll(textFragments, fragments);
+        return this;
+    }
+    
+    /**
+     * Состояния сценариев, которые ведет обработчик
+     * @param values состояния
+     * @return это же описание
+     */
+    public UpdateRoutes state(ChatState... values) {
+        Collections.addAll(states, values);
+        return this;
+    }
+    
+    /**
+     * Inline-запросы ({@code @bot запрос}); их обслуживает один обработчик
+     * @return это же описание
+     */
+    public UpdateRoutes inlineQuery() {
+        inlineQueries = true;
+        return this;
+    }
+    
+    /**
+     * Любой текст без состояния, не совпавший ни с одним маршрутом (свободный поиск);
+     * такой маршрут может объявить только один обработчик
+     * @return это же описание
+     */
+    public UpdateRoutes textFallback() {
+        textFallback = true;
+        return this;
+    }
+    
+    List<String> getCallbacks() {
+        return callbacks;
+    }
+    
+    List<String> getCallbackPrefixes() {
+        return callbackPrefixes;
+    }
+    
+    List<CallbackAction> getActions() {
+        return actions;
+    }
+    
+    List<String> getCommands() {
+        return commands;
+    }
+    
+    List<String> getTexts() {
+        return texts;
+    }
+    
+    List<String> getTextFragments() {
+        return textFragments;
+    }
+    
+    List<ChatState> getStates() {
+        return states;
+    }
+    
+    boolean isInlineQueries() {
+        return inlineQueries;
+    }
+    
+    boolean isTextFallback() {
+        return textFallback;
+    }
+}
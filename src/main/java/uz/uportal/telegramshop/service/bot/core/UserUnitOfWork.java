@@ -0,0 +1,186 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.bot.session.SessionStore;
+
+/**
+ * Единица работы с пользователем чата в рамках одного обновления.
+ * Пользователь загружается из базы не больше одного раза, все обработчики получают один и тот же объект,
+ * а изменения состояния, временных данных, роли и телефона записываются одним UPDATE в конце обработки
+ * и только если что-то действительно изменилось.
+ * <p>
+ * Обновление обрабатывается целиком в одном потоке, поэтому единица работы привязана к потоку:
+ * {@link UpdateHandlerChain} открывает ее через {@link #begin(Long)} и закрывает через {@link #flush()}.
+ * Вне обработки обновления и для других пользователей методы просто обращаются к репозиторию.
+ * <p>
+ * Активные чаты берутся из {@link SessionStore} без обращения к базе. Изменения только состояния
+ * и временных данных передаются туда же и записываются в базу пакетом; изменения роли и телефона
+ * записываются сразу.
+ * <p>
+ * Время последней активности пользователя обновляется при каждом обновлении; в базу оно попадает вместе
+ * с изменениями, а пока сессия в памяти — хранится в ней (см. SessionSweeper).
+ */
+@Component
+public class UserUnitOfWork {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserUnitOfWork.class);
+    private final TelegramUserRepository telegramUserRepository;
+    private final SessionStore sessionStore;
+    private final ThreadLocal<Unit> current = new ThreadLocal<>();
+
+    public UserUnitOfWork(TelegramUserRepository telegramUserRepository, SessionStore sessionStore) {
+        this.telegramUserRepository = telegramUserRepository;
+        this.sessionStore = sessionStore;
+    }
+
+    /**
+     * Открывает единицу работы для чата в текущем потоке
+     * @param chatId ID чата обновления или null, если у обновления нет чата
+     */
+    public void begin(Long chatId) {
+        if (current.get() != null) {
+            logger.warn("Единица работы для чата {} не была закрыта", current.get().chatId);
+        }
+        current.set(new Unit(chatId));
+    }
+
+    /**
+     * Пользователь чата текущего обновления; при первом обращении берется из сессии или загружается из базы
+     * @return пользователь или null, если он не зарегистрирован или единица работы не открыта
+     */
+    public TelegramUser getUser() {
+        Unit unit = current.get();
+        if (unit == null || unit.chatId == null) {
+            return null;
+        }
+        if (!unit.loaded) {
+            unit.track(load(unit.chatId));
+        }
+        return unit.user;
+    }
+
+    /**
+     * Замена {@link TelegramUserRepository#findById}: пользователь текущего чата берется из единицы работы
+     * @param chatId ID чата
+     * @return пользователь
+     */
+    public Optional<TelegramUser> findById(Long chatId) {
+        Unit unit = current.get();
+        if (unit != null && chatId != null && chatId.equals(unit.chatId)) {
+            return Optional.ofNullable(getUser());
+        }
+        return Optional.ofNullable(load(chatId));
+    }
+
+    /**
+     * Замена {@link TelegramUserRepository#save}. Изменения загруженного пользователя текущего чата
+     * откладываются до {@link #flush()}. Новый пользователь текущего чата сохраняется сразу
+     * и дальше отслеживается; остальные пользователи сохраняются как обычно
+     * @param user пользователь
+     * @return сохраненный пользователь
+     */
+    public TelegramUser save(TelegramUser user) {
+        Unit unit = current.get();
+        if (unit == null || unit.chatId == null || !unit.chatId.equals(user.getChatId())) {
+            return sessionStore.writeThrough(() -> telegramUserRepository.save(user));
+        }
+        if (unit.loaded && unit.user == user) {
+            return user;
+        }
+        TelegramUser saved = sessionStore.writeThrough(() -> telegramUserRepository.save(user));
+        unit.track(saved);
+        return saved;
+    }
+
+    /**
+     * Записывает изменения пользователя текущего чата, если они есть, и закрывает единицу работы.
+     * Состояние и временные данные уходят в {@link SessionStore}, изменения роли или телефона —
+     * одним UPDATE сразу. Повторный вызов ничего не делает
+     * @return true, если изменения были записаны
+     */
+    public boolean flush() {
+        Unit unit = current.get();
+        if (unit == null) {
+            return false;
+        }
+        current.remove();
+        TelegramUser user = unit.user;
+        if (user == null) {
+            return false;
+        }
+        user.setLastActivityAt(LocalDateTime.now());
+        if (!unit.isDirty()) {
+            // Само по себе обновление без изменений в базу не пишется, время активности остается в сессии
+            sessionStore.touch(user.getChatId(), user.getLastActivityAt());
+            return false;
+        }
+        if (!unit.isProfileDirty() && sessionStore.write(user)) {
+            logger.debug("Состояние пользователя {} сохранено в сессии: state={}", user.getChatId(), user.getState());
+            return true;
+        }
+        sessionStore.writeThrough(() -> {
+            telegramUserRepository.updateSession(user.getChatId(), user.getState(), user.getTempData(),
+                    user.getRole(), user.getPhoneNumber(), user.getLastActivityAt());
+            return user;
+        });
+        logger.debug("Изменения пользователя {} записаны: state={}", user.getChatId(), user.getState());
+        return true;
+    }
+
+    private TelegramUser load(Long chatId) {
+        TelegramUser user = sessionStore.get(chatId);
+        if (user == null) {
+            user = telegramUserRepository.findById(chatId).orElse(null);
+            sessionStore.put(user);
+        }
+        return user;
+    }
+
+    /**
+     * Загруженный пользователь и значения отслеживаемых полей на момент загрузки
+     */
+    private static final class Unit {
+        private final Long chatId;
+        private boolean loaded;
+        private TelegramUser user;
+        private String state;
+        private String tempData;
+        private String role;
+        private String phoneNumber;
+
+        Unit(Long chatId) {
+            this.chatId = chatId;
+        }
+
+        void track(TelegramUser user) {
+            this.loaded = true;
+            this.user = user;
+            if (user != null) {
+                state = user.getState();
+                tempData = user.getTempData();
+                role = user.getRole();
+                phoneNumber = user.getPhoneNumber();
+            }
+        }
+
+        boolean isDirty() {
+            return !Objects.equals(state, user.getState())
+                    || !Objects.equals(tempData, user.getTempData())
+                    || isProfileDirty();
+        }
+
+        boolean isProfileDirty() {
+            return !Objects.equals(role, user.getRole())
+                    || !Objects.equals(phoneNumber, user.getPhoneNumber());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.service.TelegramBotService;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.session.SessionStore;
+
+/**
+ * Асинхронная обработка обновлений от webhook.
+ * Контроллер только проверяет и ставит обновление в очередь, а обработка
+ * (цепочка обработчиков, запросы к Telegram и БД) идет в пуле рабочих потоков.
+ * Обновления одного чата выполняются строго по порядку, разные чаты — параллельно
+ * (см. {@link ChatOrderedExecutor}). Рабочие потоки могут быть виртуальными.
+ * <p>
+ * У каждого класса приоритета ({@link UpdateLane}) своя ограниченная очередь. Оформление заказов
+ * получает поток раньше корзины, корзина — раньше каталога. Лишние обновления класса, который
+ * разрешено отбрасывать, получают короткий ответ «попробуйте позже», остальные отклоняются.
+ */
+@Component
+public class AsyncUpdateDispatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AsyncUpdateDispatcher.class);
+    
+    private static final String BUSY_TEXT = "⏳ Сейчас много запросов, попробуйте еще раз через минуту.";
+    
+    /**
+     * Результат постановки обновления в очередь
+     */
+    public enum SubmitResult {
+        /**
+         * Обновление принято в очередь
+         */
+        ACCEPTED,
+        /**
+         * Очередь класса заполнена, пользователю нужно ответить «попробуйте позже» ({@link #busyReply(UpdateEnvelope)})
+         */
+        SHED,
+        /**
+         * Обновление не принято, Telegram должен доставить его повторно
+         */
+        REJECTED
+    }
+    
+    private final TelegramBotService telegramBotService;
+    private final boolean enabled;
+    private final ChatOrderedExecutor executor;
+    private final Timer waitTimer;
+    private final Timer processingTimer;
+    private final Counter rejectedCounter;
+    private final UpdateLaneProperties laneProperties;
+    private final SessionStore sessionStore;
+    private final Map<UpdateLane, AtomicInteger> lanePending = new EnumMap<>(UpdateLane.class);
+    private final Map<UpdateLane, Counter> shedCounters = new EnumMap<>(UpdateLane.class);
+    
+    public AsyncUpdateDispatcher(
+            @Qualifier("TelegramBotService") TelegramBotService telegramBotService,
+            MeterRegistry meterRegistry,
+            UpdateLaneProperties laneProperties,
+            SessionStore sessionStore,
+            @Value("${telegram.bot.async.enabled:false}") boolean enabled,
+            @Value("${telegram.bot.async.workers:0}") int workers,
+            @Value("${telegram.bot.async.queue-capacity:10000}") int queueCapacity,
+            @Value("${telegram.bot.async.virtual-threads:true}") boolean virtualThreads) {
+        this.telegramBotService = telegramBotService;
+        this.laneProperties = laneProperties;
+        this.sessionStore = sessionStore;
+        this.enabled = enabled;
+        // 0 — по числу ядер: обработчики в основном ждут Telegram и БД, поэтому потоков больше, чем ядер
+        int workerCount = workers > 0 ? workers : Runtime.getRuntime().availableProcessors() * 4;
+        this.executor = new ChatOrderedExecutor(workerCount, queueCapacity, virtualThreads);
+        
+        Gauge.builder("telegram.updates.queue.depth", executor, ChatOrderedExecutor::pendingTasks)
+                .description("Количество обновлений, ожидающих обработки")
+                .register(meterRegistry);
+        Gauge.builder("telegram.updates.active.chats", executor, ChatOrderedExecutor::activeChats)
+                .description("Количество чатов с необработанными обновлениями")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("telegram.updates.queue.wait")
+                .description("Время ожидания обновления в очереди")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("telegram.updates.processing")
+                .description("Время обработки обновления")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("telegram.updates.rejected")
+                .description("Обновления, отклоненные из-за переполнения очереди")
+                .register(meterRegistry);
+        for (UpdateLane lane : UpdateLane.values()) {
+            AtomicInteger pending = new AtomicInteger();
+            lanePending.put(lane, pending);
+            Gauge.builder("telegram.updates.lane.depth", pending, AtomicInteger::get)
+                    .description("Количество ожидающих обновлений по классам приоритета")
+                    .tag("lane", lane.name().toLowerCase())
+                    .register(meterRegistry);
+            shedCounters.put(lane, Counter.builder("telegram.updates.shed")
+                    .description("Обновления, получившие ответ «попробуйте позже» из-за заполненной очереди класса")
+                    .tag("lane", lane.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        
+        if (enabled) {
+            logger.info("Асинхронная обработка обновлений включена: {} рабочих {} потоков, очередь {}",
+                    workerCount, virtualThreads ? "виртуальных" : "платформенных", queueCapacity);
+        }
+    }
+    
+    /**
+     * Включена ли асинхронная обработка
+     * @return true, если обновления нужно ставить в очередь
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Проверяет обновление и ставит его в очередь его класса приоритета.
+     * Класс и ключ упорядочивания берутся из конверта, полный {@link Update} здесь не нужен
+     * @param envelope конверт обновления
+     * @return результат постановки в очередь
+     */
+    public SubmitResult submit(UpdateEnvelope envelope) {
+        if (envelope == null || envelope.getUpdateId() == null) {
+            logger.warn("Получено некорректное обновление без update_id");
+            return SubmitResult.ACCEPTED;
+        }
+        
+        // Состояние чата нужно только для текста сообщения, и берется оно из сессии в памяти
+        Boolean inScenario = envelope.hasMessage() && envelope.getText() != null
+                ? sessionStore.hasState(envelope.getChatId()) : null;
+        UpdateLane lane = UpdateLane.of(envelope, inScenario);
+        AtomicInteger pending = lanePending.get(lane);
+        if (pending.incrementAndGet() > laneProperties.capacity(lane)) {
+            pending.decrementAndGet();
+            if (laneProperties.shed(lane)) {
+                shedCounters.get(lane).increment();
+                return SubmitResult.SHED;
+            }
+            rejectedCounter.increment();
+            logger.warn("Очередь {} переполнена, обновление {} отклонено", lane, envelope.getUpdateId());
+            return SubmitResult.REJECTED;
+        }
+        
+        long enqueuedAt = System.nanoTime();
+        boolean accepted = executor.submit(envelope.getChatKey(), laneProperties.priority(lane), () -> {
+            try {
+                process(envelope, enqueuedAt);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+        if (!accepted) {
+            pending.decrementAndGet();
+            rejectedCounter.increment();
+            logger.warn("Очередь обновлений переполнена, обновление {} отклонено", envelope.getUpdateId());
+            return SubmitResult.REJECTED;
+        }
+        return SubmitResult.ACCEPTED;
+    }
+    
+    /**
+     * Короткий ответ на отброшенное обновление: всплывающее уведомление для callback-запроса
+     * или сообщение для остальных обновлений. В режиме webhook возвращается прямо в ответе на запрос
+     * @param envelope конверт отброшенного обновления
+     * @return метод Bot API или null, если отвечать некому
+     */
+    public static BotApiMethod<?> busyReply(UpdateEnvelope envelope) {
+        if (envelope.hasCallbackQuery()) {
+            AnswerCallbackQuery answer = new AnswerCallbackQuery();
+            answer.setCallbackQueryId(envelope.getCallbackQueryId());
+            answer.setText(BUSY_TEXT);
+            return answer;
+        }
+        if (envelope.hasMessage()) {
+            SendMessage message = new SendMessage();
+            message.setChatId(envelope.getChatId());
+            message.setText(BUSY_TEXT);
+            return message;
+        }
+        return null;
+    }
+    
+    /**
+     * Отправляет ответ «попробуйте позже» отдельным вызовом Bot API, не задерживая вызывающий поток
+     * @param envelope конверт отброшенного обновления
+     */
+    public void sendBusyReply(UpdateEnvelope envelope) {
+        BotApiMethod<?> reply = busyReply(envelope);
+        if (reply != null) {
+            Thread.ofVirtual().name("busy-reply").start(() -> telegramBotService.sendResponse(reply));
+        }
+    }
+    
+    private void process(UpdateEnvelope envelope, long enqueuedAt) {
+        long startedAt = System.nanoTime();
+        waitTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            telegramBotService.processUpdate(envelope);
+        } catch (Exception e) {
+            logger.error("Ошибка при асинхронной обработке обновления {}", envelope.getUpdateId(), e);
+        } finally {
+            processingTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    /**
+     * Дожидается обработки уже принятых обновлений при остановке приложения
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (!executor.shutdown(30, TimeUnit.SECONDS)) {
+                logger.warn("Не все обновления обработаны до остановки: {} в очереди", executor.pendingTasks());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
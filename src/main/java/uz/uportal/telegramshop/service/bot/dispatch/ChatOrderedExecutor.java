@@ -0,0 +1,255 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Исполнитель, сохраняющий порядок задач внутри одного чата и выполняющий разные чаты параллельно.
+ * У каждого активного чата есть почтовый ящик (очередь задач). Ящик, в котором есть задачи,
+ * обслуживает ровно одна задача-обработчик в общем пуле, поэтому поток на каждый чат не нужен.
+ * Опустевший ящик сразу удаляется из таблицы.
+ * <p>
+ * Ящики ждут свободного потока в очереди с приоритетом: приоритет ящика — наивысший
+ * (наименьшее число) среди задач, которые лежат в нем сейчас. Он пересчитывается при каждой
+ * постановке ящика в очередь, а более срочная задача переставляет еще не запущенный ящик вперед.
+ */
+public class ChatOrderedExecutor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ChatOrderedExecutor.class);
+    
+    /**
+     * Сколько задач одного чата выполняется подряд, прежде чем уступить поток другим чатам
+     */
+    private static final int DRAIN_BATCH = 32;
+    
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final int capacity;
+    private volatile boolean accepting = true;
+    
+    /**
+     * @param workerCount количество рабочих потоков
+     * @param capacity максимальное количество ожидающих задач по всем чатам
+     * @param virtualThreads использовать виртуальные потоки
+     */
+    public ChatOrderedExecutor(int workerCount, int capacity, boolean virtualThreads) {
+        this.capacity = capacity;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), threadFactory(virtualThreads));
+    }
+    
+    /**
+     * Ставит задачу в очередь чата
+     * @param chatId ID чата
+     * @param task задача
+     * @return true, если задача принята; false, если превышена емкость или исполнитель остановлен
+     */
+    public boolean submit(long chatId, Runnable task) {
+        return submit(chatId, 0, task);
+    }
+    
+    /**
+     * Ставит задачу в очередь чата с указанным приоритетом
+     * @param chatId ID чата
+     * @param priority приоритет: чем меньше число, тем раньше чат получит поток
+     * @param task задача
+     * @return true, если задача принята; false, если превышена емкость или исполнитель остановлен
+     */
+    public boolean submit(long chatId, int priority, Runnable task) {
+        if (!accepting) {
+            return false;
+        }
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            return false;
+        }
+        
+        Drain[] schedule = new Drain[1];
+        mailboxes.compute(chatId, (key, mailbox) -> {
+            Mailbox target = mailbox != null ? mailbox : new Mailbox();
+            target.tasks.add(new Task(task, priority));
+            // Ящик еще ждет потока с более низким приоритетом: ставим его в очередь заново,
+            // прежнее обслуживание при запуске увидит, что оно устарело
+            if (!target.scheduled || !target.running && priority < target.priority) {
+                schedule[0] = target.schedule(chatId, priority);
+            }
+            return target;
+        });
+        
+        if (schedule[0] != null) {
+            workers.execute(schedule[0]);
+        }
+        return true;
+    }
+    
+    private void drain(Drain drain) {
+        long chatId = drain.chatId;
+        Mailbox mailbox = mailboxes.computeIfPresent(chatId, (key, current) -> {
+            if (current.order == drain.order) {
+                current.running = true;
+            }
+            return current;
+        });
+        if (mailbox == null || mailbox.order != drain.order) {
+            return;
+        }
+        
+        for (int processed = 0; processed < DRAIN_BATCH; processed++) {
+            Task task = mailbox.tasks.poll();
+            if (task == null) {
+                // Удаляем ящик, только если в него не успели положить новую задачу
+                Mailbox remaining = mailboxes.compute(chatId, (key, current) -> {
+                    if (current.tasks.isEmpty()) {
+                        current.scheduled = false;
+                        return null;
+                    }
+                    return current;
+                });
+                if (remaining == null) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                logger.error("Ошибка при выполнении задачи для чата {}", chatId, e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+        
+        // Ящик все еще помечен как обслуживаемый: продолжаем после задач других чатов
+        // с приоритетом задач, оставшихся в ящике
+        Drain[] next = new Drain[1];
+        mailboxes.computeIfPresent(chatId, (key, current) -> {
+            int priority = Integer.MAX_VALUE;
+            for (Task task : current.tasks) {
+                priority = Math.min(priority, task.priority);
+            }
+            next[0] = current.schedule(chatId, priority);
+            return current;
+        });
+        workers.execute(next[0]);
+    }
+    
+    /**
+     * Количество задач, ожидающих выполнения или выполняющихся
+     * @return количество задач
+     */
+    public int pendingTasks() {
+        return pending.get();
+    }
+    
+    /**
+     * Количество чатов, у которых есть невыполненные задачи
+     * @return количество чатов
+     */
+    public int activeChats() {
+        return mailboxes.size();
+    }
+    
+    /**
+     * Прекращает прием задач и ждет выполнения уже принятых
+     * @param timeout максимальное время ожидания
+     * @param unit единица времени
+     * @return true, если все задачи выполнены
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        accepting = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        boolean drained = pending.get() == 0;
+        workers.shutdown();
+        if (!drained) {
+            workers.shutdownNow();
+        }
+        return drained;
+    }
+    
+    private static ThreadFactory threadFactory(boolean virtualThreads) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name("update-worker-", 0).factory();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "update-worker-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Очередь задач одного чата. Поля, кроме tasks, меняются только внутри compute по ключу чата
+     */
+    private final class Mailbox {
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        /**
+         * Ящик стоит в очереди пула или обслуживается
+         */
+        private boolean scheduled;
+        /**
+         * Задачи ящика выполняются: переставлять его в очереди пула уже нельзя
+         */
+        private boolean running;
+        /**
+         * Приоритет и номер действующего обслуживания ящика в очереди пула
+         */
+        private int priority;
+        private long order;
+        
+        private Drain schedule(long chatId, int priority) {
+            Drain drain = new Drain(chatId, priority, sequence.getAndIncrement());
+            this.scheduled = true;
+            this.running = false;
+            this.priority = priority;
+            this.order = drain.order;
+            return drain;
+        }
+    }
+    
+    private record Task(Runnable runnable, int priority) {
+    }
+    
+    /**
+     * Обслуживание ящика в очереди пула: сначала по приоритету, при равном — по порядку постановки
+     */
+    private final class Drain implements Runnable, Comparable<Drain> {
+        private final long chatId;
+        private final int priority;
+        private final long order;
+        
+        private Drain(long chatId, int priority, long order) {
+            this.chatId = chatId;
+            this.priority = priority;
+            this.order = order;
+        }
+        
+        @Override
+        public void run() {
+            drain(this);
+        }
+        
+        @Override
+        public int compareTo(Drain other) {
+            int byPriority = Integer.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+}
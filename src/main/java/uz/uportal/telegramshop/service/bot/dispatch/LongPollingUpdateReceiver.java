@@ -0,0 +1,148 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+/**
+ * Получение обновлений через long polling (getUpdates) вместо webhook.
+ * Нужен для staging и для узлов за NAT, куда Telegram не может доставить webhook.
+ * <p>
+ * Обновления запрашиваются пачками и по одному передаются получателю. Получатель может
+ * отказаться принять обновление (очередь переполнена) — тогда offset не сдвигается,
+ * и остаток пачки будет запрошен снова.
+ */
+public class LongPollingUpdateReceiver {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LongPollingUpdateReceiver.class);
+    
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long THROTTLE_MILLIS = 100;
+    
+    private final AbsSender sender;
+    private final Predicate<Update> sink;
+    private final int limit;
+    private final int timeoutSeconds;
+    private volatile boolean running;
+    private volatile Thread thread;
+    private int offset;
+    
+    /**
+     * @param sender бот, через который выполняется getUpdates
+     * @param sink получатель обновлений; возвращает false, если обновление не принято
+     * @param limit максимальный размер пачки (1-100)
+     * @param timeoutSeconds время ожидания новых обновлений на стороне Telegram
+     */
+    public LongPollingUpdateReceiver(AbsSender sender, Predicate<Update> sink, int limit, int timeoutSeconds) {
+        this.sender = sender;
+        this.sink = sink;
+        this.limit = limit;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+    
+    /**
+     * Удаляет webhook (Telegram не отдает getUpdates, пока он установлен) и запускает поток опроса
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            sender.execute(new DeleteWebhook());
+        } catch (TelegramApiException e) {
+            logger.warn("Не удалось удалить webhook перед запуском long polling: {}", e.getMessage());
+        }
+        running = true;
+        thread = new Thread(this::run, "update-poller");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Long polling запущен: пачки до {} обновлений, ожидание {} с", limit, timeoutSeconds);
+    }
+    
+    /**
+     * Останавливает опрос. Уже переданные получателю обновления обрабатываются им самим
+     */
+    public synchronized void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void run() {
+        long backoff = 0;
+        while (running) {
+            try {
+                boolean accepted = pollOnce();
+                backoff = 0;
+                if (!accepted) {
+                    // Получатель перегружен: даем очереди разгрузиться
+                    TimeUnit.MILLISECONDS.sleep(THROTTLE_MILLIS);
+                }
+            } catch (TelegramApiException e) {
+                backoff = backoff == 0 ? 1_000 : Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                logger.error("Ошибка getUpdates, повтор через {} мс: {}", backoff, e.getMessage());
+                sleepQuietly(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Ошибка в цикле long polling", e);
+                sleepQuietly(1_000);
+            }
+        }
+    }
+    
+    /**
+     * Запрашивает одну пачку обновлений и передает их получателю
+     * @return true, если получатель принял всю пачку
+     * @throws TelegramApiException если запрос к Bot API не удался
+     */
+    boolean pollOnce() throws TelegramApiException {
+        GetUpdates request = new GetUpdates();
+        request.setOffset(offset);
+        request.setLimit(limit);
+        request.setTimeout(timeoutSeconds);
+        
+        List<Update> updates = sender.execute(request);
+        for (Update update : updates) {
+            if (!sink.test(update)) {
+                return false;
+            }
+            // Следующий запрос подтверждает все обновления до этого включительно
+            offset = update.getUpdateId() + 1;
+        }
+        return true;
+    }
+    
+    /**
+     * Offset, с которого будет запрошена следующая пачка
+     * @return offset
+     */
+    int getOffset() {
+        return offset;
+    }
+    
+    private void sleepQuietly(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+
+/**
+ * Окно недавно полученных update_id для отбрасывания повторных доставок.
+ * Telegram повторяет webhook, если ответ был медленным, и без этой проверки повтор
+ * заново добавляет товар в корзину или оформляет заказ.
+ * <p>
+ * update_id растут монотонно, поэтому хватает битовой карты скользящего диапазона
+ * (самый большой полученный id минус размер окна) в кольцевом буфере: проверка не выделяет памяти.
+ * В постоянном режиме буфер отображается в файл, и повторы отбрасываются и после перезапуска.
+ * <p>
+ * Telegram может начать нумерацию заново (например, после долгого простоя или смены webhook),
+ * поэтому id, который меньше окна более чем на его размер, считается сбросом счетчика:
+ * окно очищается и отсчитывается от нового id. Иначе бот перестал бы принимать обновления,
+ * а в постоянном режиме — и после перезапуска.
+ */
+@Component
+public class UpdateDeduplicator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDeduplicator.class);
+    
+    /**
+     * Слово 0 — самый большой полученный update_id, дальше биты окна
+     */
+    private static final int HEADER_WORDS = 1;
+    
+    private final int window;
+    private final int mask;
+    private final LongBuffer words;
+    private final MappedByteBuffer mapped;
+    private final Counter duplicatesCounter;
+    private final Counter resetsCounter;
+    private long highest;
+    
+    public UpdateDeduplicator(
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.dedup.window:65536}") int window,
+            @Value("${telegram.bot.dedup.file:}") String file) throws IOException {
+        if (Integer.bitCount(window) != 1 || window < 64) {
+            throw new IllegalArgumentException("Размер окна дедупликации должен быть степенью двойки не меньше 64: " + window);
+        }
+        this.window = window;
+        this.mask = window - 1;
+        int totalWords = HEADER_WORDS + window / Long.SIZE;
+        
+        if (file == null || file.isBlank()) {
+            this.mapped = null;
+            this.words = LongBuffer.allocate(totalWords);
+        } else {
+            this.mapped = map(Paths.get(file), totalWords);
+            this.words = mapped.asLongBuffer();
+            logger.info("Окно дедупликации обновлений хранится в файле {}, последний update_id {}", file, words.get(0));
+        }
+        this.highest = words.get(0);
+        
+        this.duplicatesCounter = Counter.builder("telegram.updates.duplicates")
+                .description("Повторно доставленные обновления, которые были отброшены")
+                .register(meterRegistry);
+        this.resetsCounter = Counter.builder("telegram.updates.id.resets")
+                .description("Сбросы нумерации update_id, после которых окно дедупликации начато заново")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Проверяет обновление и запоминает его update_id
+     * @param envelope конверт обновления
+     * @return true, если обновление с таким update_id уже было получено
+     */
+    public boolean isDuplicate(UpdateEnvelope envelope) {
+        if (envelope == null || envelope.getUpdateId() == null) {
+            return false;
+        }
+        return isDuplicate(envelope.getUpdateId());
+    }
+    
+    /**
+     * Проверяет update_id и запоминает его
+     * @param updateId update_id
+     * @return true, если такой update_id уже был получен
+     */
+    public synchronized boolean isDuplicate(long updateId) {
+        if (updateId > highest) {
+            clearRange(highest + 1, updateId);
+            highest = updateId;
+            words.put(0, updateId);
+            setBit(updateId);
+            return false;
+        }
+        if (updateId <= highest - window) {
+            logger.warn("update_id {} меньше последнего {} больше чем на окно, нумерация сброшена", updateId, highest);
+            resetsCounter.increment();
+            clearAll();
+            highest = updateId;
+            words.put(0, updateId);
+            setBit(updateId);
+            return false;
+        }
+        if (testBit(updateId)) {
+            duplicatesCounter.increment();
+            return true;
+        }
+        setBit(updateId);
+        return false;
+    }
+    
+    /**
+     * Забывает update_id, чтобы повторная доставка обновления была принята.
+     * Нужно, когда обновление отклонено и Telegram должен прислать его снова
+     * @param updateId update_id
+     */
+    public synchronized void forget(long updateId) {
+        if (updateId > highest - window && updateId <= highest) {
+            int bit = (int) (updateId & mask);
+            int index = HEADER_WORDS + (bit >>> 6);
+            words.put(index, words.get(index) & ~(1L << bit));
+        }
+    }
+    
+    private void clearRange(long fromId, long toId) {
+        if (toId - fromId + 1 >= window) {
+            clearAll();
+            return;
+        }
+        for (long id = fromId; id <= toId; id++) {
+            int bit = (int) (id & mask);
+            int index = HEADER_WORDS + (bit >>> 6);
+            words.put(index, words.get(index) & ~(1L << bit));
+        }
+    }
+    
+    private void clearAll() {
+        for (int i = HEADER_WORDS; i < words.capacity(); i++) {
+            words.put(i, 0L);
+        }
+    }
+    
+    private boolean testBit(long updateId) {
+        int bit = (int) (updateId & mask);
+        return (words.get(HEADER_WORDS + (bit >>> 6)) & (1L << bit)) != 0;
+    }
+    
+    private void setBit(long updateId) {
+        int bit = (int) (updateId & mask);
+        int index = HEADER_WORDS + (bit >>> 6);
+        words.put(index, words.get(index) | (1L << bit));
+    }
+    
+    private static MappedByteBuffer map(Path path, int totalWords) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        long size = (long) totalWords * Long.BYTES;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != size) {
+                // Размер окна изменился или файл новый — начинаем с пустого окна
+                channel.truncate(0);
+            }
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+    
+    /**
+     * Сбрасывает окно на диск при остановке приложения
+     */
+    @PreDestroy
+    public synchronized void flush() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+}
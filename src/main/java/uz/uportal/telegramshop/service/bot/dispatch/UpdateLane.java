@@ -0,0 +1,177 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.util.Set;
+
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+
+/**
+ * Классы приоритета входящих обновлений.
+ * Класс определяется по данным callback-запроса или тексту сообщения, без обращений к базе данных.
+ * Для произвольного текста учитывается, известно ли по сессии в памяти, что чат находится в пошаговом сценарии:
+ * вне сценария такой текст — поиск товаров.
+ * Значения по умолчанию (приоритет, емкость очереди, можно ли отбрасывать лишнее)
+ * переопределяются через {@link UpdateLaneProperties}.
+ */
+public enum UpdateLane {
+    
+    /**
+     * Оформление и управление заказами, админ-панель и ввод данных в пошаговых сценариях
+     */
+    CHECKOUT(0, 2000, false),
+    
+    /**
+     * Корзина
+     */
+    CART(1, 2000, false),
+    
+    /**
+     * Команды и пункты главного меню
+     */
+    GENERAL(2, 3000, true),
+    
+    /**
+     * Просмотр каталога и поиск товаров
+     */
+    CATALOG(3, 3000, true);
+    
+    private static final String[] CHECKOUT_CALLBACKS = {
+            "checkout", "confirm_order", "cancel_order", "order_", "orders_",
+            "admin_", "shop_", "products_", "categories_", "user_", "users_", "edit_", "delete_",
+            "confirm_delete_", "change_user_role", "add_manager", "back_to_admin", "add_product", "add_category"
+    };
+    private static final String[] CART_CALLBACKS = {
+            "add_to_cart_", "remove_from_cart_", "update_quantity_", "clear_cart", "main_menu_cart"
+    };
+    private static final String[] CATALOG_CALLBACKS = {
+            "catalog_", "back_to_catalog"
+    };
+    private static final Set<String> ADMIN_BUTTONS = Set.of(
+            "⚙️ Админ панель", "📋 Список товаров", "➕ Добавить товар", "🗂 Список категорий",
+            "➕ Добавить категорию", "📦 Управление заказами", "👥 Список пользователей",
+            "⚙️ Настройки магазина", "⬅️ Вернуться в главное меню"
+    );
+    
+    private final int defaultPriority;
+    private final int defaultCapacity;
+    private final boolean defaultShed;
+    
+    UpdateLane(int defaultPriority, int defaultCapacity, boolean defaultShed) {
+        this.defaultPriority = defaultPriority;
+        this.defaultCapacity = defaultCapacity;
+        this.defaultShed = defaultShed;
+    }
+    
+    public int getDefaultPriority() {
+        return defaultPriority;
+    }
+    
+    public int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+    
+    public boolean isDefaultShed() {
+        return defaultShed;
+    }
+    
+    /**
+     * Определяет класс обновления, когда о состоянии чата ничего не известно
+     * @param envelope конверт обновления
+     * @return класс приоритета
+     */
+    public static UpdateLane of(UpdateEnvelope envelope) {
+        return of(envelope, null);
+    }
+    
+    /**
+     * Определяет класс обновления
+     * @param envelope конверт обновления
+     * @param inScenario находится ли чат в пошаговом сценарии; null, если неизвестно
+     * @return класс приоритета
+     */
+    public static UpdateLane of(UpdateEnvelope envelope, Boolean inScenario) {
+        switch (envelope.getKind()) {
+            case CALLBACK_QUERY:
+                return ofCallback(envelope.getCallbackData());
+            case MESSAGE:
+                return ofMessage(envelope.getText(), inScenario);
+            case INLINE_QUERY:
+                return CATALOG;
+            default:
+                return GENERAL;
+        }
+    }
+    
+    private static UpdateLane ofCallback(String data) {
+        if (data == null) {
+            return GENERAL;
+        }
+        CallbackAction action = CallbackCodec.actionOf(data);
+        if (action != null) {
+            return ofAction(action);
+        }
+        if (startsWithAny(data, CHECKOUT_CALLBACKS)) {
+            return CHECKOUT;
+        }
+        if (startsWithAny(data, CART_CALLBACKS)) {
+            return CART;
+        }
+        if (startsWithAny(data, CATALOG_CALLBACKS)) {
+            return CATALOG;
+        }
+        return GENERAL;
+    }
+    
+    private static UpdateLane ofAction(CallbackAction action) {
+        switch (action) {
+            case CATALOG_CATEGORY:
+            case CATALOG_SUBCATEGORY:
+            case CATALOG_PRODUCTS_PAGE:
+            case CATALOG_CAROUSEL:
+                return CATALOG;
+            case ADD_TO_CART:
+            case REMOVE_FROM_CART:
+            case UPDATE_QUANTITY:
+                return CART;
+            default:
+                return CHECKOUT;
+        }
+    }
+    
+    private static UpdateLane ofMessage(String text, Boolean inScenario) {
+        if (text == null) {
+            // Фото, контакты и т.п. присылают только в пошаговых сценариях (фото товара, телефон)
+            return CHECKOUT;
+        }
+        if (text.startsWith("/")) {
+            return GENERAL;
+        }
+        switch (text) {
+            case "🛍 Каталог":
+                return CATALOG;
+            case "🛒 Корзина":
+                return CART;
+            case "ℹ️ Информация":
+            case "📞 Поддержка":
+                return GENERAL;
+            default:
+                if (ADMIN_BUTTONS.contains(text)) {
+                    return CHECKOUT;
+                }
+                // Произвольный текст вне сценария — поиск товаров. В сценарии это адрес, телефон,
+                // комментарий к заказу, поля товара или категории; пока состояние неизвестно,
+                // текст тоже считается вводом в сценарии, чтобы не отбросить его под нагрузкой
+                return Boolean.FALSE.equals(inScenario) ? CATALOG : CHECKOUT;
+        }
+    }
+    
+    private static boolean startsWithAny(String data, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (data.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
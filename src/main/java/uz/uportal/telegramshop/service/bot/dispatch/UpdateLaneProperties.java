@@ -0,0 +1,92 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки классов приоритета асинхронной обработки, например:
+ * <pre>
+ * telegram.bot.async.lanes.catalog.capacity=5000
+ * telegram.bot.async.lanes.catalog.priority=3
+ * telegram.bot.async.lanes.cart.shed=true
+ * </pre>
+ * Не указанные значения берутся из {@link UpdateLane}
+ */
+@Component
+@ConfigurationProperties(prefix = "telegram.bot.async")
+public class UpdateLaneProperties {
+    
+    private Map<UpdateLane, Lane> lanes = new EnumMap<>(UpdateLane.class);
+    
+    public Map<UpdateLane, Lane> getLanes() {
+        return lanes;
+    }
+    
+    public void setLanes(Map<UpdateLane, Lane> lanes) {
+        this.lanes = lanes;
+    }
+    
+    /**
+     * Приоритет класса: чем меньше число, тем раньше обрабатывается
+     * @param lane класс приоритета
+     * @return приоритет
+     */
+    public int priority(UpdateLane lane) {
+        Lane settings = lanes.get(lane);
+        return settings != null && settings.getPriority() != null ? settings.getPriority() : lane.getDefaultPriority();
+    }
+    
+    /**
+     * Максимальное количество ожидающих обновлений класса
+     * @param lane класс приоритета
+     * @return емкость
+     */
+    public int capacity(UpdateLane lane) {
+        Lane settings = lanes.get(lane);
+        return settings != null && settings.getCapacity() != null ? settings.getCapacity() : lane.getDefaultCapacity();
+    }
+    
+    /**
+     * Отвечать ли «попробуйте позже» на обновления сверх емкости.
+     * Иначе обновление отклоняется, и Telegram доставит его повторно
+     * @param lane класс приоритета
+     * @return true, если лишние обновления можно отбрасывать
+     */
+    public boolean shed(UpdateLane lane) {
+        Lane settings = lanes.get(lane);
+        return settings != null && settings.getShed() != null ? settings.getShed() : lane.isDefaultShed();
+    }
+    
+    public static class Lane {
+        private Integer priority;
+        private Integer capacity;
+        private Boolean shed;
+        
+        public Integer getPriority() {
+            return priority;
+        }
+        
+        public void setPriority(Integer priority) {
+            this.priority = priority;
+        }
+        
+        public Integer getCapacity() {
+            return capacity;
+        }
+        
+        public void setCapacity(Integer capacity) {
+            this.capacity = capacity;
+        }
+        
+        public Boolean getShed() {
+            return shed;
+        }
+        
+        public void setShed(Boolean shed) {
+            this.shed = shed;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+/**
+ * Преобразование черновика в строку для внешнего хранилища и обратно
+ * @param <T> тип черновика
+ */
+public interface DraftCodec<T> {
+
+    String encode(T draft);
+
+    T decode(String payload);
+}
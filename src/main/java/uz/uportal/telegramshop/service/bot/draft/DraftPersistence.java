@@ -0,0 +1,29 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+/**
+ * Внешнее хранилище черновиков, переживающее перезапуск бота.
+ * Черновик хранится как строка вместе со временем истечения (мс с начала эпохи)
+ */
+public interface DraftPersistence {
+
+    /**
+     * @return true, если хранилище общее для нескольких экземпляров бота:
+     *         тогда черновики не кэшируются в памяти и всегда читаются из него
+     */
+    boolean isShared();
+
+    void save(String namespace, long chatId, String payload, long expiresAt);
+
+    /**
+     * @return сохраненный черновик или null, если его нет или срок его хранения истек к моменту {@code now}
+     */
+    String load(String namespace, long chatId, long now);
+
+    void delete(String namespace, long chatId);
+
+    /**
+     * Удаляет черновики всех видов, срок хранения которых истек к моменту {@code now}
+     * @return количество удаленных черновиков
+     */
+    int deleteExpired(long now);
+}
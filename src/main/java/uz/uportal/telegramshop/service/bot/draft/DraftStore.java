@@ -0,0 +1,206 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Черновики одного вида (товар, категория) по ID чата для многошаговых сценариев.
+ * Черновик живет {@code telegram.bot.drafts.ttl} секунд с последнего сохранения: брошенные сценарии
+ * не копятся в памяти. Число черновиков в памяти ограничено, при переполнении вытесняются те,
+ * что дольше всех не сохранялись.
+ * <p>
+ * Если задано внешнее хранилище ({@link DraftPersistence}), черновик записывается и туда:
+ * локальное хранилище восстанавливает черновики после перезапуска и вытеснения,
+ * общее (таблица в базе) используется вместо памяти, чтобы черновик видели все экземпляры бота.
+ * <p>
+ * Черновик, полученный через {@link #get(Long)}, после изменения нужно снова сохранить через {@link #put}.
+ * @param <T> тип черновика
+ */
+public class DraftStore<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DraftStore.class);
+
+    private final String namespace;
+    private final DraftCodec<T> codec;
+    private final DraftPersistence persistence;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final LongSupplier clock;
+    private final Map<Long, Entry<T>> drafts = new ConcurrentHashMap<>();
+    private final Counter expiredCounter;
+    private final Counter evictedCounter;
+
+    DraftStore(
+            String namespace,
+            DraftCodec<T> codec,
+            DraftPersistence persistence,
+            long ttlMillis,
+            int maxSize,
+            LongSupplier clock,
+            MeterRegistry meterRegistry) {
+        this.namespace = namespace;
+        this.codec = codec;
+        this.persistence = persistence;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = Math.max(1, maxSize);
+        this.clock = clock;
+
+        Gauge.builder("telegram.drafts.size", drafts, Map::size)
+                .description("Количество черновиков в памяти")
+                .tag("draft", namespace)
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("telegram.drafts.removed")
+                .description("Черновики, удаленные из памяти без завершения сценария")
+                .tag("draft", namespace)
+                .tag("reason", "expired")
+                .register(meterRegistry);
+        this.evictedCounter = Counter.builder("telegram.drafts.removed")
+                .description("Черновики, удаленные из памяти без завершения сценария")
+                .tag("draft", namespace)
+                .tag("reason", "evicted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Черновик чата
+     * @param chatId ID чата
+     * @return черновик или null, если его нет или срок его хранения истек
+     */
+    public T get(Long chatId) {
+        if (chatId == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (persistence != null && persistence.isShared()) {
+            return load(chatId, now);
+        }
+        Entry<T> entry = drafts.get(chatId);
+        if (entry != null) {
+            if (entry.expiresAt() > now) {
+                return entry.draft();
+            }
+            if (drafts.remove(chatId, entry)) {
+                expiredCounter.increment();
+            }
+        }
+        if (persistence == null) {
+            return null;
+        }
+        // Черновик мог остаться в файле после перезапуска или вытеснения из памяти
+        T draft = load(chatId, now);
+        if (draft != null) {
+            drafts.put(chatId, new Entry<>(draft, now + ttlMillis));
+            evictOverflow(now);
+        }
+        return draft;
+    }
+
+    public T getOrDefault(Long chatId, T defaultDraft) {
+        T draft = get(chatId);
+        return draft != null ? draft : defaultDraft;
+    }
+
+    /**
+     * Сохраняет черновик и продлевает срок его хранения
+     * @param chatId ID чата
+     * @param draft черновик
+     */
+    public void put(Long chatId, T draft) {
+        long now = clock.getAsLong();
+        long expiresAt = now + ttlMillis;
+        if (persistence != null) {
+            persistence.save(namespace, chatId, codec.encode(draft), expiresAt);
+            if (persistence.isShared()) {
+                return;
+            }
+        }
+        drafts.put(chatId, new Entry<>(draft, expiresAt));
+        evictOverflow(now);
+    }
+
+    public void remove(Long chatId) {
+        if (chatId == null) {
+            return;
+        }
+        drafts.remove(chatId);
+        if (persistence != null) {
+            persistence.delete(namespace, chatId);
+        }
+    }
+
+    public int size() {
+        return drafts.size();
+    }
+
+    /**
+     * Удаляет из памяти черновики, срок хранения которых истек. Из внешнего хранилища
+     * их удаляет {@link DraftStores} одним запросом для всех видов черновиков
+     * @param now текущее время, мс
+     * @return количество удаленных черновиков
+     */
+    int evictExpired(long now) {
+        int removed = 0;
+        Iterator<Entry<T>> entries = drafts.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().expiresAt() <= now) {
+                entries.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            expiredCounter.increment(removed);
+            logger.debug("Удалено просроченных черновиков {}: {}", namespace, removed);
+        }
+        return removed;
+    }
+
+    private void evictOverflow(long now) {
+        if (drafts.size() <= maxSize) {
+            return;
+        }
+        synchronized (this) {
+            evictExpired(now);
+            while (drafts.size() > maxSize) {
+                Map.Entry<Long, Entry<T>> oldest = null;
+                for (Map.Entry<Long, Entry<T>> candidate : drafts.entrySet()) {
+                    if (oldest == null || candidate.getValue().expiresAt() < oldest.getValue().expiresAt()) {
+                        oldest = candidate;
+                    }
+                }
+                if (oldest == null) {
+                    return;
+                }
+                if (drafts.remove(oldest.getKey(), oldest.getValue())) {
+                    evictedCounter.increment();
+                }
+            }
+        }
+    }
+
+    private T load(Long chatId, long now) {
+        String payload = persistence.load(namespace, chatId, now);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return codec.decode(payload);
+        } catch (RuntimeException e) {
+            // Например, черновик сохранен предыдущей версией бота с другим набором полей
+            logger.warn("Не удалось прочитать черновик {} чата {}: {}", namespace, chatId, e.getMessage());
+            persistence.delete(namespace, chatId);
+            return null;
+        }
+    }
+
+    private record Entry<T>(T draft, long expiresAt) {
+    }
+}
@@ -0,0 +1,146 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Создает хранилища черновиков и раз в {@code telegram.bot.drafts.sweep-interval} секунд
+ * удаляет просроченные черновики из памяти и из внешнего хранилища.
+ * <p>
+ * Где хранятся черновики, задает {@code telegram.bot.drafts.store}:
+ * {@code memory} — только в памяти (по умолчанию), {@code file} — в локальных файлах
+ * в каталоге {@code telegram.bot.drafts.dir}, переживают перезапуск, {@code jdbc} — в таблице основной базы,
+ * общей для нескольких экземпляров бота. Во внешнее хранилище черновики пишутся в JSON.
+ */
+@Component
+public class DraftStores {
+
+    private static final Logger logger = LoggerFactory.getLogger(DraftStores.class);
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DraftPersistence persistence;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final List<DraftStore<?>> stores = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sweeper;
+
+    public DraftStores(
+            ObjectMapper objectMapper,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.drafts.store:memory}") String store,
+            @Value("${telegram.bot.drafts.dir:drafts}") String directory,
+            @Value("${telegram.bot.drafts.ttl:3600}") long ttl,
+            @Value("${telegram.bot.drafts.max-size:1000}") int maxSize,
+            @Value("${telegram.bot.drafts.sweep-interval:60}") long sweepInterval) throws IOException {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttl);
+        this.maxSize = maxSize;
+        this.persistence = switch (store) {
+            case "memory" -> null;
+            case "file" -> new FileDraftPersistence(Paths.get(directory));
+            case "jdbc" -> new JdbcDraftPersistence(jdbcTemplate);
+            default -> throw new IllegalArgumentException(
+                    "Неизвестное хранилище черновиков telegram.bot.drafts.store: " + store);
+        };
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("draft-sweeper").daemon().factory());
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        logger.info("Черновики: хранилище {}, срок хранения {} с, до {} черновиков каждого вида в памяти",
+                store, ttl, maxSize);
+    }
+
+    /**
+     * Хранилище черновиков, которые сами сериализуются в JSON
+     * @param namespace вид черновика, уникальный для хранилища
+     * @param type класс черновика
+     */
+    public <T> DraftStore<T> create(String namespace, Class<T> type) {
+        return create(namespace, type, Function.identity(), Function.identity());
+    }
+
+    /**
+     * Хранилище черновиков, которые пишутся во внешнее хранилище через промежуточное представление,
+     * например сущность со связями — через ее плоскую копию с ID связанных сущностей
+     * @param namespace вид черновика, уникальный для хранилища
+     * @param storedType класс промежуточного представления
+     * @param toStored преобразование черновика в промежуточное представление
+     * @param fromStored обратное преобразование
+     */
+    public <T, S> DraftStore<T> create(String namespace, Class<S> storedType,
+            Function<T, S> toStored, Function<S, T> fromStored) {
+        DraftCodec<T> codec = new DraftCodec<>() {
+            @Override
+            public String encode(T draft) {
+                try {
+                    return objectMapper.writeValueAsString(toStored.apply(draft));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public T decode(String payload) {
+                try {
+                    return fromStored.apply(objectMapper.readValue(payload, storedType));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        DraftStore<T> store = new DraftStore<>(namespace, codec, persistence, ttlMillis, maxSize,
+                System::currentTimeMillis, meterRegistry);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * Удаляет просроченные черновики
+     * @return количество черновиков, удаленных из памяти и из внешнего хранилища
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (DraftStore<?> store : stores) {
+            removed += store.evictExpired(now);
+        }
+        if (persistence != null) {
+            removed += persistence.deleteExpired(now);
+        }
+        return removed;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            logger.error("Ошибка при удалении просроченных черновиков", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
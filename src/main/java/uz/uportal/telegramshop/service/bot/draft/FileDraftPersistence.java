@@ -0,0 +1,125 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Черновики в локальных файлах: {@code <dir>/<вид>/<chatId>.draft}, первая строка — время истечения,
+ * дальше сам черновик. Файл заменяется целиком через переименование временного, поэтому при аварийной
+ * остановке остается либо старая, либо новая версия черновика.
+ * Хранилище локальное и подходит для одного экземпляра бота
+ */
+public class FileDraftPersistence implements DraftPersistence {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileDraftPersistence.class);
+    private static final String SUFFIX = ".draft";
+
+    private final Path directory;
+
+    public FileDraftPersistence(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    @Override
+    public void save(String namespace, long chatId, String payload, long expiresAt) {
+        Path file = file(namespace, chatId);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(temporary, expiresAt + "\n" + payload, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить черновик " + file, e);
+        }
+    }
+
+    @Override
+    public String load(String namespace, long chatId, long now) {
+        Path file = file(namespace, chatId);
+        String content;
+        try {
+            content = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать черновик " + file, e);
+        }
+        int newline = content.indexOf('\n');
+        if (newline < 0 || parseExpiresAt(content.substring(0, newline)) <= now) {
+            deleteQuietly(file);
+            return null;
+        }
+        return content.substring(newline + 1);
+    }
+
+    @Override
+    public void delete(String namespace, long chatId) {
+        deleteQuietly(file(namespace, chatId));
+    }
+
+    @Override
+    public int deleteExpired(long now) {
+        int deleted = 0;
+        try (DirectoryStream<Path> namespaces = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path namespace : namespaces) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(namespace, "*" + SUFFIX)) {
+                    for (Path file : files) {
+                        if (readExpiresAt(file) <= now) {
+                            deleteQuietly(file);
+                            deleted++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось очистить черновики в " + directory, e);
+        }
+        return deleted;
+    }
+
+    private Path file(String namespace, long chatId) {
+        return directory.resolve(namespace).resolve(chatId + SUFFIX);
+    }
+
+    private static long readExpiresAt(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line != null ? parseExpiresAt(line) : 0;
+        } catch (IOException e) {
+            // Файл удален или заменен между чтением каталога и открытием
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long parseExpiresAt(String line) {
+        try {
+            return Long.parseLong(line.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить черновик {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+import java.util.List;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Черновики в таблице {@code bot_drafts} основной базы. База общая для всех экземпляров бота,
+ * поэтому черновик доступен, даже если следующее обновление чата попало на другой экземпляр.
+ * Таблица создается при запуске, если ее еще нет
+ */
+public class JdbcDraftPersistence implements DraftPersistence {
+
+    private static final String UPDATE_SQL =
+            "update bot_drafts set payload = ?, expires_at = ? where namespace = ? and chat_id = ?";
+    private static final String INSERT_SQL =
+            "insert into bot_drafts (namespace, chat_id, payload, expires_at) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcDraftPersistence(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        jdbcTemplate.execute("create table if not exists bot_drafts ("
+                + "namespace varchar(32) not null, "
+                + "chat_id bigint not null, "
+                + "payload varchar(65535) not null, "
+                + "expires_at bigint not null, "
+                + "primary key (namespace, chat_id))");
+        jdbcTemplate.execute("create index if not exists bot_drafts_expires_at on bot_drafts (expires_at)");
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void save(String namespace, long chatId, String payload, long expiresAt) {
+        if (jdbcTemplate.update(UPDATE_SQL, payload, expiresAt, namespace, chatId) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT_SQL, namespace, chatId, payload, expiresAt);
+        } catch (DuplicateKeyException e) {
+            // Строку успели вставить между UPDATE и INSERT
+            jdbcTemplate.update(UPDATE_SQL, payload, expiresAt, namespace, chatId);
+        }
+    }
+
+    @Override
+    public String load(String namespace, long chatId, long now) {
+        List<String> payloads = jdbcTemplate.queryForList(
+                "select payload from bot_drafts where namespace = ? and chat_id = ? and expires_at > ?",
+                String.class, namespace, chatId, now);
+        return payloads.isEmpty() ? null : payloads.get(0);
+    }
+
+    @Override
+    public void delete(String namespace, long chatId) {
+        jdbcTemplate.update("delete from bot_drafts where namespace = ? and chat_id = ?", namespace, chatId);
+    }
+
+    @Override
+    public int deleteExpired(long now) {
+        return jdbcTemplate.update("delete from bot_drafts where expires_at <= ?", now);
+    }
+}
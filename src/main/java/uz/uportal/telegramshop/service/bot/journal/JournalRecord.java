@@ -0,0 +1,24 @@
+package uz.uportal.telegramshop.service.bot.journal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись журнала обновлений
+ * @param timestamp время записи, мс с начала эпохи
+ * @param updateId update_id
+ * @param chatId ID чата или 0, если у обновления нет чата
+ * @param outcome результат обработки
+ * @param handler имя обработчика или пустая строка
+ * @param payload исходный JSON обновления в UTF-8
+ */
+public record JournalRecord(long timestamp, long updateId, long chatId, UpdateOutcome outcome, String handler,
+        byte[] payload) {
+    
+    /**
+     * JSON обновления в виде строки
+     * @return JSON обновления
+     */
+    public String json() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,207 @@
+package uz.uportal.telegramshop.service.bot.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+
+/**
+ * Журнал полученных обновлений: исходный JSON, время, update_id, ID чата и результат обработки.
+ * Заменяет логирование обновлений целиком на уровне INFO и служит входными данными
+ * для воспроизведения (см. {@link UpdateJournalReader}).
+ * <p>
+ * Записи добавляются в сегмент фиксированного размера, отображенный в память, поэтому запись —
+ * это копирование байтов без системных вызовов. Заполненный сегмент сменяется следующим,
+ * старые сегменты сверх лимита удаляются. Каждый запуск начинает новый сегмент.
+ * <p>
+ * Формат записи: длина записи (int, включая само поле), время (long), update_id (long),
+ * ID чата (long), результат (byte), длина имени обработчика (byte), имя обработчика (ASCII), JSON.
+ * Длина записывается последней, так что оборванная при сбое запись читается как конец сегмента.
+ * <p>
+ * Журнал выключен по умолчанию: в нем персональные данные покупателей (имена, тексты сообщений,
+ * телефоны, адреса доставки). Включается свойством {@code telegram.bot.journal.enabled=true} на время
+ * разбора проблемы или записи нагрузки для воспроизведения. Срок хранения ограничен объемом, а не временем:
+ * на диске остается не больше {@code max-segments} сегментов по {@code segment-size} байт
+ * (по умолчанию 16 по 64 МБ), более старые удаляются при смене сегмента. Сколько дней это покрывает,
+ * зависит от нагрузки; каталог журнала нужно удалить вручную, когда данные больше не нужны.
+ */
+@Component
+public class UpdateJournal {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UpdateJournal.class);
+    
+    static final String SEGMENT_PREFIX = "updates-";
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final int HEADER_BYTES = Integer.BYTES + 3 * Long.BYTES + 2;
+    
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ObjectMapper objectMapper;
+    private final Counter droppedCounter;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    
+    public UpdateJournal(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.journal.enabled:false}") boolean enabled,
+            @Value("${telegram.bot.journal.dir:journal}") String directory,
+            @Value("${telegram.bot.journal.segment-size:67108864}") int segmentSize,
+            @Value("${telegram.bot.journal.max-segments:16}") int maxSegments) throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Размер сегмента журнала должен быть не меньше 4096 байт: " + segmentSize);
+        }
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        // Пустые поля Update не пишем: запись получается близкой к исходному JSON от Telegram
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.droppedCounter = Counter.builder("telegram.journal.dropped")
+                .description("Обновления, не записанные в журнал")
+                .register(meterRegistry);
+        
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            List<Path> existing = UpdateJournalReader.segments(this.directory);
+            this.segmentIndex = existing.isEmpty() ? 0 : UpdateJournalReader.segmentIndex(existing.get(existing.size() - 1));
+            openNextSegment();
+            logger.info("Журнал обновлений: каталог {}, сегмент {} байт, хранится сегментов: {}",
+                    this.directory.toAbsolutePath(), segmentSize, this.maxSegments);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Записывает обновление и результат его обработки
+     * @param update обновление от Telegram
+     * @param outcome результат обработки
+     * @param handler имя обработчика или null
+     */
+    public void append(Update update, UpdateOutcome outcome, String handler) {
+        if (!enabled || update == null) {
+            return;
+        }
+        append(UpdateEnvelope.of(update), outcome, handler);
+    }
+    
+    /**
+     * Записывает обновление и результат его обработки. Если конверт получен из тела webhook,
+     * пишется исходный JSON без повторной сериализации
+     * @param envelope конверт обновления
+     * @param outcome результат обработки
+     * @param handler имя обработчика или null
+     */
+    public void append(UpdateEnvelope envelope, UpdateOutcome outcome, String handler) {
+        if (!enabled || envelope == null) {
+            return;
+        }
+        byte[] payload = envelope.getPayload();
+        if (payload == null) {
+            try {
+                payload = objectMapper.writeValueAsBytes(envelope.getUpdate());
+            } catch (JsonProcessingException e) {
+                logger.warn("Не удалось сериализовать обновление {} для журнала: {}", envelope.getUpdateId(), e.getMessage());
+                droppedCounter.increment();
+                return;
+            }
+        }
+        long updateId = envelope.getUpdateId() != null ? envelope.getUpdateId() : 0L;
+        append(updateId, envelope.getChatKey(), outcome, handler, payload);
+    }
+    
+    /**
+     * Записывает обновление в текущий сегмент
+     * @param updateId update_id
+     * @param chatId ID чата
+     * @param outcome результат обработки
+     * @param handler имя обработчика или null
+     * @param payload JSON обновления
+     */
+    synchronized void append(long updateId, long chatId, UpdateOutcome outcome, String handler, byte[] payload) {
+        byte[] handlerBytes = handler != null ? handler.getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        int handlerLength = Math.min(handlerBytes.length, 255);
+        int length = HEADER_BYTES + handlerLength + payload.length;
+        if (length > segmentSize) {
+            logger.warn("Обновление {} размером {} байт не помещается в сегмент журнала", updateId, payload.length);
+            droppedCounter.increment();
+            return;
+        }
+        try {
+            if (segment.remaining() < length) {
+                openNextSegment();
+            }
+        } catch (IOException e) {
+            logger.error("Не удалось открыть следующий сегмент журнала: {}", e.getMessage());
+            droppedCounter.increment();
+            return;
+        }
+        
+        int start = segment.position();
+        segment.position(start + Integer.BYTES);
+        // Время берется под блокировкой, чтобы записи в сегментах шли по возрастанию времени
+        segment.putLong(System.currentTimeMillis());
+        segment.putLong(updateId);
+        segment.putLong(chatId);
+        segment.put((byte) outcome.ordinal());
+        segment.put((byte) handlerLength);
+        segment.put(handlerBytes, 0, handlerLength);
+        segment.put(payload);
+        segment.putInt(start, length);
+    }
+    
+    private void openNextSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segmentIndex++;
+        Path file = directory.resolve(UpdateJournalReader.segmentName(segmentIndex));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        deleteOldSegments();
+    }
+    
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = UpdateJournalReader.segments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+    
+    /**
+     * Сбрасывает текущий сегмент на диск при остановке приложения
+     */
+    @PreDestroy
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package uz.uportal.telegramshop.service.bot.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Чтение журнала обновлений, записанного {@link UpdateJournal}.
+ * Не зависит от контекста Spring, поэтому подходит и для офлайн-инструментов
+ */
+public class UpdateJournalReader {
+    
+    private final Path directory;
+    
+    public UpdateJournalReader(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Читает все записи журнала по порядку
+     * @return поток записей
+     * @throws IOException если каталог журнала не читается
+     */
+    public Stream<JournalRecord> readAll() throws IOException {
+        return read(Instant.EPOCH, Instant.MAX);
+    }
+    
+    /**
+     * Читает записи за промежуток времени. Сегменты, которые целиком раньше начала промежутка,
+     * пропускаются без разбора, чтение останавливается на первой записи после конца промежутка
+     * @param from начало промежутка (включительно)
+     * @param to конец промежутка (не включительно)
+     * @return поток записей
+     * @throws IOException если каталог журнала не читается
+     */
+    public Stream<JournalRecord> read(Instant from, Instant to) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.equals(Instant.MAX) ? Long.MAX_VALUE : to.toEpochMilli();
+        List<Path> segments = segments(directory);
+        
+        int first = 0;
+        while (first + 1 < segments.size() && firstTimestamp(segments.get(first + 1)) <= fromMillis) {
+            first++;
+        }
+        return segments.subList(first, segments.size()).stream()
+                .flatMap(UpdateJournalReader::records)
+                .dropWhile(record -> record.timestamp() < fromMillis)
+                .takeWhile(record -> record.timestamp() < toMillis);
+    }
+    
+    /**
+     * Читает записи одного сегмента
+     * @param segment файл сегмента
+     * @return поток записей
+     */
+    public static Stream<JournalRecord> records(Path segment) {
+        ByteBuffer buffer;
+        try {
+            buffer = map(segment);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось прочитать сегмент журнала " + segment, e);
+        }
+        return StreamSupport.stream(new SegmentSpliterator(buffer), false);
+    }
+    
+    private static long firstTimestamp(Path segment) throws IOException {
+        ByteBuffer buffer = map(segment);
+        return buffer.remaining() >= UpdateJournal.HEADER_BYTES && buffer.getInt(0) != 0
+                ? buffer.getLong(Integer.BYTES)
+                : Long.MAX_VALUE;
+    }
+    
+    private static ByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    /**
+     * Сегменты журнала в порядке записи
+     * @param directory каталог журнала
+     * @return файлы сегментов
+     * @throws IOException если каталог не читается
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> segmentIndex(file) > 0).forEach(segments::add);
+        }
+        segments.sort(Comparator.comparingLong(UpdateJournalReader::segmentIndex));
+        return segments;
+    }
+    
+    static String segmentName(long index) {
+        return String.format("%s%012d%s", UpdateJournal.SEGMENT_PREFIX, index, UpdateJournal.SEGMENT_SUFFIX);
+    }
+    
+    static long segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(UpdateJournal.SEGMENT_PREFIX) || !name.endsWith(UpdateJournal.SEGMENT_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name, UpdateJournal.SEGMENT_PREFIX.length(),
+                    name.length() - UpdateJournal.SEGMENT_SUFFIX.length(), 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    private static final class SegmentSpliterator extends Spliterators.AbstractSpliterator<JournalRecord> {
+        
+        private final ByteBuffer buffer;
+        private int position;
+        
+        SegmentSpliterator(ByteBuffer buffer) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super JournalRecord> action) {
+            if (buffer.limit() - position < UpdateJournal.HEADER_BYTES) {
+                return false;
+            }
+            int length = buffer.getInt(position);
+            // 0 — конец записанной части, иначе запись повреждена
+            if (length < UpdateJournal.HEADER_BYTES || length > buffer.limit() - position) {
+                return false;
+            }
+            int offset = position + Integer.BYTES;
+            long timestamp = buffer.getLong(offset);
+            long updateId = buffer.getLong(offset + Long.BYTES);
+            long chatId = buffer.getLong(offset + 2 * Long.BYTES);
+            UpdateOutcome outcome = UpdateOutcome.of(buffer.get(offset + 3 * Long.BYTES));
+            int handlerLength = buffer.get(offset + 3 * Long.BYTES + 1) & 0xFF;
+            int handlerOffset = position + UpdateJournal.HEADER_BYTES;
+            int payloadLength = length - UpdateJournal.HEADER_BYTES - handlerLength;
+            if (payloadLength < 0) {
+                return false;
+            }
+            
+            byte[] handler = new byte[handlerLength];
+            buffer.get(handlerOffset, handler);
+            byte[] payload = new byte[payloadLength];
+            buffer.get(handlerOffset + handlerLength, payload);
+            position += length;
+            action.accept(new JournalRecord(timestamp, updateId, chatId, outcome,
+                    new String(handler, StandardCharsets.US_ASCII), payload));
+            return true;
+        }
+    }
+}
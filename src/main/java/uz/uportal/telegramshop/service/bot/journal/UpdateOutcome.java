@@ -0,0 +1,33 @@
+package uz.uportal.telegramshop.service.bot.journal;
+
+/**
+ * Результат обработки обновления, который записывается в журнал
+ */
+public enum UpdateOutcome {
+    
+    /**
+     * Обработчик найден и завершился без исключения
+     */
+    HANDLED,
+    
+    /**
+     * Ни один обработчик не подошел
+     */
+    UNHANDLED,
+    
+    /**
+     * Обработчик выбросил исключение
+     */
+    FAILED;
+    
+    private static final UpdateOutcome[] VALUES = values();
+    
+    /**
+     * Находит результат по коду из журнала
+     * @param code код (ordinal)
+     * @return результат
+     */
+    static UpdateOutcome of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : FAILED;
+    }
+}
@@ -6,6 +6,9 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMar
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.service.CategoryProductCounters;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +19,15 @@ import java.util.List;
 @Component
 public class KeyboardFactoryImpl implements KeyboardFactory {
 
+    /**
+     * Счетчики товаров для подписей категорий
+     */
+    private final CategoryProductCounters productCounters;
+
+    public KeyboardFactoryImpl(CategoryProductCounters productCounters) {
+        this.productCounters = productCounters;
+    }
+
     @Override
     public ReplyKeyboardMarkup createMainKeyboard() {
         // Создаем клавиатуру
@@ -51,8 +63,8 @@ public class KeyboardFactoryImpl implements KeyboardFactory {
         for (Category category : categories) {
             List<InlineKeyboardButton> row = new ArrayList<>();
             InlineKeyboardButton button = new InlineKeyboardButton();
-            button.setText(category.getName());
-            button.setCallbackData("catalog_category_" + category.getId());
+            button.setText(categoryLabel(category));
+            button.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_CATEGORY, category.getId()));
             row.add(button);
             keyboard.add(row);
         }
@@ -70,9 +82,9 @@ public class KeyboardFactoryImpl implements KeyboardFactory {
         for (Category subcategory : subcategories) {
             List<InlineKeyboardButton> row = new ArrayList<>();
             InlineKeyboardButton button = new InlineKeyboardButton();
-            button.setText(subcategory.getName());
-            // Формат callback: catalog_subcategory_SUBCATEGORY_ID_PARENT_ID
-            button.setCallbackData("catalog_subcategory_" + subcategory.getId() + "_" + parentCategory.getId());
+            button.setText(categoryLabel(subcategory));
+            // Параметры callback: ID подкатегории и ID родительской категории
+            button.setCallbackData(CallbackCodec.encode(CallbackAction.CATALOG_SUBCATEGORY, subcategory.getId(), parentCategory.getId()));
             row.add(button);
             keyboard.add(row);
         }
@@ -96,6 +108,13 @@ public class KeyboardFactoryImpl implements KeyboardFactory {
         return keyboardMarkup;
     }
 
+    /**
+     * Название категории с количеством товаров в ней и ее подкатегориях, например "Телефоны (124)"
+     */
+    private String categoryLabel(Category category) {
+        return category.getName() + " (" + productCounters.getSubtree(category.getId()).active() + ")";
+    }
+
     @Override
     public InlineKeyboardMarkup createOrderConfirmationKeyboard() {
         InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
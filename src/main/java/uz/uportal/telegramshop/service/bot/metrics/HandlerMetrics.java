@@ -0,0 +1,98 @@
+package uz.uportal.telegramshop.service.bot.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+
+/**
+ * Метрики обработчиков обновлений: время обработки и число SQL-запросов на одно обновление
+ * с тегами handler (класс обработчика) и route (действие callback, маршрут, состояние).
+ * Значения route берутся из таблицы маршрутов, а не из данных запроса, поэтому их набор ограничен.
+ */
+@Component
+public class HandlerMetrics {
+    
+    /**
+     * Маршрут для обновлений, которые не дошли ни до одного обработчика
+     */
+    public static final String NO_HANDLER = "none";
+    
+    private final MeterRegistry meterRegistry;
+    private final SqlStatementCounter statementCounter;
+    private final Map<String, Map<String, Meters>> meters = new ConcurrentHashMap<>();
+    
+    public HandlerMetrics(MeterRegistry meterRegistry, SqlStatementCounter statementCounter) {
+        this.meterRegistry = meterRegistry;
+        this.statementCounter = statementCounter;
+    }
+    
+    /**
+     * Показания счетчика SQL-запросов в начале обработки обновления
+     * @return отметка для {@link #record}
+     */
+    public long start() {
+        return statementCounter.current();
+    }
+    
+    /**
+     * Вызывает обработчик и записывает время вызова и число SQL-запросов с начала обработки обновления
+     * @param handler обработчик
+     * @param route маршрут, по которому выбран обработчик
+     * @param statementsAtStart отметка, полученная через {@link #start()}
+     * @param call вызов обработчика
+     * @return ответ обработчика
+     */
+    public BotApiMethod<?> record(UpdateHandler handler, String route, long statementsAtStart,
+            Supplier<BotApiMethod<?>> call) {
+        Meters handlerMeters = meters(ClassUtils.getUserClass(handler).getSimpleName(), route);
+        long startedAt = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            handlerMeters.timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            handlerMeters.statements.record(statementCounter.current() - statementsAtStart);
+        }
+    }
+    
+    /**
+     * Записывает число SQL-запросов для обновления, которое не обработал ни один обработчик
+     * @param route маршрут или тип обновления
+     * @param statementsAtStart отметка, полученная через {@link #start()}
+     */
+    public void recordUnhandled(String route, long statementsAtStart) {
+        meters(NO_HANDLER, route).statements.record(statementCounter.current() - statementsAtStart);
+    }
+    
+    private Meters meters(String handler, String route) {
+        return meters.computeIfAbsent(handler, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, key -> new Meters(
+                        Timer.builder("telegram.handler.duration")
+                                .description("Время работы обработчика обновления")
+                                .tag("handler", handler)
+                                .tag("route", route)
+                                .publishPercentileHistogram()
+                                .register(meterRegistry),
+                        DistributionSummary.builder("telegram.handler.sql.statements")
+                                .description("Количество SQL-запросов на одно обновление")
+                                .baseUnit("statements")
+                                .tag("handler", handler)
+                                .tag("route", route)
+                                .publishPercentileHistogram()
+                                .minimumExpectedValue(1.0)
+                                .maximumExpectedValue(200.0)
+                                .register(meterRegistry)));
+    }
+    
+    private record Meters(Timer timer, DistributionSummary statements) {
+    }
+}
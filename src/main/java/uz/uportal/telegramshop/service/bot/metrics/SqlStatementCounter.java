@@ -0,0 +1,30 @@
+package uz.uportal.telegramshop.service.bot.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Счетчик SQL-запросов, которые Hibernate выполняет в текущем потоке.
+ * Подключается к Hibernate как {@link StatementInspector} (см. MetricsConfig).
+ * Обновление обрабатывается целиком в одном потоке, поэтому разница показаний
+ * до и после обработки — это число запросов на одно обновление.
+ */
+@Component
+public class SqlStatementCounter implements StatementInspector {
+    
+    private final ThreadLocal<long[]> counter = ThreadLocal.withInitial(() -> new long[1]);
+    
+    @Override
+    public String inspect(String sql) {
+        counter.get()[0]++;
+        return sql;
+    }
+    
+    /**
+     * Количество запросов, выполненных текущим потоком с момента его запуска
+     * @return количество запросов
+     */
+    public long current() {
+        return counter.get()[0];
+    }
+}
@@ -0,0 +1,171 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Журнал изменений сессий, еще не записанных в базу. Нужен, чтобы после аварийной остановки
+ * восстановить состояния, которые {@link SessionStore} держал только в памяти.
+ * <p>
+ * Файл фиксированного размера отображается в память, поэтому запись — копирование байтов без системных вызовов.
+ * Формат записи: длина записи (int, включая само поле), ID чата (long), длина состояния (int, -1 — null),
+ * состояние (UTF-8), длина временных данных (int, -1 — null), временные данные (UTF-8).
+ * Перед публикацией длины за записью ставится ноль, так что чтение останавливается на последней целой записи
+ * и не заходит в остатки записей, сделанных до очистки журнала.
+ */
+class SessionLog {
+
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+
+    SessionLog(Path file, int size) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != size) {
+                // Размер журнала изменился: переносим несохраненные изменения в файл нового размера
+                Map<Long, Entry> previous = channel.size() >= Integer.BYTES
+                        ? read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())) : Map.of();
+                channel.truncate(0);
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                previous.values().forEach(entry -> append(entry.chatId(), entry.state(), entry.tempData()));
+                return;
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        // Продолжаем запись после уже сохраненных записей
+        buffer.position(endOfRecords(buffer));
+    }
+
+    /**
+     * Добавляет изменение сессии
+     * @param chatId ID чата
+     * @param state состояние
+     * @param tempData временные данные
+     * @return false, если запись не помещается и журнал нужно очистить после записи в базу
+     */
+    synchronized boolean append(long chatId, String state, String tempData) {
+        byte[] stateBytes = state != null ? state.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] tempDataBytes = tempData != null ? tempData.getBytes(StandardCharsets.UTF_8) : null;
+        int length = RECORD_HEADER_BYTES + (stateBytes != null ? stateBytes.length : 0)
+                + (tempDataBytes != null ? tempDataBytes.length : 0);
+        // Место под запись и под завершающий ноль
+        if (buffer.remaining() < length + Integer.BYTES) {
+            return false;
+        }
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.putLong(chatId);
+        putString(stateBytes);
+        putString(tempDataBytes);
+        buffer.putInt(start + length, 0);
+        buffer.putInt(start, length);
+        return true;
+    }
+
+    /**
+     * Очищает журнал, когда все изменения из него записаны в базу
+     */
+    synchronized void clear() {
+        buffer.putInt(0, 0);
+        buffer.position(0);
+    }
+
+    /**
+     * Последние изменения по каждому чату
+     * @return изменения в порядке записи
+     */
+    synchronized Map<Long, Entry> readAll() {
+        return read(buffer.duplicate());
+    }
+
+    /**
+     * Сбрасывает журнал на диск
+     */
+    synchronized void force() {
+        buffer.force();
+    }
+
+    private void putString(byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static Map<Long, Entry> read(ByteBuffer source) {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        int position = 0;
+        while (position + RECORD_HEADER_BYTES <= source.limit()) {
+            int length = source.getInt(position);
+            if (length < RECORD_HEADER_BYTES || position + length > source.limit()) {
+                break;
+            }
+            long chatId;
+            String state;
+            String tempData;
+            try {
+                source.position(position + Integer.BYTES);
+                chatId = source.getLong();
+                state = getString(source);
+                tempData = getString(source);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // Поврежденная запись — дальше читать нечего
+                break;
+            }
+            // Последнее изменение чата заменяет предыдущие, порядок — по последней записи
+            entries.remove(chatId);
+            entries.put(chatId, new Entry(chatId, state, tempData));
+            position += length;
+        }
+        return entries;
+    }
+
+    private static int endOfRecords(ByteBuffer source) {
+        int position = 0;
+        while (position + RECORD_HEADER_BYTES <= source.limit()) {
+            int length = source.getInt(position);
+            if (length < RECORD_HEADER_BYTES || position + length > source.limit()) {
+                break;
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > source.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Изменение сессии из журнала
+     * @param chatId ID чата
+     * @param state состояние
+     * @param tempData временные данные
+     */
+    record Entry(long chatId, String state, String tempData) {
+    }
+}
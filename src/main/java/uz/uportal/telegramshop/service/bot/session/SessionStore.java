@@ -0,0 +1,437 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.service.bot.core.StateCodec;
+
+/**
+ * Сессии активных чатов в памяти: пользователь с состоянием и временными данными многошаговых сценариев
+ * (оформление заказа, добавление и редактирование товаров и категорий, настройки магазина).
+ * Шаг сценария не читает пользователя из базы и не пишет его обратно: изменения состояния и временных данных
+ * копятся в памяти и записываются в базу пакетом раз в {@code telegram.bot.session.flush-interval} мс
+ * и при остановке приложения. Несколько изменений одного чата между записями дают одну строку пакета.
+ * <p>
+ * Каждое изменение сначала попадает в {@link SessionLog}, поэтому после аварийной остановки
+ * незаписанные состояния восстанавливаются при следующем запуске. Число сессий в памяти ограничено,
+ * давно не использованные вытесняются; изменения, еще не записанные в базу, не теряются и при вытеснении.
+ * <p>
+ * Роль и телефон сюда не относятся: они меняются редко и записываются в базу сразу (см. UserUnitOfWork).
+ * Хранилище рассчитано на один экземпляр бота: обновления одного чата обрабатываются одним процессом.
+ */
+@Component
+public class SessionStore implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionStore.class);
+    private static final String UPDATE_SQL =
+            "update telegram_users set state = ?, temp_data = ?, last_activity_at = ? where chat_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxSize;
+    private final SessionLog log;
+    private final ScheduledExecutorService flusher;
+    /**
+     * Сессии в порядке последнего обращения, для вытеснения самых старых
+     */
+    private final LinkedHashMap<Long, TelegramUser> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    /**
+     * Изменения, еще не записанные в базу
+     */
+    private final Map<Long, TelegramUser> pending = new HashMap<>();
+    /**
+     * Упорядочивает пакетную запись и прямые записи в базу, чтобы пакет не затер более новую строку
+     */
+    private final Object flushLock = new Object();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter writeCounter;
+    private final Timer flushTimer;
+
+    public SessionStore(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.session.enabled:true}") boolean enabled,
+            @Value("${telegram.bot.session.max-size:10000}") int maxSize,
+            @Value("${telegram.bot.session.flush-interval:1000}") long flushInterval,
+            @Value("${telegram.bot.session.log-file:sessions.log}") String logFile,
+            @Value("${telegram.bot.session.log-size:4194304}") int logSize) throws IOException {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxSize = Math.max(1, maxSize);
+        this.log = enabled && logFile != null && !logFile.isBlank() ? new SessionLog(Paths.get(logFile), logSize) : null;
+
+        Gauge.builder("telegram.session.size", this, SessionStore::size)
+                .description("Количество сессий в памяти")
+                .register(meterRegistry);
+        Gauge.builder("telegram.session.pending", this, SessionStore::pendingCount)
+                .description("Количество сессий с изменениями, еще не записанными в базу")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("telegram.session.lookups")
+                .description("Обращения к сессиям в памяти")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("telegram.session.lookups")
+                .description("Обращения к сессиям в памяти")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("telegram.session.evictions")
+                .description("Сессии, вытесненные из памяти")
+                .register(meterRegistry);
+        this.writeCounter = Counter.builder("telegram.session.writes")
+                .description("Строки, записанные в базу пакетами")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("telegram.session.flush")
+                .description("Время записи пакета сессий в базу")
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("session-flusher").daemon().factory());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            logger.info("Сессии в памяти: до {} чатов, запись в базу каждые {} мс, журнал {}",
+                    this.maxSize, flushInterval, log != null ? logFile : "выключен");
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Восстанавливает изменения, не записанные в базу до аварийной остановки.
+     * Вызывается после создания всех бинов, то есть после создания схемы и до приема обновлений
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (log == null) {
+            return;
+        }
+        Map<Long, SessionLog.Entry> entries = log.readAll();
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Время активности в журнал не пишется: восстановленные сессии считаются активными с момента запуска
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batch = new ArrayList<>(entries.size());
+        for (SessionLog.Entry entry : entries.values()) {
+            batch.add(new Object[] {entry.state(), entry.tempData(), now, entry.chatId()});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+        log.clear();
+        logger.info("Восстановлено состояний сессий из журнала: {}", entries.size());
+    }
+
+    /**
+     * Сессия чата
+     * @param chatId ID чата
+     * @return копия пользователя или null, если сессии нет в памяти
+     */
+    public synchronized TelegramUser get(Long chatId) {
+        if (!enabled || chatId == null) {
+            return null;
+        }
+        TelegramUser user = sessions.get(chatId);
+        if (user == null) {
+            // Вытесненная сессия с незаписанными изменениями новее, чем строка в базе
+            user = pending.get(chatId);
+        }
+        if (user == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return copy(user);
+    }
+
+    /**
+     * Находится ли чат в пошаговом сценарии, по сессии в памяти. К базе не обращается.
+     * Начальное состояние нового пользователя ("NEW") и пустое состояние сценарием не считаются
+     * @param chatId ID чата
+     * @return true или false, если сессия есть в памяти; null, если о чате ничего не известно
+     */
+    public synchronized Boolean hasState(Long chatId) {
+        if (!enabled || chatId == null) {
+            return null;
+        }
+        TelegramUser user = pending.get(chatId);
+        if (user == null) {
+            user = sessions.get(chatId);
+        }
+        return user != null ? StateCodec.decode(user.getState()) != null : null;
+    }
+
+    /**
+     * Запоминает пользователя, прочитанного из базы или только что полностью записанного в нее.
+     * Незаписанные изменения этого чата при этом отменяются
+     * @param user пользователь
+     */
+    public synchronized void put(TelegramUser user) {
+        if (!enabled || user == null || user.getChatId() == null) {
+            return;
+        }
+        sessions.put(user.getChatId(), copy(user));
+        if (pending.remove(user.getChatId()) != null) {
+            rewriteLog();
+        }
+        evictOverflow();
+    }
+
+    /**
+     * Записывает пользователя в базу сразу и запоминает результат. Запись не пересекается с пакетной,
+     * поэтому более старое состояние из пакета не затрет ее
+     * @param write запись в базу, возвращает сохраненного пользователя
+     * @return сохраненный пользователь
+     */
+    public TelegramUser writeThrough(Supplier<TelegramUser> write) {
+        synchronized (flushLock) {
+            TelegramUser saved = write.get();
+            put(saved);
+            return saved;
+        }
+    }
+
+    /**
+     * Запоминает новое состояние и временные данные; в базу они попадут со следующим пакетом
+     * @param user пользователь с измененной сессией
+     * @return false, если хранилище выключено и изменения нужно записать в базу сразу
+     */
+    public boolean write(TelegramUser user) {
+        if (!enabled || user == null || user.getChatId() == null) {
+            return false;
+        }
+        TelegramUser snapshot = copy(user);
+        synchronized (this) {
+            if (log == null || log.append(snapshot.getChatId(), snapshot.getState(), snapshot.getTempData())) {
+                sessions.put(snapshot.getChatId(), snapshot);
+                pending.put(snapshot.getChatId(), snapshot);
+                evictOverflow();
+                return true;
+            }
+        }
+        // Журнал заполнен: записываем накопленное в базу, это освобождает журнал
+        logger.debug("Журнал сессий заполнен, внеочередная запись в базу");
+        flushQuietly();
+        synchronized (this) {
+            if (!log.append(snapshot.getChatId(), snapshot.getState(), snapshot.getTempData())) {
+                return false;
+            }
+            sessions.put(snapshot.getChatId(), snapshot);
+            pending.put(snapshot.getChatId(), snapshot);
+            evictOverflow();
+            return true;
+        }
+    }
+
+    /**
+     * Запоминает время активности чата, у которого ничего не изменилось. В базу оно не пишется:
+     * {@link SessionSweeper} берет его из памяти, пока сессия не вытеснена
+     * @param chatId ID чата
+     * @param lastActivityAt время обновления
+     */
+    public synchronized void touch(Long chatId, LocalDateTime lastActivityAt) {
+        if (!enabled || chatId == null) {
+            return;
+        }
+        TelegramUser user = sessions.get(chatId);
+        if (user != null) {
+            user.setLastActivityAt(lastActivityAt);
+        }
+    }
+
+    /**
+     * Время последней активности чата по сессии в памяти
+     * @param chatId ID чата
+     * @return время или null, если сессии нет в памяти
+     */
+    public synchronized LocalDateTime lastActivity(Long chatId) {
+        TelegramUser user = sessions.get(chatId);
+        TelegramUser unsaved = pending.get(chatId);
+        LocalDateTime cached = user != null ? user.getLastActivityAt() : null;
+        LocalDateTime pendingActivity = unsaved != null ? unsaved.getLastActivityAt() : null;
+        if (cached == null || pendingActivity != null && pendingActivity.isAfter(cached)) {
+            return pendingActivity;
+        }
+        return cached;
+    }
+
+    /**
+     * Сбрасывает состояние и временные данные сессии, уже сброшенной в базе.
+     * Незаписанное изменение этого чата отменяется: иначе пакет вернул бы брошенное состояние
+     * @param chatId ID чата
+     */
+    public synchronized void reset(Long chatId) {
+        if (pending.remove(chatId) != null) {
+            rewriteLog();
+        }
+        TelegramUser user = sessions.get(chatId);
+        if (user != null) {
+            user.setState(null);
+            user.setTempData(null);
+        }
+    }
+
+    /**
+     * Выполняет действие, пока обращения к сессиям и пакетная запись ждут. Нужно, чтобы шаг сценария
+     * не проскочил между проверкой активности сессии и ее сбросом в базе
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T exclusive(Supplier<T> action) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                return action.get();
+            }
+        }
+    }
+
+    /**
+     * Записывает накопленные изменения в базу одним пакетом
+     * @return количество записанных строк
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            return flushPending();
+        }
+    }
+
+    private int flushPending() {
+        List<TelegramUser> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                rewriteLog();
+                return 0;
+            }
+            batch = new ArrayList<>(pending.values());
+        }
+        long startedAt = System.nanoTime();
+        try {
+            List<Object[]> arguments = new ArrayList<>(batch.size());
+            for (TelegramUser user : batch) {
+                arguments.add(new Object[] {user.getState(), user.getTempData(), user.getLastActivityAt(),
+                        user.getChatId()});
+            }
+            jdbcTemplate.batchUpdate(UPDATE_SQL, arguments);
+        } finally {
+            flushTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        synchronized (this) {
+            // Изменения, сделанные во время записи, остаются до следующего пакета
+            for (TelegramUser user : batch) {
+                pending.remove(user.getChatId(), user);
+            }
+            rewriteLog();
+        }
+        writeCounter.increment(batch.size());
+        return batch.size();
+    }
+
+    /**
+     * Оставляет в журнале только незаписанные изменения. Отмененное изменение нельзя оставлять в журнале:
+     * после перезапуска оно затерло бы более новую строку в базе. Изменения из {@code pending} уже были
+     * в журнале, поэтому место для них всегда есть
+     */
+    private void rewriteLog() {
+        if (log == null) {
+            return;
+        }
+        log.clear();
+        for (TelegramUser user : pending.values()) {
+            log.append(user.getChatId(), user.getState(), user.getTempData());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            // Изменения остаются в памяти и в журнале до следующей попытки
+            logger.error("Не удалось записать сессии в базу: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка при записи сессий в базу", e);
+        }
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void evictOverflow() {
+        Iterator<Long> eldest = sessions.keySet().iterator();
+        while (sessions.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    private static TelegramUser copy(TelegramUser user) {
+        TelegramUser copy = new TelegramUser();
+        copy.setChatId(user.getChatId());
+        copy.setUsername(user.getUsername());
+        copy.setFirstName(user.getFirstName());
+        copy.setLastName(user.getLastName());
+        copy.setPhoneNumber(user.getPhoneNumber());
+        copy.setRegisteredAt(user.getRegisteredAt());
+        copy.setState(user.getState());
+        copy.setRole(user.getRole());
+        copy.setTempData(user.getTempData());
+        copy.setLastActivityAt(user.getLastActivityAt());
+        return copy;
+    }
+
+    /**
+     * Записывает накопленные изменения при остановке приложения
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        if (log != null) {
+            synchronized (this) {
+                rewriteLog();
+            }
+            log.force();
+        }
+    }
+}
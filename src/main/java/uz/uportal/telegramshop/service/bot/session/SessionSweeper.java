@@ -0,0 +1,292 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+import uz.uportal.telegramshop.service.bot.core.MessageSender;
+import uz.uportal.telegramshop.service.bot.core.StateCodec;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+
+/**
+ * Сбрасывает брошенные сценарии: состояние и временные данные пользователей, которые дольше срока
+ * из {@link SessionSweeperProperties} ничего не присылали боту. Без этого строки с брошенным
+ * оформлением заказа или добавлением товара хранят состояние бесконечно, а каждое следующее сообщение
+ * такого пользователя сначала уходит обработчику состояния.
+ * <p>
+ * Раз в {@code telegram.bot.session.sweeper.interval} секунд кандидаты выбираются одним запросом
+ * по индексу на времени последней активности, сброс идет пакетами UPDATE по
+ * {@code telegram.bot.session.sweeper.batch-size} строк. UPDATE проверяет, что состояние и время
+ * активности не изменились после выборки, а сессии в памяти ({@link SessionStore}) проверяются и сбрасываются
+ * под ее блокировкой, поэтому пользователь, который только что ответил боту, свой сценарий не теряет.
+ * <p>
+ * Если {@code telegram.bot.session.sweeper.notify=true}, пользователю отправляется сообщение об отмене
+ * не чаще {@code notify-rate} сообщений в секунду и не больше {@code notify-max} за проход.
+ */
+@Component
+public class SessionSweeper implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionSweeper.class);
+    private static final String SELECT_SQL = "select chat_id, state, last_activity_at from telegram_users "
+            + "where last_activity_at < ? and state is not null and state <> 'NEW'";
+    private static final String RESET_SQL = "update telegram_users set state = null, temp_data = null "
+            + "where chat_id = ? and state = ? and last_activity_at <= ?";
+    private static final String BACKFILL_SQL = "update telegram_users set last_activity_at = ? "
+            + "where last_activity_at is null";
+    private static final String EXPIRED_TEXT = "⏳ Вы давно не отвечали, поэтому начатое действие отменено. "
+            + "Воспользуйтесь меню, чтобы начать заново.";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionStore sessionStore;
+    private final MessageSender messageSender;
+    private final SessionSweeperProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final int batchSize;
+    private final boolean notify;
+    private final long notifyIntervalNanos;
+    private final int notifyMax;
+    private final ScheduledExecutorService scheduler;
+    private final Timer sweepTimer;
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter skippedCounter;
+
+    @Autowired
+    public SessionSweeper(
+            JdbcTemplate jdbcTemplate,
+            SessionStore sessionStore,
+            MessageSender messageSender,
+            SessionSweeperProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.session.sweeper.enabled:true}") boolean enabled,
+            @Value("${telegram.bot.session.sweeper.interval:300}") long interval,
+            @Value("${telegram.bot.session.sweeper.batch-size:500}") int batchSize,
+            @Value("${telegram.bot.session.sweeper.notify:false}") boolean notify,
+            @Value("${telegram.bot.session.sweeper.notify-rate:20}") int notifyRate,
+            @Value("${telegram.bot.session.sweeper.notify-max:1000}") int notifyMax) {
+        this(jdbcTemplate, sessionStore, messageSender, properties, meterRegistry, Clock.systemDefaultZone(),
+                batchSize, notify, notifyRate, notifyMax);
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.SECONDS);
+            logger.info("Сброс брошенных сессий каждые {} с, срок бездействия {} с, уведомления {}",
+                    interval, properties.getTtl(), notify ? "включены" : "выключены");
+        }
+    }
+
+    SessionSweeper(
+            JdbcTemplate jdbcTemplate,
+            SessionStore sessionStore,
+            MessageSender messageSender,
+            SessionSweeperProperties properties,
+            MeterRegistry meterRegistry,
+            Clock clock,
+            int batchSize,
+            boolean notify,
+            int notifyRate,
+            int notifyMax) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sessionStore = sessionStore;
+        this.messageSender = messageSender;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.batchSize = Math.max(1, batchSize);
+        this.notify = notify;
+        this.notifyIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, notifyRate);
+        this.notifyMax = notifyMax;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("session-sweeper").daemon().factory());
+
+        this.sweepTimer = Timer.builder("telegram.session.sweep")
+                .description("Время прохода по брошенным сессиям")
+                .register(meterRegistry);
+        this.sentCounter = notificationCounter("sent");
+        this.failedCounter = notificationCounter("failed");
+        this.skippedCounter = notificationCounter("skipped");
+    }
+
+    /**
+     * Пользователям, сохраненным до появления времени активности, оно проставляется временем запуска,
+     * чтобы их брошенные сценарии тоже были сброшены по истечении срока
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        int updated = jdbcTemplate.update(BACKFILL_SQL, LocalDateTime.now(clock));
+        if (updated > 0) {
+            logger.info("Проставлено время активности пользователям без него: {}", updated);
+        }
+    }
+
+    /**
+     * Сбрасывает сценарии, брошенные дольше срока
+     * @return количество проверенных, сброшенных сессий и отправленных уведомлений
+     */
+    public Result sweep() {
+        long startedAt = System.nanoTime();
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            // Незаписанные шаги сценариев должны попасть в базу раньше, чем их увидит выборка
+            sessionStore.flush();
+
+            List<IdleSession> expired = new ArrayList<>();
+            int[] candidates = {0};
+            jdbcTemplate.query(SELECT_SQL, rs -> {
+                candidates[0]++;
+                String state = rs.getString(2);
+                LocalDateTime lastActivityAt = rs.getObject(3, LocalDateTime.class);
+                StatePayload payload = StateCodec.decode(state);
+                // Незнакомое значение не относится ни к одному сценарию, оно сбрасывается по общему сроку
+                long ttl = payload != null ? properties.ttl(payload.state()) : properties.getTtl();
+                LocalDateTime idleBefore = now.minusSeconds(ttl);
+                if (lastActivityAt.isBefore(idleBefore)) {
+                    expired.add(new IdleSession(rs.getLong(1), state,
+                            payload != null ? payload.state() : null, idleBefore));
+                }
+            }, now.minusSeconds(properties.minTtl()));
+
+            List<IdleSession> reset = new ArrayList<>(expired.size());
+            for (int from = 0; from < expired.size(); from += batchSize) {
+                List<IdleSession> batch = expired.subList(from, Math.min(from + batchSize, expired.size()));
+                reset.addAll(sessionStore.exclusive(() -> resetBatch(batch)));
+            }
+            for (IdleSession session : reset) {
+                meterRegistry.counter("telegram.session.expired",
+                        "state", session.state() != null ? session.state().name() : "UNKNOWN").increment();
+            }
+
+            int notified = notify ? notifyAll(reset) : 0;
+            if (!reset.isEmpty()) {
+                logger.info("Сброшено брошенных сессий: {} из {} кандидатов, отправлено уведомлений: {}",
+                        reset.size(), candidates[0], notified);
+            }
+            return new Result(candidates[0], reset.size(), notified);
+        } finally {
+            sweepTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Сбрасывает пакет сессий в базе и в памяти. Вызывается под блокировкой {@link SessionStore}
+     * @param batch сессии, бездействовавшие дольше срока по данным базы
+     * @return сброшенные сессии
+     */
+    private List<IdleSession> resetBatch(List<IdleSession> batch) {
+        List<IdleSession> idle = new ArrayList<>(batch.size());
+        List<Object[]> arguments = new ArrayList<>(batch.size());
+        for (IdleSession session : batch) {
+            // Обновление без изменений пишет время активности только в память
+            LocalDateTime cached = sessionStore.lastActivity(session.chatId());
+            if (cached != null && !cached.isBefore(session.idleBefore())) {
+                continue;
+            }
+            idle.add(session);
+            arguments.add(new Object[] {session.chatId(), session.rawState(), session.idleBefore()});
+        }
+        if (idle.isEmpty()) {
+            return idle;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(RESET_SQL, arguments);
+        List<IdleSession> reset = new ArrayList<>(idle.size());
+        for (int i = 0; i < updated.length; i++) {
+            // Ноль — пользователь успел сделать шаг после выборки
+            if (updated[i] != 0) {
+                IdleSession session = idle.get(i);
+                sessionStore.reset(session.chatId());
+                reset.add(session);
+            }
+        }
+        return reset;
+    }
+
+    private int notifyAll(List<IdleSession> reset) {
+        int sent = 0;
+        long nextAt = System.nanoTime();
+        for (int i = 0; i < reset.size(); i++) {
+            if (sent >= notifyMax || Thread.currentThread().isInterrupted()) {
+                skippedCounter.increment(reset.size() - i);
+                break;
+            }
+            long delay = nextAt - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            nextAt = Math.max(nextAt, System.nanoTime()) + notifyIntervalNanos;
+
+            SendMessage message = new SendMessage();
+            message.setChatId(reset.get(i).chatId());
+            message.setText(EXPIRED_TEXT);
+            try {
+                messageSender.executeMessage(message);
+                sentCounter.increment();
+                sent++;
+            } catch (TelegramApiException e) {
+                // Например, пользователь заблокировал бота
+                failedCounter.increment();
+                logger.debug("Не удалось уведомить пользователя {} о сбросе сессии: {}",
+                        reset.get(i).chatId(), e.getMessage());
+            }
+        }
+        return sent;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (DataAccessException e) {
+            logger.error("Не удалось сбросить брошенные сессии: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка при сбросе брошенных сессий", e);
+        }
+    }
+
+    private Counter notificationCounter(String result) {
+        return Counter.builder("telegram.session.expired.notifications")
+                .description("Уведомления о сброшенных сессиях")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Итог прохода
+     * @param candidates сессии, бездействующие дольше самого короткого срока
+     * @param reset сброшенные сессии
+     * @param notified отправленные уведомления
+     */
+    public record Result(int candidates, int reset, int notified) {
+    }
+
+    /**
+     * @param rawState состояние в том виде, в каком оно записано в базе
+     * @param state разобранное состояние или null
+     * @param idleBefore граница срока бездействия для этого состояния
+     */
+    private record IdleSession(long chatId, String rawState, ChatState state, LocalDateTime idleBefore) {
+    }
+}
@@ -0,0 +1,66 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+
+/**
+ * Сроки бездействия, после которых {@link SessionSweeper} сбрасывает сценарий, например:
+ * <pre>
+ * telegram.bot.session.sweeper.ttl=86400
+ * telegram.bot.session.sweeper.states.waiting-for-address=3600
+ * telegram.bot.session.sweeper.states.adding-product-price=14400
+ * </pre>
+ * Сроки задаются в секундах; для состояний, не указанных в {@code states}, действует {@code ttl}
+ */
+@Component
+@ConfigurationProperties(prefix = "telegram.bot.session.sweeper")
+public class SessionSweeperProperties {
+
+    private long ttl = 86400;
+    private Map<ChatState, Long> states = new EnumMap<>(ChatState.class);
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public Map<ChatState, Long> getStates() {
+        return states;
+    }
+
+    public void setStates(Map<ChatState, Long> states) {
+        this.states = states;
+    }
+
+    /**
+     * Срок бездействия в состоянии
+     * @param state состояние
+     * @return срок, с
+     */
+    public long ttl(ChatState state) {
+        Long seconds = states.get(state);
+        return seconds != null ? seconds : ttl;
+    }
+
+    /**
+     * Самый короткий из сроков: сессии, бездействующие меньше, не проверяются
+     * @return срок, с
+     */
+    public long minTtl() {
+        long min = ttl;
+        for (Long seconds : states.values()) {
+            if (seconds != null) {
+                min = Math.min(min, seconds);
+            }
+        }
+        return min;
+    }
+}
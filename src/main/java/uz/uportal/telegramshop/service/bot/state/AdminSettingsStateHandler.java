@@ -5,13 +5,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.Update;
 import uz.uportal.telegramshop.model.ShopSettings;
 import uz.uportal.telegramshop.model.TelegramUser;
-import uz.uportal.telegramshop.repository.TelegramUserRepository;
 import uz.uportal.telegramshop.service.ShopSettingsService;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
 import uz.uportal.telegramshop.service.bot.core.StateHandler;
+import uz.uportal.telegramshop.service.bot.core.StatePayload;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateRoutes;
+import uz.uportal.telegramshop.service.bot.core.UserUnitOfWork;
 
 /**
  * Обработчик состояний для редактирования настроек магазина в админ-панели
@@ -20,54 +22,40 @@ import uz.uportal.telegramshop.service.bot.core.StateHandler;
 public class AdminSettingsStateHandler implements StateHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(AdminSettingsStateHandler.class);
-    private final TelegramUserRepository telegramUserRepository;
+    private final UserUnitOfWork userUnitOfWork;
     private final ShopSettingsService shopSettingsService;
     
     public AdminSettingsStateHandler(
-            TelegramUserRepository telegramUserRepository,
+            UserUnitOfWork userUnitOfWork,
             ShopSettingsService shopSettingsService) {
-        this.telegramUserRepository = telegramUserRepository;
+        this.userUnitOfWork = userUnitOfWork;
         this.shopSettingsService = shopSettingsService;
     }
     
     @Override
-    public boolean canHandle(Update update) {
-        return update.hasMessage() && update.getMessage().hasText();
+    public UpdateRoutes routes() {
+        return UpdateRoutes.create()
+                .state(ChatState.EDITING_SHOP_CONTACTS, ChatState.EDITING_SHOP_SUPPORT,
+                        ChatState.EDITING_SHOP_ABOUT, ChatState.EDITING_SHOP_HOURS);
     }
     
     @Override
-    public boolean canHandleState(Update update, String state) {
-        return state != null && (
-                state.equals("EDITING_SHOP_CONTACTS") || 
-                state.equals("EDITING_SHOP_SUPPORT") || 
-                state.equals("EDITING_SHOP_ABOUT") || 
-                state.equals("EDITING_SHOP_HOURS"));
-    }
-    
-    @Override
-    public BotApiMethod<?> handle(Update update) {
-        // Этот метод не должен вызываться напрямую, используйте handleState
-        return null;
-    }
-    
-    @Override
-    public BotApiMethod<?> handleState(Update update, String state) {
-        Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        String text = message.getText();
+    public BotApiMethod<?> handleState(UpdateContext context, StatePayload state) {
+        Long chatId = context.getChatId();
+        String text = context.getText();
         
         logger.info("Handling admin settings state: {} for chatId: {}", state, chatId);
         
         // Получаем пользователя
-        TelegramUser user = telegramUserRepository.findById(chatId).orElse(null);
+        TelegramUser user = context.getUser();
         if (user == null) {
             return createTextMessage(chatId, "Пользователь не найден");
         }
         
         // Проверяем права доступа
-        if (!"ADMIN".equals(user.getRole()) && !"MANAGER".equals(user.getRole())) {
+        if (!context.isAdminOrManager()) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             return createTextMessage(chatId, "У вас нет доступа к административным функциям.");
         }
 
@@ -75,18 +63,18 @@ public class AdminSettingsStateHandler implements StateHandler {
         if (text.equalsIgnoreCase("отмена") || text.equalsIgnoreCase("отмена редактирования") || 
             text.equalsIgnoreCase("cancel") || text.equals("❌")) {
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             return createTextMessage(chatId, "✅ Редактирование отменено. Вернитесь в меню настроек магазина.");
         }
         
-        switch (state) {
-            case "EDITING_SHOP_CONTACTS":
+        switch (state.state()) {
+            case EDITING_SHOP_CONTACTS:
                 return handleEditContacts(chatId, text, user);
-            case "EDITING_SHOP_SUPPORT":
+            case EDITING_SHOP_SUPPORT:
                 return handleEditSupport(chatId, text, user);
-            case "EDITING_SHOP_ABOUT":
+            case EDITING_SHOP_ABOUT:
                 return handleEditAbout(chatId, text, user);
-            case "EDITING_SHOP_HOURS":
+            case EDITING_SHOP_HOURS:
                 return handleEditHours(chatId, text, user);
             default:
                 return null;
@@ -117,7 +105,7 @@ public class AdminSettingsStateHandler implements StateHandler {
             
             // Сбрасываем состояние пользователя
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             
             return createTextMessage(chatId, "✅ Контактная информация успешно обновлена!\n\n" +
                     "📞 Телефон: " + settings.getPhone() + "\n" +
@@ -143,7 +131,7 @@ public class AdminSettingsStateHandler implements StateHandler {
             
             // Сбрасываем состояние пользователя
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             
             return createTextMessage(chatId, "✅ Информация о поддержке успешно обновлена!\n\n" +
                     "Новое сообщение поддержки:\n" + settings.getSupportInfo());
@@ -167,7 +155,7 @@ public class AdminSettingsStateHandler implements StateHandler {
             
             // Сбрасываем состояние пользователя
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             
             return createTextMessage(chatId, "✅ Информация о магазине успешно обновлена!\n\n" +
                     "Новая информация о магазине:\n" + settings.getAboutInfo());
@@ -194,7 +182,7 @@ public class AdminSettingsStateHandler implements StateHandler {
             
             // Сбрасываем состояние пользователя
             user.setState(null);
-            telegramUserRepository.save(user);
+            userUnitOfWork.save(user);
             
             return createTextMessage(chatId, "✅ Режим работы успешно обновлен!\n\n" +
                     "Новый режим работы:\n" + settings.getWorkingHours());
@@ -0,0 +1,281 @@
+package uz.uportal.telegramshop.service.search;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.repository.ProductRepository;
+import uz.uportal.telegramshop.repository.ProductRepository.SearchRow;
+
+/**
+ * Инвертированный индекс активных товаров по названию и описанию в памяти.
+ * <p>
+ * Слова нормализуются через {@link SearchText} и хранятся в отсортированном словаре, поэтому слово запроса
+ * совпадает со всеми словами, которые с него начинаются: «айф» находит «айфон». Товар попадает в выдачу,
+ * только если совпали все слова запроса. Совпадение в названии весит больше, чем в описании, слово
+ * целиком — больше, чем по префиксу, первое слово названия получает надбавку. При равном весе
+ * выше товары в наличии, затем по названию.
+ * <p>
+ * При запуске индекс строится одним запросом, дальше {@link uz.uportal.telegramshop.service.ProductService}
+ * передает каждое сохраненное изменение товара после фиксации транзакции.
+ */
+@Component
+public class ProductSearchIndex implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+    /**
+     * Признаки слова в товаре, по одному биту
+     */
+    private static final int IN_NAME = 1;
+    private static final int IN_DESCRIPTION = 2;
+    private static final int FIRST_IN_NAME = 4;
+    /**
+     * Веса совпадений
+     */
+    private static final int NAME_EXACT = 8;
+    private static final int NAME_PREFIX = 4;
+    private static final int FIRST_BONUS = 2;
+    private static final int DESCRIPTION_EXACT = 2;
+    private static final int DESCRIPTION_PREFIX = 1;
+    /**
+     * Слова запроса сверх этого количества не учитываются
+     */
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final Comparator<Hit> RANKING = Comparator.comparingInt(Hit::score).reversed()
+            .thenComparing(hit -> !hit.entry().inStock())
+            .thenComparing(hit -> hit.entry().name(), Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(hit -> hit.entry().id());
+
+    private final ProductRepository productRepository;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final NavigableMap<String, Map<Long, Integer>> terms = new TreeMap<>();
+    private final Timer rebuildTimer;
+
+    public ProductSearchIndex(ProductRepository productRepository, MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.rebuildTimer = Timer.builder("telegram.search.index.rebuild")
+                .description("Время построения поискового индекса товаров")
+                .register(meterRegistry);
+        Gauge.builder("telegram.search.index.products", this, ProductSearchIndex::size)
+                .description("Товары в поисковом индексе")
+                .register(meterRegistry);
+        Gauge.builder("telegram.search.index.terms", this, ProductSearchIndex::termCount)
+                .description("Слова в поисковом индексе")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Строит индекс заново одним запросом к базе.
+     * Изменения товаров ждут окончания построения, поэтому ни одно из них не теряется
+     */
+    public synchronized void rebuild() {
+        long startedAt = System.nanoTime();
+        List<SearchRow> rows = productRepository.findSearchRows();
+        entries.clear();
+        terms.clear();
+        for (SearchRow row : rows) {
+            add(Entry.of(row));
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Поисковый индекс построен за {} мс: {} товаров, {} слов",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), entries.size(), terms.size());
+    }
+
+    /**
+     * Учитывает изменение товара: старые слова удаляются, неактивный товар из индекса исключается
+     * @param entry снимок товара после изменения
+     */
+    public synchronized void productChanged(Entry entry) {
+        Entry previous = entries.remove(entry.id());
+        if (previous != null) {
+            forEachTerm(previous, (term, flags) -> {
+                Map<Long, Integer> postings = terms.get(term);
+                if (postings != null) {
+                    postings.remove(previous.id());
+                    if (postings.isEmpty()) {
+                        terms.remove(term);
+                    }
+                }
+            });
+        }
+        if (entry.active()) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Ищет товары по запросу
+     * @param query текст запроса
+     * @param offset сколько первых результатов пропустить
+     * @param limit сколько результатов вернуть
+     * @return страница результатов и их общее количество
+     */
+    public Result search(String query, int offset, int limit) {
+        List<String> tokens = queryTokens(query);
+        if (tokens.isEmpty()) {
+            return Result.EMPTY;
+        }
+        List<Hit> hits = new ArrayList<>();
+        synchronized (this) {
+            Map<Long, Integer> scores = null;
+            for (String token : tokens) {
+                Map<Long, Integer> matched = match(token, scores);
+                if (matched.isEmpty()) {
+                    return Result.EMPTY;
+                }
+                if (scores != null) {
+                    for (Map.Entry<Long, Integer> score : matched.entrySet()) {
+                        score.setValue(score.getValue() + scores.get(score.getKey()));
+                    }
+                }
+                scores = matched;
+            }
+            for (Map.Entry<Long, Integer> score : scores.entrySet()) {
+                hits.add(new Hit(entries.get(score.getKey()), score.getValue()));
+            }
+        }
+        hits.sort(RANKING);
+        int from = Math.min(Math.max(offset, 0), hits.size());
+        int to = Math.min(from + Math.max(limit, 0), hits.size());
+        return new Result(List.copyOf(hits.subList(from, to)), hits.size());
+    }
+
+    /**
+     * Лучший вес слова запроса в каждом товаре, где есть слово с таким началом
+     * @param token нормализованное слово запроса
+     * @param candidates товары, совпавшие с предыдущими словами, или null для первого слова
+     * @return вес по ID товара
+     */
+    private Map<Long, Integer> match(String token, Map<Long, Integer> candidates) {
+        Map<Long, Integer> matched = new HashMap<>();
+        NavigableMap<String, Map<Long, Integer>> range = terms.subMap(token, true, token + Character.MAX_VALUE, false);
+        for (Map.Entry<String, Map<Long, Integer>> term : range.entrySet()) {
+            boolean exact = term.getKey().length() == token.length();
+            for (Map.Entry<Long, Integer> posting : term.getValue().entrySet()) {
+                if (candidates != null && !candidates.containsKey(posting.getKey())) {
+                    continue;
+                }
+                matched.merge(posting.getKey(), weight(posting.getValue(), exact), Math::max);
+            }
+        }
+        return matched;
+    }
+
+    private static int weight(int flags, boolean exact) {
+        int weight = 0;
+        if ((flags & IN_NAME) != 0) {
+            weight = exact ? NAME_EXACT : NAME_PREFIX;
+            if ((flags & FIRST_IN_NAME) != 0) {
+                weight += FIRST_BONUS;
+            }
+        } else if ((flags & IN_DESCRIPTION) != 0) {
+            weight = exact ? DESCRIPTION_EXACT : DESCRIPTION_PREFIX;
+        }
+        return weight;
+    }
+
+    private static List<String> queryTokens(String query) {
+        Set<String> unique = new LinkedHashSet<>(SearchText.tokens(query));
+        List<String> tokens = new ArrayList<>(unique);
+        return tokens.size() > MAX_QUERY_TOKENS ? tokens.subList(0, MAX_QUERY_TOKENS) : tokens;
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.id(), entry);
+        forEachTerm(entry, (term, flags) ->
+                terms.computeIfAbsent(term, key -> new HashMap<>(4)).merge(entry.id(), flags, (a, b) -> a | b));
+    }
+
+    private static void forEachTerm(Entry entry, TermConsumer consumer) {
+        List<String> nameTokens = SearchText.tokens(entry.name());
+        for (int i = 0; i < nameTokens.size(); i++) {
+            consumer.accept(nameTokens.get(i), i == 0 ? IN_NAME | FIRST_IN_NAME : IN_NAME);
+        }
+        for (String token : SearchText.tokens(entry.description())) {
+            consumer.accept(token, IN_DESCRIPTION);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int termCount() {
+        return terms.size();
+    }
+
+    @FunctionalInterface
+    private interface TermConsumer {
+        void accept(String term, int flags);
+    }
+
+    /**
+     * Снимок полей товара, нужных поиску и ответу на inline-запрос. Не ссылается на сущность,
+     * поэтому его можно передать в индекс после фиксации транзакции
+     * @param id ID товара
+     * @param name название
+     * @param description описание или null
+     * @param price цена
+     * @param imageUrl URL изображения или null
+     * @param stock остаток
+     * @param active товар активен
+     */
+    public record Entry(Long id, String name, String description, BigDecimal price, String imageUrl,
+            Integer stock, boolean active) {
+
+        public static Entry of(Product product) {
+            return new Entry(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                    product.getImageUrl(), product.getStock(), Boolean.TRUE.equals(product.getActive()));
+        }
+
+        static Entry of(SearchRow row) {
+            return new Entry(row.getId(), row.getName(), row.getDescription(), row.getPrice(), row.getImageUrl(),
+                    row.getStock(), true);
+        }
+
+        public boolean inStock() {
+            return stock != null && stock > 0;
+        }
+    }
+
+    /**
+     * Найденный товар
+     * @param entry снимок товара
+     * @param score вес совпадения
+     */
+    public record Hit(Entry entry, int score) {
+    }
+
+    /**
+     * Страница результатов поиска
+     * @param hits результаты страницы в порядке убывания веса
+     * @param total количество найденных товаров
+     */
+    public record Result(List<Hit> hits, int total) {
+
+        public static final Result EMPTY = new Result(List.of(), 0);
+    }
+}
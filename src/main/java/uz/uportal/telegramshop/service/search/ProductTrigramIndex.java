@@ -0,0 +1,369 @@
+package uz.uportal.telegramshop.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uz.uportal.telegramshop.repository.ProductRepository;
+import uz.uportal.telegramshop.repository.ProductRepository.SearchRow;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex.Entry;
+
+/**
+ * Триграммный индекс названий активных товаров для поиска с опечатками («ipone», «айфон 13»).
+ * <p>
+ * Каждое слово названия сводится к латинскому ключу ({@link SearchText#latinKey(String)}), дополняется
+ * пробелами по краям и режется на триграммы. Сходство запроса с товаром — коэффициент Дайса
+ * по множествам различных триграмм: {@code 2 * общие / (триграммы запроса + триграммы товара)}.
+ * Товары со сходством ниже {@code telegram.bot.search.min-similarity} в выдачу не попадают.
+ * <p>
+ * Данные лежат в примитивных массивах: товару присваивается плотный номер документа, триграмма
+ * упаковывается в long и получает номер через {@link LongIntMap}, списки документов триграмм — {@code int[]},
+ * отсортированные по номеру. Поиск проходит списки триграмм запроса от коротких к длинным и считает
+ * совпадения в одном массиве счетчиков, который переиспользуется между запросами; самые длинные списки
+ * (триграммы вроде «gb », которые есть почти у всех товаров) только дополняют счетчики уже найденных
+ * документов: двоичным поиском, если найденных мало, или одним проходом по списку, если их много.
+ * <p>
+ * Номера документов только растут, поэтому новый товар дописывается в конец списков. Измененный
+ * товар получает новый номер, а старый помечается удаленным; когда удаленных становится больше
+ * четверти, индекс пересобирается в памяти без обращения к базе. Изменения приходят от
+ * {@link uz.uportal.telegramshop.service.ProductService} так же, как в {@link ProductSearchIndex}.
+ */
+@Component
+public class ProductTrigramIndex implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductTrigramIndex.class);
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Пересборка не запускается, пока удаленных документов меньше этого количества
+     */
+    private static final int MIN_COMPACT_DELETED = 256;
+
+    private final ProductRepository productRepository;
+    private final double minSimilarity;
+    private final Timer searchTimer;
+    private final Timer rebuildTimer;
+
+    // Документы: снимок товара (null — удален) и количество различных триграмм
+    private Entry[] documents;
+    private int[] documentTrigrams;
+    private int documentCount;
+    private int deletedCount;
+    private LongIntMap documentByProduct;
+
+    // Триграммы: номер по упакованной триграмме и список документов
+    private LongIntMap trigramIds;
+    private int[][] postings;
+    private int[] postingSizes;
+    private int trigramCount;
+
+    // Счетчики совпадений по документам и документы с ненулевым счетчиком, переиспользуются под блокировкой
+    private int[] matches;
+    private int[] touched;
+
+    public ProductTrigramIndex(
+            ProductRepository productRepository,
+            MeterRegistry meterRegistry,
+            @Value("${telegram.bot.search.min-similarity:0.25}") double minSimilarity) {
+        this.productRepository = productRepository;
+        this.minSimilarity = minSimilarity;
+        this.searchTimer = Timer.builder("telegram.search.trigram.latency")
+                .description("Время поиска по триграммному индексу")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("telegram.search.trigram.rebuild")
+                .description("Время построения триграммного индекса")
+                .register(meterRegistry);
+        Gauge.builder("telegram.search.trigram.documents", this, ProductTrigramIndex::size)
+                .description("Товары в триграммном индексе")
+                .register(meterRegistry);
+        clear(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Строит индекс заново одним запросом к базе
+     */
+    public synchronized void rebuild() {
+        long startedAt = System.nanoTime();
+        List<SearchRow> rows = productRepository.findSearchRows();
+        clear(Math.max(INITIAL_CAPACITY, rows.size()));
+        for (SearchRow row : rows) {
+            add(Entry.of(row));
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Триграммный индекс построен за {} мс: {} товаров, {} триграмм",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), documentCount, trigramCount);
+    }
+
+    /**
+     * Учитывает изменение товара
+     * @param entry снимок товара после изменения
+     */
+    public synchronized void productChanged(Entry entry) {
+        int previous = documentByProduct.get(entry.id());
+        if (previous != LongIntMap.MISSING) {
+            if (entry.active() && Objects.equals(documents[previous].name(), entry.name())) {
+                // Триграммы зависят только от названия: остальные поля меняются на месте
+                documents[previous] = entry;
+                return;
+            }
+            documents[previous] = null;
+            documentByProduct.put(entry.id(), LongIntMap.MISSING);
+            deletedCount++;
+        }
+        if (entry.active()) {
+            add(entry);
+        }
+        if (deletedCount >= MIN_COMPACT_DELETED && deletedCount * 4 > documentCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Ищет товары, название которых похоже на запрос
+     * @param query текст запроса
+     * @param limit сколько результатов вернуть
+     * @return найденные товары по убыванию сходства; при равном сходстве сначала товары в наличии
+     */
+    public List<Match> search(String query, int limit) {
+        long startedAt = System.nanoTime();
+        long[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0 || limit <= 0) {
+            return List.of();
+        }
+        List<Match> result;
+        synchronized (this) {
+            result = collect(queryTrigrams, limit);
+        }
+        searchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private List<Match> collect(long[] queryTrigrams, int limit) {
+        // Списки триграмм запроса, которые есть в индексе, от коротких к длинным
+        int[] lists = new int[queryTrigrams.length];
+        int listCount = 0;
+        for (long trigram : queryTrigrams) {
+            int trigramId = trigramIds.get(trigram);
+            if (trigramId == LongIntMap.MISSING) {
+                continue;
+            }
+            int position = listCount++;
+            while (position > 0 && postingSizes[lists[position - 1]] > postingSizes[trigramId]) {
+                lists[position] = lists[position - 1];
+                position--;
+            }
+            lists[position] = trigramId;
+        }
+
+        // Сходство не ниже порога требует не меньше minOverlap общих триграмм при любой длине названия,
+        // поэтому подходящий документ обязательно есть в одном из первых listCount - minOverlap + 1 списков.
+        // Их проходим целиком, а самые длинные списки только проверяем для найденных документов
+        int minOverlap = Math.max(1, (int) Math.ceil(
+                minSimilarity * queryTrigrams.length / (2 - minSimilarity) - 1e-9));
+        int scanned = listCount - minOverlap + 1;
+        if (scanned <= 0) {
+            return List.of();
+        }
+        int touchedCount = 0;
+        for (int list = 0; list < scanned; list++) {
+            int[] posting = postings[lists[list]];
+            for (int i = 0, size = postingSizes[lists[list]]; i < size; i++) {
+                int document = posting[i];
+                if (matches[document]++ == 0) {
+                    touched[touchedCount++] = document;
+                }
+            }
+        }
+        for (int list = scanned; list < listCount; list++) {
+            int[] posting = postings[lists[list]];
+            int size = postingSizes[lists[list]];
+            if (size <= (long) touchedCount * (Integer.SIZE - Integer.numberOfLeadingZeros(size))) {
+                // Найденных документов так много, что пройти список дешевле, чем искать в нем каждый
+                for (int i = 0; i < size; i++) {
+                    int document = posting[i];
+                    if (matches[document] != 0) {
+                        matches[document]++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < touchedCount; i++) {
+                    if (Arrays.binarySearch(posting, 0, size, touched[i]) >= 0) {
+                        matches[touched[i]]++;
+                    }
+                }
+            }
+        }
+
+        // Лучшие документы держатся в массивах, упорядоченных вставкой: limit мал
+        int[] topDocuments = new int[limit];
+        double[] topScores = new double[limit];
+        int topCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int document = touched[i];
+            int common = matches[document];
+            matches[document] = 0;
+            if (documents[document] == null) {
+                continue;
+            }
+            double score = 2.0 * common / (queryTrigrams.length + documentTrigrams[document]);
+            if (score < minSimilarity) {
+                continue;
+            }
+            int position = topCount;
+            while (position > 0 && ranksAbove(score, document, topScores[position - 1], topDocuments[position - 1])) {
+                position--;
+            }
+            if (position >= limit) {
+                continue;
+            }
+            int shifted = Math.min(topCount, limit - 1) - position;
+            System.arraycopy(topDocuments, position, topDocuments, position + 1, shifted);
+            System.arraycopy(topScores, position, topScores, position + 1, shifted);
+            topDocuments[position] = document;
+            topScores[position] = score;
+            topCount = Math.min(topCount + 1, limit);
+        }
+
+        List<Match> result = new ArrayList<>(topCount);
+        for (int i = 0; i < topCount; i++) {
+            result.add(new Match(documents[topDocuments[i]], topScores[i]));
+        }
+        return result;
+    }
+
+    private boolean ranksAbove(double score, int document, double otherScore, int otherDocument) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        boolean inStock = documents[document].inStock();
+        if (inStock != documents[otherDocument].inStock()) {
+            return inStock;
+        }
+        return document < otherDocument;
+    }
+
+    private void add(Entry entry) {
+        long[] entryTrigrams = trigrams(entry.name());
+        int document = documentCount++;
+        if (document == documents.length) {
+            int capacity = documents.length * 2;
+            documents = Arrays.copyOf(documents, capacity);
+            documentTrigrams = Arrays.copyOf(documentTrigrams, capacity);
+            matches = Arrays.copyOf(matches, capacity);
+            touched = Arrays.copyOf(touched, capacity);
+        }
+        documents[document] = entry;
+        documentTrigrams[document] = entryTrigrams.length;
+        documentByProduct.put(entry.id(), document);
+        for (long trigram : entryTrigrams) {
+            int trigramId = trigramIds.get(trigram);
+            if (trigramId == LongIntMap.MISSING) {
+                trigramId = trigramCount++;
+                trigramIds.put(trigram, trigramId);
+                if (trigramId == postings.length) {
+                    postings = Arrays.copyOf(postings, trigramId * 2);
+                    postingSizes = Arrays.copyOf(postingSizes, trigramId * 2);
+                }
+                postings[trigramId] = new int[4];
+            }
+            int[] posting = postings[trigramId];
+            int size = postingSizes[trigramId];
+            if (size == posting.length) {
+                posting = Arrays.copyOf(posting, size * 2);
+                postings[trigramId] = posting;
+            }
+            posting[size] = document;
+            postingSizes[trigramId] = size + 1;
+        }
+    }
+
+    /**
+     * Пересобирает индекс из живых документов, освобождая место удаленных
+     */
+    private void compact() {
+        long startedAt = System.nanoTime();
+        Entry[] live = Arrays.copyOf(documents, documentCount);
+        clear(Math.max(INITIAL_CAPACITY, documentCount - deletedCount));
+        for (Entry entry : live) {
+            if (entry != null) {
+                add(entry);
+            }
+        }
+        rebuildTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        logger.debug("Триграммный индекс пересобран: {} товаров", documentCount);
+    }
+
+    private void clear(int capacity) {
+        documents = new Entry[capacity];
+        documentTrigrams = new int[capacity];
+        matches = new int[capacity];
+        touched = new int[capacity];
+        documentCount = 0;
+        deletedCount = 0;
+        documentByProduct = new LongIntMap(capacity);
+        trigramIds = new LongIntMap(INITIAL_CAPACITY);
+        postings = new int[INITIAL_CAPACITY][];
+        postingSizes = new int[INITIAL_CAPACITY];
+        trigramCount = 0;
+    }
+
+    /**
+     * Различные триграммы текста, упакованные в long по 16 бит на символ, в порядке возрастания
+     * @param text текст
+     * @return триграммы
+     */
+    static long[] trigrams(String text) {
+        List<String> tokens = SearchText.tokens(text);
+        if (tokens.isEmpty()) {
+            return new long[0];
+        }
+        long[] result = new long[16];
+        int count = 0;
+        for (String token : tokens) {
+            String padded = " " + SearchText.latinKey(token) + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16)
+                        | padded.charAt(i + 2);
+            }
+        }
+        Arrays.sort(result, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    public synchronized int size() {
+        return documentCount - deletedCount;
+    }
+
+    /**
+     * Найденный товар
+     * @param entry снимок товара
+     * @param similarity сходство с запросом, от 0 до 1
+     */
+    public record Match(Entry entry, double similarity) {
+    }
+}
@@ -0,0 +1,127 @@
+package uz.uportal.telegramshop.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нормализация текста для поиска по товарам.
+ * <p>
+ * Текст приводится к NFC (буквы, набранные с отдельным диакритическим знаком, собираются в одну)
+ * и к нижнему регистру без учета локали, буква «ё» заменяется на «е»,
+ * буквы узбекской кириллицы (ў, қ, ғ, ҳ) — на ближайшие русские (у, к, г, х). В узбекской латинице
+ * апостроф пишут по-разному (o‘, oʻ, o', o`) или не пишут вовсе, поэтому все его варианты удаляются:
+ * «o‘zbek», «oʻzbek» и «ozbek» дают один и тот же термин. Остальные символы, кроме букв и цифр,
+ * разделяют слова.
+ * <p>
+ * Для нечеткого поиска слово дополнительно сводится к латинскому ключу ({@link #latinKey(String)}),
+ * чтобы одно и то же название, набранное кириллицей и латиницей, давало близкие триграммы.
+ */
+public final class SearchText {
+
+    /**
+     * Транслитерация русских букв (узбекские к этому моменту уже заменены): индекс — буква минус 'а'
+     */
+    private static final String[] LATIN = {
+            "a", "b", "v", "g", "d", "e", "zh", "z", "i", "i", "k", "l", "m", "n", "o", "p",
+            "r", "s", "t", "u", "f", "h", "ts", "ch", "sh", "sh", "", "y", "", "e", "yu", "ya"
+    };
+
+    private SearchText() {
+    }
+
+    /**
+     * Разбивает текст на нормализованные слова
+     * @param text текст или null
+     * @return слова в порядке следования, с повторами; пустой список для null
+     */
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String source = Normalizer.normalize(text, Normalizer.Form.NFC);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < source.length(); ) {
+            int codePoint = source.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isApostrophe(codePoint)) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(fold(Character.toLowerCase(codePoint)));
+            } else if (!token.isEmpty()) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Нормализует текст целиком: слова через один пробел
+     * @param text текст или null
+     * @return нормализованный текст; пустая строка для null
+     */
+    public static String normalize(String text) {
+        return String.join(" ", tokens(text));
+    }
+
+    /**
+     * Латинский ключ нормализованного слова: кириллица транслитерируется, затем «ph» заменяется на «f»
+     * и «w» на «v». Так «айфон» и «iphone» сводятся к «aifon» и «ifone», а «хуавей» и «huawei» — к «huavei»
+     * @param token слово из {@link #tokens(String)}
+     * @return ключ слова
+     */
+    public static String latinKey(String token) {
+        StringBuilder key = new StringBuilder(token.length() + 4);
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c >= 'а' && c <= 'я') {
+                key.append(LATIN[c - 'а']);
+            } else if (c == 'w') {
+                key.append('v');
+            } else if (c == 'h' && !key.isEmpty() && key.charAt(key.length() - 1) == 'p') {
+                key.setCharAt(key.length() - 1, 'f');
+            } else {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isApostrophe(int codePoint) {
+        switch (codePoint) {
+            case '\'':
+            case '`':
+            case '´':
+            case 'ʻ': // узбекские o‘ и g‘
+            case 'ʼ': // тутуқ белгиси
+            case '‘':
+            case '’':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int fold(int codePoint) {
+        switch (codePoint) {
+            case 'ё':
+                return 'е';
+            case 'ў':
+                return 'у';
+            case 'қ':
+                return 'к';
+            case 'ғ':
+                return 'г';
+            case 'ҳ':
+                return 'х';
+            default:
+                return codePoint;
+        }
+    }
+}
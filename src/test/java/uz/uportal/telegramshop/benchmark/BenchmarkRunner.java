@@ -0,0 +1,31 @@
+package uz.uportal.telegramshop.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск всех бенчмарков пакета с профилировщиком GC (скорость выделения памяти, gc.alloc.rate.norm).
+ * Через Maven: {@code mvn -Pbenchmark test-compile exec:exec}, отбор бенчмарков — {@code -Dbenchmark=HandlerChain}.
+ * Без аргументов (например, из IDE) запускается весь пакет
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if (commandLine.getIncludes().isEmpty()) {
+			builder.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+		}
+		Options options = builder.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
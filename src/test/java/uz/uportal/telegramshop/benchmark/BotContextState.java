@@ -0,0 +1,84 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.model.CartItem;
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.replay.ReplayHarness;
+import uz.uportal.telegramshop.repository.CartItemRepository;
+import uz.uportal.telegramshop.repository.CategoryRepository;
+import uz.uportal.telegramshop.repository.ProductRepository;
+import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.CategoryService;
+
+/**
+ * Приложение с профилем replay (H2 в памяти, MessageSender без сети) и тестовыми данными:
+ * пользователь, {@value #CATEGORIES} категорий по {@value #PRODUCTS_PER_CATEGORY} товаров
+ * и корзина из {@value #CART_ITEMS} позиций. Поднимается один раз на прогон бенчмарка
+ */
+@State(Scope.Benchmark)
+public class BotContextState {
+
+	static final long CHAT_ID = 1001L;
+	static final int CATEGORIES = 5;
+	static final int PRODUCTS_PER_CATEGORY = 20;
+	static final int CART_ITEMS = 5;
+
+	ConfigurableApplicationContext context;
+	List<Category> categories;
+	List<Product> products;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = new SpringApplicationBuilder(TelegramshopApplication.class, ReplayHarness.ReplayBeans.class)
+				.profiles("replay")
+				.run();
+
+		TelegramUser user = new TelegramUser(CHAT_ID, "bench", "Bench", "User");
+		user.setState(null);
+		context.getBean(TelegramUserRepository.class).save(user);
+
+		CategoryRepository categoryRepository = context.getBean(CategoryRepository.class);
+		ProductRepository productRepository = context.getBean(ProductRepository.class);
+		categories = new ArrayList<>();
+		products = new ArrayList<>();
+		for (int c = 0; c < CATEGORIES; c++) {
+			Category category = categoryRepository.save(new Category("Category " + c, "Description " + c));
+			categories.add(category);
+			for (int p = 0; p < PRODUCTS_PER_CATEGORY; p++) {
+				products.add(productRepository.save(new Product("Product " + c + "-" + p,
+						"Описание товара " + p, BigDecimal.valueOf(1000 + p * 10L, 2), 10 + p, category)));
+			}
+		}
+		// Категории сохранены в обход CategoryService
+		context.getBean(CategoryService.class).refreshCategoryTree();
+
+		CartItemRepository cartItemRepository = context.getBean(CartItemRepository.class);
+		for (int i = 0; i < CART_ITEMS; i++) {
+			cartItemRepository.save(new CartItem(user, products.get(i), i + 1));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	<T> T bean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+}
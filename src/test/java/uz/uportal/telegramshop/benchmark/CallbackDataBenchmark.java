@@ -0,0 +1,86 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.CallbackPayload;
+
+/**
+ * Сравнение прежнего строкового формата callback-данных (конкатенация, replace + split("_"))
+ * с {@link CallbackCodec}. Запуск: main из IDE или {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=CallbackData}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackDataBenchmark {
+
+	private long categoryId;
+	private int page;
+	private String legacy;
+	private String compact;
+
+	@Setup
+	public void setUp() {
+		categoryId = 1500;
+		page = 12;
+		legacy = "catalog_products_page_" + categoryId + "_" + page;
+		compact = CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page);
+	}
+
+	@Benchmark
+	public String buildLegacy() {
+		return "catalog_products_page_" + categoryId + "_" + page;
+	}
+
+	@Benchmark
+	public String buildCompact() {
+		return CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, page);
+	}
+
+	@Benchmark
+	public long parseLegacy() {
+		// Как раньше в CatalogCallbackHandler.handleProductsInCategoryPage
+		String[] parts = legacy.replace("catalog_products_page_", "").split("_");
+		return Long.parseLong(parts[0]) + Integer.parseInt(parts[1]);
+	}
+
+	@Benchmark
+	public long parseLegacyWithCodec() {
+		CallbackPayload payload = CallbackCodec.decode(legacy);
+		return payload.first() + payload.second();
+	}
+
+	@Benchmark
+	public long parseCompact() {
+		CallbackPayload payload = CallbackCodec.decode(compact);
+		return payload.first() + payload.second();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(CallbackDataBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
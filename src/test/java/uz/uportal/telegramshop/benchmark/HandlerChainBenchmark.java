@@ -0,0 +1,126 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import uz.uportal.telegramshop.replay.RecordingMessageSender;
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandlerChain;
+import uz.uportal.telegramshop.service.bot.core.UpdateRouter;
+
+/**
+ * Выбор обработчика по таблице маршрутов и полный проход UpdateHandlerChain.handle
+ * на H2 в памяти: страница каталога по callback и корзина по кнопке главного меню
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerChainBenchmark {
+
+	private UpdateRouter updateRouter;
+	private UpdateHandlerChain updateHandlerChain;
+	private RecordingMessageSender messageSender;
+	private String compactCallback;
+	private String legacyCallback;
+	private Update catalogUpdate;
+	private Update cartUpdate;
+
+	@Setup
+	public void setUp(BotContextState state) {
+		updateRouter = state.bean(UpdateRouter.class);
+		updateHandlerChain = state.bean(UpdateHandlerChain.class);
+		messageSender = state.bean(RecordingMessageSender.class);
+
+		long categoryId = state.categories.get(0).getId();
+		compactCallback = CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, categoryId, 1);
+		legacyCallback = "catalog_products_page_" + categoryId + "_1";
+		catalogUpdate = callbackUpdate(CallbackCodec.encode(CallbackAction.CATALOG_CATEGORY, categoryId));
+		cartUpdate = textUpdate("🛒 Корзина");
+	}
+
+	@Benchmark
+	public UpdateHandler routeCompactCallback() {
+		return updateRouter.routeCallback(compactCallback);
+	}
+
+	@Benchmark
+	public UpdateHandler routeLegacyCallback() {
+		return updateRouter.routeCallback(legacyCallback);
+	}
+
+	@Benchmark
+	public UpdateHandler routeMenuText() {
+		return updateRouter.routeText("🛒 Корзина");
+	}
+
+	@Benchmark
+	public BotApiMethod<?> handleCatalogCategory() {
+		BotApiMethod<?> response = updateHandlerChain.handle(catalogUpdate);
+		messageSender.drainCalls();
+		return response;
+	}
+
+	@Benchmark
+	public BotApiMethod<?> handleCartButton() {
+		BotApiMethod<?> response = updateHandlerChain.handle(cartUpdate);
+		messageSender.drainCalls();
+		return response;
+	}
+
+	private static Update callbackUpdate(String data) {
+		CallbackQuery callbackQuery = new CallbackQuery();
+		callbackQuery.setId("1");
+		callbackQuery.setFrom(user());
+		callbackQuery.setMessage(message(null));
+		callbackQuery.setData(data);
+		Update update = new Update();
+		update.setUpdateId(1);
+		update.setCallbackQuery(callbackQuery);
+		return update;
+	}
+
+	private static Update textUpdate(String text) {
+		Update update = new Update();
+		update.setUpdateId(2);
+		update.setMessage(message(text));
+		return update;
+	}
+
+	private static Message message(String text) {
+		Chat chat = new Chat();
+		chat.setId(BotContextState.CHAT_ID);
+		chat.setType("private");
+		Message message = new Message();
+		message.setMessageId(100);
+		message.setChat(chat);
+		message.setFrom(user());
+		message.setText(text);
+		return message;
+	}
+
+	private static User user() {
+		return new User(BotContextState.CHAT_ID, "Bench", false);
+	}
+
+}
@@ -0,0 +1,95 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.service.CategoryProductCounters;
+import uz.uportal.telegramshop.service.CategoryProductCounters.ProductState;
+import uz.uportal.telegramshop.service.bot.keyboards.KeyboardFactoryImpl;
+
+/**
+ * Построение клавиатур KeyboardFactoryImpl: главное меню, каталог и подкатегории, пагинация.
+ * Счетчики товаров заполняются в памяти без базы и без сверки по расписанию
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyboardFactoryBenchmark {
+
+	private CategoryProductCounters productCounters;
+	private KeyboardFactoryImpl keyboardFactory;
+	private List<Category> categories;
+	private List<Category> subcategories;
+	private Category parent;
+
+	@Setup
+	public void setUp() {
+		productCounters = new CategoryProductCounters(null, new SimpleMeterRegistry(), false, 3600);
+		keyboardFactory = new KeyboardFactoryImpl(productCounters);
+		categories = categories(null, 12, 1);
+		parent = categories.get(0);
+		subcategories = categories(parent, 8, 100);
+		for (Category category : categories) {
+			productCounters.productChanged(null, new ProductState(category.getId(), true, true));
+		}
+		for (Category category : subcategories) {
+			productCounters.productChanged(null, new ProductState(category.getId(), true, false));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		productCounters.shutdown();
+	}
+
+	private static List<Category> categories(Category parent, int count, long firstId) {
+		List<Category> result = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Category category = new Category("Category " + i, "Description", parent);
+			category.setId(firstId + i);
+			result.add(category);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public ReplyKeyboardMarkup mainMenu() {
+		return keyboardFactory.createMainMenuKeyboard(false);
+	}
+
+	@Benchmark
+	public InlineKeyboardMarkup catalog() {
+		return keyboardFactory.createCatalogKeyboard(categories);
+	}
+
+	@Benchmark
+	public InlineKeyboardMarkup subcategories() {
+		return keyboardFactory.createSubcategoriesKeyboard(subcategories, parent);
+	}
+
+	@Benchmark
+	public InlineKeyboardMarkup productPagination() {
+		return keyboardFactory.createProductPaginationKeyboard(3, 10);
+	}
+
+}
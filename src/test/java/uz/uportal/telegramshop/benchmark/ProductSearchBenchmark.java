@@ -0,0 +1,113 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex;
+import uz.uportal.telegramshop.service.search.ProductTrigramIndex;
+
+/**
+ * Поиск по сгенерированному каталогу: триграммный индекс (опечатки, кириллица вместо латиницы, длинный запрос)
+ * и префиксный индекс inline-режима. Цель для триграммного индекса — меньше миллисекунды на 100 тысячах товаров.
+ * Запуск: main из IDE или {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ProductSearch}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+	private static final String[] BRANDS = {
+			"Apple", "Samsung", "Xiaomi", "Huawei", "Lenovo", "Asus", "Bosch", "Philips", "Artel", "LG",
+			"Sony", "Tefal", "Redmi", "Honor", "Acer", "HP", "Dell", "Braun", "Vitek", "Polaris"
+	};
+
+	private static final String[] TYPES = {
+			"Смартфон", "Ноутбук", "Планшет", "Телевизор", "Наушники", "Чайник", "Пылесос", "Холодильник",
+			"Микроволновка", "Утюг", "Фен", "Монитор", "Кофеварка", "Блендер", "Кондиционер", "Часы"
+	};
+
+	private static final String[] MODELS = {
+			"iPhone", "Galaxy", "Note", "Pro", "Max", "Ultra", "Lite", "Air", "Plus", "Mini", "Book", "Pad"
+	};
+
+	private static final String[] COLORS = {
+			"черный", "белый", "серебристый", "синий", "красный", "золотой", "qora", "oq", "ko'k"
+	};
+
+	@Param({"100000"})
+	private int products;
+
+	private ProductTrigramIndex trigramIndex;
+	private ProductSearchIndex prefixIndex;
+
+	@Setup
+	public void setUp() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		trigramIndex = new ProductTrigramIndex(null, meterRegistry, 0.25);
+		prefixIndex = new ProductSearchIndex(null, meterRegistry);
+		Random random = new Random(42);
+		for (long id = 1; id <= products; id++) {
+			String name = pick(random, TYPES) + " " + pick(random, BRANDS) + " " + pick(random, MODELS) + " "
+					+ (random.nextInt(20) + 1) + " " + (64 << random.nextInt(4)) + "GB " + pick(random, COLORS);
+			ProductSearchIndex.Entry entry = new ProductSearchIndex.Entry(id, name, "Гарантия 12 месяцев",
+					BigDecimal.valueOf(100_000 + random.nextInt(20_000_000)), null, random.nextInt(10), true);
+			trigramIndex.productChanged(entry);
+			prefixIndex.productChanged(entry);
+		}
+	}
+
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	@Benchmark
+	public List<ProductTrigramIndex.Match> trigramTypo() {
+		return trigramIndex.search("ipone 13", 8);
+	}
+
+	@Benchmark
+	public List<ProductTrigramIndex.Match> trigramCyrillic() {
+		return trigramIndex.search("айфон 13", 8);
+	}
+
+	@Benchmark
+	public List<ProductTrigramIndex.Match> trigramLongQuery() {
+		return trigramIndex.search("смартфон самсунг галакси ультра 256GB черный", 8);
+	}
+
+	@Benchmark
+	public ProductSearchIndex.Result prefix() {
+		return prefixIndex.search("смарт sams", 0, 20);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(ProductSearchBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,73 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.model.Order;
+import uz.uportal.telegramshop.model.OrderItem;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.service.CartService;
+import uz.uportal.telegramshop.service.bot.commands.CatalogCallbackHandler;
+
+/**
+ * Формирование текстов и сумм: карточка товара в каталоге, содержимое корзины
+ * (CartService.getCartInfo на H2 в памяти) и пересчет суммы заказа
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderingBenchmark {
+
+	private static final int ORDER_ITEMS = 10;
+
+	private Product product;
+	private Order order;
+	private CartService cartService;
+
+	@Setup
+	public void setUp(BotContextState state) {
+		product = new Product("Смартфон X", "Экран 6.1\", 128 ГБ, две SIM-карты",
+				new BigDecimal("24990.00"), 12, new Category("Электроника"));
+		product.setId(1L);
+
+		order = new Order();
+		for (int i = 0; i < ORDER_ITEMS; i++) {
+			Product item = new Product("Item " + i, null, BigDecimal.valueOf(1999 + i * 100L, 2), 5, null);
+			order.addItem(new OrderItem(item, i + 1));
+		}
+
+		cartService = state.bean(CartService.class);
+	}
+
+	@Benchmark
+	public String productCard() {
+		return CatalogCallbackHandler.productCardText(product);
+	}
+
+	@Benchmark
+	public String cartInfo() {
+		return cartService.getCartInfo(BotContextState.CHAT_ID);
+	}
+
+	@Benchmark
+	public BigDecimal orderTotal() {
+		order.recalculateTotalAmount();
+		return order.getTotalAmount();
+	}
+
+}
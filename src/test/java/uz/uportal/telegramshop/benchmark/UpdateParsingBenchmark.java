@@ -0,0 +1,93 @@
+package uz.uportal.telegramshop.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelopeParser;
+
+/**
+ * Разбор тела webhook: databind в полный Update (как раньше делал @RequestBody Update)
+ * против потокового разбора в {@link UpdateEnvelope}. Выделение памяти на обновление —
+ * gc.alloc.rate.norm. Запуск: {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=UpdateParsing}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateParsingBenchmark {
+
+	private static final String CALLBACK = "{\"update_id\":501,\"callback_query\":{\"id\":\"4382\","
+			+ "\"from\":{\"id\":1001,\"is_bot\":false,\"first_name\":\"Bench\",\"language_code\":\"ru\"},"
+			+ "\"message\":{\"message_id\":12,\"from\":{\"id\":999,\"is_bot\":true,\"first_name\":\"Shop\",\"username\":\"shop_bot\"},"
+			+ "\"chat\":{\"id\":1001,\"first_name\":\"Bench\",\"type\":\"private\"},\"date\":1700000000,"
+			+ "\"text\":\"Товары в категории Электроника\",\"reply_markup\":{\"inline_keyboard\":"
+			+ "[[{\"text\":\"◀️\",\"callback_data\":\"catalog_products_page_3_1\"},"
+			+ "{\"text\":\"▶️\",\"callback_data\":\"catalog_products_page_3_3\"}],"
+			+ "[{\"text\":\"Назад\",\"callback_data\":\"back_to_catalog\"}]]}},"
+			+ "\"chat_instance\":\"-4213841\",\"data\":\"catalog_products_page_3_2\"}}";
+
+	private static final String TEXT = "{\"update_id\":502,\"message\":{\"message_id\":13,"
+			+ "\"from\":{\"id\":1001,\"is_bot\":false,\"first_name\":\"Bench\",\"language_code\":\"ru\"},"
+			+ "\"chat\":{\"id\":1001,\"first_name\":\"Bench\",\"type\":\"private\"},\"date\":1700000001,"
+			+ "\"text\":\"🛒 Корзина\"}}";
+
+	private byte[] callback;
+	private byte[] text;
+	private ObjectReader updateReader;
+	private UpdateEnvelopeParser parser;
+
+	@Setup
+	public void setUp() {
+		callback = CALLBACK.getBytes(StandardCharsets.UTF_8);
+		text = TEXT.getBytes(StandardCharsets.UTF_8);
+		ObjectMapper objectMapper = new ObjectMapper();
+		updateReader = objectMapper.readerFor(Update.class);
+		parser = new UpdateEnvelopeParser(objectMapper);
+	}
+
+	@Benchmark
+	public Update bindCallback() throws IOException {
+		return updateReader.readValue(callback);
+	}
+
+	@Benchmark
+	public UpdateEnvelope parseCallback() throws IOException {
+		return parser.parse(callback);
+	}
+
+	@Benchmark
+	public Update bindText() throws IOException {
+		return updateReader.readValue(text);
+	}
+
+	@Benchmark
+	public UpdateEnvelope parseText() throws IOException {
+		return parser.parse(text);
+	}
+
+	@Benchmark
+	public Update parseTextThenBind() throws IOException {
+		// Худший случай: обработчику понадобился полный Update
+		return parser.parse(text).getUpdate();
+	}
+
+}
@@ -0,0 +1,128 @@
+package uz.uportal.telegramshop.replay;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import uz.uportal.telegramshop.service.bot.core.MessageSender;
+
+/**
+ * MessageSender для воспроизведения и тестов: ничего не отправляет, а запоминает методы Bot API,
+ * которые обработчики вызвали бы для текущего обновления, а также отправленные сообщения и альбомы
+ */
+public class RecordingMessageSender implements MessageSender {
+
+	private final AtomicInteger messageIds = new AtomicInteger(1_000_000);
+	private final List<String> calls = new ArrayList<>();
+	private final List<SendMessage> messages = new ArrayList<>();
+	private final List<SendMediaGroup> albums = new ArrayList<>();
+	private boolean failAlbums;
+
+	@Override
+	public Message executePhoto(SendPhoto sendPhoto) {
+		calls.add(sendPhoto.getMethod());
+		return message(sendPhoto.getChatId());
+	}
+
+	@Override
+	public Message executeMessage(SendMessage sendMessage) {
+		calls.add(sendMessage.getMethod());
+		messages.add(sendMessage);
+		return message(sendMessage.getChatId());
+	}
+
+	@Override
+	public List<Message> executeMediaGroup(SendMediaGroup sendMediaGroup) throws TelegramApiException {
+		calls.add(sendMediaGroup.getMethod());
+		if (failAlbums) {
+			throw new TelegramApiException("Bad Request: wrong file identifier");
+		}
+		albums.add(sendMediaGroup);
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < sendMediaGroup.getMedias().size(); i++) {
+			messages.add(message(sendMediaGroup.getChatId()));
+		}
+		return messages;
+	}
+
+	@Override
+	public Object executeEditMessage(EditMessageText editMessageText) {
+		calls.add(editMessageText.getMethod());
+		return Boolean.TRUE;
+	}
+
+	@Override
+	public Serializable executeEditMessageCaption(EditMessageCaption editMessageCaption) {
+		calls.add(editMessageCaption.getMethod());
+		return Boolean.TRUE;
+	}
+
+	@Override
+	public Serializable executeEditMessageMedia(EditMessageMedia editMessageMedia) {
+		calls.add(editMessageMedia.getMethod());
+		return Boolean.TRUE;
+	}
+
+	@Override
+	public Boolean executeDeleteMessage(DeleteMessage deleteMessage) {
+		calls.add(deleteMessage.getMethod());
+		return Boolean.TRUE;
+	}
+
+	/**
+	 * Возвращает вызовы, накопленные с прошлого раза, и очищает список
+	 * @return методы Bot API по порядку вызова
+	 */
+	public List<String> drainCalls() {
+		List<String> drained = List.copyOf(calls);
+		calls.clear();
+		return drained;
+	}
+
+	/**
+	 * Отправленные текстовые сообщения по порядку
+	 * @return сообщения
+	 */
+	public List<SendMessage> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Отправленные альбомы по порядку
+	 * @return альбомы
+	 */
+	public List<SendMediaGroup> getAlbums() {
+		return albums;
+	}
+
+	/**
+	 * Включает отказ Bot API на отправку альбомов
+	 * @param failAlbums true, чтобы sendMediaGroup завершался ошибкой
+	 */
+	public void setFailAlbums(boolean failAlbums) {
+		this.failAlbums = failAlbums;
+	}
+
+	private Message message(String chatId) {
+		Chat chat = new Chat();
+		chat.setId(Long.parseLong(chatId));
+		chat.setType("private");
+		Message message = new Message();
+		message.setMessageId(messageIds.incrementAndGet());
+		message.setChat(chat);
+		return message;
+	}
+
+}
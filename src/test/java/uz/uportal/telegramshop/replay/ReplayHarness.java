@@ -0,0 +1,293 @@
+package uz.uportal.telegramshop.replay;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandlerChain;
+import uz.uportal.telegramshop.service.bot.journal.UpdateJournalReader;
+
+/**
+ * Воспроизведение записанных обновлений через UpdateHandlerChain на встроенной базе
+ * (профиль replay) без обращений к Telegram. Источник — каталог журнала {@code UpdateJournal}
+ * (на работающем боте его включает {@code telegram.bot.journal.enabled=true})
+ * или JSONL-файл, где каждая строка — Update в формате Bot API.
+ * <p>
+ * Печатает пропускную способность, перцентили времени обработчиков, число SQL-запросов
+ * и методы Bot API, которые были бы вызваны. Запуск:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=uz.uportal.telegramshop.replay.ReplayHarness \
+ *     -Dexec.args="--journal=journal --speed=max --out=target/replay-calls.jsonl"
+ * </pre>
+ * Параметры: {@code --journal=каталог} или {@code --jsonl=файл}; {@code --speed=max|realtime|Nx};
+ * {@code --out=файл} — вызовы Bot API по каждому обновлению в JSONL.
+ */
+public class ReplayHarness {
+
+	private final UpdateHandlerChain updateHandlerChain;
+	private final RecordingMessageSender messageSender;
+	private final MeterRegistry meterRegistry;
+	private final ObjectMapper objectMapper;
+
+	public ReplayHarness(UpdateHandlerChain updateHandlerChain, RecordingMessageSender messageSender,
+			MeterRegistry meterRegistry, ObjectMapper objectMapper) {
+		this.updateHandlerChain = updateHandlerChain;
+		this.messageSender = messageSender;
+		this.meterRegistry = meterRegistry;
+		this.objectMapper = objectMapper;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseOptions(args);
+		double speed = parseSpeed(options.getOrDefault("speed", "max"));
+
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TelegramshopApplication.class,
+				ReplayBeans.class).profiles("replay").run()) {
+			ReplayHarness harness = new ReplayHarness(context.getBean(UpdateHandlerChain.class),
+					context.getBean(RecordingMessageSender.class), context.getBean(MeterRegistry.class),
+					context.getBean(ObjectMapper.class));
+			try (Stream<RecordedUpdate> updates = harness.open(options)) {
+				ReplayReport report = harness.replay(updates, speed, options.get("out"));
+				System.out.println(report.format(harness.meterRegistry));
+			}
+		}
+	}
+
+	/**
+	 * Открывает источник обновлений
+	 * @param options параметры командной строки
+	 * @return обновления по порядку
+	 * @throws IOException если источник не читается
+	 */
+	Stream<RecordedUpdate> open(Map<String, String> options) throws IOException {
+		if (options.containsKey("journal")) {
+			return new UpdateJournalReader(Paths.get(options.get("journal"))).readAll()
+					.map(record -> new RecordedUpdate(record.timestamp(), record.payload()));
+		}
+		if (options.containsKey("jsonl")) {
+			return Files.lines(Paths.get(options.get("jsonl")), StandardCharsets.UTF_8)
+					.filter(line -> !line.isBlank())
+					.map(this::fromJsonLine);
+		}
+		throw new IllegalArgumentException("Укажите источник: --journal=каталог или --jsonl=файл");
+	}
+
+	private RecordedUpdate fromJsonLine(String line) {
+		byte[] json = line.getBytes(StandardCharsets.UTF_8);
+		try {
+			// В Update нет времени получения, поэтому для темпа берется дата сообщения (секунды)
+			JsonNode tree = objectMapper.readTree(json);
+			JsonNode date = tree.at("/message/date");
+			if (date.isMissingNode()) {
+				date = tree.at("/callback_query/message/date");
+			}
+			return new RecordedUpdate(date.isMissingNode() ? 0 : date.asLong() * 1000, json);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Строка не является JSON: " + line, e);
+		}
+	}
+
+	/**
+	 * Прогоняет обновления через цепочку обработчиков по одному, в исходном порядке
+	 * @param updates обновления
+	 * @param speed множитель скорости относительно записи; 0 — без пауз
+	 * @param out файл для вызовов Bot API по каждому обновлению или null
+	 * @return итоги прогона
+	 * @throws IOException если не удалось записать файл вызовов
+	 * @throws InterruptedException если поток прерван во время паузы
+	 */
+	ReplayReport replay(Stream<RecordedUpdate> updates, double speed, String out)
+			throws IOException, InterruptedException {
+		ReplayReport report = new ReplayReport();
+		BufferedWriter writer = out != null ? Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8) : null;
+		long startedAt = System.nanoTime();
+		long firstTimestamp = -1;
+
+		try {
+			for (RecordedUpdate recorded : (Iterable<RecordedUpdate>) updates::iterator) {
+				if (speed > 0 && recorded.timestamp() > 0) {
+					if (firstTimestamp < 0) {
+						firstTimestamp = recorded.timestamp();
+					}
+					long dueAt = startedAt + (long) ((recorded.timestamp() - firstTimestamp) * 1_000_000 / speed);
+					long delay = dueAt - System.nanoTime();
+					if (delay > 0) {
+						TimeUnit.NANOSECONDS.sleep(delay);
+					}
+				}
+
+				Update update = objectMapper.readValue(recorded.payload(), Update.class);
+				List<String> calls = new ArrayList<>();
+				boolean failed = false;
+				try {
+					BotApiMethod<?> response = updateHandlerChain.handle(update);
+					calls.addAll(messageSender.drainCalls());
+					if (response != null) {
+						// Ответ в теле webhook — тоже вызов Bot API
+						calls.add(response.getMethod());
+					}
+				} catch (RuntimeException e) {
+					calls.addAll(messageSender.drainCalls());
+					failed = true;
+				}
+				report.add(calls, failed);
+
+				if (writer != null) {
+					writer.write(objectMapper.writeValueAsString(Map.of(
+							"update_id", update.getUpdateId(), "failed", failed, "calls", calls)));
+					writer.newLine();
+				}
+			}
+		} finally {
+			report.finish(System.nanoTime() - startedAt);
+			if (writer != null) {
+				writer.close();
+			}
+		}
+		return report;
+	}
+
+	static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new TreeMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+			}
+			int separator = arg.indexOf('=');
+			options.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * @param speed max, realtime или Nx
+	 * @return множитель скорости; 0 — без пауз
+	 */
+	static double parseSpeed(String speed) {
+		if ("max".equals(speed)) {
+			return 0;
+		}
+		if ("realtime".equals(speed)) {
+			return 1;
+		}
+		if (speed.endsWith("x")) {
+			double factor = Double.parseDouble(speed.substring(0, speed.length() - 1));
+			if (factor > 0) {
+				return factor;
+			}
+		}
+		throw new IllegalArgumentException("Скорость должна быть max, realtime или Nx: " + speed);
+	}
+
+	/**
+	 * Записанное обновление
+	 * @param timestamp время получения, мс; 0 — неизвестно
+	 * @param payload JSON обновления
+	 */
+	record RecordedUpdate(long timestamp, byte[] payload) {
+	}
+
+	/**
+	 * Итоги прогона: число обновлений, ошибки и вызовы Bot API по методам
+	 */
+	static final class ReplayReport {
+
+		/**
+		 * Перцентили из management.metrics.distribution.percentiles в application-replay.properties
+		 */
+		private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+		private final Map<String, Long> callsByMethod = new TreeMap<>();
+		private long updates;
+		private long failures;
+		private long calls;
+		private long elapsedNanos;
+
+		void add(List<String> updateCalls, boolean failed) {
+			updates++;
+			if (failed) {
+				failures++;
+			}
+			calls += updateCalls.size();
+			for (String method : updateCalls) {
+				callsByMethod.merge(method, 1L, Long::sum);
+			}
+		}
+
+		void finish(long elapsedNanos) {
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		String format(MeterRegistry meterRegistry) {
+			double seconds = elapsedNanos / 1e9;
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("Обновлений: %d, ошибок: %d, время: %.2f с, пропускная способность: %.1f обн/с%n",
+					updates, failures, seconds, seconds > 0 ? updates / seconds : 0));
+			out.append(String.format("Вызовов Bot API: %d (%.2f на обновление)%n",
+					calls, updates > 0 ? (double) calls / updates : 0));
+			callsByMethod.forEach((method, count) -> out.append(String.format("  %-20s %d%n", method, count)));
+
+			out.append(String.format("%n%-32s %-28s %8s %9s %9s %9s %9s %8s%n",
+					"handler", "route", "count", "p50 ms", "p90 ms", "p99 ms", "max ms", "sql avg"));
+			for (Timer timer : meterRegistry.find("telegram.handler.duration").timers()) {
+				String handler = timer.getId().getTag("handler");
+				String route = timer.getId().getTag("route");
+				HistogramSnapshot snapshot = timer.takeSnapshot();
+				double[] percentiles = new double[PERCENTILES.length];
+				for (ValueAtPercentile value : snapshot.percentileValues()) {
+					int index = Arrays.binarySearch(PERCENTILES, value.percentile());
+					if (index >= 0) {
+						percentiles[index] = value.value(TimeUnit.MILLISECONDS);
+					}
+				}
+				DistributionSummary statements = meterRegistry.find("telegram.handler.sql.statements")
+						.tag("handler", handler).tag("route", route).summary();
+				out.append(String.format("%-32s %-28s %8d %9.2f %9.2f %9.2f %9.2f %8.1f%n",
+						handler, route, snapshot.count(), percentiles[0], percentiles[1], percentiles[2],
+						snapshot.max(TimeUnit.MILLISECONDS), statements != null ? statements.mean() : 0));
+			}
+			return out.toString();
+		}
+	}
+
+	/**
+	 * Бины профиля replay. Класс намеренно без @Configuration, чтобы сканирование
+	 * компонентов в обычных тестах его не подхватывало
+	 */
+	public static class ReplayBeans {
+
+		/**
+		 * Заменяет MessageSender из BotConfig (то же имя бина)
+		 */
+		@Bean
+		RecordingMessageSender messageSender() {
+			return new RecordingMessageSender();
+		}
+	}
+
+}
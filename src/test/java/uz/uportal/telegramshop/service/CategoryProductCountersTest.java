@@ -0,0 +1,87 @@
+package uz.uportal.telegramshop.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.replay.ReplayHarness;
+import uz.uportal.telegramshop.service.CategoryProductCounters.Counts;
+import uz.uportal.telegramshop.service.bot.metrics.SqlStatementCounter;
+
+@SpringBootTest(classes = {TelegramshopApplication.class, ReplayHarness.ReplayBeans.class})
+@ActiveProfiles("replay")
+class CategoryProductCountersTest {
+
+	@Autowired
+	private CategoryProductCounters counters;
+
+	@Autowired
+	private CategoryService categoryService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private SqlStatementCounter statementCounter;
+
+	@Test
+	void countsFollowProductChangesIncludingSubtree() {
+		Category electronics = categoryService.createCategory("Электроника " + System.nanoTime(), null);
+		Category phones = categoryService.createSubcategory("Телефоны", null, electronics.getId());
+		Product phone = productService.createProduct("Телефон", null, BigDecimal.TEN, 5, phones);
+		productService.createProduct("Телефон без остатка", null, BigDecimal.TEN, 0, phones);
+		Product cable = productService.createProduct("Кабель", null, BigDecimal.ONE, 3, electronics);
+
+		assertThat(counters.get(phones.getId())).isEqualTo(new Counts(2, 2, 1));
+		assertThat(counters.getSubtree(electronics.getId())).isEqualTo(new Counts(3, 3, 2));
+
+		productService.deleteProduct(phone.getId());
+		productService.updateProduct(cable.getId(), cable.getName(), null, cable.getPrice(), 0, phones);
+
+		assertThat(counters.get(phones.getId())).isEqualTo(new Counts(3, 2, 0));
+		assertThat(counters.get(electronics.getId())).isEqualTo(Counts.ZERO);
+		assertThat(counters.getSubtree(electronics.getId())).isEqualTo(new Counts(3, 2, 0));
+	}
+
+	@Test
+	void categoryChecksDoNotLoadProducts() {
+		Category category = categoryService.createCategory("Книги " + System.nanoTime(), null);
+		productService.createProduct("Книга", null, BigDecimal.TEN, 1, category);
+
+		long before = statementCounter.current();
+		assertThat(categoryService.categoryHasProducts(category.getId())).isTrue();
+		assertThat(categoryService.countActiveProductsInSubtree(category.getId())).isEqualTo(1);
+		assertThat(statementCounter.current() - before).isZero();
+
+		assertThat(categoryService.deleteCategoryWithResult(category.getId()).isSuccess()).isFalse();
+	}
+
+	@Test
+	void verificationRepairsChangesMadeBypassingService() {
+		Category category = categoryService.createCategory("Игрушки " + System.nanoTime(), null);
+		Product toy = productService.createProduct("Игрушка", null, BigDecimal.TEN, 2, category);
+		counters.verify();
+
+		jdbcTemplate.update("update products set stock = 0 where id = ?", toy.getId());
+
+		// Первая сверка только запоминает расхождение, вторая подтверждает его
+		assertThat(counters.verify()).isZero();
+		assertThat(counters.get(category.getId())).isEqualTo(new Counts(1, 1, 1));
+		assertThat(counters.verify()).isPositive();
+		assertThat(counters.get(category.getId())).isEqualTo(new Counts(1, 1, 0));
+		assertThat(counters.verify()).isZero();
+	}
+
+}
@@ -0,0 +1,71 @@
+package uz.uportal.telegramshop.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import uz.uportal.telegramshop.model.Category;
+
+class CategoryTreeTest {
+
+	@Test
+	void buildsHierarchyWithPathsAndDepth() {
+		Category electronics = category(1, "Электроника", null);
+		Category phones = category(2, "Телефоны", electronics);
+		Category android = category(5, "Android", phones);
+		Category laptops = category(3, "Ноутбуки", electronics);
+		Category clothes = category(4, "Одежда", null);
+
+		CategoryTree tree = CategoryTree.build(List.of(android, laptops, clothes, phones, electronics), 7);
+
+		assertThat(tree.getVersion()).isEqualTo(7);
+		assertThat(tree.size()).isEqualTo(5);
+		assertThat(tree.getRoots()).extracting(CategoryTree.Node::getId).containsExactly(1L, 4L);
+		assertThat(tree.get(1L).getChildren()).extracting(CategoryTree.Node::getId).containsExactly(2L, 3L);
+		assertThat(tree.get(4L).hasChildren()).isFalse();
+
+		CategoryTree.Node node = tree.get(5L);
+		assertThat(node.getDepth()).isEqualTo(2);
+		assertThat(node.getParent().getId()).isEqualTo(2L);
+		assertThat(node.getPathText(" / ")).isEqualTo("Электроника / Телефоны / Android");
+		assertThat(tree.get(99L)).isNull();
+	}
+
+	@Test
+	void entitiesForKeyboardsAreDetachedCopies() {
+		Category electronics = category(1, "Электроника", null);
+		Category phones = category(2, "Телефоны", electronics);
+		CategoryTree tree = CategoryTree.build(List.of(electronics, phones), 1);
+
+		List<Category> subcategories = tree.getSubcategories(1L);
+		assertThat(subcategories).extracting(Category::getName).containsExactly("Телефоны");
+		assertThat(subcategories.get(0).getParent().getName()).isEqualTo("Электроника");
+
+		subcategories.get(0).setName("Изменено");
+		assertThat(tree.get(2L).getName()).isEqualTo("Телефоны");
+		assertThat(tree.getSubcategories(99L)).isEmpty();
+	}
+
+	@Test
+	void cycleInDataIsLeftOutOfSnapshot() {
+		Category first = category(1, "Первая", null);
+		Category second = category(2, "Вторая", first);
+		first.setParent(second);
+		Category root = category(3, "Корень", null);
+
+		CategoryTree tree = CategoryTree.build(List.of(first, second, root), 1);
+
+		assertThat(tree.getRoots()).extracting(CategoryTree.Node::getId).containsExactly(3L);
+		assertThat(tree.get(1L)).isNull();
+		assertThat(tree.size()).isEqualTo(1);
+	}
+
+	private static Category category(long id, String name, Category parent) {
+		Category category = new Category(name, null, parent);
+		category.setId(id);
+		return category;
+	}
+
+}
@@ -0,0 +1,90 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.replay.RecordingMessageSender;
+
+class CatalogPageSenderTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final RecordingMessageSender sender = new RecordingMessageSender();
+
+	private final CatalogPageSender pageSender = new CatalogPageSender(sender, meterRegistry, "album");
+
+	@Test
+	void pageIsSentAsAlbumAndOneKeyboardMessage() {
+		CatalogPage page = new CatalogPage(List.of(
+				card(1, "https://img/1.jpg"),
+				card(2, "https://img/2.jpg"),
+				card(3, null)), 1, 2, 6);
+
+		pageSender.sendAlbum(42L, 7L, "Телефоны", page, System.nanoTime());
+
+		assertThat(sender.drainCalls()).containsExactly("sendMediaGroup", "sendmessage");
+		assertThat(sender.getAlbums().get(0).getMedias()).hasSize(2);
+		SendMessage keyboardMessage = sender.getMessages().get(0);
+		assertThat(keyboardMessage.getText()).contains("Товар 3").doesNotContain("Товар 1");
+		assertThat(buttons(keyboardMessage)).containsExactly(
+				"🛒 Товар 1", "🛒 Товар 2", "🛒 Товар 3", "Следующая ➡️", "⬅️ Назад к категориям");
+		assertThat(meterRegistry.get("telegram.catalog.page.calls").tag("mode", "album").summary().totalAmount())
+				.isEqualTo(2);
+		assertThat(meterRegistry.get("telegram.catalog.page.latency").tag("mode", "album").timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void singlePhotoIsSentAsPhoto() {
+		CatalogPage page = new CatalogPage(List.of(card(1, "https://img/1.jpg"), card(2, null)), 1, 1, 2);
+
+		pageSender.sendAlbum(42L, 7L, "Телефоны", page, System.nanoTime());
+
+		assertThat(sender.drainCalls()).containsExactly("sendphoto", "sendmessage");
+	}
+
+	@Test
+	void failedAlbumFallsBackToText() {
+		sender.setFailAlbums(true);
+		CatalogPage page = new CatalogPage(List.of(card(1, "https://img/1.jpg"), card(2, "https://img/2.jpg")), 1, 1, 2);
+
+		pageSender.sendAlbum(42L, 7L, "Телефоны", page, System.nanoTime());
+
+		assertThat(sender.getMessages().get(0).getText()).contains("Товар 1", "Товар 2");
+		assertThat(meterRegistry.get("telegram.catalog.page.album.fallbacks").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void messagesModeCountsOneCallPerProduct() {
+		CatalogPage page = new CatalogPage(List.of(card(1, null), card(2, null), card(3, null)), 2, 2, 6);
+
+		pageSender.recordMessages(page, System.nanoTime());
+
+		assertThat(meterRegistry.get("telegram.catalog.page.calls").tag("mode", "messages").summary().totalAmount())
+				.isEqualTo(5);
+	}
+
+	private static CatalogPage.Card card(long id, String imageUrl) {
+		String name = "Товар " + id;
+		return new CatalogPage.Card(id, name, "*" + name + "*\n", imageUrl);
+	}
+
+	private static List<String> buttons(SendMessage message) {
+		List<String> texts = new ArrayList<>();
+		for (List<InlineKeyboardButton> row : ((InlineKeyboardMarkup) message.getReplyMarkup()).getKeyboard()) {
+			for (InlineKeyboardButton button : row) {
+				texts.add(button.getText());
+			}
+		}
+		return texts;
+	}
+
+}
@@ -0,0 +1,78 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+class CatalogPageTest {
+
+	@Test
+	void shortCaptionIsKeptAsIs() {
+		String text = CatalogPage.cardText("Телефон", new BigDecimal("1000"), 5, "Описание");
+
+		assertThat(CatalogPage.caption(text)).isEqualTo(text);
+	}
+
+	@Test
+	void longDescriptionIsCutBeforeUnfinishedEntity() {
+		String prefix = CatalogPage.cardText("Телефон", new BigDecimal("1000"), 5, "x".repeat(900));
+		// Жирный текст начинается до границы в 1024 символа, а заканчивается после нее
+		String text = prefix + "Важно: *" + "y".repeat(200) + "*\n";
+
+		String caption = CatalogPage.caption(text);
+
+		assertThat(caption).hasSizeLessThanOrEqualTo(1024)
+				.isEqualTo(prefix + "Важно: …");
+		assertBalanced(caption);
+	}
+
+	@Test
+	void linkIsNotSplitBetweenTextAndAddress() {
+		String prefix = "a".repeat(1000);
+		String text = prefix + "[сайт](https://example.com/" + "p".repeat(100) + ")";
+
+		assertThat(CatalogPage.caption(text)).isEqualTo(prefix + "…");
+	}
+
+	@Test
+	void plainTextAndEscapedMarkersAreCutAtLimit() {
+		String text = "*Телефон*\n" + "\\_".repeat(600);
+
+		String caption = CatalogPage.caption(text);
+
+		assertThat(caption).hasSizeLessThanOrEqualTo(1024).endsWith("\\_…");
+		assertThat(caption.length()).isGreaterThan(1020);
+	}
+
+	@Test
+	void closedEntitiesAndCodeBlocksAreKept() {
+		String description = ("*жирный* _курсив_ `код` [ссылка](https://example.com) ```блок``` ").repeat(30);
+		String text = CatalogPage.cardText("Телефон", new BigDecimal("1000"), 5, description);
+
+		String caption = CatalogPage.caption(text);
+
+		assertThat(caption).hasSizeLessThanOrEqualTo(1024).endsWith("…");
+		assertThat(caption.length()).isGreaterThan(1024 - 60);
+		assertBalanced(caption);
+	}
+
+	@Test
+	void surrogatePairIsNotSplit() {
+		String text = "a".repeat(1022) + "📦".repeat(10);
+
+		String caption = CatalogPage.caption(text);
+
+		assertThat(caption).isEqualTo("a".repeat(1022) + "…");
+	}
+
+	private static void assertBalanced(String caption) {
+		String body = caption.replace("```", "").replace("\\_", "").replace("\\*", "");
+		assertThat(body.chars().filter(c -> c == '*').count() % 2).isZero();
+		assertThat(body.chars().filter(c -> c == '_').count() % 2).isZero();
+		assertThat(body.chars().filter(c -> c == '`').count() % 2).isZero();
+		assertThat(body.chars().filter(c -> c == '[').count()).isEqualTo(body.chars().filter(c -> c == ')').count());
+	}
+
+}
@@ -0,0 +1,117 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.replay.RecordingMessageSender;
+import uz.uportal.telegramshop.replay.ReplayHarness;
+import uz.uportal.telegramshop.service.CategoryService;
+import uz.uportal.telegramshop.service.ProductService;
+
+@SpringBootTest(classes = {TelegramshopApplication.class, ReplayHarness.ReplayBeans.class})
+@ActiveProfiles("replay")
+class ProductCarouselTest {
+
+	private static final long PHOTO = 1;
+
+	private static final long TEXT = 0;
+
+	@Autowired
+	private ProductPageCache productPageCache;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private CategoryService categoryService;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final RecordingMessageSender sender = new RecordingMessageSender();
+
+	private ProductCarousel carousel;
+
+	@AfterEach
+	void shutdown() {
+		if (carousel != null) {
+			carousel.shutdown();
+		}
+	}
+
+	@Test
+	void photoNavigationEditsMessageInPlace() {
+		carousel = carousel("");
+		Long categoryId = category("Телефоны", 3, "https://img/phone.jpg");
+
+		carousel.open(42L, 100, categoryId, 0);
+		assertThat(sender.drainCalls()).containsExactly("sendphoto");
+
+		carousel.navigate(42L, 101, categoryId, (1L << 2) | PHOTO);
+		carousel.navigate(42L, 101, categoryId, (2L << 2) | PHOTO);
+		assertThat(sender.drainCalls()).containsExactly("editMessageMedia", "editMessageMedia");
+		assertThat(meterRegistry.get("telegram.catalog.page.calls").tag("mode", "carousel").summary().max())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void textProductsEditCategoryListInPlace() {
+		carousel = carousel("");
+		Long categoryId = category("Книги", 2, null);
+
+		carousel.open(42L, 100, categoryId, 0);
+		carousel.navigate(42L, 100, categoryId, (1L << 2) | TEXT);
+
+		assertThat(sender.drainCalls()).containsExactly("editmessagetext", "editmessagetext");
+	}
+
+	@Test
+	void placeholderKeepsPhotoAndEditsOnlyCaption() {
+		carousel = carousel("https://img/placeholder.jpg");
+		Long categoryId = category("Подарки", 2, null);
+
+		carousel.open(42L, 100, categoryId, 0);
+		carousel.navigate(42L, 101, categoryId, (1L << 2) | 2);
+
+		assertThat(sender.drainCalls()).containsExactly("sendphoto", "editmessagecaption");
+	}
+
+	@Test
+	void neighbourPageIsPrefetched() throws InterruptedException {
+		carousel = carousel("");
+		Long categoryId = category("Ноутбуки", 3, null);
+
+		// Страницы по два товара: второй товар — последний на первой странице, третий лежит на второй
+		carousel.navigate(42L, 100, categoryId, (1L << 2) | TEXT);
+
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!productPageCache.contains(categoryId, 2, 2, Sort.by("id")) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(productPageCache.contains(categoryId, 2, 2, Sort.by("id"))).isTrue();
+	}
+
+	private ProductCarousel carousel(String placeholderImage) {
+		return new ProductCarousel(productPageCache, categoryService, sender, meterRegistry, "carousel", 2,
+				placeholderImage);
+	}
+
+	private Long category(String name, int count, String imageUrl) {
+		Category category = categoryService.createCategory(name + " " + System.nanoTime(), null);
+		for (int i = 0; i < count; i++) {
+			productService.createProduct(name + " " + i, null, BigDecimal.valueOf(1000 + i), imageUrl, 5, category);
+		}
+		return category.getId();
+	}
+
+}
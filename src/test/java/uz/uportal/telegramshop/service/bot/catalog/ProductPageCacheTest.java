@@ -0,0 +1,86 @@
+package uz.uportal.telegramshop.service.bot.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.model.Category;
+import uz.uportal.telegramshop.model.Product;
+import uz.uportal.telegramshop.replay.ReplayHarness;
+import uz.uportal.telegramshop.service.CategoryService;
+import uz.uportal.telegramshop.service.ProductService;
+import uz.uportal.telegramshop.service.bot.metrics.SqlStatementCounter;
+
+@SpringBootTest(classes = {TelegramshopApplication.class, ReplayHarness.ReplayBeans.class})
+@ActiveProfiles("replay")
+class ProductPageCacheTest {
+
+	private static final Sort SORT = Sort.by("id");
+
+	@Autowired
+	private ProductPageCache productPageCache;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private CategoryService categoryService;
+
+	@Autowired
+	private SqlStatementCounter statementCounter;
+
+	@Test
+	void repeatedPageIsServedWithoutQueries() {
+		Category category = categoryWithProducts("Телефоны", 5).get(0).getCategory();
+
+		CatalogPage first = productPageCache.get(category.getId(), 1, 3, SORT);
+		long before = statementCounter.current();
+		CatalogPage again = productPageCache.get(category.getId(), 1, 3, SORT);
+
+		assertThat(statementCounter.current() - before).isZero();
+		assertThat(again).isSameAs(first);
+		assertThat(first.cards()).hasSize(3);
+		assertThat(first.totalPages()).isEqualTo(2);
+		assertThat(productPageCache.get(category.getId(), 2, 3, SORT).cards()).hasSize(2);
+		assertThat(productPageCache.estimatedBytes()).isPositive();
+	}
+
+	@Test
+	void productChangeInvalidatesOnlyItsCategory() {
+		List<Product> phones = categoryWithProducts("Смартфоны", 2);
+		List<Product> laptops = categoryWithProducts("Ноутбуки", 2);
+		Long phonesId = phones.get(0).getCategory().getId();
+		Long laptopsId = laptops.get(0).getCategory().getId();
+		productPageCache.get(phonesId, 1, 3, SORT);
+		CatalogPage laptopsPage = productPageCache.get(laptopsId, 1, 3, SORT);
+
+		Product phone = phones.get(0);
+		productService.updateProduct(phone.getId(), "Смартфон Y", phone.getDescription(), phone.getPrice(), 0,
+				phone.getCategory());
+
+		assertThat(productPageCache.get(phonesId, 1, 3, SORT).cards().get(0).text()).contains("Смартфон Y");
+		assertThat(productPageCache.get(laptopsId, 1, 3, SORT)).isSameAs(laptopsPage);
+
+		productService.deleteProduct(phone.getId());
+		assertThat(productPageCache.get(phonesId, 1, 3, SORT).cards()).hasSize(1);
+	}
+
+	private List<Product> categoryWithProducts(String name, int count) {
+		Category category = categoryService.createCategory(name + " " + System.nanoTime(), null);
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			products.add(productService.createProduct(name + " " + i, null, BigDecimal.valueOf(1000 + i), 5, category));
+		}
+		return products;
+	}
+
+}
@@ -0,0 +1,100 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class CallbackCodecTest {
+
+	@Test
+	void roundTripsEveryAction() {
+		long[] values = {0, 1, 127, 128, 16_383, 1_500, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+		for (CallbackAction action : CallbackAction.values()) {
+			for (long first : values) {
+				for (long second : values) {
+					String data = action.getArity() == 1
+							? CallbackCodec.encode(action, first)
+							: CallbackCodec.encode(action, first, second);
+
+					assertThat(data.length()).isLessThanOrEqualTo(64);
+					assertThat(CallbackCodec.actionOf(data)).isEqualTo(action);
+					CallbackPayload payload = CallbackCodec.decode(data);
+					boolean fitsInt = (!action.isIntParam(0) || fitsInt(first))
+							&& (action.getArity() == 1 || !action.isIntParam(1) || fitsInt(second));
+					if (!fitsInt) {
+						assertThat(payload).isNull();
+						continue;
+					}
+					assertThat(payload.action()).isEqualTo(action);
+					assertThat(payload.first()).isEqualTo(first);
+					if (action.getArity() == 2) {
+						assertThat(payload.second()).isEqualTo(second);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void isShorterThanLegacyFormat() {
+		assertThat(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 1500, 12))
+				.hasSizeLessThan("catalog_products_page_1500_12".length());
+	}
+
+	@Test
+	void decodesLegacyFormat() {
+		assertThat(CallbackCodec.decode("catalog_subcategory_12_3"))
+				.isEqualTo(new CallbackPayload(CallbackAction.CATALOG_SUBCATEGORY, 12, 3));
+		assertThat(CallbackCodec.decode("add_to_cart_77"))
+				.isEqualTo(new CallbackPayload(CallbackAction.ADD_TO_CART, 77, 0));
+		assertThat(CallbackCodec.decode("update_quantity_5_2"))
+				.isEqualTo(new CallbackPayload(CallbackAction.UPDATE_QUANTITY, 5, 2));
+	}
+
+	@Test
+	void rejectsForeignData() {
+		assertThat(CallbackCodec.decode("clear_cart")).isNull();
+		assertThat(CallbackCodec.decode("add_to_cart_x")).isNull();
+		assertThat(CallbackCodec.decode("~")).isNull();
+		assertThat(CallbackCodec.decode("~AB")).isNull();
+		assertThat(CallbackCodec.decode("~!!!")).isNull();
+		assertThat(CallbackCodec.actionOf("catalog_categories")).isNull();
+	}
+
+	@Test
+	void rejectsIntParametersOutOfRange() {
+		// Подделанная кнопка: номер страницы не помещается в int
+		assertThat(CallbackCodec.decode(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 15, 1L << 40)))
+				.isNull();
+		assertThat(CallbackCodec.decode(CallbackCodec.encode(CallbackAction.ORDERS_PAGE, Long.MAX_VALUE, 1)))
+				.isNull();
+		assertThat(CallbackCodec.decode(CallbackCodec.encode(CallbackAction.UPDATE_QUANTITY, 5, -1))).isNull();
+		assertThat(CallbackCodec.decode("update_quantity_5_99999999999")).isNull();
+		// Идентификаторы остаются long
+		assertThat(CallbackCodec.decode(CallbackCodec.encode(CallbackAction.ADD_TO_CART, 1L << 40)))
+				.isEqualTo(new CallbackPayload(CallbackAction.ADD_TO_CART, 1L << 40, 0));
+		CallbackPayload page = CallbackCodec.decode(
+				CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 15, Integer.MAX_VALUE));
+		assertThat(page.secondInt()).isEqualTo(Integer.MAX_VALUE);
+	}
+
+	@Test
+	void decodesCompactDataOnlyWhenRecognisedAsEncoded() {
+		for (String data : new String[] {"~", "~B"}) {
+			assertThat(CallbackCodec.isEncoded(data)).as(data).isFalse();
+			assertThat(CallbackCodec.actionOf(data)).as(data).isNull();
+			assertThat(CallbackCodec.decode(data)).as(data).isNull();
+		}
+		// Действие распознано, но параметра нет
+		assertThat(CallbackCodec.actionOf("~BA")).isEqualTo(CallbackAction.ADD_TO_CART);
+		assertThat(CallbackCodec.decode("~BA")).isNull();
+		String data = CallbackCodec.encode(CallbackAction.ADD_TO_CART, 0);
+		assertThat(CallbackCodec.isEncoded(data)).isTrue();
+		assertThat(CallbackCodec.decode(data)).isEqualTo(new CallbackPayload(CallbackAction.ADD_TO_CART, 0, 0));
+	}
+
+	private static boolean fitsInt(long value) {
+		return value >= 0 && value <= Integer.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,66 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class RouteTrieTest {
+
+	@Test
+	void exactMatchBeatsPrefix() {
+		RouteTrie<String> trie = new RouteTrie<>();
+		trie.putPrefix("admin_", "prefix");
+		trie.putExact("admin_products", "exact");
+
+		assertThat(trie.find("admin_products")).isEqualTo("exact");
+		assertThat(trie.find("admin_products_2")).isEqualTo("prefix");
+		assertThat(trie.find("admin_orders")).isEqualTo("prefix");
+	}
+
+	@Test
+	void longestPrefixWins() {
+		RouteTrie<String> trie = new RouteTrie<>();
+		trie.putPrefix("catalog_", "catalog");
+		trie.putPrefix("catalog_products_", "products");
+
+		assertThat(trie.find("catalog_products_15")).isEqualTo("products");
+		assertThat(trie.find("catalog_category_15")).isEqualTo("catalog");
+		// Ключ короче длинного префикса, но длиннее короткого
+		assertThat(trie.find("catalog_prod")).isEqualTo("catalog");
+	}
+
+	@Test
+	void returnsNullWithoutRoute() {
+		RouteTrie<String> trie = new RouteTrie<>();
+		trie.putExact("clear_cart", "cart");
+		trie.putPrefix("order_", "order");
+
+		assertThat(trie.find(null)).isNull();
+		assertThat(trie.find("")).isNull();
+		assertThat(trie.find("clear")).isNull();
+		assertThat(trie.find("clear_cart_now")).isNull();
+		assertThat(trie.find("order")).isNull();
+	}
+
+	@Test
+	void rejectsSecondValueForSameRoute() {
+		RouteTrie<String> trie = new RouteTrie<>();
+		trie.putExact("clear_cart", "cart");
+		trie.putPrefix("order_", "order");
+		// Повторная регистрация того же значения допустима
+		trie.putExact("clear_cart", "cart");
+		trie.putPrefix("order_", "order");
+
+		assertThatThrownBy(() -> trie.putExact("clear_cart", "other"))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("clear_cart");
+		assertThatThrownBy(() -> trie.putPrefix("order_", "other"))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("order_");
+		// Точный маршрут и префикс с одним ключом друг другу не мешают
+		trie.putPrefix("clear_cart", "other");
+		assertThat(trie.find("clear_cart")).isEqualTo("cart");
+	}
+
+}
@@ -0,0 +1,68 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class StateCodecTest {
+
+	@Test
+	void compactStateKeepsParameter() {
+		String encoded = ChatState.EDITING_PRODUCT.encode(1500);
+
+		assertThat(encoded).isEqualTo("~715o");
+		assertThat(StateCodec.decode(encoded)).isEqualTo(new StatePayload(ChatState.EDITING_PRODUCT, 1500));
+	}
+
+	@Test
+	void everyStateRoundTrips() {
+		for (ChatState state : ChatState.values()) {
+			String encoded = state.isParameterized() ? state.encode(Long.MAX_VALUE) : state.encode();
+			long param = state.isParameterized() ? Long.MAX_VALUE : 0;
+
+			assertThat(StateCodec.decode(encoded)).isEqualTo(new StatePayload(state, param));
+		}
+	}
+
+	@Test
+	void legacyStatesAreStillRecognised() {
+		assertThat(StateCodec.decode("WAITING_FOR_ADDRESS"))
+				.isEqualTo(new StatePayload(ChatState.WAITING_FOR_ADDRESS, 0));
+		assertThat(StateCodec.decode("ADDING_CATEGORY"))
+				.isEqualTo(new StatePayload(ChatState.ADDING_CATEGORY_NAME, 0));
+		assertThat(StateCodec.decode("EDITING_PRODUCT_15"))
+				.isEqualTo(new StatePayload(ChatState.EDITING_PRODUCT, 15));
+		assertThat(StateCodec.decode("EDITING_PRODUCT_NAME"))
+				.isEqualTo(new StatePayload(ChatState.EDITING_PRODUCT_NAME, 0));
+		assertThat(StateCodec.decode("EDITING_CATEGORY_7"))
+				.isEqualTo(new StatePayload(ChatState.EDITING_CATEGORY_NAME, 7));
+		assertThat(StateCodec.decode("EDITING_CATEGORY_DESCRIPTION_3"))
+				.isEqualTo(new StatePayload(ChatState.EDITING_CATEGORY_DESCRIPTION, 3));
+	}
+
+	@Test
+	void unknownStatesAreIgnored() {
+		assertThat(StateCodec.decode(null)).isNull();
+		assertThat(StateCodec.decode("")).isNull();
+		assertThat(StateCodec.decode("NEW")).isNull();
+		assertThat(StateCodec.decode("EDITING_PRODUCT_abc")).isNull();
+		assertThat(StateCodec.decode("~")).isNull();
+		assertThat(StateCodec.decode("~z")).isNull();
+		assertThat(StateCodec.decode("~1x")).isNull();
+	}
+
+	@Test
+	void parameterIsRequiredOnlyWhereDeclared() {
+		assertThatThrownBy(ChatState.EDITING_PRODUCT::encode).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> ChatState.WAITING_FOR_PHONE.encode(1)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void productEditingFieldsReturnToFieldSelection() {
+		assertThat(ChatState.EDITING_PRODUCT.canMoveTo(ChatState.EDITING_PRODUCT_PRICE)).isTrue();
+		assertThat(ChatState.EDITING_PRODUCT_PRICE.canMoveTo(ChatState.EDITING_PRODUCT)).isTrue();
+		assertThat(ChatState.ADDING_PRODUCT_NAME.canMoveTo(ChatState.ADDING_PRODUCT_STOCK)).isFalse();
+	}
+
+}
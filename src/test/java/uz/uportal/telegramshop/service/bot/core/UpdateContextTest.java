@@ -0,0 +1,81 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uz.uportal.telegramshop.model.TelegramUser;
+
+class UpdateContextTest {
+
+	private final UpdateEnvelopeParser parser = new UpdateEnvelopeParser(new ObjectMapper());
+
+	@Test
+	void loadsUserOnceAcrossRoutedCopies() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		TelegramUser user = new TelegramUser(77L, "a", "A", null);
+		user.setRole("MANAGER");
+		UpdateContext context = UpdateContext.of(parse("{\"update_id\":1,\"message\":{\"message_id\":3,"
+				+ "\"chat\":{\"id\":77,\"type\":\"private\"},\"date\":1,\"text\":\"🛒 Корзина\"}}"), () -> {
+					loads.incrementAndGet();
+					return user;
+				});
+
+		assertThat(context.getUser()).isSameAs(user);
+		UpdateContext routed = context.withRouteKey("text");
+
+		assertThat(routed.getRouteKey()).isEqualTo("text");
+		assertThat(routed.getUser()).isSameAs(user);
+		assertThat(routed.isAdminOrManager()).isTrue();
+		assertThat(routed.isAdmin()).isFalse();
+		assertThat(loads).hasValue(1);
+	}
+
+	@Test
+	void decodesCallbackOnceAndSkipsInaccessibleMessage() throws Exception {
+		String data = CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 15, 2);
+		UpdateContext context = UpdateContext.of(parse("{\"update_id\":2,\"callback_query\":{\"id\":\"q\","
+				+ "\"from\":{\"id\":77},\"message\":{\"message_id\":9,\"chat\":{\"id\":77,\"type\":\"private\"},"
+				+ "\"date\":0},\"data\":\"" + data + "\"}}"), () -> null);
+
+		assertThat(context.getCallbackPayload())
+				.isEqualTo(new CallbackPayload(CallbackAction.CATALOG_PRODUCTS_PAGE, 15, 2))
+				.isSameAs(context.getCallbackPayload());
+		assertThat(context.getChatId()).isEqualTo(77L);
+		assertThat(context.getMessageId()).isNull();
+		assertThat(context.getUser()).isNull();
+		assertThat(context.getRole()).isNull();
+	}
+
+	@Test
+	void reloadsUserUntilRegistered() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		TelegramUser[] stored = new TelegramUser[1];
+		UpdateContext context = UpdateContext.of(parse("{\"update_id\":3,\"message\":{\"message_id\":4,"
+				+ "\"chat\":{\"id\":78,\"type\":\"private\"},\"date\":1,\"text\":\"/start\"}}"), () -> {
+					loads.incrementAndGet();
+					return stored[0];
+				});
+
+		assertThat(context.getUser()).isNull();
+		assertThat(context.getRole()).isNull();
+
+		// Обработчик зарегистрировал пользователя в этом же обновлении
+		stored[0] = new TelegramUser(78L, "b", "B", null);
+		UpdateContext routed = context.withRouteKey("/start");
+
+		assertThat(routed.getUser()).isSameAs(stored[0]);
+		assertThat(context.getUser()).isSameAs(stored[0]);
+		assertThat(loads).hasValue(3);
+	}
+
+	private UpdateEnvelope parse(String json) throws Exception {
+		return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,116 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class UpdateEnvelopeParserTest {
+
+	private static final String CALLBACK = """
+			{"update_id":501,"callback_query":{"id":"4382","from":{"id":77,"is_bot":false,"first_name":"A"},
+			"message":{"message_id":12,"from":{"id":999,"is_bot":true,"first_name":"Bot"},
+			"chat":{"id":77,"type":"private"},"date":1700000000,"text":"Каталог",
+			"reply_markup":{"inline_keyboard":[[{"text":"Далее","callback_data":"catalog_products_page_3_2"}]]}},
+			"chat_instance":"-1","data":"catalog_products_page_3_1"}}""";
+
+	private static final String TEXT = """
+			{"update_id":502,"message":{"message_id":13,"from":{"id":77,"is_bot":false,"first_name":"A"},
+			"chat":{"id":77,"type":"private"},"date":1700000001,
+			"reply_to_message":{"message_id":5,"chat":{"id":1,"type":"private"},"date":1,"text":"старое"},
+			"text":"🛒 Корзина","entities":[]}}""";
+
+	private static final String PHOTO = """
+			{"update_id":503,"message":{"message_id":14,"from":{"id":77,"is_bot":false,"first_name":"A"},
+			"chat":{"id":-100,"type":"group"},"date":1700000002,
+			"photo":[{"file_id":"small","file_unique_id":"s","width":90,"height":90},
+			{"file_id":"large","file_unique_id":"l","width":800,"height":800}]}}""";
+
+	private static final String INLINE = """
+			{"update_id":504,"inline_query":{"id":"8812","from":{"id":77,"is_bot":false,"first_name":"A"},
+			"query":"iphone 15","offset":"20","chat_type":"private"}}""";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final UpdateEnvelopeParser parser = new UpdateEnvelopeParser(objectMapper);
+
+	@Test
+	void extractsCallbackFieldsWithoutBindingUpdate() throws Exception {
+		UpdateEnvelope envelope = parser.parse(bytes(CALLBACK));
+
+		assertThat(envelope.getUpdateId()).isEqualTo(501);
+		assertThat(envelope.getKind()).isEqualTo(UpdateEnvelope.Kind.CALLBACK_QUERY);
+		assertThat(envelope.getCallbackQueryId()).isEqualTo("4382");
+		assertThat(envelope.getCallbackData()).isEqualTo("catalog_products_page_3_1");
+		assertThat(envelope.getChatId()).isEqualTo(77L);
+		assertThat(envelope.getUserId()).isEqualTo(77L);
+		assertThat(envelope.getMessageId()).isEqualTo(12);
+		assertThat(envelope.getText()).isNull();
+	}
+
+	@Test
+	void skipsNestedMessages() throws Exception {
+		UpdateEnvelope envelope = parser.parse(bytes(TEXT));
+
+		assertThat(envelope.hasMessage()).isTrue();
+		assertThat(envelope.getText()).isEqualTo("🛒 Корзина");
+		assertThat(envelope.getChatId()).isEqualTo(77L);
+		assertThat(envelope.getMessageId()).isEqualTo(13);
+		assertThat(envelope.getPhotoFileIds()).isEmpty();
+	}
+
+	@Test
+	void collectsPhotoFileIds() throws Exception {
+		UpdateEnvelope envelope = parser.parse(bytes(PHOTO));
+
+		assertThat(envelope.getText()).isNull();
+		assertThat(envelope.getPhotoFileIds()).containsExactly("small", "large");
+		assertThat(envelope.getChatKey()).isEqualTo(-100L);
+	}
+
+	@Test
+	void extractsInlineQuery() throws Exception {
+		UpdateEnvelope envelope = parser.parse(bytes(INLINE));
+
+		assertThat(envelope.hasInlineQuery()).isTrue();
+		assertThat(envelope.getInlineQueryId()).isEqualTo("8812");
+		assertThat(envelope.getText()).isEqualTo("iphone 15");
+		assertThat(envelope.getInlineOffset()).isEqualTo("20");
+		assertThat(envelope.getChatId()).isNull();
+		assertThat(envelope.getChatKey()).isEqualTo(77L);
+	}
+
+	@Test
+	void bindsSameUpdateOnDemand() throws Exception {
+		for (String json : new String[] {CALLBACK, TEXT, PHOTO, INLINE}) {
+			UpdateEnvelope parsed = parser.parse(bytes(json));
+			UpdateEnvelope fromUpdate = UpdateEnvelope.of(objectMapper.readValue(json, Update.class));
+
+			assertThat(parsed.getUpdate()).isEqualTo(fromUpdate.getUpdate());
+			assertThat(parsed.getPayload()).isEqualTo(bytes(json));
+			assertThat(parsed).usingRecursiveComparison()
+					.comparingOnlyFields("updateId", "kind", "chatId", "userId", "messageId", "text",
+							"callbackQueryId", "callbackData", "photoFileIds", "inlineQueryId", "inlineOffset")
+					.isEqualTo(fromUpdate);
+		}
+	}
+
+	@Test
+	void classifiesOtherUpdates() throws Exception {
+		assertThat(parser.parse(bytes("{\"update_id\":7,\"inline_query\":{\"id\":\"q\",\"from\":{\"id\":5},"
+				+ "\"query\":\"iphone\",\"offset\":\"\"}}")).getKind()).isEqualTo(UpdateEnvelope.Kind.INLINE_QUERY);
+		assertThat(parser.parse(bytes("{\"update_id\":8,\"poll\":{\"id\":\"p\",\"options\":[]}}")).getKind())
+				.isEqualTo(UpdateEnvelope.Kind.OTHER);
+		assertThatThrownBy(() -> parser.parse(bytes("[1,2]"))).isInstanceOf(IOException.class);
+	}
+
+	private static byte[] bytes(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
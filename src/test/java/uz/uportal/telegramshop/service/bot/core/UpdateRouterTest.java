@@ -0,0 +1,158 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+class UpdateRouterTest {
+
+	/**
+	 * Ведет все состояния, чтобы проверка графа состояний проходила
+	 */
+	private final UpdateHandler scenarios = handler(UpdateRoutes.create().state(ChatState.values()));
+
+	@Test
+	void routesCallbacksByExactMatchThenLongestPrefix() {
+		UpdateHandler catalog = handler(UpdateRoutes.create()
+				.callback("catalog_categories")
+				.callbackPrefix("catalog_", "catalog_products_")
+				.action(CallbackAction.CATALOG_PRODUCTS_PAGE));
+		UpdateHandler cart = handler(UpdateRoutes.create().callback("catalog_cart"));
+
+		UpdateRouter router = router(scenarios, catalog, cart);
+
+		assertThat(router.routeCallback("catalog_cart")).isSameAs(cart);
+		assertThat(router.routeCallback("catalog_categories")).isSameAs(catalog);
+		assertThat(router.routeCallback("catalog_products_15")).isSameAs(catalog);
+		assertThat(router.callbackRouteKey("catalog_products_15")).isEqualTo("catalog_products_");
+		assertThat(router.callbackRouteKey("catalog_category_3")).isEqualTo("catalog_");
+		assertThat(router.routeCallback("order_details_1")).isNull();
+
+		String page = CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 15, 2);
+		assertThat(router.routeCallback(page)).isSameAs(catalog);
+		assertThat(router.callbackRouteKey(page)).isEqualTo("CATALOG_PRODUCTS_PAGE");
+		assertThat(router.routeCallback(CallbackCodec.encode(CallbackAction.ADD_TO_CART, 5))).isNull();
+	}
+
+	@Test
+	void routesTextsStatesAndFallback() {
+		UpdateHandler menu = handler(UpdateRoutes.create()
+				.command("/start")
+				.text("🛒 Корзина")
+				.textContaining("Каталог"));
+		UpdateHandler search = handler(UpdateRoutes.create().textFallback().inlineQuery());
+
+		UpdateRouter router = router(scenarios, menu, search);
+
+		assertThat(router.routeCommand("/start")).isSameAs(menu);
+		assertThat(router.routeCommand("🛒 Корзина")).isNull();
+		assertThat(router.routeText("🛒 Корзина")).isSameAs(menu);
+		assertThat(router.routeText("📋 Каталог товаров")).isSameAs(menu);
+		assertThat(router.routeText("айфон")).isNull();
+		assertThat(router.routeTextFallback("айфон")).isSameAs(search);
+		assertThat(router.routeTextFallback(null)).isNull();
+		assertThat(router.routeInlineQuery()).isSameAs(search);
+		assertThat(router.routeState(new StatePayload(ChatState.WAITING_FOR_PHONE, 0))).isSameAs(scenarios);
+		assertThat(router.routeState(null)).isNull();
+	}
+
+	@Test
+	void keepsHandlersWithoutRoutesForCanHandle() {
+		UpdateHandler legacy = handler(null);
+
+		UpdateRouter router = router(scenarios, legacy);
+
+		assertThat(router.getUnroutedHandlers()).containsExactly(legacy);
+	}
+
+	@Test
+	void rejectsRouteDeclaredByTwoHandlers() {
+		assertThatThrownBy(() -> router(scenarios,
+				handler(UpdateRoutes.create().text("🛒 Корзина")),
+				handler(UpdateRoutes.create().text("🛒 Корзина"))))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("🛒 Корзина");
+		assertThatThrownBy(() -> router(scenarios,
+				handler(UpdateRoutes.create().callbackPrefix("order_")),
+				handler(UpdateRoutes.create().callbackPrefix("order_"))))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("order_");
+		assertThatThrownBy(() -> router(scenarios,
+				handler(UpdateRoutes.create().action(CallbackAction.ADD_TO_CART)),
+				handler(UpdateRoutes.create().action(CallbackAction.ADD_TO_CART))))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("ADD_TO_CART");
+		assertThatThrownBy(() -> router(scenarios,
+				handler(UpdateRoutes.create().state(ChatState.WAITING_FOR_PHONE))))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("WAITING_FOR_PHONE");
+		assertThatThrownBy(() -> router(scenarios,
+				handler(UpdateRoutes.create().textFallback()),
+				handler(UpdateRoutes.create().textFallback())))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void rejectsStateWithoutHandler() {
+		EnumSet<ChatState> handled = EnumSet.allOf(ChatState.class);
+		handled.remove(ChatState.WAITING_FOR_COMMENT);
+
+		assertThatThrownBy(() -> router(handler(UpdateRoutes.create().state(handled.toArray(new ChatState[0])))))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("Нет обработчиков")
+				.hasMessageContaining("WAITING_FOR_COMMENT");
+	}
+
+	@Test
+	void rejectsStateUnreachableFromEntries() {
+		UpdateRouter router = router(scenarios);
+
+		// Оформление заказа не объявлено начальным: ни в один его шаг нельзя попасть
+		EnumSet<ChatState> entries = EnumSet.noneOf(ChatState.class);
+		for (ChatState state : ChatState.values()) {
+			if (state.isEntry() && state != ChatState.WAITING_FOR_ADDRESS) {
+				entries.add(state);
+			}
+		}
+
+		assertThatThrownBy(() -> router.validateStates(entries))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("нельзя попасть")
+				.hasMessageContaining("WAITING_FOR_ADDRESS")
+				.hasMessageContaining("WAITING_FOR_PHONE")
+				.hasMessageContaining("WAITING_FOR_COMMENT");
+	}
+
+	private static UpdateRouter router(UpdateHandler... handlers) {
+		GenericApplicationContext context = new GenericApplicationContext();
+		for (int i = 0; i < handlers.length; i++) {
+			UpdateHandler handler = handlers[i];
+			context.registerBean("handler" + i, UpdateHandler.class, () -> handler);
+		}
+		context.refresh();
+		UpdateRouter router = new UpdateRouter(context);
+		router.afterSingletonsInstantiated();
+		return router;
+	}
+
+	private static UpdateHandler handler(UpdateRoutes routes) {
+		return new UpdateHandler() {
+
+			@Override
+			public BotApiMethod<?> handle(UpdateContext context) {
+				return null;
+			}
+
+			@Override
+			public UpdateRoutes routes() {
+				return routes;
+			}
+		};
+	}
+
+}
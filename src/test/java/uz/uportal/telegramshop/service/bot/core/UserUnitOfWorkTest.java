@@ -0,0 +1,107 @@
+package uz.uportal.telegramshop.service.bot.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import uz.uportal.telegramshop.TelegramshopApplication;
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.replay.ReplayHarness;
+import uz.uportal.telegramshop.repository.TelegramUserRepository;
+import uz.uportal.telegramshop.service.bot.metrics.SqlStatementCounter;
+
+/**
+ * Число SQL-запросов на одно обновление: пользователь читается один раз,
+ * а изменения записываются одним UPDATE и только если они есть.
+ * Сессии в памяти выключены, чтобы каждое обновление доходило до базы
+ */
+@SpringBootTest(classes = {TelegramshopApplication.class, ReplayHarness.ReplayBeans.class},
+		properties = "telegram.bot.session.enabled=false")
+@ActiveProfiles("replay")
+class UserUnitOfWorkTest {
+
+	private static final long CHAT_ID = 2002L;
+
+	@Autowired
+	private UpdateHandlerChain updateHandlerChain;
+
+	@Autowired
+	private UpdateEnvelopeParser parser;
+
+	@Autowired
+	private SqlStatementCounter statementCounter;
+
+	@Autowired
+	private TelegramUserRepository telegramUserRepository;
+
+	@Autowired
+	private UserUnitOfWork userUnitOfWork;
+
+	@Test
+	void stateStepReadsUserOnceAndWritesOneUpdate() throws IOException {
+		givenUserInState("ADDING_PRODUCT_NAME");
+
+		assertThat(statementsFor(text("Телефон"))).isEqualTo(2);
+		assertThat(telegramUserRepository.findById(CHAT_ID).orElseThrow().getState()).isEqualTo(ChatState.ADDING_PRODUCT_PRICE.encode());
+	}
+
+	@Test
+	void unchangedUserIsNotWritten() throws IOException {
+		givenUserInState(ChatState.ADDING_PRODUCT_PRICE.encode());
+
+		// Некорректная цена: состояние не меняется, остается только SELECT пользователя
+		assertThat(statementsFor(text("не число"))).isEqualTo(1);
+		assertThat(telegramUserRepository.findById(CHAT_ID).orElseThrow().getState()).isEqualTo(ChatState.ADDING_PRODUCT_PRICE.encode());
+	}
+
+	@Test
+	void repeatedLookupsAndSavesShareOneUser() {
+		givenUserInState(null);
+		long before = statementCounter.current();
+
+		userUnitOfWork.begin(CHAT_ID);
+		TelegramUser first = userUnitOfWork.findById(CHAT_ID).orElseThrow();
+		first.setState("WAITING_FOR_ADDRESS");
+		userUnitOfWork.save(first);
+		TelegramUser second = userUnitOfWork.findById(CHAT_ID).orElseThrow();
+		second.setTempData("ул. Навои, 1");
+		userUnitOfWork.save(second);
+
+		assertThat(second).isSameAs(first);
+		assertThat(userUnitOfWork.flush()).isTrue();
+		assertThat(userUnitOfWork.flush()).isFalse();
+		assertThat(statementCounter.current() - before).isEqualTo(2);
+
+		TelegramUser stored = telegramUserRepository.findById(CHAT_ID).orElseThrow();
+		assertThat(stored.getState()).isEqualTo("WAITING_FOR_ADDRESS");
+		assertThat(stored.getTempData()).isEqualTo("ул. Навои, 1");
+	}
+
+	private void givenUserInState(String state) {
+		TelegramUser user = new TelegramUser(CHAT_ID, "uow", "Unit", "Work");
+		user.setRole("ADMIN");
+		user.setState(state);
+		telegramUserRepository.save(user);
+	}
+
+	private long statementsFor(UpdateEnvelope envelope) {
+		long before = statementCounter.current();
+		updateHandlerChain.handle(envelope);
+		return statementCounter.current() - before;
+	}
+
+	private UpdateEnvelope text(String text) throws IOException {
+		String json = "{\"update_id\":1,\"message\":{\"message_id\":5,"
+				+ "\"from\":{\"id\":" + CHAT_ID + ",\"is_bot\":false,\"first_name\":\"Unit\"},"
+				+ "\"chat\":{\"id\":" + CHAT_ID + ",\"type\":\"private\"},\"date\":1700000000,"
+				+ "\"text\":\"" + text + "\"}}";
+		return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,168 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.controller.WebhookController;
+import uz.uportal.telegramshop.service.TelegramBotService;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelopeParser;
+import uz.uportal.telegramshop.service.bot.dispatch.AsyncUpdateDispatcher.SubmitResult;
+import uz.uportal.telegramshop.service.bot.session.SessionStore;
+
+/**
+ * Постановка обновлений в очередь: один рабочий поток занят первым обновлением,
+ * поэтому очередь класса заполняется детерминированно
+ */
+class AsyncUpdateDispatcherTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final UpdateEnvelopeParser parser = new UpdateEnvelopeParser(new ObjectMapper());
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final List<Integer> processed = new CopyOnWriteArrayList<>();
+
+	private AsyncUpdateDispatcher dispatcher;
+	private WebhookController controller;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		UpdateLaneProperties lanes = new UpdateLaneProperties();
+		lanes.getLanes().put(UpdateLane.GENERAL, lane(2, false));
+		lanes.getLanes().put(UpdateLane.CATALOG, lane(1, true));
+		TelegramBotService bot = new BlockingBot();
+		SessionStore sessionStore = new SessionStore(null, meterRegistry, false, 10, 1000, "", 0);
+		dispatcher = new AsyncUpdateDispatcher(bot, meterRegistry, lanes, sessionStore, true, 1, 100, false);
+		controller = new WebhookController(bot, dispatcher,
+				new UpdateDeduplicator(meterRegistry, 1024, ""), parser);
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		dispatcher.shutdown();
+	}
+
+	@Test
+	void rejectsUpdatesBeyondLaneCapacity() throws Exception {
+		assertThat(dispatcher.submit(message(1, 10, "/start"))).isEqualTo(SubmitResult.ACCEPTED);
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(dispatcher.submit(message(2, 20, "/start"))).isEqualTo(SubmitResult.ACCEPTED);
+
+		// Первое обновление еще обрабатывается, второе ждет: в классе уже два обновления
+		assertThat(dispatcher.submit(message(3, 30, "/start"))).isEqualTo(SubmitResult.REJECTED);
+		assertThat(meterRegistry.counter("telegram.updates.rejected").count()).isEqualTo(1.0);
+
+		release.countDown();
+		dispatcher.shutdown();
+		assertThat(processed).containsExactly(1, 2);
+	}
+
+	@Test
+	void shedsUpdatesOfSheddableLane() throws Exception {
+		assertThat(dispatcher.submit(message(1, 10, "/start"))).isEqualTo(SubmitResult.ACCEPTED);
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(dispatcher.submit(callback(2, 20, "catalog_categories"))).isEqualTo(SubmitResult.ACCEPTED);
+
+		UpdateEnvelope shed = callback(3, 30, "catalog_categories");
+		assertThat(dispatcher.submit(shed)).isEqualTo(SubmitResult.SHED);
+		assertThat(meterRegistry.counter("telegram.updates.shed", "lane", "catalog").count()).isEqualTo(1.0);
+		assertThat(AsyncUpdateDispatcher.busyReply(shed)).isInstanceOf(AnswerCallbackQuery.class);
+	}
+
+	@Test
+	void webhookAnswers503AndAcceptsRedeliveryOfRejectedUpdate() throws Exception {
+		assertThat(post(message(1, 10, "/start")).getStatusCode().value()).isEqualTo(200);
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(post(message(2, 20, "/start")).getStatusCode().value()).isEqualTo(200);
+
+		assertThat(post(message(3, 30, "/start")).getStatusCode().value()).isEqualTo(503);
+		// Повторная доставка отклоненного обновления не считается дубликатом и снова доходит до очереди
+		assertThat(post(message(3, 30, "/start")).getStatusCode().value()).isEqualTo(503);
+		assertThat(meterRegistry.counter("telegram.updates.rejected").count()).isEqualTo(2.0);
+		assertThat(meterRegistry.counter("telegram.updates.duplicates").count()).isZero();
+
+		// Повтор принятого обновления подтверждается без постановки в очередь
+		assertThat(post(message(2, 20, "/start")).getStatusCode().value()).isEqualTo(200);
+		assertThat(meterRegistry.counter("telegram.updates.duplicates").count()).isEqualTo(1.0);
+
+		release.countDown();
+		dispatcher.shutdown();
+		assertThat(processed).containsExactly(1, 2);
+	}
+
+	@Test
+	void webhookAnswersShedUpdateInResponseBody() throws Exception {
+		post(message(1, 10, "/start"));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		post(callback(2, 20, "catalog_categories"));
+
+		ResponseEntity<?> response = post(callback(3, 30, "catalog_categories"));
+
+		assertThat(response.getStatusCode().value()).isEqualTo(200);
+		assertThat(response.getBody()).isInstanceOfSatisfying(AnswerCallbackQuery.class,
+				answer -> assertThat(answer.getCallbackQueryId()).isEqualTo("q3"));
+	}
+
+	private ResponseEntity<?> post(UpdateEnvelope envelope) {
+		return controller.onUpdateReceived(envelope.getPayload());
+	}
+
+	private UpdateEnvelope message(int updateId, long chatId, String text) throws Exception {
+		return parse("{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId + ","
+				+ "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},\"date\":0,\"text\":\"" + text + "\"}}");
+	}
+
+	private UpdateEnvelope callback(int updateId, long chatId, String data) throws Exception {
+		return parse("{\"update_id\":" + updateId + ",\"callback_query\":{\"id\":\"q" + updateId + "\","
+				+ "\"from\":{\"id\":" + chatId + "},\"message\":{\"message_id\":1,"
+				+ "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},\"date\":0},\"data\":\"" + data + "\"}}");
+	}
+
+	private UpdateEnvelope parse(String json) throws Exception {
+		return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static UpdateLaneProperties.Lane lane(int capacity, boolean shed) {
+		UpdateLaneProperties.Lane lane = new UpdateLaneProperties.Lane();
+		lane.setCapacity(capacity);
+		lane.setShed(shed);
+		return lane;
+	}
+
+	/**
+	 * Бот, который держит первое обновление, пока тест не отпустит его, и запоминает порядок обработки
+	 */
+	private class BlockingBot extends TelegramBotService {
+
+		BlockingBot() {
+			super(null, "123:stub", "stub_bot", "/webhook", "http://127.0.0.1:1/bot", null);
+		}
+
+		@Override
+		public void processUpdate(UpdateEnvelope envelope) {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			processed.add(envelope.getUpdateId());
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ChatOrderedExecutorTest {
+
+	private static final int CHATS = 64;
+	private static final int UPDATES_PER_CHAT = 500;
+
+	@Test
+	void keepsOrderWithinChatUnderConcurrentLoad() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(
+				Runtime.getRuntime().availableProcessors(), CHATS * UPDATES_PER_CHAT, false);
+		Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+		AtomicInteger concurrentInSameChat = new AtomicInteger();
+		Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+		CountDownLatch done = new CountDownLatch(CHATS * UPDATES_PER_CHAT);
+
+		// Каждый чат наполняет свой производитель, чтобы порядок отправки внутри чата был определен
+		ExecutorService producers = Executors.newFixedThreadPool(8);
+		for (long chat = 0; chat < CHATS; chat++) {
+			long chatId = chat;
+			seen.put(chatId, new ArrayList<>());
+			running.put(chatId, new AtomicInteger());
+			producers.execute(() -> {
+				for (int seq = 0; seq < UPDATES_PER_CHAT; seq++) {
+					int value = seq;
+					boolean accepted = executor.submit(chatId, () -> {
+						if (running.get(chatId).incrementAndGet() > 1) {
+							concurrentInSameChat.incrementAndGet();
+						}
+						seen.get(chatId).add(value);
+						running.get(chatId).decrementAndGet();
+						done.countDown();
+					});
+					assertThat(accepted).isTrue();
+				}
+			});
+		}
+
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		producers.shutdown();
+
+		assertThat(concurrentInSameChat.get()).isZero();
+		for (List<Integer> values : seen.values()) {
+			assertThat(values).hasSize(UPDATES_PER_CHAT).isSorted();
+		}
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.activeChats()).isZero();
+	}
+
+	@Test
+	void runsChatsConcurrentlyButEachChatSerially() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(2, 100, false);
+		CountDownLatch firstRunning = new CountDownLatch(1);
+		CountDownLatch otherChatRan = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicBoolean firstFinished = new AtomicBoolean();
+		AtomicBoolean secondSawFirstFinished = new AtomicBoolean();
+
+		executor.submit(1L, () -> {
+			firstRunning.countDown();
+			await(release);
+			firstFinished.set(true);
+		});
+		executor.submit(1L, () -> secondSawFirstFinished.set(firstFinished.get()));
+		// Задача чата 2 ждет, пока выполняется задача чата 1: без параллельной работы чатов она бы не дождалась
+		executor.submit(2L, () -> {
+			await(firstRunning);
+			otherChatRan.countDown();
+		});
+
+		assertThat(otherChatRan.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(firstFinished).isFalse();
+		release.countDown();
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(secondSawFirstFinished).isTrue();
+	}
+
+	@Test
+	void rejectsTasksOverCapacity() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(1, 2, false);
+		CountDownLatch release = new CountDownLatch(1);
+
+		assertThat(executor.submit(1L, () -> await(release))).isTrue();
+		assertThat(executor.submit(1L, () -> { })).isTrue();
+		assertThat(executor.submit(2L, () -> { })).isFalse();
+
+		release.countDown();
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void runsHigherPriorityChatsFirst() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(1, 100, false);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Long> order = new CopyOnWriteArrayList<>();
+
+		executor.submit(0L, 0, () -> await(release));
+		executor.submit(1L, 3, () -> order.add(1L));
+		executor.submit(2L, 2, () -> order.add(2L));
+		executor.submit(3L, 0, () -> order.add(3L));
+
+		release.countDown();
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(order).containsExactly(3L, 2L, 1L);
+	}
+
+	@Test
+	void urgentTaskMovesWaitingChatForward() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(1, 100, false);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = new CopyOnWriteArrayList<>();
+
+		executor.submit(0L, 0, () -> await(release));
+		executor.submit(1L, 3, () -> order.add("1a"));
+		executor.submit(2L, 2, () -> order.add("2"));
+		executor.submit(1L, 0, () -> order.add("1b"));
+
+		release.countDown();
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(order).containsExactly("1a", "1b", "2");
+	}
+
+	@Test
+	void priorityIsReevaluatedWhenChatIsRescheduled() throws Exception {
+		ChatOrderedExecutor executor = new ChatOrderedExecutor(1, 100, false);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = new CopyOnWriteArrayList<>();
+
+		executor.submit(0L, 0, () -> await(release));
+		// Срочная только первая задача чата; последняя не помещается в одну порцию обработки
+		executor.submit(1L, 0, () -> order.add("1-urgent"));
+		for (int i = 0; i < 32; i++) {
+			executor.submit(1L, 5, () -> order.add("1"));
+		}
+		executor.submit(2L, 3, () -> order.add("2"));
+
+		release.countDown();
+		assertThat(executor.shutdown(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(order).hasSize(34);
+		assertThat(order.get(0)).isEqualTo("1-urgent");
+		assertThat(order.subList(32, 34)).containsExactly("2", "1");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
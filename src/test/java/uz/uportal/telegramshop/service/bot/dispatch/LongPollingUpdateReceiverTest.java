@@ -0,0 +1,135 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long polling против локальной заглушки Bot API
+ */
+class LongPollingUpdateReceiverTest {
+
+	private static final String TOKEN = "123:stub";
+	private static final int TOTAL_UPDATES = 250;
+	private static final Pattern OFFSET = Pattern.compile("\"offset\"\\s*:\\s*(\\d+)");
+	private static final Pattern LIMIT = Pattern.compile("\"limit\"\\s*:\\s*(\\d+)");
+
+	private HttpServer server;
+	private DefaultAbsSender sender;
+	private final List<Integer> requestedOffsets = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/bot" + TOKEN + "/getUpdates", this::getUpdates);
+		server.createContext("/bot" + TOKEN + "/deleteWebhook", exchange -> respond(exchange, "true"));
+		server.start();
+
+		DefaultBotOptions options = new DefaultBotOptions();
+		options.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/bot");
+		sender = new DefaultAbsSender(options, TOKEN) { };
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop(0);
+	}
+
+	@Test
+	void fetchesAllUpdatesInBatchesAndAdvancesOffset() throws Exception {
+		List<Integer> received = new ArrayList<>();
+		LongPollingUpdateReceiver receiver = new LongPollingUpdateReceiver(sender, update -> {
+			received.add(update.getUpdateId());
+			return true;
+		}, 100, 0);
+
+		while (received.size() < TOTAL_UPDATES) {
+			assertThat(receiver.pollOnce()).isTrue();
+		}
+
+		assertThat(received).hasSize(TOTAL_UPDATES).isSorted().doesNotHaveDuplicates();
+		assertThat(requestedOffsets).containsExactly(0, 101, 201);
+		assertThat(receiver.getOffset()).isEqualTo(TOTAL_UPDATES + 1);
+	}
+
+	@Test
+	void refetchesRejectedUpdates() throws Exception {
+		List<Integer> received = new ArrayList<>();
+		boolean[] rejectOnce = {true};
+		LongPollingUpdateReceiver receiver = new LongPollingUpdateReceiver(sender, update -> {
+			if (update.getUpdateId() == 50 && rejectOnce[0]) {
+				rejectOnce[0] = false;
+				return false;
+			}
+			received.add(update.getUpdateId());
+			return true;
+		}, 100, 0);
+
+		assertThat(receiver.pollOnce()).isFalse();
+		assertThat(receiver.getOffset()).isEqualTo(50);
+		assertThat(receiver.pollOnce()).isTrue();
+
+		assertThat(received).hasSize(149).isSorted().doesNotHaveDuplicates();
+		assertThat(requestedOffsets).containsExactly(0, 50);
+	}
+
+	/**
+	 * Отдает обновления с update_id от max(offset, 1) до TOTAL_UPDATES, не больше limit за раз
+	 */
+	private void getUpdates(HttpExchange exchange) throws IOException {
+		String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		int offset = find(OFFSET, body, 0);
+		int limit = find(LIMIT, body, 100);
+		requestedOffsets.add(offset);
+
+		StringBuilder result = new StringBuilder("[");
+		int from = Math.max(offset, 1);
+		for (int id = from; id <= TOTAL_UPDATES && id < from + limit; id++) {
+			if (id > from) {
+				result.append(',');
+			}
+			result.append(updateJson(id));
+		}
+		respond(exchange, result.append(']').toString());
+	}
+
+	private static String updateJson(int id) {
+		long chatId = id % 7;
+		return "{\"update_id\":" + id + ",\"message\":{\"message_id\":" + id + ",\"date\":0,"
+				+ "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},"
+				+ "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"u\"},\"text\":\"m" + id + "\"}}";
+	}
+
+	private static int find(Pattern pattern, String body, int defaultValue) {
+		Matcher matcher = pattern.matcher(body);
+		return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+	}
+
+	private static void respond(HttpExchange exchange, String result) throws IOException {
+		byte[] response = ("{\"ok\":true,\"result\":" + result + "}").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, response.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(response);
+		}
+	}
+
+}
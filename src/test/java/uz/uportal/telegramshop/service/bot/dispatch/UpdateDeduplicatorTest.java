@@ -0,0 +1,79 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UpdateDeduplicatorTest {
+
+	private static final int WINDOW = 64;
+
+	@TempDir
+	Path dir;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void dropsRepeatedDeliveries() throws Exception {
+		UpdateDeduplicator deduplicator = new UpdateDeduplicator(meterRegistry, WINDOW, "");
+
+		assertThat(deduplicator.isDuplicate(100)).isFalse();
+		assertThat(deduplicator.isDuplicate(102)).isFalse();
+		assertThat(deduplicator.isDuplicate(101)).isFalse();
+		assertThat(deduplicator.isDuplicate(100)).isTrue();
+		assertThat(deduplicator.isDuplicate(102)).isTrue();
+		assertThat(meterRegistry.counter("telegram.updates.duplicates").count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void forgetsIdsThatLeftTheWindow() throws Exception {
+		UpdateDeduplicator deduplicator = new UpdateDeduplicator(meterRegistry, WINDOW, "");
+		deduplicator.isDuplicate(10);
+		deduplicator.isDuplicate(11);
+
+		// Окно сдвинулось на 64: 11 еще в нем, а ячейка 10 теперь занята новым id
+		assertThat(deduplicator.isDuplicate(10 + WINDOW)).isFalse();
+		assertThat(deduplicator.isDuplicate(11)).isTrue();
+		assertThat(deduplicator.isDuplicate(12 + WINDOW)).isFalse();
+		assertThat(deduplicator.isDuplicate(20)).isFalse();
+	}
+
+	@Test
+	void acceptsForgottenUpdateAgain() throws Exception {
+		UpdateDeduplicator deduplicator = new UpdateDeduplicator(meterRegistry, WINDOW, "");
+		deduplicator.isDuplicate(500);
+		deduplicator.isDuplicate(501);
+
+		deduplicator.forget(500);
+
+		assertThat(deduplicator.isDuplicate(500)).isFalse();
+		assertThat(deduplicator.isDuplicate(500)).isTrue();
+		assertThat(deduplicator.isDuplicate(501)).isTrue();
+	}
+
+	@Test
+	void startsOverWhenTelegramResetsNumbering() throws Exception {
+		String file = dir.resolve("dedup.bin").toString();
+		UpdateDeduplicator deduplicator = new UpdateDeduplicator(meterRegistry, WINDOW, file);
+		deduplicator.isDuplicate(1_000_000);
+		deduplicator.isDuplicate(1_000_001);
+
+		assertThat(deduplicator.isDuplicate(5)).isFalse();
+		assertThat(deduplicator.isDuplicate(6)).isFalse();
+		assertThat(deduplicator.isDuplicate(5)).isTrue();
+		assertThat(meterRegistry.counter("telegram.updates.id.resets").count()).isEqualTo(1.0);
+		deduplicator.flush();
+
+		// После перезапуска окно продолжается от новой нумерации
+		UpdateDeduplicator restarted = new UpdateDeduplicator(new SimpleMeterRegistry(), WINDOW, file);
+		assertThat(restarted.isDuplicate(6)).isTrue();
+		assertThat(restarted.isDuplicate(7)).isFalse();
+		assertThat(restarted.isDuplicate(1_000_001)).isFalse();
+	}
+
+}
@@ -0,0 +1,97 @@
+package uz.uportal.telegramshop.service.bot.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uz.uportal.telegramshop.service.bot.core.CallbackAction;
+import uz.uportal.telegramshop.service.bot.core.CallbackCodec;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelope;
+import uz.uportal.telegramshop.service.bot.core.UpdateEnvelopeParser;
+
+class UpdateLaneTest {
+
+	private final UpdateEnvelopeParser parser = new UpdateEnvelopeParser(new ObjectMapper());
+
+	@Test
+	void classifiesCatalogCallbacks() throws Exception {
+		assertThat(UpdateLane.of(callback(CallbackCodec.encode(CallbackAction.CATALOG_CAROUSEL, 3, 1))))
+				.isEqualTo(UpdateLane.CATALOG);
+		assertThat(UpdateLane.of(callback(CallbackCodec.encode(CallbackAction.CATALOG_PRODUCTS_PAGE, 3, 1))))
+				.isEqualTo(UpdateLane.CATALOG);
+		assertThat(UpdateLane.of(callback(CallbackCodec.encode(CallbackAction.ADD_TO_CART, 5))))
+				.isEqualTo(UpdateLane.CART);
+	}
+
+	@Test
+	void classifiesFreeTextByScenario() throws Exception {
+		UpdateEnvelope text = message("айфон 13");
+
+		assertThat(UpdateLane.of(text, false)).isEqualTo(UpdateLane.CATALOG);
+		assertThat(UpdateLane.of(text, true)).isEqualTo(UpdateLane.CHECKOUT);
+		// Состояние неизвестно: текст может быть адресом доставки, его нельзя отбросить
+		assertThat(UpdateLane.of(text, null)).isEqualTo(UpdateLane.CHECKOUT);
+		assertThat(UpdateLane.of(message("📦 Управление заказами"), false)).isEqualTo(UpdateLane.CHECKOUT);
+		assertThat(UpdateLane.of(message("🛒 Корзина"), true)).isEqualTo(UpdateLane.CART);
+		assertThat(UpdateLane.of(message("/start"), true)).isEqualTo(UpdateLane.GENERAL);
+	}
+
+	@Test
+	void classifiesCheckoutCartAndMenuUpdates() throws Exception {
+		assertThat(UpdateLane.of(callback("confirm_order"))).isEqualTo(UpdateLane.CHECKOUT);
+		assertThat(UpdateLane.of(callback("admin_products"))).isEqualTo(UpdateLane.CHECKOUT);
+		assertThat(UpdateLane.of(callback(CallbackCodec.encode(CallbackAction.ORDER_STATUS, 9, 2))))
+				.isEqualTo(UpdateLane.CHECKOUT);
+		assertThat(UpdateLane.of(callback("clear_cart"))).isEqualTo(UpdateLane.CART);
+		assertThat(UpdateLane.of(callback("back_to_catalog"))).isEqualTo(UpdateLane.CATALOG);
+		assertThat(UpdateLane.of(callback("something_else"))).isEqualTo(UpdateLane.GENERAL);
+		assertThat(UpdateLane.of(message("🛍 Каталог"))).isEqualTo(UpdateLane.CATALOG);
+		assertThat(UpdateLane.of(message("ℹ️ Информация"))).isEqualTo(UpdateLane.GENERAL);
+	}
+
+	@Test
+	void onlyCatalogAndMenuAreShedByDefault() {
+		assertThat(UpdateLane.CHECKOUT.isDefaultShed()).isFalse();
+		assertThat(UpdateLane.CART.isDefaultShed()).isFalse();
+		assertThat(UpdateLane.GENERAL.isDefaultShed()).isTrue();
+		assertThat(UpdateLane.CATALOG.isDefaultShed()).isTrue();
+		assertThat(UpdateLane.CHECKOUT.getDefaultPriority()).isLessThan(UpdateLane.CART.getDefaultPriority());
+		assertThat(UpdateLane.CART.getDefaultPriority()).isLessThan(UpdateLane.CATALOG.getDefaultPriority());
+	}
+
+	@Test
+	void propertiesOverrideDefaults() {
+		UpdateLaneProperties properties = new UpdateLaneProperties();
+		UpdateLaneProperties.Lane cart = new UpdateLaneProperties.Lane();
+		cart.setShed(true);
+		cart.setCapacity(10);
+		properties.getLanes().put(UpdateLane.CART, cart);
+
+		assertThat(properties.shed(UpdateLane.CART)).isTrue();
+		assertThat(properties.capacity(UpdateLane.CART)).isEqualTo(10);
+		assertThat(properties.priority(UpdateLane.CART)).isEqualTo(UpdateLane.CART.getDefaultPriority());
+		assertThat(properties.capacity(UpdateLane.CATALOG)).isEqualTo(UpdateLane.CATALOG.getDefaultCapacity());
+	}
+
+	private UpdateEnvelope callback(String data) throws Exception {
+		return parse("""
+				{"update_id":1,"callback_query":{"id":"1","from":{"id":77,"is_bot":false,"first_name":"A"},
+				"message":{"message_id":12,"chat":{"id":77,"type":"private"},"date":1700000000,"text":"Каталог"},
+				"chat_instance":"-1","data":"%s"}}""".formatted(data));
+	}
+
+	private UpdateEnvelope message(String text) throws Exception {
+		return parse("""
+				{"update_id":2,"message":{"message_id":13,"from":{"id":77,"is_bot":false,"first_name":"A"},
+				"chat":{"id":77,"type":"private"},"date":1700000001,"text":"%s"}}""".formatted(text));
+	}
+
+	private UpdateEnvelope parse(String json) throws Exception {
+		return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,119 @@
+package uz.uportal.telegramshop.service.bot.draft;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DraftStoreTest {
+
+	private static final long TTL = TimeUnit.MINUTES.toMillis(30);
+
+	private static final DraftCodec<String> STRING_CODEC = new DraftCodec<>() {
+		@Override
+		public String encode(String draft) {
+			return draft;
+		}
+
+		@Override
+		public String decode(String payload) {
+			return payload;
+		}
+	};
+
+	@TempDir
+	Path directory;
+
+	private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+	@Test
+	void abandonedDraftExpires() {
+		DraftStore<String> drafts = store(null, 10);
+
+		drafts.put(1L, "Телефон");
+		clock.addAndGet(TTL - 1);
+		assertThat(drafts.get(1L)).isEqualTo("Телефон");
+
+		clock.addAndGet(1);
+		assertThat(drafts.get(1L)).isNull();
+		assertThat(drafts.size()).isZero();
+	}
+
+	@Test
+	void sweepRemovesExpiredDraftsWithoutLookups() {
+		DraftStore<String> drafts = store(null, 10);
+		drafts.put(1L, "Телефон");
+		clock.addAndGet(TTL / 2);
+		drafts.put(2L, "Ноутбук");
+
+		clock.addAndGet(TTL / 2);
+
+		assertThat(drafts.evictExpired(clock.get())).isEqualTo(1);
+		assertThat(drafts.get(2L)).isEqualTo("Ноутбук");
+	}
+
+	@Test
+	void overflowEvictsLeastRecentlySavedDraft() {
+		DraftStore<String> drafts = store(null, 2);
+		drafts.put(1L, "первый");
+		clock.incrementAndGet();
+		drafts.put(2L, "второй");
+		clock.incrementAndGet();
+		drafts.put(1L, "первый, шаг 2");
+		clock.incrementAndGet();
+
+		drafts.put(3L, "третий");
+
+		assertThat(drafts.size()).isEqualTo(2);
+		assertThat(drafts.get(2L)).isNull();
+		assertThat(drafts.get(1L)).isEqualTo("первый, шаг 2");
+	}
+
+	@Test
+	void fileStoreKeepsDraftsAcrossRestart() throws IOException {
+		DraftStore<String> beforeRestart = store(new FileDraftPersistence(directory), 10);
+		beforeRestart.put(1L, "{\"name\":\"Телефон\"}");
+		beforeRestart.put(2L, "{\"name\":\"Ноутбук\"}");
+		beforeRestart.remove(2L);
+
+		DraftStore<String> afterRestart = store(new FileDraftPersistence(directory), 10);
+
+		assertThat(afterRestart.get(1L)).isEqualTo("{\"name\":\"Телефон\"}");
+		assertThat(afterRestart.get(2L)).isNull();
+
+		clock.addAndGet(TTL);
+		assertThat(new FileDraftPersistence(directory).deleteExpired(clock.get())).isEqualTo(1);
+		assertThat(store(new FileDraftPersistence(directory), 10).get(1L)).isNull();
+	}
+
+	@Test
+	void jdbcStoreIsSharedBetweenInstances() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:drafts;DB_CLOSE_DELAY=-1"));
+		jdbcTemplate.execute("drop table if exists bot_drafts");
+		DraftStore<String> first = store(new JdbcDraftPersistence(jdbcTemplate), 10);
+		DraftStore<String> second = store(new JdbcDraftPersistence(jdbcTemplate), 10);
+
+		first.put(1L, "шаг 1");
+		assertThat(second.get(1L)).isEqualTo("шаг 1");
+
+		second.put(1L, "шаг 2");
+		assertThat(first.get(1L)).isEqualTo("шаг 2");
+
+		first.remove(1L);
+		assertThat(second.get(1L)).isNull();
+	}
+
+	private DraftStore<String> store(DraftPersistence persistence, int maxSize) {
+		return new DraftStore<>("product", STRING_CODEC, persistence, TTL, maxSize, clock::get, new SimpleMeterRegistry());
+	}
+
+}
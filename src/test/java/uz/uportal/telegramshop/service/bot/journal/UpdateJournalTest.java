@@ -0,0 +1,81 @@
+package uz.uportal.telegramshop.service.bot.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UpdateJournalTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writesAndReadsBackRecordsAcrossSegments() throws Exception {
+		UpdateJournal journal = newJournal();
+		for (int i = 1; i <= 200; i++) {
+			journal.append(update(i, 42L, "text " + i), i % 2 == 0 ? UpdateOutcome.HANDLED : UpdateOutcome.UNHANDLED,
+					i % 2 == 0 ? "MainMenuHandler" : null);
+		}
+
+		List<JournalRecord> records = new UpdateJournalReader(directory).readAll().toList();
+
+		assertThat(UpdateJournalReader.segments(directory)).hasSizeGreaterThan(1);
+		assertThat(records).extracting(JournalRecord::updateId).containsExactlyElementsOf(
+				LongStream.rangeClosed(1, 200).boxed().toList());
+		JournalRecord last = records.get(records.size() - 1);
+		assertThat(last.chatId()).isEqualTo(42L);
+		assertThat(last.outcome()).isEqualTo(UpdateOutcome.HANDLED);
+		assertThat(last.handler()).isEqualTo("MainMenuHandler");
+		Update parsed = new ObjectMapper().readValue(last.payload(), Update.class);
+		assertThat(parsed.getMessage().getText()).isEqualTo("text 200");
+	}
+
+	@Test
+	void readsTimeRangeAndContinuesAfterRestart() throws Exception {
+		UpdateJournal journal = newJournal();
+		journal.append(update(1, 1L, "before"), UpdateOutcome.HANDLED, "A");
+		Thread.sleep(5);
+		Instant from = Instant.now();
+		Thread.sleep(5);
+		journal.append(update(2, 1L, "after"), UpdateOutcome.FAILED, "B");
+		journal.flush();
+
+		UpdateJournal restarted = newJournal();
+		restarted.append(update(3, 1L, "restarted"), UpdateOutcome.HANDLED, "C");
+
+		assertThat(new UpdateJournalReader(directory).read(from, Instant.MAX).map(JournalRecord::updateId).toList())
+				.containsExactly(2L, 3L);
+	}
+
+	private UpdateJournal newJournal() throws Exception {
+		return new UpdateJournal(new ObjectMapper(), new SimpleMeterRegistry(), true, directory.toString(), 4096, 16);
+	}
+
+	private static Update update(int updateId, long chatId, String text) {
+		Chat chat = new Chat();
+		chat.setId(chatId);
+		chat.setType("private");
+		Message message = new Message();
+		message.setMessageId(updateId);
+		message.setChat(chat);
+		message.setText(text);
+		Update update = new Update();
+		update.setUpdateId(updateId);
+		update.setMessage(message);
+		return update;
+	}
+
+}
@@ -0,0 +1,107 @@
+package uz.uportal.telegramshop.service.bot.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.service.bot.core.UpdateContext;
+import uz.uportal.telegramshop.service.bot.core.UpdateHandler;
+
+class HandlerMetricsTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final SqlStatementCounter statementCounter = new SqlStatementCounter();
+	private final HandlerMetrics handlerMetrics = new HandlerMetrics(meterRegistry, statementCounter);
+
+	@Test
+	void tagsTimerWithHandlerAndRoute() {
+		CartHandler handler = new CartHandler();
+
+		handlerMetrics.record(handler, "ADD_TO_CART", handlerMetrics.start(), () -> null);
+		handlerMetrics.record(handler, "ADD_TO_CART", handlerMetrics.start(), () -> null);
+		handlerMetrics.record(handler, "clear_cart", handlerMetrics.start(), () -> null);
+
+		Timer timer = meterRegistry.get("telegram.handler.duration")
+				.tag("handler", "CartHandler")
+				.tag("route", "ADD_TO_CART")
+				.timer();
+		assertThat(timer.count()).isEqualTo(2);
+		assertThat(timer.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		assertThat(meterRegistry.get("telegram.handler.duration").tag("route", "clear_cart").timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void countsStatementsOfEachUpdateSeparately() {
+		CartHandler handler = new CartHandler();
+		// Запросы до начала обработки обновления к нему не относятся
+		statementCounter.inspect("select 1");
+
+		long firstUpdate = handlerMetrics.start();
+		statementCounter.inspect("select * from telegram_users");
+		handlerMetrics.record(handler, "ADD_TO_CART", firstUpdate, () -> {
+			statementCounter.inspect("select * from products");
+			statementCounter.inspect("insert into cart_items");
+			return null;
+		});
+
+		long secondUpdate = handlerMetrics.start();
+		handlerMetrics.record(handler, "ADD_TO_CART", secondUpdate, () -> {
+			statementCounter.inspect("update cart_items");
+			return null;
+		});
+
+		DistributionSummary statements = meterRegistry.get("telegram.handler.sql.statements")
+				.tag("handler", "CartHandler")
+				.tag("route", "ADD_TO_CART")
+				.summary();
+		assertThat(statements.count()).isEqualTo(2);
+		assertThat(statements.max()).isEqualTo(3.0);
+		assertThat(statements.totalAmount()).isEqualTo(4.0);
+	}
+
+	@Test
+	void recordsMetersWhenHandlerFails() {
+		CartHandler handler = new CartHandler();
+
+		assertThatThrownBy(() -> handlerMetrics.record(handler, "ADD_TO_CART", handlerMetrics.start(), () -> {
+			statementCounter.inspect("select * from products");
+			throw new IllegalStateException("Товар не найден");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(meterRegistry.get("telegram.handler.duration").tag("handler", "CartHandler").timer().count())
+				.isEqualTo(1);
+		assertThat(meterRegistry.get("telegram.handler.sql.statements").tag("handler", "CartHandler").summary()
+				.totalAmount()).isEqualTo(1.0);
+	}
+
+	@Test
+	void recordsStatementsOfUnhandledUpdates() {
+		long start = handlerMetrics.start();
+		statementCounter.inspect("select * from telegram_users");
+
+		handlerMetrics.recordUnhandled("message", start);
+
+		assertThat(meterRegistry.get("telegram.handler.sql.statements")
+				.tag("handler", HandlerMetrics.NO_HANDLER)
+				.tag("route", "message")
+				.summary()
+				.totalAmount()).isEqualTo(1.0);
+	}
+
+	private static class CartHandler implements UpdateHandler {
+
+		@Override
+		public BotApiMethod<?> handle(UpdateContext context) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package uz.uportal.telegramshop.service.bot.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class SqlStatementCounterTest {
+
+	private final SqlStatementCounter statementCounter = new SqlStatementCounter();
+
+	@Test
+	void passesStatementThroughAndCountsIt() {
+		long before = statementCounter.current();
+
+		assertThat(statementCounter.inspect("select * from products")).isEqualTo("select * from products");
+		statementCounter.inspect("select * from categories");
+
+		assertThat(statementCounter.current() - before).isEqualTo(2);
+	}
+
+	@Test
+	void countsOnlyStatementsOfCurrentThread() throws Exception {
+		statementCounter.inspect("select 1");
+		long before = statementCounter.current();
+		AtomicLong otherThread = new AtomicLong();
+
+		Thread worker = new Thread(() -> {
+			statementCounter.inspect("select * from orders");
+			statementCounter.inspect("select * from order_items");
+			otherThread.set(statementCounter.current());
+		});
+		worker.start();
+		worker.join();
+
+		// Обновления разных чатов обрабатываются параллельно и не должны попадать в чужие показания
+		assertThat(otherThread).hasValue(2);
+		assertThat(statementCounter.current()).isEqualTo(before);
+	}
+
+}
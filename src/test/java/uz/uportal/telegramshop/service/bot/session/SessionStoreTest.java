@@ -0,0 +1,175 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+
+class SessionStoreTest {
+
+	/**
+	 * Интервал больше времени теста: записью в базу управляет сам тест
+	 */
+	private static final long NO_AUTO_FLUSH = 3_600_000;
+
+	@TempDir
+	Path directory;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:sessions;DB_CLOSE_DELAY=-1"));
+		jdbcTemplate.execute("drop table if exists telegram_users");
+		jdbcTemplate.execute("create table telegram_users (chat_id bigint primary key, state varchar(255), temp_data varchar(255), "
+				+ "last_activity_at timestamp)");
+		for (long chatId = 1; chatId <= 3; chatId++) {
+			jdbcTemplate.update("insert into telegram_users (chat_id, state) values (?, 'NEW')", chatId);
+		}
+	}
+
+	@Test
+	void coalescesChangesUntilFlush() throws IOException {
+		SessionStore store = store(10, "");
+
+		store.write(user(1, "WAITING_FOR_ADDRESS", null));
+		store.write(user(1, "WAITING_FOR_PHONE", "ул. Навои, 1"));
+
+		assertThat(store.pendingCount()).isEqualTo(1);
+		assertThat(store.get(1L).getState()).isEqualTo("WAITING_FOR_PHONE");
+		assertThat(stateInDatabase(1)).isEqualTo("NEW");
+
+		assertThat(store.flush()).isEqualTo(1);
+		assertThat(store.pendingCount()).isZero();
+		assertThat(stateInDatabase(1)).isEqualTo("WAITING_FOR_PHONE");
+		assertThat(jdbcTemplate.queryForObject("select temp_data from telegram_users where chat_id = 1", String.class))
+				.isEqualTo("ул. Навои, 1");
+		store.shutdown();
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedButKeepsUnflushedChanges() throws IOException {
+		SessionStore store = store(2, "");
+
+		store.write(user(1, "ADDING_PRODUCT_NAME", null));
+		store.put(user(2, null, null));
+		store.get(1L);
+		store.put(user(3, null, null));
+
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.get(2L)).isNull();
+		// Вытесненная сессия с незаписанным изменением по-прежнему новее строки в базе
+		store.put(user(2, null, null));
+		assertThat(store.get(1L).getState()).isEqualTo("ADDING_PRODUCT_NAME");
+		store.shutdown();
+	}
+
+	@Test
+	void recoversUnflushedChangesAfterCrash() throws IOException {
+		String logFile = directory.resolve("sessions.log").toString();
+		SessionStore crashed = store(10, logFile);
+		crashed.write(user(1, "WAITING_FOR_COMMENT", "адрес"));
+		crashed.write(user(2, "ADDING_PRODUCT_PRICE", null));
+		crashed.flush();
+		crashed.write(user(2, "ADDING_PRODUCT_STOCK", null));
+		crashed.write(user(3, "EDITING_SHOP_ABOUT", null));
+		// Остановки нет: изменения чатов 2 и 3 есть только в памяти и в журнале
+
+		SessionStore restarted = store(10, logFile);
+		restarted.afterSingletonsInstantiated();
+
+		assertThat(stateInDatabase(1)).isEqualTo("WAITING_FOR_COMMENT");
+		assertThat(stateInDatabase(2)).isEqualTo("ADDING_PRODUCT_STOCK");
+		assertThat(stateInDatabase(3)).isEqualTo("EDITING_SHOP_ABOUT");
+
+		jdbcTemplate.update("update telegram_users set state = null");
+		SessionStore again = store(10, logFile);
+		again.afterSingletonsInstantiated();
+		// Восстановленные изменения из журнала удалены и повторно не применяются
+		assertThat(stateInDatabase(2)).isNull();
+		again.shutdown();
+	}
+
+	@Test
+	void doesNotReplayCancelledChangesAfterRestart() throws IOException {
+		String logFile = directory.resolve("sessions.log").toString();
+		SessionStore store = store(10, logFile);
+		store.write(user(1, "WAITING_FOR_ADDRESS", "адрес"));
+		store.write(user(2, "ADDING_PRODUCT_NAME", null));
+		// Заказ оформлен и записан в базу сразу, сессия второго чата сброшена в базе
+		store.writeThrough(() -> {
+			jdbcTemplate.update("update telegram_users set state = 'ORDER_DONE' where chat_id = 1");
+			return user(1, "ORDER_DONE", null);
+		});
+		jdbcTemplate.update("update telegram_users set state = null where chat_id = 2");
+		store.reset(2L);
+		store.shutdown();
+
+		SessionStore restarted = store(10, logFile);
+		restarted.afterSingletonsInstantiated();
+
+		assertThat(stateInDatabase(1)).isEqualTo("ORDER_DONE");
+		assertThat(stateInDatabase(2)).isNull();
+		restarted.shutdown();
+	}
+
+	@Test
+	void dropsCancelledChangesFromLogBeforeCrash() throws IOException {
+		String logFile = directory.resolve("sessions.log").toString();
+		SessionStore crashed = store(10, logFile);
+		crashed.write(user(1, "WAITING_FOR_ADDRESS", null));
+		crashed.write(user(3, "EDITING_SHOP_ABOUT", null));
+		crashed.put(user(1, null, null));
+		// Остановки нет: в журнале должно остаться только изменение третьего чата
+
+		SessionStore restarted = store(10, logFile);
+		restarted.afterSingletonsInstantiated();
+
+		assertThat(stateInDatabase(1)).isEqualTo("NEW");
+		assertThat(stateInDatabase(3)).isEqualTo("EDITING_SHOP_ABOUT");
+		restarted.shutdown();
+	}
+
+	@Test
+	void reportsScenarioOnlyForChatStates() throws IOException {
+		SessionStore store = store(10, "");
+		store.put(user(1, "NEW", null));
+		store.put(user(2, null, null));
+		store.write(user(3, ChatState.WAITING_FOR_ADDRESS.encode(), null));
+		// Прежний строковый формат состояния тоже сценарий
+		store.put(user(4, "EDITING_PRODUCT_15", null));
+
+		assertThat(store.hasState(1L)).isFalse();
+		assertThat(store.hasState(2L)).isFalse();
+		assertThat(store.hasState(3L)).isTrue();
+		assertThat(store.hasState(4L)).isTrue();
+		assertThat(store.hasState(5L)).isNull();
+		store.shutdown();
+	}
+
+	private SessionStore store(int maxSize, String logFile) throws IOException {
+		return new SessionStore(jdbcTemplate, new SimpleMeterRegistry(), true, maxSize, NO_AUTO_FLUSH, logFile, 4096);
+	}
+
+	private String stateInDatabase(long chatId) {
+		return jdbcTemplate.queryForObject("select state from telegram_users where chat_id = ?", String.class, chatId);
+	}
+
+	private static TelegramUser user(long chatId, String state, String tempData) {
+		TelegramUser user = new TelegramUser(chatId, "user" + chatId, "User", null);
+		user.setState(state);
+		user.setTempData(tempData);
+		return user;
+	}
+
+}
@@ -0,0 +1,136 @@
+package uz.uportal.telegramshop.service.bot.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.model.TelegramUser;
+import uz.uportal.telegramshop.replay.RecordingMessageSender;
+import uz.uportal.telegramshop.service.bot.core.ChatState;
+
+class SessionSweeperTest {
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+	private final Clock clock = Clock.fixed(NOW.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+
+	private final RecordingMessageSender sender = new RecordingMessageSender();
+
+	private JdbcTemplate jdbcTemplate;
+
+	private SessionStore sessionStore;
+
+	private SessionSweeperProperties properties;
+
+	@BeforeEach
+	void createTable() throws IOException {
+		jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:sweeper;DB_CLOSE_DELAY=-1"));
+		jdbcTemplate.execute("drop table if exists telegram_users");
+		jdbcTemplate.execute("create table telegram_users (chat_id bigint primary key, state varchar(255), temp_data varchar(255), "
+				+ "last_activity_at timestamp)");
+		jdbcTemplate.execute("create index idx_telegram_users_last_activity on telegram_users (last_activity_at)");
+		sessionStore = new SessionStore(jdbcTemplate, new SimpleMeterRegistry(), true, 10, 3_600_000, "", 4096);
+		properties = new SessionSweeperProperties();
+		properties.setTtl(86400);
+		properties.getStates().put(ChatState.WAITING_FOR_ADDRESS, 3600L);
+	}
+
+	@AfterEach
+	void stop() {
+		sessionStore.shutdown();
+	}
+
+	@Test
+	void resetsSessionsIdlePastTheirStateTtl() {
+		givenUser(1, "WAITING_FOR_ADDRESS", NOW.minusHours(2));
+		givenUser(2, ChatState.ADDING_PRODUCT_PRICE.encode(), NOW.minusHours(2));
+		givenUser(3, ChatState.ADDING_PRODUCT_PRICE.encode(), NOW.minusDays(2));
+		givenUser(4, "NEW", NOW.minusDays(30));
+		givenUser(5, null, NOW.minusDays(30));
+
+		SessionSweeper.Result result = sweeper(false, 1000).sweep();
+
+		assertThat(result.candidates()).isEqualTo(3);
+		assertThat(result.reset()).isEqualTo(2);
+		assertThat(stateInDatabase(1)).isNull();
+		assertThat(stateInDatabase(2)).isEqualTo(ChatState.ADDING_PRODUCT_PRICE.encode());
+		assertThat(stateInDatabase(3)).isNull();
+		assertThat(stateInDatabase(4)).isEqualTo("NEW");
+		assertThat(jdbcTemplate.queryForObject("select temp_data from telegram_users where chat_id = 1", String.class))
+				.isNull();
+	}
+
+	@Test
+	void activityKeptOnlyInMemoryProtectsSession() {
+		givenUser(1, ChatState.WAITING_FOR_PHONE.encode(), NOW.minusDays(2));
+		givenUser(2, ChatState.WAITING_FOR_PHONE.encode(), NOW.minusDays(2));
+		sessionStore.put(user(1, ChatState.WAITING_FOR_PHONE.encode(), NOW.minusDays(2)));
+		sessionStore.put(user(2, ChatState.WAITING_FOR_PHONE.encode(), NOW.minusDays(2)));
+		// Пользователь 1 прислал некорректный телефон: состояние не изменилось, в базу ничего не записано
+		sessionStore.touch(1L, NOW.minusMinutes(1));
+
+		SessionSweeper.Result result = sweeper(false, 1000).sweep();
+
+		assertThat(result.reset()).isEqualTo(1);
+		assertThat(stateInDatabase(1)).isEqualTo(ChatState.WAITING_FOR_PHONE.encode());
+		assertThat(sessionStore.get(1L).getState()).isEqualTo(ChatState.WAITING_FOR_PHONE.encode());
+		assertThat(stateInDatabase(2)).isNull();
+		assertThat(sessionStore.get(2L).getState()).isNull();
+	}
+
+	@Test
+	void unflushedStepIsNotLost() {
+		givenUser(1, ChatState.WAITING_FOR_ADDRESS.encode(), NOW.minusDays(2));
+		sessionStore.write(user(1, ChatState.WAITING_FOR_PHONE.encode(), NOW.minusMinutes(1)));
+
+		assertThat(sweeper(false, 1000).sweep().reset()).isZero();
+		assertThat(stateInDatabase(1)).isEqualTo(ChatState.WAITING_FOR_PHONE.encode());
+	}
+
+	@Test
+	void notificationsAreCapped() {
+		for (long chatId = 1; chatId <= 3; chatId++) {
+			givenUser(chatId, ChatState.WAITING_FOR_COMMENT.encode(), NOW.minusDays(2));
+		}
+
+		SessionSweeper.Result result = sweeper(true, 2).sweep();
+
+		assertThat(result.reset()).isEqualTo(3);
+		assertThat(result.notified()).isEqualTo(2);
+		assertThat(sender.getMessages()).hasSize(2);
+	}
+
+	private SessionSweeper sweeper(boolean notify, int notifyMax) {
+		SessionSweeper sweeper = new SessionSweeper(jdbcTemplate, sessionStore, sender, properties,
+				new SimpleMeterRegistry(), clock, 2, notify, 1000, notifyMax);
+		sweeper.afterSingletonsInstantiated();
+		return sweeper;
+	}
+
+	private void givenUser(long chatId, String state, LocalDateTime lastActivityAt) {
+		jdbcTemplate.update("insert into telegram_users (chat_id, state, temp_data, last_activity_at) values (?, ?, ?, ?)",
+				chatId, state, state != null ? "черновик" : null, lastActivityAt);
+	}
+
+	private String stateInDatabase(long chatId) {
+		return jdbcTemplate.queryForObject("select state from telegram_users where chat_id = ?", String.class, chatId);
+	}
+
+	private static TelegramUser user(long chatId, String state, LocalDateTime lastActivityAt) {
+		TelegramUser user = new TelegramUser(chatId, "user" + chatId, "User", null);
+		user.setState(state);
+		user.setLastActivityAt(lastActivityAt);
+		return user;
+	}
+
+}
@@ -0,0 +1,87 @@
+package uz.uportal.telegramshop.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex.Entry;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex.Hit;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex.Result;
+
+class ProductSearchIndexTest {
+
+	private final ProductSearchIndex index = new ProductSearchIndex(null, new SimpleMeterRegistry());
+
+	@Test
+	void normalizesRussianAndUzbekText() {
+		assertThat(SearchText.tokens("Ёлка O‘zbekiston, oʻzbek-ЧОЙ")).containsExactly("елка", "ozbekiston", "ozbek", "чой");
+		assertThat(SearchText.normalize("Қовоқ ҒИШТ ҳўл")).isEqualTo("ковок гишт хул");
+		assertThat(SearchText.tokens(null)).isEmpty();
+	}
+
+	@Test
+	void matchesEveryQueryWordByPrefix() {
+		index.productChanged(entry(1, "iPhone 15 Pro", "Смартфон Apple", 3));
+		index.productChanged(entry(2, "iPhone 13", "Смартфон Apple, восстановленный", 1));
+		index.productChanged(entry(3, "Чехол для iPhone", null, 10));
+
+		assertThat(ids(index.search("IPH", 0, 10))).containsExactlyInAnyOrder(1L, 2L, 3L);
+		assertThat(ids(index.search("iphone смарт", 0, 10))).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(ids(index.search("iphone чайник", 0, 10))).isEmpty();
+		assertThat(ids(index.search("  ", 0, 10))).isEmpty();
+	}
+
+	@Test
+	void ranksNameAboveDescriptionAndInStockFirst() {
+		index.productChanged(entry(1, "Кабель USB", "Подходит для телефона", 5));
+		index.productChanged(entry(2, "Телефон Nokia", null, 0));
+		index.productChanged(entry(3, "Телефон Samsung", null, 2));
+		index.productChanged(entry(4, "Чехол под телефоны", null, 2));
+
+		assertThat(ids(index.search("телефон", 0, 10))).containsExactly(3L, 2L, 4L, 1L);
+	}
+
+	@Test
+	void followsIncrementalChanges() {
+		index.productChanged(entry(1, "Ноутбук Lenovo", null, 1));
+		index.productChanged(entry(1, "Ноутбук ASUS", null, 1));
+
+		assertThat(ids(index.search("lenovo", 0, 10))).isEmpty();
+		assertThat(ids(index.search("asus", 0, 10))).containsExactly(1L);
+		assertThat(index.termCount()).isEqualTo(2);
+
+		index.productChanged(new Entry(1L, "Ноутбук ASUS", null, BigDecimal.TEN, null, 1, false));
+
+		assertThat(ids(index.search("ноутбук", 0, 10))).isEmpty();
+		assertThat(index.size()).isZero();
+		assertThat(index.termCount()).isZero();
+	}
+
+	@Test
+	void pagesThroughResults() {
+		for (long id = 1; id <= 5; id++) {
+			index.productChanged(entry(id, "Книга " + id, null, 1));
+		}
+
+		Result first = index.search("книга", 0, 2);
+		Result last = index.search("книга", 4, 2);
+
+		assertThat(first.total()).isEqualTo(5);
+		assertThat(ids(first)).containsExactly(1L, 2L);
+		assertThat(ids(last)).containsExactly(5L);
+		assertThat(ids(index.search("книга", 10, 2))).isEmpty();
+	}
+
+	private static Entry entry(long id, String name, String description, int stock) {
+		return new Entry(id, name, description, BigDecimal.valueOf(100 * id), null, stock, true);
+	}
+
+	private static List<Long> ids(Result result) {
+		return result.hits().stream().map(Hit::entry).map(Entry::id).toList();
+	}
+
+}
@@ -0,0 +1,81 @@
+package uz.uportal.telegramshop.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uz.uportal.telegramshop.service.search.ProductSearchIndex.Entry;
+import uz.uportal.telegramshop.service.search.ProductTrigramIndex.Match;
+
+class ProductTrigramIndexTest {
+
+	private final ProductTrigramIndex index = new ProductTrigramIndex(null, new SimpleMeterRegistry(), 0.25);
+
+	@Test
+	void toleratesTyposAndScript() {
+		index.productChanged(entry(1, "iPhone 13", 3));
+		index.productChanged(entry(2, "iPhone 15 Pro", 1));
+		index.productChanged(entry(3, "Samsung Galaxy S23", 2));
+		index.productChanged(entry(4, "Чайник Bosch", 1));
+		index.productChanged(entry(5, "Huawei P60", 4));
+
+		assertThat(ids(index.search("ipone", 10))).containsExactly(1L, 2L);
+		assertThat(ids(index.search("айфон 13", 10))).containsExactly(1L);
+		assertThat(ids(index.search("хуавей", 10))).containsExactly(5L);
+		assertThat(ids(index.search("чайнек", 10))).containsExactly(4L);
+		assertThat(ids(index.search("холодильник", 10))).isEmpty();
+	}
+
+	@Test
+	void followsIncrementalChanges() {
+		index.productChanged(entry(4, "Чайник Bosch", 1));
+		index.productChanged(entry(4, "Кофеварка Bosch", 1));
+
+		assertThat(ids(index.search("чайник", 10))).isEmpty();
+		assertThat(ids(index.search("кофеварка", 10))).containsExactly(4L);
+
+		index.productChanged(entry(4, "Кофеварка Bosch", 0));
+		assertThat(index.search("кофеварка", 10).get(0).entry().inStock()).isFalse();
+
+		index.productChanged(new Entry(4L, "Кофеварка Bosch", null, BigDecimal.ONE, null, 0, false));
+		assertThat(ids(index.search("кофеварка", 10))).isEmpty();
+		assertThat(index.size()).isZero();
+	}
+
+	@Test
+	void compactsAfterManyChanges() {
+		for (long id = 1; id <= 300; id++) {
+			index.productChanged(entry(id, "Товар " + id, 1));
+		}
+		for (long id = 1; id <= 300; id++) {
+			index.productChanged(entry(id, "Изделие " + id, 1));
+		}
+
+		List<Match> matches = index.search("изделие 7", 3);
+
+		assertThat(index.size()).isEqualTo(300);
+		assertThat(matches).hasSize(3);
+		assertThat(matches.get(0).entry().id()).isEqualTo(7L);
+		assertThat(matches.get(0).similarity()).isEqualTo(1.0);
+		assertThat(ids(index.search("товар 7", 3))).isEmpty();
+	}
+
+	@Test
+	void packsDistinctTrigrams() {
+		assertThat(ProductTrigramIndex.trigrams("аа аа")).hasSize(2);
+		assertThat(ProductTrigramIndex.trigrams(" , ")).isEmpty();
+	}
+
+	private static Entry entry(long id, String name, int stock) {
+		return new Entry(id, name, null, BigDecimal.valueOf(100 * id), null, stock, true);
+	}
+
+	private static List<Long> ids(List<Match> matches) {
+		return matches.stream().map(Match::entry).map(Entry::id).toList();
+	}
+
+}